@@ -0,0 +1,70 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.jmh;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jabb.util.stat.AtomicBigInteger;
+import net.sf.jabb.util.stat.BigIntegerAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of accumulating into a BigInteger shared by all threads.
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtomicBigIntegerBenchmark {
+	static final BigInteger DELTA = BigInteger.valueOf(1500);
+	
+	AtomicBigInteger atomic;
+	BigIntegerAdder adder;
+
+	@Setup
+	public void setup(){
+		atomic = new AtomicBigInteger(BigInteger.valueOf(Long.MAX_VALUE));
+		adder = new BigIntegerAdder(BigInteger.valueOf(Long.MAX_VALUE));
+	}
+
+	@Benchmark
+	public BigInteger atomicBigIntegerAddAndGet(){
+		return atomic.addAndGet(DELTA);
+	}
+
+	@Benchmark
+	public void bigIntegerAdderAdd(){
+		adder.add(1500L);
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.jmh;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with 1, 4, 16 and 64 threads one after another.
+ * Command line arguments are the same as those of JMH, for example, 
+ * <code>java -jar benchmarks.jar FrequencyCounter -f 1</code>.
+ * If the number of threads is specified by "-t", only that number of threads will be used.
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+public class BenchmarkRunner {
+	public static final int[] THREADS = new int[]{1, 4, 16, 64};
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		if (cmdOptions.getThreads().hasValue()){
+			new Runner(cmdOptions).run();
+			return;
+		}
+		for (int threads: THREADS){
+			Options options = new OptionsBuilder()
+				.parent(cmdOptions)
+				.threads(threads)
+				.build();
+			new Runner(options).run();
+		}
+	}
+
+}
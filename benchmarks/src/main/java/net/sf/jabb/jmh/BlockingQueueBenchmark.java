@@ -0,0 +1,96 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.jmh;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jabb.util.col.RingBufferBlockingQueue;
+import net.sf.jabb.util.col.SizeLimitableBlockingQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of blocking queues with the same number of producers and consumers.
+ * Timed offer/poll are used instead of put/take so that threads blocked 
+ * at the end of an iteration do not hang the benchmark, they go through the same
+ * size limiting and signaling logic as put/take.
+ * The state is shared by all the groups, so with N threads there are N/2 producers
+ * and N/2 consumers working on the same queue.
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockingQueueBenchmark {
+	static final Object ELEMENT = new Object();
+	
+	@Param({"SizeLimitableBlockingQueue", "RingBufferBlockingQueue", "ArrayBlockingQueue"})
+	String type;
+	
+	@Param({"1024"})
+	int capacity;
+	
+	BlockingQueue<Object> queue;
+	
+	@Setup
+	public void setup(){
+		if ("SizeLimitableBlockingQueue".equals(type)){
+			queue = new SizeLimitableBlockingQueue<Object>(new LinkedBlockingQueue<Object>(), capacity);
+		}else if ("RingBufferBlockingQueue".equals(type)){
+			queue = new RingBufferBlockingQueue<Object>(capacity);
+		}else if ("ArrayBlockingQueue".equals(type)){
+			queue = new ArrayBlockingQueue<Object>(capacity);
+		}else{
+			throw new IllegalArgumentException("Unknown queue type: " + type);
+		}
+	}
+
+	@Benchmark
+	@Group("putTake")
+	@GroupThreads(1)
+	public boolean put() throws InterruptedException{
+		return queue.offer(ELEMENT, 10, TimeUnit.MILLISECONDS);
+	}
+
+	@Benchmark
+	@Group("putTake")
+	@GroupThreads(1)
+	public Object take() throws InterruptedException{
+		return queue.poll(10, TimeUnit.MILLISECONDS);
+	}
+
+}
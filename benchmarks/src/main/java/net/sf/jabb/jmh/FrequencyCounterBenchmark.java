@@ -0,0 +1,82 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jabb.util.stat.BasicFrequencyCounter;
+import net.sf.jabb.util.stat.RingBufferFrequencyCounter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of counting into and reading from frequency counters.
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrequencyCounterBenchmark {
+	BasicFrequencyCounter basic;
+	RingBufferFrequencyCounter ring;
+
+	@Setup
+	public void setup(){
+		basic = new BasicFrequencyCounter(1, TimeUnit.SECONDS, 1, TimeUnit.HOURS);
+		ring = new RingBufferFrequencyCounter(1, TimeUnit.SECONDS, 1, TimeUnit.HOURS);
+		long now = System.currentTimeMillis();
+		for (long t = now - TimeUnit.HOURS.toMillis(1); t < now; t += 100){
+			basic.count(t);
+			ring.count(t);
+		}
+	}
+
+	@Benchmark
+	public void basicCount(){
+		basic.count();
+	}
+
+	@Benchmark
+	public long basicGetCountLastMinute(){
+		return basic.getCount(1, TimeUnit.MINUTES);
+	}
+
+	@Benchmark
+	public void ringBufferCount(){
+		ring.count();
+	}
+
+	@Benchmark
+	public long ringBufferGetCountLastMinute(){
+		return ring.getCount(1, TimeUnit.MINUTES);
+	}
+
+}
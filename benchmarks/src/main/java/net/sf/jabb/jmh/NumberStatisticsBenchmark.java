@@ -0,0 +1,101 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jabb.util.stat.AtomicLongStatistics;
+import net.sf.jabb.util.stat.ConcurrentLongMinMaxHolder;
+import net.sf.jabb.util.stat.HistogramNumberStatistics;
+import net.sf.jabb.util.stat.StripedLongStatistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of evaluating values into statistics shared by all threads.
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumberStatisticsBenchmark {
+	AtomicLongStatistics atomic;
+	StripedLongStatistics striped;
+	HistogramNumberStatistics histogram;
+	ConcurrentLongMinMaxHolder minMax;
+
+	/**
+	 * Values to be evaluated, different in each thread
+	 */
+	@State(Scope.Thread)
+	public static class Values{
+		long value;
+
+		@Setup
+		public void setup(){
+			value = Thread.currentThread().getId() * 1000003;
+		}
+
+		long next(){
+			value = value * 6364136223846793005L + 1442695040888963407L;	// LCG
+			return (value >>> 33);
+		}
+	}
+
+	@Setup
+	public void setup(){
+		atomic = new AtomicLongStatistics();
+		striped = new StripedLongStatistics();
+		histogram = new HistogramNumberStatistics();
+		minMax = new ConcurrentLongMinMaxHolder();
+	}
+
+	@Benchmark
+	public void atomicLongStatisticsEvaluate(Values values){
+		atomic.evaluate(values.next());
+	}
+
+	@Benchmark
+	public void stripedLongStatisticsEvaluate(Values values){
+		striped.evaluate(values.next());
+	}
+
+	@Benchmark
+	public void histogramNumberStatisticsEvaluate(Values values){
+		histogram.evaluate(values.next());
+	}
+
+	@Benchmark
+	public void concurrentLongMinMaxHolderEvaluate(Values values){
+		minMax.evaluate(values.next());
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.jmh;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.jabb.util.col.PutIfAbsentMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of getting existing values from PutIfAbsentMap.
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutIfAbsentMapBenchmark {
+	static final int NUMBER_OF_KEYS = 1024;
+	
+	PutIfAbsentMap<Long, AtomicLong> map;
+	Long[] keys;
+	
+	/**
+	 * Position in the keys, different in each thread
+	 */
+	@State(Scope.Thread)
+	public static class Position{
+		int i;
+		
+		@Setup
+		public void setup(){
+			i = (int)Thread.currentThread().getId();
+		}
+	}
+
+	@Setup
+	public void setup(){
+		map = new PutIfAbsentMap<Long, AtomicLong>(new ConcurrentHashMap<Long, AtomicLong>(), AtomicLong.class);
+		keys = new Long[NUMBER_OF_KEYS];
+		for (int i = 0; i < NUMBER_OF_KEYS; i ++){
+			keys[i] = Long.valueOf(i * 1000L);
+			map.get(keys[i]);
+		}
+	}
+
+	@Benchmark
+	public AtomicLong putIfAbsentMapGet(Position position){
+		return map.get(keys[position.i++ & (NUMBER_OF_KEYS - 1)]);
+	}
+
+}
@@ -0,0 +1,407 @@
+/**
+ *
+ */
+package net.sf.jabb.cjtsd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compact binary encoder and decoder of {@link ColumnarCJTSD}.
+ * <p>The encoded data is a bit stream with the following parts:</p>
+ * <ul>
+ * 	<li>format version (8 bits) and unit (8 bits, 0 for null)</li>
+ * 	<li>t column: number of elements as varint, then the first timestamp, the first delta,
+ * 		and delta-of-deltas for the rest, all as zigzag varints</li>
+ * 	<li>d column: number of elements as varint, then durations as zigzag varints</li>
+ * 	<li>presence flags of c/s/a/m/x/n columns (8 bits)</li>
+ * 	<li>c column if present: number of elements as varint, then the first count and the deltas as zigzag varints</li>
+ * 	<li>s/a/m/x/n columns if present: number of elements as varint, then the values XOR compressed
+ * 		in the same way as Facebook Gorilla</li>
+ * </ul>
+ * <p>The stream is padded to a whole byte at the end, so that multiple time series can be written into the same stream one after another.
+ * Encoding and decoding work directly on the streams, no intermediate buffer or boxed object is created.</p>
+ * @author James Hu (Zhengmao Hu)
+ *
+ */
+public class CJTSDBinaryCodec {
+	static final int VERSION = 1;
+
+	/**
+	 * Maximum number of elements allocated for a column before they are actually read,
+	 * when the length of the input is not known
+	 */
+	static final int MAX_INITIAL_CAPACITY = 4096;
+
+	/**
+	 * Encode a time series data and write it into an output stream.
+	 * @param data	the data to be encoded
+	 * @param out	the output stream, it will not be flushed or closed.
+	 * @throws IOException	if failed to write into the output stream
+	 */
+	static public void encode(ColumnarCJTSD data, OutputStream out) throws IOException{
+		BitOutput bits = new BitOutput(out);
+		bits.writeBits(VERSION, 8);
+		bits.writeBits(data.u == null ? 0 : data.u.charAt(0), 8);
+
+		// t
+		bits.writeVarLong(data.tSize);
+		long previous = 0;
+		long previousDelta = 0;
+		for (int i = 0; i < data.tSize; i ++){
+			long delta = data.t[i] - previous;
+			bits.writeZigZag(i == 0 ? data.t[i] : (i == 1 ? delta : delta - previousDelta));
+			previousDelta = delta;
+			previous = data.t[i];
+		}
+
+		// d
+		bits.writeVarLong(data.dSize);
+		for (int i = 0; i < data.dSize; i ++){
+			bits.writeZigZag(data.d[i]);
+		}
+
+		// flags
+		int flags = data.c == null ? 0 : 1;
+		for (int i = 0; i < data.values.length; i ++){
+			if (data.values[i] != null){
+				flags |= 2 << i;
+			}
+		}
+		bits.writeBits(flags, 8);
+
+		// c
+		if (data.c != null){
+			bits.writeVarLong(data.cSize);
+			previous = 0;
+			for (int i = 0; i < data.cSize; i ++){
+				bits.writeZigZag(data.c[i] - previous);
+				previous = data.c[i];
+			}
+		}
+
+		// s/a/m/x/n
+		for (int i = 0; i < data.values.length; i ++){
+			if (data.values[i] != null){
+				bits.writeVarLong(data.valueSizes[i]);
+				writeDoubles(bits, data.values[i], data.valueSizes[i]);
+			}
+		}
+
+		bits.flush();
+	}
+
+	/**
+	 * Read from an input stream and decode a time series data.
+	 * Because the length of the input is not known, columns are allocated for at most
+	 * {@link #MAX_INITIAL_CAPACITY} elements in advance and grow as the elements are read.
+	 * @param in	the input stream
+	 * @return	the time series data decoded
+	 * @throws IOException	if failed to read from the input stream, or the data is not valid
+	 */
+	static public ColumnarCJTSD decode(InputStream in) throws IOException{
+		return decode(new BitInput(in, -1));
+	}
+
+	/**
+	 * Read from an input stream and decode a time series data, reading no more than the specified number of bytes.
+	 * @param in		the input stream
+	 * @param length	the maximum number of bytes to read, for example the size of the buffer or file holding the encoded data
+	 * @return	the time series data decoded
+	 * @throws IOException	if failed to read from the input stream, or the data is not valid
+	 * @throws IllegalArgumentException	if the number of elements in a column exceeds what the remaining bytes can hold
+	 */
+	static public ColumnarCJTSD decode(InputStream in, long length) throws IOException{
+		if (length < 0){
+			throw new IllegalArgumentException("Length cannot be negative: " + length);
+		}
+		return decode(new BitInput(in, length));
+	}
+
+	static ColumnarCJTSD decode(BitInput bits) throws IOException{
+		int version = (int)bits.readBits(8);
+		if (version != VERSION){
+			throw new IOException("Unsupported format version: " + version);
+		}
+		int unit = (int)bits.readBits(8);
+
+		// t
+		int size = readSize(bits, 8);
+		ColumnarCJTSD data = new ColumnarCJTSD(unit == 0 ? null : String.valueOf((char)unit), bits.initialCapacity(size));
+		long previous = 0;
+		long previousDelta = 0;
+		for (int i = 0; i < size; i ++){
+			long x = bits.readZigZag();
+			long delta = i == 0 ? x : (i == 1 ? x : previousDelta + x);
+			long timestamp = i == 0 ? x : previous + delta;
+			data.appendTimestamp(timestamp);
+			previousDelta = i == 0 ? 0 : delta;
+			previous = timestamp;
+		}
+
+		// d
+		size = readSize(bits, 8);
+		data.d = new int[bits.initialCapacity(size)];
+		for (int i = 0; i < size; i ++){
+			data.appendDuration((int)bits.readZigZag());
+		}
+
+		// flags
+		int flags = (int)bits.readBits(8);
+
+		// c
+		if ((flags & 1) != 0){
+			size = readSize(bits, 8);
+			data.c = new long[bits.initialCapacity(size)];
+			previous = 0;
+			for (int i = 0; i < size; i ++){
+				previous += bits.readZigZag();
+				data.appendCount(previous);
+			}
+		}
+
+		// s/a/m/x/n
+		for (int i = 0; i < data.values.length; i ++){
+			if ((flags & (2 << i)) != 0){
+				size = readSize(bits, 1);
+				data.values[i] = new double[bits.initialCapacity(size)];
+				readDoubles(bits, data, i, size);
+			}
+		}
+
+		data.restoreAppendingState();
+		return data;
+	}
+
+	/**
+	 * Read the number of elements in a column and check it against the remaining input
+	 * @param bits					the input
+	 * @param minBitsPerElement		minimum number of bits that an element takes in the input
+	 * @return	the number of elements
+	 * @throws IllegalArgumentException	if the remaining input is not enough for that number of elements
+	 */
+	static int readSize(BitInput bits, int minBitsPerElement) throws IOException{
+		long size = bits.readVarLong();
+		if (size < 0 || size > Integer.MAX_VALUE){
+			throw new IOException("Invalid number of elements: " + size);
+		}
+		long remaining = bits.remainingBits();
+		if (remaining >= 0 && size * minBitsPerElement > remaining){
+			throw new IllegalArgumentException("Number of elements (" + size + ") exceeds what the remaining " + remaining + " bits of input can hold");
+		}
+		return (int) size;
+	}
+
+	static void writeDoubles(BitOutput bits, double[] values, int size) throws IOException{
+		long previous = 0;
+		int previousLeading = -1;
+		int previousTrailing = 0;
+		for (int i = 0; i < size; i ++){
+			long current = Double.doubleToRawLongBits(values[i]);
+			if (i == 0){
+				bits.writeBits(current, 64);
+			}else{
+				long xor = current ^ previous;
+				if (xor == 0){
+					bits.writeBits(0, 1);
+				}else{
+					bits.writeBits(1, 1);
+					int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+					int trailing = Long.numberOfTrailingZeros(xor);
+					if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing){
+						bits.writeBits(0, 1);
+						bits.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+					}else{
+						int meaningful = 64 - leading - trailing;
+						bits.writeBits(1, 1);
+						bits.writeBits(leading, 5);
+						bits.writeBits(meaningful - 1, 6);
+						bits.writeBits(xor >>> trailing, meaningful);
+						previousLeading = leading;
+						previousTrailing = trailing;
+					}
+				}
+			}
+			previous = current;
+		}
+	}
+
+	static void readDoubles(BitInput bits, ColumnarCJTSD data, int columnIndex, int size) throws IOException{
+		long previous = 0;
+		int previousLeading = -1;
+		int previousTrailing = 0;
+		for (int i = 0; i < size; i ++){
+			long current;
+			if (i == 0){
+				current = bits.readBits(64);
+			}else if (bits.readBits(1) == 0){
+				current = previous;
+			}else{
+				if (bits.readBits(1) == 0){
+					if (previousLeading < 0){
+						throw new IOException("Invalid XOR compressed double value at " + i);
+					}
+					current = previous ^ (bits.readBits(64 - previousLeading - previousTrailing) << previousTrailing);
+				}else{
+					int leading = (int)bits.readBits(5);
+					int meaningful = (int)bits.readBits(6) + 1;
+					int trailing = 64 - leading - meaningful;
+					if (trailing < 0){
+						throw new IOException("Invalid XOR compressed double value at " + i);
+					}
+					current = previous ^ (bits.readBits(meaningful) << trailing);
+					previousLeading = leading;
+					previousTrailing = trailing;
+				}
+			}
+			data.appendValue(columnIndex, Double.longBitsToDouble(current));
+			previous = current;
+		}
+	}
+
+	/**
+	 * Writer of a bit stream
+	 */
+	static class BitOutput{
+		OutputStream out;
+		long buffer;
+		int bitsInBuffer;
+
+		BitOutput(OutputStream out){
+			this.out = out;
+		}
+
+		/**
+		 * Write the lowest bits of a value
+		 * @param value		the value
+		 * @param numBits	number of bits to write, from 1 to 64
+		 */
+		void writeBits(long value, int numBits) throws IOException{
+			if (numBits > 32){
+				writeBits(value >>> 32, numBits - 32);
+				writeBits(value, 32);
+				return;
+			}
+			buffer = (buffer << numBits) | (value & ((1L << numBits) - 1));
+			bitsInBuffer += numBits;
+			while (bitsInBuffer >= 8){
+				bitsInBuffer -= 8;
+				out.write((int)(buffer >>> bitsInBuffer));
+			}
+			buffer &= (1L << bitsInBuffer) - 1;
+		}
+
+		void writeVarLong(long value) throws IOException{
+			while ((value & ~0x7FL) != 0){
+				writeBits((value & 0x7F) | 0x80, 8);
+				value >>>= 7;
+			}
+			writeBits(value, 8);
+		}
+
+		void writeZigZag(long value) throws IOException{
+			writeVarLong((value << 1) ^ (value >> 63));
+		}
+
+		/**
+		 * Write out the remaining bits, padded with zeros to a whole byte
+		 */
+		void flush() throws IOException{
+			if (bitsInBuffer > 0){
+				out.write((int)(buffer << (8 - bitsInBuffer)));
+				buffer = 0;
+				bitsInBuffer = 0;
+			}
+		}
+	}
+
+	/**
+	 * Reader of a bit stream
+	 */
+	static class BitInput{
+		InputStream in;
+		long remainingBytes;
+		long buffer;
+		int bitsInBuffer;
+
+		/**
+		 * Constructor
+		 * @param in		the input stream
+		 * @param length	maximum number of bytes to read, or -1 if not known
+		 */
+		BitInput(InputStream in, long length){
+			this.in = in;
+			this.remainingBytes = length;
+		}
+
+		/**
+		 * Get the number of bits not yet read
+		 * @return	number of bits remaining, or -1 if not known
+		 */
+		long remainingBits(){
+			if (remainingBytes < 0){
+				return -1;
+			}
+			return remainingBytes > (Long.MAX_VALUE - 64) / 8 ? Long.MAX_VALUE : remainingBytes * 8 + bitsInBuffer;
+		}
+
+		/**
+		 * Decide the capacity to be allocated for a column before its elements are read
+		 * @param size	number of elements in the column, already checked against the remaining input if its length is known
+		 * @return	the capacity
+		 */
+		int initialCapacity(int size){
+			return remainingBytes < 0 ? Math.min(size, MAX_INITIAL_CAPACITY) : size;
+		}
+
+		/**
+		 * Read bits
+		 * @param numBits	number of bits to read, from 1 to 64
+		 * @return	the value
+		 */
+		long readBits(int numBits) throws IOException{
+			if (numBits > 32){
+				long high = readBits(numBits - 32);
+				return (high << 32) | readBits(32);
+			}
+			while (bitsInBuffer < numBits){
+				if (remainingBytes == 0){
+					throw new EOFException();
+				}
+				int b = in.read();
+				if (b < 0){
+					throw new EOFException();
+				}
+				if (remainingBytes > 0){
+					remainingBytes --;
+				}
+				buffer = (buffer << 8) | b;
+				bitsInBuffer += 8;
+			}
+			bitsInBuffer -= numBits;
+			long result = (buffer >>> bitsInBuffer) & ((1L << numBits) - 1);
+			buffer &= (1L << bitsInBuffer) - 1;
+			return result;
+		}
+
+		long readVarLong() throws IOException{
+			long result = 0;
+			for (int shift = 0; shift < 64; shift += 7){
+				long b = readBits(8);
+				result |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0){
+					return result;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		long readZigZag() throws IOException{
+			long x = readVarLong();
+			return (x >>> 1) ^ -(x & 1);
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package net.sf.jabb.cjtsd;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming JSON writer and reader of {@link ColumnarCJTSD}.
+ * <p>Numbers are written from and read into the primitive arrays directly through Jackson streaming API,
+ * so that no intermediate tree or boxed object is created.
+ * The output is a standard CJTSD JSON object which can also be read into PlainCJTSD.</p>
+ * <p>The o column is skipped when reading, so are any other unknown fields.</p>
+ * @author James Hu (Zhengmao Hu)
+ *
+ */
+public class CJTSDJsonCodec {
+	static final JsonFactory jsonFactory = new JsonFactory();
+
+	/**
+	 * Write a time series data as a JSON object
+	 * @param data	the data
+	 * @param generator	the JSON generator, it will not be flushed or closed.
+	 * @throws IOException	if failed to write
+	 */
+	static public void write(ColumnarCJTSD data, JsonGenerator generator) throws IOException{
+		generator.writeStartObject();
+		if (data.u != null){
+			generator.writeStringField("u", data.u);
+		}
+
+		generator.writeArrayFieldStart("t");
+		for (int i = 0; i < data.tSize; i ++){
+			generator.writeNumber(data.t[i]);
+		}
+		generator.writeEndArray();
+
+		generator.writeArrayFieldStart("d");
+		for (int i = 0; i < data.dSize; i ++){
+			generator.writeNumber(data.d[i]);
+		}
+		generator.writeEndArray();
+
+		if (data.c != null){
+			generator.writeArrayFieldStart("c");
+			for (int i = 0; i < data.cSize; i ++){
+				generator.writeNumber(data.c[i]);
+			}
+			generator.writeEndArray();
+		}
+
+		for (int i = 0; i < data.values.length; i ++){
+			double[] column = data.values[i];
+			if (column != null){
+				generator.writeArrayFieldStart(String.valueOf(ColumnarCJTSD.VALUE_COLUMNS.charAt(i)));
+				for (int j = 0; j < data.valueSizes[i]; j ++){
+					double v = column[j];
+					if (Double.isNaN(v)){
+						generator.writeNull();
+					}else if (v == (long) v && !Double.isInfinite(v)){
+						generator.writeNumber((long) v);
+					}else{
+						generator.writeNumber(v);
+					}
+				}
+				generator.writeEndArray();
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Write a time series data as a JSON object
+	 * @param data	the data
+	 * @param writer	the writer, it will be flushed but not closed.
+	 * @throws IOException	if failed to write
+	 */
+	static public void write(ColumnarCJTSD data, Writer writer) throws IOException{
+		JsonGenerator generator = jsonFactory.createGenerator(writer);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		write(data, generator);
+		generator.close();
+	}
+
+	/**
+	 * Read a time series data from a JSON object
+	 * @param parser	the JSON parser which is positioned either before or at the START_OBJECT token.
+	 * 					After this method returns, it is positioned at the END_OBJECT token.
+	 * @return	the data
+	 * @throws IOException	if failed to read or the JSON is not a valid CJTSD object
+	 */
+	static public ColumnarCJTSD read(JsonParser parser) throws IOException{
+		JsonToken token = parser.getCurrentToken();
+		if (token == null){
+			token = parser.nextToken();
+		}
+		if (token != JsonToken.START_OBJECT){
+			throw new IOException("Expecting start of a JSON object but got: " + token);
+		}
+		ColumnarCJTSD data = new ColumnarCJTSD();
+		while ((token = parser.nextToken()) == JsonToken.FIELD_NAME){
+			String name = parser.getCurrentName();
+			token = parser.nextToken();
+			if (token == JsonToken.VALUE_NULL){
+				continue;
+			}
+			if (name.equals("u")){
+				data.u = parser.getText();
+				continue;
+			}
+			int valueColumn = name.length() == 1 ? ColumnarCJTSD.VALUE_COLUMNS.indexOf(name.charAt(0)) : -1;
+			if (!name.equals("t") && !name.equals("d") && !name.equals("c") && valueColumn < 0){
+				parser.skipChildren();		// o and unknown fields
+				continue;
+			}
+			if (token != JsonToken.START_ARRAY){
+				throw new IOException("Expecting an array for '" + name + "' but got: " + token);
+			}
+			if (name.equals("c")){
+				data.c = ColumnarCJTSD.EMPTY_LONGS;		// the column exists even if it is empty
+			}else if (valueColumn >= 0){
+				data.values[valueColumn] = new double[ColumnarCJTSD.DEFAULT_CAPACITY];
+			}
+			while ((token = parser.nextToken()) != JsonToken.END_ARRAY){
+				if (valueColumn >= 0){
+					data.appendValue(valueColumn, token == JsonToken.VALUE_NULL ? Double.NaN : parser.getDoubleValue());
+				}else if (token != JsonToken.VALUE_NUMBER_INT){
+					throw new IOException("Expecting an integer in '" + name + "' but got: " + token);
+				}else if (name.equals("t")){
+					data.appendTimestamp(parser.getLongValue());
+				}else if (name.equals("d")){
+					data.appendDuration(parser.getIntValue());
+				}else{
+					data.appendCount(parser.getLongValue());
+				}
+			}
+		}
+		if (token != JsonToken.END_OBJECT){
+			throw new IOException("Expecting end of the JSON object but got: " + token);
+		}
+		data.restoreAppendingState();
+		return data;
+	}
+
+	/**
+	 * Read a time series data from a JSON object
+	 * @param reader	the reader, it will not be closed.
+	 * @return	the data
+	 * @throws IOException	if failed to read or the JSON is not a valid CJTSD object
+	 */
+	static public ColumnarCJTSD read(Reader reader) throws IOException{
+		JsonParser parser = jsonFactory.createParser(reader);
+		parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		try{
+			return read(parser);
+		}finally{
+			parser.close();
+		}
+	}
+
+}
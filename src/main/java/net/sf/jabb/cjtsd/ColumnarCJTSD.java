@@ -0,0 +1,409 @@
+/**
+ *
+ */
+package net.sf.jabb.cjtsd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact JSON Time Series Data (CJTSD) held in primitive arrays.
+ * <p>Compared with PlainCJTSD, there is no boxed object per data point,
+ * and data points can be accessed directly without converting into RawEntry objects.
+ * It can be converted from and to PlainCJTSD, encoded and decoded by {@link CJTSDBinaryCodec},
+ * and written and read as JSON by {@link CJTSDJsonCodec}.</p>
+ * <p>Values in s/a/m/x/n columns are kept as double, and the o column is not supported.
+ * Columns can be shorter than the t column, just like in PlainCJTSD.</p>
+ * <p>This class is not thread-safe.</p>
+ * @see <a href="https://github.com/james-hu/cjtsd-js/wiki/Compact-JSON-Time-Series-Data">https://github.com/james-hu/cjtsd-js/wiki/Compact-JSON-Time-Series-Data</a>
+ * @author James Hu (Zhengmao Hu)
+ *
+ */
+public class ColumnarCJTSD {
+	/**
+	 * Names of the value columns, in the order of their indexes
+	 */
+	public static final String VALUE_COLUMNS = "samxn";
+
+	static final int DEFAULT_CAPACITY = 16;
+	static final long[] EMPTY_LONGS = new long[0];
+
+	String u;
+
+	int tSize;
+	long[] t;
+
+	int dSize;
+	int[] d;
+	/**
+	 * Number of timestamps added after the last duration appended, all of them have the same duration as the last one.
+	 */
+	int pendingDurations;
+	/**
+	 * The last duration added through {@link #add(long, int)}
+	 */
+	int lastDuration = -1;
+
+	int cSize;
+	long[] c;
+
+	int[] valueSizes = new int[VALUE_COLUMNS.length()];
+	double[][] values = new double[VALUE_COLUMNS.length()][];
+
+	public ColumnarCJTSD(){
+		this(null, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * @param unit				the unit, can be "m", "s", "S" or null which means "m"
+	 * @param initialCapacity	initial capacity of the columns
+	 */
+	public ColumnarCJTSD(String unit, int initialCapacity){
+		this.u = unit;
+		this.t = new long[initialCapacity];
+		this.d = new int[initialCapacity];
+	}
+
+	/**
+	 * Get the number of milliseconds represented by the unit
+	 * @param unit	the unit, can be "m", "s", "S" or null which means "m"
+	 * @return	number of milliseconds
+	 */
+	static public long unitMillis(String unit){
+		if (unit == null || unit.equals("m")){
+			return 1000L * 60;
+		}else if (unit.equals("s")){
+			return 1000L;
+		}else if (unit.equals("S")){
+			return 1L;
+		}else{
+			throw new IllegalArgumentException("Unit not supported: " + unit);
+		}
+	}
+
+	/**
+	 * Get the index of a value column
+	 * @param column	name of the column, can be 's', 'a', 'm', 'x', 'n'
+	 * @return	the index
+	 */
+	static public int valueColumnIndex(char column){
+		int i = VALUE_COLUMNS.indexOf(column);
+		if (i < 0){
+			throw new IllegalArgumentException("Not a value column: " + column);
+		}
+		return i;
+	}
+
+	static long[] grow(long[] array, int minCapacity){
+		return array.length >= minCapacity ? array : Arrays.copyOf(array, Math.max(minCapacity, array.length * 2 + 1));
+	}
+
+	static int[] grow(int[] array, int minCapacity){
+		return array.length >= minCapacity ? array : Arrays.copyOf(array, Math.max(minCapacity, array.length * 2 + 1));
+	}
+
+	static double[] grow(double[] array, int minCapacity){
+		return array == null ? new double[Math.max(minCapacity, DEFAULT_CAPACITY)] :
+			(array.length >= minCapacity ? array : Arrays.copyOf(array, Math.max(minCapacity, array.length * 2 + 1)));
+	}
+
+	/**
+	 * Add a data point with timestamp and duration.
+	 * Durations same as the previous one are collapsed as allowed by CJTSD.
+	 * @param timestamp		the timestamp, in the unit of this object
+	 * @param duration		the duration, in the unit of this object
+	 */
+	public void add(long timestamp, int duration){
+		appendTimestamp(timestamp);
+		if (duration == lastDuration){
+			pendingDurations ++;
+		}else{
+			flushPendingDurations();
+			appendDuration(duration);
+			lastDuration = duration;
+		}
+	}
+
+	/**
+	 * Add a count to the c column
+	 * @param count	the count
+	 */
+	public void addCount(long count){
+		appendCount(count);
+	}
+
+	/**
+	 * Add a value to a value column
+	 * @param column	name of the column, can be 's', 'a', 'm', 'x', 'n'
+	 * @param value		the value
+	 */
+	public void addValue(char column, double value){
+		appendValue(valueColumnIndex(column), value);
+	}
+
+	/**
+	 * Fill durations omitted in the middle with -1 which means the same as the previous one
+	 */
+	void flushPendingDurations(){
+		while (pendingDurations > 0){
+			appendDuration(-1);
+			pendingDurations --;
+		}
+	}
+
+	void appendTimestamp(long timestamp){
+		t = grow(t, tSize + 1);
+		t[tSize++] = timestamp;
+	}
+
+	void appendDuration(int duration){
+		d = grow(d, dSize + 1);
+		d[dSize++] = duration;
+	}
+
+	void appendCount(long count){
+		c = grow(c == null ? EMPTY_LONGS : c, cSize + 1);
+		c[cSize++] = count;
+	}
+
+	void appendValue(int columnIndex, double value){
+		double[] v = grow(values[columnIndex], valueSizes[columnIndex] + 1);
+		values[columnIndex] = v;
+		v[valueSizes[columnIndex]++] = value;
+	}
+
+	/**
+	 * Create from a PlainCJTSD
+	 * @param plain	the PlainCJTSD
+	 * @return	a new instance with the same data
+	 * @throws IllegalArgumentException if the o column exists
+	 */
+	static public ColumnarCJTSD of(PlainCJTSD plain){
+		if (plain.o != null){
+			throw new IllegalArgumentException("The o column is not supported");
+		}
+		ColumnarCJTSD result = new ColumnarCJTSD(plain.u, plain.t == null ? 0 : plain.t.size());
+		if (plain.t != null){
+			for (Long x: plain.t){
+				result.appendTimestamp(x);
+			}
+		}
+		if (plain.d != null){
+			for (Integer x: plain.d){
+				result.appendDuration(x);
+			}
+		}
+		if (plain.c != null){
+			result.c = new long[plain.c.size()];	// the column exists even if it is empty
+			for (Long x: plain.c){
+				result.appendCount(x);
+			}
+		}
+		List<?>[] columns = new List<?>[]{plain.s, plain.a, plain.m, plain.x, plain.n};
+		for (int i = 0; i < columns.length; i ++){
+			if (columns[i] != null){
+				result.values[i] = new double[columns[i].size()];
+				for (Object x: columns[i]){
+					result.appendValue(i, x == null ? Double.NaN : ((Number)x).doubleValue());
+				}
+			}
+		}
+		result.restoreAppendingState();
+		return result;
+	}
+
+	/**
+	 * Restore the state needed by {@link #add(long, int)} after the columns had been filled directly
+	 */
+	void restoreAppendingState(){
+		if (tSize > 0 && dSize > 0){
+			lastDuration = getDuration(tSize - 1);
+			pendingDurations = Math.max(0, tSize - dSize);
+		}else{
+			lastDuration = -1;
+			pendingDurations = 0;
+		}
+	}
+
+	/**
+	 * Convert to PlainCJTSD
+	 * @return	a new PlainCJTSD with the same data
+	 */
+	public PlainCJTSD toPlain(){
+		PlainCJTSD plain = new PlainCJTSD();
+		plain.u = u;
+		plain.t = new ArrayList<Long>(tSize);
+		for (int i = 0; i < tSize; i ++){
+			plain.t.add(t[i]);
+		}
+		plain.d = new ArrayList<Integer>(dSize);
+		for (int i = 0; i < dSize; i ++){
+			plain.d.add(d[i]);
+		}
+		if (c != null){
+			plain.c = new ArrayList<Long>(cSize);
+			for (int i = 0; i < cSize; i ++){
+				plain.c.add(c[i]);
+			}
+		}
+		for (int i = 0; i < values.length; i ++){
+			if (values[i] != null){
+				List<Number> list = new ArrayList<Number>(valueSizes[i]);
+				for (int j = 0; j < valueSizes[i]; j ++){
+					double v = values[i][j];
+					list.add(Double.isNaN(v) ? null : v);
+				}
+				switch(VALUE_COLUMNS.charAt(i)){
+				case 's': plain.s = list; break;
+				case 'a': plain.a = list; break;
+				case 'm': plain.m = list; break;
+				case 'x': plain.x = list; break;
+				case 'n': plain.n = list; break;
+				}
+			}
+		}
+		return plain;
+	}
+
+	/**
+	 * Get the unit
+	 * @return	the unit, can be "m", "s", "S" or null which means "m"
+	 */
+	public String getUnit(){
+		return u;
+	}
+
+	/**
+	 * Get the number of data points, which is the number of timestamps
+	 * @return	the number of data points
+	 */
+	public int size(){
+		return tSize;
+	}
+
+	/**
+	 * Get the timestamp of a data point
+	 * @param i	index of the data point
+	 * @return	the timestamp in the unit of this object
+	 */
+	public long getTimestamp(int i){
+		if (i >= tSize){
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + tSize);
+		}
+		return t[i];
+	}
+
+	/**
+	 * Get the timestamp of a data point as number of milliseconds since 00:00:00 local time, 1 January 1970
+	 * @param i	index of the data point
+	 * @return	number of milliseconds
+	 */
+	public long getTimestampMillis(int i){
+		return getTimestamp(i) * unitMillis(u);
+	}
+
+	/**
+	 * Get the duration of a data point. Collapsed durations are resolved.
+	 * Please note that this method takes O(n) time when there are omitted durations in the middle,
+	 * iterating through durations in sequence is more efficient with {@link #resolveDuration(int, int)}.
+	 * @param i	index of the data point
+	 * @return	the duration in the unit of this object
+	 */
+	public int getDuration(int i){
+		if (i >= tSize){
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + tSize);
+		}
+		for (int j = Math.min(i, dSize - 1); j >= 0; j --){
+			if (d[j] != -1){
+				return d[j];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Resolve the duration of a data point when iterating through data points in sequence
+	 * @param i					index of the data point
+	 * @param previousDuration	resolved duration of the previous data point, 0 for the first one
+	 * @return	the duration in the unit of this object
+	 */
+	public int resolveDuration(int i, int previousDuration){
+		int x = i < dSize ? d[i] : -1;
+		return x == -1 ? previousDuration : x;
+	}
+
+	/**
+	 * Get the duration of a data point as number of milliseconds.
+	 * @param i	index of the data point
+	 * @return	number of milliseconds
+	 */
+	public long getDurationMillis(int i){
+		return getDuration(i) * unitMillis(u);
+	}
+
+	/**
+	 * Check if the c column exists
+	 * @return true if it exists
+	 */
+	public boolean hasCounts(){
+		return c != null;
+	}
+
+	/**
+	 * Check if the count of a data point exists
+	 * @param i	index of the data point
+	 * @return	true if it exists
+	 */
+	public boolean hasCount(int i){
+		return i < cSize;
+	}
+
+	/**
+	 * Get the count of a data point
+	 * @param i	index of the data point
+	 * @return	the count
+	 */
+	public long getCount(int i){
+		if (i >= cSize){
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + cSize);
+		}
+		return c[i];
+	}
+
+	/**
+	 * Check if a value column exists
+	 * @param column	name of the column, can be 's', 'a', 'm', 'x', 'n'
+	 * @return	true if it exists
+	 */
+	public boolean hasValues(char column){
+		return values[valueColumnIndex(column)] != null;
+	}
+
+	/**
+	 * Check if the value of a data point exists
+	 * @param column	name of the column, can be 's', 'a', 'm', 'x', 'n'
+	 * @param i	index of the data point
+	 * @return	true if it exists
+	 */
+	public boolean hasValue(char column, int i){
+		int index = valueColumnIndex(column);
+		return i < valueSizes[index] && !Double.isNaN(values[index][i]);
+	}
+
+	/**
+	 * Get the value of a data point
+	 * @param column	name of the column, can be 's', 'a', 'm', 'x', 'n'
+	 * @param i	index of the data point
+	 * @return	the value, NaN means null
+	 */
+	public double getValue(char column, int i){
+		int index = valueColumnIndex(column);
+		if (i >= valueSizes[index]){
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + valueSizes[index]);
+		}
+		return values[index][i];
+	}
+
+}
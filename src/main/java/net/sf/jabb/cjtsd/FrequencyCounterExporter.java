@@ -0,0 +1,196 @@
+/**
+ *
+ */
+package net.sf.jabb.cjtsd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.jabb.util.stat.BasicFrequencyCounter;
+import net.sf.jabb.util.stat.FrequencyCounter;
+import net.sf.jabb.util.stat.PackagedFrequencyCounter;
+import net.sf.jabb.util.stat.RingBufferFrequencyCounter;
+import net.sf.jabb.util.stat.TimePeriodBucketCalculator;
+
+/**
+ * Exporter of the buckets in a BasicFrequencyCounter or RingBufferFrequencyCounter as CJTSD t/d/c columns.
+ * <p>Buckets are walked in time order and appended to {@link ColumnarCJTSD} directly,
+ * no intermediate map or list is created. Equal durations of consecutive buckets are collapsed,
+ * so the d column has only one element for counters with fixed length buckets,
+ * and only changes of durations take space for counters with buckets aligned to calendar periods.</p>
+ * <p>The exporter remembers till when it had exported, so that {@link #exportClosed(long)}
+ * returns only the buckets closed since the last export. When the counter keeps its history in order
+ * (which is the case for RingBufferFrequencyCounter and BasicFrequencyCounter with a non-zero purge period),
+ * each incremental export takes time proportional to the number of new buckets rather than the retained history.</p>
+ * <p>The unit of the exported data is the coarsest one of "m", "s" and "S" that can represent the granularity,
+ * or "s" for counters with buckets aligned to calendar periods.</p>
+ * @author James Hu (Zhengmao Hu)
+ *
+ */
+public class FrequencyCounterExporter {
+	protected FrequencyCounter counter;
+	protected long granularity;
+	protected String unit;
+	protected long unitMillis;
+	protected int duration;
+	protected TimePeriodBucketCalculator bucketCalculator;
+
+	protected PackagedFrequencyCounter rollUpSource;
+	protected long rollUpGranularity;
+
+	protected long exportedTill = Long.MIN_VALUE;
+
+	/**
+	 * Constructor
+	 * @param counter	the counter to be exported
+	 */
+	public FrequencyCounterExporter(BasicFrequencyCounter counter){
+		this(counter, counter.getBucketCalculator() == null ? counter.getGranularity() : ColumnarCJTSD.unitMillis("s"));
+		this.bucketCalculator = counter.getBucketCalculator();
+	}
+
+	/**
+	 * Constructor
+	 * @param counter	the counter to be exported
+	 */
+	public FrequencyCounterExporter(RingBufferFrequencyCounter counter){
+		this(counter, counter.getGranularity());
+	}
+
+	protected FrequencyCounterExporter(FrequencyCounter counter, long granularity){
+		this.counter = counter;
+		this.granularity = granularity;
+		this.unit = granularity % ColumnarCJTSD.unitMillis("m") == 0 ? "m" : (granularity % ColumnarCJTSD.unitMillis("s") == 0 ? "s" : "S");
+		this.unitMillis = ColumnarCJTSD.unitMillis(unit);
+		if (granularity / unitMillis > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Granularity too large: " + granularity);
+		}
+		this.duration = (int) (granularity / unitMillis);
+	}
+
+	/**
+	 * Create exporters for all the counters within a PackagedFrequencyCounter.
+	 * If the PackagedFrequencyCounter is in roll-up mode, closed buckets will be rolled up
+	 * before each incremental export, so that the coarser counters are up to date.
+	 * @param packaged	the PackagedFrequencyCounter
+	 * @return	the exporters as a map with ID of the counters as the key
+	 */
+	static public Map<Object, FrequencyCounterExporter> of(PackagedFrequencyCounter packaged){
+		Map<Object, BasicFrequencyCounter> counters = packaged.getCounters();
+		long finest = Long.MAX_VALUE;
+		for (BasicFrequencyCounter counter: counters.values()){
+			finest = Math.min(finest, counter.getGranularity());
+		}
+		Map<Object, FrequencyCounterExporter> result = new HashMap<Object, FrequencyCounterExporter>(counters.size());
+		for (Map.Entry<Object, BasicFrequencyCounter> entry: counters.entrySet()){
+			FrequencyCounterExporter exporter = new FrequencyCounterExporter(entry.getValue());
+			if (packaged.isRollUp()){
+				exporter.rollUpSource = packaged;
+				exporter.rollUpGranularity = finest;
+			}
+			result.put(entry.getKey(), exporter);
+		}
+		return result;
+	}
+
+	/**
+	 * Export buckets within a time range. The incremental export state is not affected.
+	 * @param fromWhen	start of the range, inclusive
+	 * @param toWhen	end of the range, exclusive
+	 * @return	the data exported
+	 */
+	public ColumnarCJTSD export(long fromWhen, long toWhen){
+		ColumnarCJTSD result = new ColumnarCJTSD(unit, ColumnarCJTSD.DEFAULT_CAPACITY);
+		export(fromWhen, toWhen, result);
+		return result;
+	}
+
+	/**
+	 * Export buckets within a time range and append them to existing data. The incremental export state is not affected.
+	 * @param fromWhen	start of the range, inclusive
+	 * @param toWhen	end of the range, exclusive
+	 * @param target	the data to which the buckets will be appended, its unit must be the same as {@link #getUnit()}
+	 * @return	number of buckets exported
+	 */
+	public int export(long fromWhen, long toWhen, final ColumnarCJTSD target){
+		if (ColumnarCJTSD.unitMillis(target.getUnit()) != unitMillis){
+			throw new IllegalArgumentException("Unit of the target must be '" + unit + "' but it is: " + target.getUnit());
+		}
+		if (target.c == null){
+			target.c = ColumnarCJTSD.EMPTY_LONGS;
+		}
+		final int sizeBefore = target.size();
+		FrequencyCounter.CountVisitor visitor = new FrequencyCounter.CountVisitor(){
+			@Override
+			public void visit(long when, long count) {
+				target.add(when / unitMillis, bucketCalculator == null ? duration : 
+					(int)((bucketCalculator.getBucketEnd(when) - when) / unitMillis));
+				target.addCount(count);
+			}
+		};
+		if (counter instanceof RingBufferFrequencyCounter){
+			((RingBufferFrequencyCounter)counter).visitCounts(fromWhen, toWhen, visitor);
+		}else{
+			((BasicFrequencyCounter)counter).visitCounts(fromWhen, toWhen, visitor);
+		}
+		return target.size() - sizeBefore;
+	}
+
+	/**
+	 * Export buckets closed since the last incremental export.
+	 * A bucket is regarded as closed when its end time is not after the specified time.
+	 * @param now	the current time
+	 * @return	the data exported, it may be empty
+	 */
+	public ColumnarCJTSD exportClosed(long now){
+		ColumnarCJTSD result = new ColumnarCJTSD(unit, ColumnarCJTSD.DEFAULT_CAPACITY);
+		exportClosed(now, result);
+		return result;
+	}
+
+	/**
+	 * Export buckets closed since the last incremental export and append them to existing data.
+	 * A bucket is regarded as closed when its end time is not after the specified time.
+	 * @param now		the current time
+	 * @param target	the data to which the buckets will be appended, its unit must be the same as {@link #getUnit()}
+	 * @return	number of buckets exported
+	 */
+	synchronized public int exportClosed(long now, ColumnarCJTSD target){
+		long till = bucketCalculator == null ? now - (now % granularity) : bucketCalculator.getBucketStart(now);	// start of the bucket not closed yet
+		if (till <= exportedTill){
+			return 0;
+		}
+		if (rollUpSource != null){
+			rollUpSource.rollUp(now - (now % rollUpGranularity));
+		}
+		int exported = export(exportedTill, till, target);
+		exportedTill = till;
+		return exported;
+	}
+
+	/**
+	 * Get the time till when buckets had been exported incrementally
+	 * @return	buckets starting before this time had been exported
+	 */
+	synchronized public long getExportedTill(){
+		return exportedTill;
+	}
+
+	/**
+	 * Set the time till when buckets had been exported incrementally,
+	 * for example, to skip the history or to export again from a point.
+	 * @param exportedTill	buckets starting before this time will be regarded as exported
+	 */
+	synchronized public void setExportedTill(long exportedTill){
+		this.exportedTill = exportedTill;
+	}
+
+	/**
+	 * Get the unit of the exported data
+	 * @return	"m", "s", or "S"
+	 */
+	public String getUnit(){
+		return unit;
+	}
+
+}
@@ -0,0 +1,606 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.col;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded multi-producer/multi-consumer {@link BlockingQueue} backed by a ring buffer,
+ * with a size limit that can be adjusted at runtime.
+ * <p>
+ * Offering and polling are lock-free: each slot of the ring buffer has a sequence number
+ * telling whether it is ready for the producer or the consumer of a position,
+ * and producers and consumers claim positions by CAS on two sequence counters,
+ * each padded to occupy its own cache line.
+ * A lock is taken only when a thread has to wait because the queue is actually full or empty,
+ * or when there is such a waiting thread to be woken up.
+ * Each element put or taken wakes up at most one waiting thread on the other side,
+ * rather than all of them as {@link SizeLimitableBlockingQueue} does.
+ * <p>
+ * Unlike {@link SizeLimitableBlockingQueue}, the size limit is never exceeded.
+ * If the size limit is reduced below the current size, offering fails until enough elements have been taken.
+ * <p>
+ * Null elements are not permitted. The iterator is weakly consistent.
+ * <p>
+ * Removing an element from the middle, by {@link #remove(Object)} or through the iterator,
+ * replaces it with a tombstone which consumers skip, so it can be used as the work queue of
+ * a ThreadPoolExecutor which removes tasks when it is shut down or purged.
+ * A removed element still occupies its slot until consumers have passed it,
+ * so it is still counted by {@link #size()} and the size limit until then.
+ *
+ * @author Zhengmao HU (James)
+ *
+ * @param <E>	type of the elements
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>{
+
+	/**
+	 * Padding before the value, so that the value is on its own cache line
+	 */
+	static class SequenceLeftPadding{
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	static class SequenceValue extends SequenceLeftPadding{
+		volatile long value;
+	}
+
+	/**
+	 * A sequence counter occupying its own cache line
+	 */
+	static class Sequence extends SequenceValue{
+		long q1, q2, q3, q4, q5, q6, q7;
+
+		static final AtomicLongFieldUpdater<SequenceValue> VALUE = AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+		boolean compareAndSet(long expect, long update){
+			return VALUE.compareAndSet(this, expect, update);
+		}
+	}
+
+	protected final int capacity;
+	/**
+	 * Put in the place of an element removed from the middle of the queue
+	 */
+	protected static final Object REMOVED = new Object();
+
+	protected final int mask;
+	protected final AtomicReferenceArray<Object> buffer;
+	/**
+	 * For the slot of position p, it is p if the slot is ready for the producer, p + 1 if it is ready for the consumer
+	 */
+	protected final AtomicLongArray sequences;
+	/**
+	 * Next position to be consumed
+	 */
+	protected final Sequence head = new Sequence();
+	/**
+	 * Next position to be produced
+	 */
+	protected final Sequence tail = new Sequence();
+
+	protected volatile int sizeLimit;
+
+	protected final ReentrantLock waitLock = new ReentrantLock();
+	protected final Condition notEmpty = waitLock.newCondition();
+	protected final Condition notFull = waitLock.newCondition();
+	protected volatile int waitingConsumers;
+	protected volatile int waitingProducers;
+
+	/**
+	 * Creates a queue with the size limit the same as the capacity
+	 * @param capacity	the capacity, which is the maximum size limit that can be set
+	 */
+	public RingBufferBlockingQueue(int capacity){
+		this(capacity, 0);
+	}
+
+	/**
+	 * Creates a queue
+	 * @param capacity	the capacity, which is the maximum size limit that can be set
+	 * @param sizeLimit	the initial size limit; zero means the same as the capacity
+	 */
+	public RingBufferBlockingQueue(int capacity, int sizeLimit){
+		if (capacity <= 0 || capacity > (1 << 30)){
+			throw new IllegalArgumentException("capacity must be positive and not larger than 2^30: " + capacity);
+		}
+		this.capacity = capacity;
+		int length = Integer.highestOneBit(capacity);
+		if (length < capacity){
+			length <<= 1;
+		}
+		this.mask = length - 1;
+		this.buffer = new AtomicReferenceArray<Object>(length);
+		this.sequences = new AtomicLongArray(length);
+		for (int i = 0; i < length; i ++){
+			sequences.set(i, i);
+		}
+		setSizeLimit(sizeLimit);
+	}
+
+	/**
+	 * Set the limit of the size. It can be changed at any time,
+	 * if it is increased, producers waiting for space will be woken up.
+	 * @param sizeLimit		limit of the size; zero means the same as the capacity
+	 * @throws IllegalArgumentException if the specified size is negative or larger than the capacity
+	 */
+	public void setSizeLimit(int sizeLimit){
+		if (sizeLimit < 0 || sizeLimit > capacity){
+			throw new IllegalArgumentException("size limit must be between 0 and the capacity " + capacity + ": " + sizeLimit);
+		}
+		this.sizeLimit = sizeLimit == 0 ? capacity : sizeLimit;
+		signalNotFull(true);
+	}
+
+	/**
+	 * Get the size limit
+	 * @return	the size limit
+	 */
+	public int getSizeLimit(){
+		return sizeLimit;
+	}
+
+	/**
+	 * Get the capacity
+	 * @return	the capacity, which is the maximum size limit that can be set
+	 */
+	public int getCapacity(){
+		return capacity;
+	}
+
+	/**
+	 * Try to put an element into the ring buffer, without waiting or waking up anyone
+	 * @param e	the element
+	 * @return	true if succeeded, false if the queue is full
+	 */
+	protected boolean enqueue(E e){
+		if (e == null){
+			throw new NullPointerException();
+		}
+		for(;;){
+			long pos = tail.value;
+			if (pos - head.value >= sizeLimit){
+				return false;
+			}
+			int index = (int) pos & mask;
+			long diff = sequences.get(index) - pos;
+			if (diff == 0){
+				if (tail.compareAndSet(pos, pos + 1)){
+					buffer.lazySet(index, e);
+					sequences.set(index, pos + 1);	// volatile write, so that waiting consumers can't be missed
+					return true;
+				}
+			}else if (diff < 0){
+				return false;		// the consumer of the previous round has not finished yet
+			}
+			// otherwise another producer got this position, try again
+		}
+	}
+
+	/**
+	 * Try to take an element from the ring buffer, without waiting.
+	 * Removed elements are skipped, and only for them a waiting producer may be woken up.
+	 * @return	the element, or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	protected E dequeue(){
+		for(;;){
+			long pos = head.value;
+			int index = (int) pos & mask;
+			long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0){
+				if (head.compareAndSet(pos, pos + 1)){
+					// swapped atomically so that the element can't be taken and removed at the same time
+					Object e = buffer.getAndSet(index, null);
+					sequences.set(index, pos + mask + 1);	// volatile write, so that waiting producers can't be missed
+					if (e == REMOVED){
+						signalNotFull(false);
+						continue;
+					}
+					return (E) e;
+				}
+			}else if (diff < 0){
+				return null;		// empty, or the producer has not finished yet
+			}
+			// otherwise another consumer got this position, try again
+		}
+	}
+
+	protected void signalNotEmpty(){
+		if (waitingConsumers > 0){
+			waitLock.lock();
+			try{
+				notEmpty.signal();
+			}finally{
+				waitLock.unlock();
+			}
+		}
+	}
+
+	protected void signalNotFull(boolean all){
+		if (waitingProducers > 0){
+			waitLock.lock();
+			try{
+				if (all){
+					notFull.signalAll();
+				}else{
+					notFull.signal();
+				}
+			}finally{
+				waitLock.unlock();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Queue#offer(java.lang.Object)
+	 */
+	@Override
+	public boolean offer(E e) {
+		if (enqueue(e)){
+			signalNotEmpty();
+			return true;
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+	 */
+	@Override
+	public void put(E e) throws InterruptedException {
+		if (offer(e)){
+			return;
+		}
+		waitLock.lockInterruptibly();
+		try{
+			waitingProducers ++;
+			try{
+				while (!enqueue(e)){
+					notFull.await();
+				}
+			}catch(InterruptedException ie){
+				notFull.signal();	// propagate to non-interrupted thread
+				throw ie;
+			}finally{
+				waitingProducers --;
+			}
+		}finally{
+			waitLock.unlock();
+		}
+		signalNotEmpty();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		if (offer(e)){
+			return true;
+		}
+		long nanos = unit.toNanos(timeout);
+		waitLock.lockInterruptibly();
+		try{
+			waitingProducers ++;
+			try{
+				while (!enqueue(e)){
+					if (nanos <= 0){
+						return false;
+					}
+					nanos = notFull.awaitNanos(nanos);
+				}
+			}catch(InterruptedException ie){
+				notFull.signal();	// propagate to non-interrupted thread
+				throw ie;
+			}finally{
+				waitingProducers --;
+			}
+		}finally{
+			waitLock.unlock();
+		}
+		signalNotEmpty();
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Queue#poll()
+	 */
+	@Override
+	public E poll() {
+		E e = dequeue();
+		if (e != null){
+			signalNotFull(false);
+		}
+		return e;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#take()
+	 */
+	@Override
+	public E take() throws InterruptedException {
+		E e = poll();
+		if (e != null){
+			return e;
+		}
+		waitLock.lockInterruptibly();
+		try{
+			waitingConsumers ++;
+			try{
+				while ((e = dequeue()) == null){
+					notEmpty.await();
+				}
+			}catch(InterruptedException ie){
+				notEmpty.signal();	// propagate to non-interrupted thread
+				throw ie;
+			}finally{
+				waitingConsumers --;
+			}
+		}finally{
+			waitLock.unlock();
+		}
+		signalNotFull(false);
+		return e;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = poll();
+		if (e != null){
+			return e;
+		}
+		long nanos = unit.toNanos(timeout);
+		waitLock.lockInterruptibly();
+		try{
+			waitingConsumers ++;
+			try{
+				while ((e = dequeue()) == null){
+					if (nanos <= 0){
+						return null;
+					}
+					nanos = notEmpty.awaitNanos(nanos);
+				}
+			}catch(InterruptedException ie){
+				notEmpty.signal();	// propagate to non-interrupted thread
+				throw ie;
+			}finally{
+				waitingConsumers --;
+			}
+		}finally{
+			waitLock.unlock();
+		}
+		signalNotFull(false);
+		return e;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Queue#peek()
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public E peek() {
+		retry:
+		for(;;){
+			for (long pos = head.value; ; pos ++){
+				int index = (int) pos & mask;
+				long diff = sequences.get(index) - (pos + 1);
+				if (diff < 0){
+					return null;
+				}
+				if (diff == 0){
+					Object e = buffer.get(index);
+					if (e == REMOVED){
+						continue;
+					}
+					if (e != null && head.value <= pos){
+						return (E) e;
+					}
+				}
+				continue retry;		// taken by a consumer in the meantime, try again
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		long h = head.value;
+		long size = tail.value - h;
+		return size < 0 ? 0 : (size > capacity ? capacity : (int) size);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return peek() == null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+	 */
+	@Override
+	public int remainingCapacity() {
+		int remaining = sizeLimit - size();
+		return remaining < 0 ? 0 : remaining;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+	 */
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+	 */
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		if (c == null){
+			throw new NullPointerException();
+		}
+		if (c == this){
+			throw new IllegalArgumentException();
+		}
+		int n = 0;
+		E e;
+		while (n < maxElements && (e = dequeue()) != null){
+			c.add(e);
+			n ++;
+		}
+		if (n > 0){
+			signalNotFull(n > 1);
+		}
+		return n;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractQueue#clear()
+	 */
+	@Override
+	public void clear() {
+		int n = 0;
+		while (dequeue() != null){
+			n ++;
+		}
+		if (n > 0){
+			signalNotFull(true);
+		}
+	}
+
+	/**
+	 * Returns a weakly consistent iterator over the elements in the queue from head to tail.
+	 * Removal through the iterator removes the very element returned, if it is still in the queue.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		List<E> snapshot = new ArrayList<E>();
+		for (Object e: toArray()){
+			@SuppressWarnings("unchecked")
+			E element = (E) e;
+			snapshot.add(element);
+		}
+		final Iterator<E> it = snapshot.iterator();
+		return new Iterator<E>(){
+			E last;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return last = it.next();
+			}
+
+			@Override
+			public void remove() {
+				if (last == null){
+					throw new IllegalStateException();
+				}
+				removeElement(last, true);
+				last = null;
+			}
+		};
+	}
+
+	/**
+	 * Returns a weakly consistent snapshot of the elements in the queue from head to tail.
+	 */
+	@Override
+	public Object[] toArray() {
+		List<Object> result = new ArrayList<Object>();
+		long pos = head.value;
+		long end = tail.value;
+		for (; pos < end; pos ++){
+			int index = (int) pos & mask;
+			if (sequences.get(index) == pos + 1){
+				Object e = buffer.get(index);
+				if (e != null && e != REMOVED){
+					result.add(e);
+				}
+			}
+		}
+		return result.toArray();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#toArray(java.lang.Object[])
+	 */
+	@Override
+	public <T> T[] toArray(T[] a) {
+		Object[] elements = toArray();
+		List<Object> list = new ArrayList<Object>(elements.length);
+		for (Object e: elements){
+			list.add(e);
+		}
+		return list.toArray(a);
+	}
+
+	/**
+	 * Removes an element equal to the specified one, the first one found from head to tail.
+	 * The element is replaced by a tombstone that will be skipped by consumers.
+	 */
+	@Override
+	public boolean remove(Object o) {
+		return o != null && removeElement(o, false);
+	}
+
+	/**
+	 * Replace an element in the queue with a tombstone
+	 * @param o				the element
+	 * @param sameInstance	true if it must be the same instance, false if it only needs to be equal
+	 * @return	true if an element was removed
+	 */
+	protected boolean removeElement(Object o, boolean sameInstance){
+		long pos = head.value;
+		long end = tail.value;
+		for (; pos < end; pos ++){
+			int index = (int) pos & mask;
+			if (sequences.get(index) == pos + 1){
+				Object e = buffer.get(index);
+				if (e != null && e != REMOVED && (e == o || !sameInstance && o.equals(e))
+						&& buffer.compareAndSet(index, e, REMOVED)){	// fails if taken by a consumer in the meantime
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+}
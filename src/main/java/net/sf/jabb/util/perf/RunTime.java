@@ -16,13 +16,17 @@ limitations under the License.
 
 package net.sf.jabb.util.perf;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.jabb.util.col.PutIfAbsentMap;
 import net.sf.jabb.util.stat.BasicNumberStatistics;
+import net.sf.jabb.util.stat.NumberStatistics;
 import net.sf.jabb.util.text.DurationFormatter;
 
 /**
@@ -44,6 +48,11 @@ import net.sf.jabb.util.text.DurationFormatter;
  * start()和end()必须在同一个线程中成对调用。
  * 但是各对start()和end()可以在多线程情况下使用。
  * add()可以用来代替一对start()和end()。
+ * <p>
+ * Detail records can be added while the statistics are being printed out from another thread.
+ * Use {@link #getDetailSnapshot()} rather than iterating through {@link #getAllDetail()} in such case.<br>
+ * 在其他线程输出统计结果的同时也可以增加详细记录。
+ * 这种情况下应使用{@link #getDetailSnapshot()}，而不是遍历{@link #getAllDetail()}。
  * 
  * @author Zhengmao HU (James)
  *
@@ -55,7 +64,7 @@ public class RunTime {
 	protected PutIfAbsentMap<String, RunTime> detail;
 	protected Object attachment;
 	
-	protected BasicNumberStatistics statistics;
+	protected NumberStatistics<Long> statistics;
 	
 	protected AtomicLong firstRunStartTime;
 	protected long lastRunStartTime;
@@ -71,6 +80,21 @@ public class RunTime {
 		this.description = description;
 	}
 	
+	/**
+	 * Constructor with the statistics holder specified.<br>
+	 * 使用指定的统计对象的构造方法。
+	 * <p>
+	 * For example, StripedLongStatistics can be used when there are many threads
+	 * recording into the same RunTime concurrently.
+	 * 
+	 * @param description	Any text that describes this RunTime.
+	 * @param statistics	The object to hold statistics of the durations.
+	 */
+	public RunTime(String description, NumberStatistics<Long> statistics){
+		this(description);
+		this.statistics = statistics;
+	}
+	
 	/**
 	 * Construct an instance without description text.
 	 * 创建一个description为空的实例。
@@ -78,7 +102,7 @@ public class RunTime {
 	public RunTime(){
 		statistics = new BasicNumberStatistics();
 		firstRunStartTime = new AtomicLong(0);
-		detail = new PutIfAbsentMap<String, RunTime>(new LinkedHashMap<String, RunTime>(), RunTime.class);
+		detail = new PutIfAbsentMap<String, RunTime>(Collections.synchronizedMap(new LinkedHashMap<String, RunTime>()), RunTime.class);
 	}
 	
 	/**
@@ -181,7 +205,9 @@ public class RunTime {
 	 * @param nanoDurationTime	Run time duration in nanoseconds.
 	 */
 	public void add(long milliStartTime, long nanoDurationTime){
-		firstRunStartTime.compareAndSet(0, milliStartTime);
+		if (firstRunStartTime.get() == 0){
+			firstRunStartTime.compareAndSet(0, milliStartTime);
+		}
 		statistics.evaluate(nanoDurationTime);
 	}
 	
@@ -271,7 +297,7 @@ public class RunTime {
 		sb.append(attachment);
 		sb.append('\n');
 		
-		for (RunTime child: detail.values()){
+		for (RunTime child: getDetailSnapshot()){
 			sb.append(INDENT);
 			sb.append(child.toString(false).replace("\n", "\n" + INDENT));
 			sb.setLength(sb.length() - INDENT.length());
@@ -287,9 +313,10 @@ public class RunTime {
 	 * @return add-up of the run duration of all threads
 	 */
 	public long getTotalRunTime() {
-		if (detail.size() > 0){
+		List<RunTime> children = getDetailSnapshot();
+		if (children.size() > 0){
 			long runTime = 0;
-			for (RunTime child: detail.values()){
+			for (RunTime child: children){
 				runTime += child.getTotalRunTime();
 			}
 			return runTime;
@@ -298,6 +325,19 @@ public class RunTime {
 		}
 	}
 	
+	/**
+	 * Get a copy of the detail records, so that it can be iterated while details are being added.<br>
+	 * 获得详细记录的一个拷贝，以便在增加详细记录的同时遍历。
+	 * 
+	 * @return	the detail records in the order they were added
+	 */
+	public List<RunTime> getDetailSnapshot(){
+		Map<String, RunTime> map = detail.getMap();
+		synchronized(map){
+			return new ArrayList<RunTime>(map.values());
+		}
+	}
+	
 	public long getFirstRunStartTime() {
 		return firstRunStartTime.get();
 	}
@@ -0,0 +1,290 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.jabb.util.stat.NumberStatistics;
+import net.sf.jabb.util.stat.StripedLongStatistics;
+
+/**
+ * Profiler that records run times into a hierarchy of RunTime objects,
+ * designed to be used concurrently by many threads on hot paths.<br>
+ * 可在多线程热点代码中使用的性能记录工具，其结果保存在RunTime的层次结构中。
+ * <p>
+ * Spans are resolved to handles beforehand by {@link #getSpan(String...)},
+ * so that no string lookup happens when recording.
+ * Start times are kept in a stack of frames local to the current thread,
+ * so concurrent threads using the same span do not interfere with each other,
+ * and the durations are aggregated into StripedLongStatistics.
+ * After the frame stack of a thread has grown to the maximum depth, recording does not allocate any object.
+ * <p>
+ * Usage:
+ * <pre>
+ * static final RunTimeProfiler profiler = new RunTimeProfiler("Requests");
+ * static final RunTimeProfiler.Span dbSpan = profiler.getSpan("Handle", "Database");
+ * ...
+ * dbSpan.start();
+ * try{
+ *     ...
+ * }finally{
+ *     dbSpan.end();
+ * }
+ * </pre>
+ *
+ * @author Zhengmao HU (James)
+ *
+ */
+public class RunTimeProfiler {
+	protected static final int INITIAL_DEPTH = 16;
+
+	protected RunTime root;
+	protected Span rootSpan;
+	protected List<Span> spans;
+	protected volatile boolean enabled = true;
+
+	protected ThreadLocal<Frames> frames = new ThreadLocal<Frames>(){
+		@Override
+		protected Frames initialValue(){
+			return new Frames();
+		}
+	};
+
+	/**
+	 * Stack of started spans in a thread
+	 */
+	protected static class Frames{
+		Span[] spans = new Span[INITIAL_DEPTH];
+		long[] startTimes = new long[INITIAL_DEPTH];
+		int depth;
+
+		void push(Span span, long startTime){
+			if (depth == spans.length){
+				Span[] newSpans = new Span[depth * 2];
+				long[] newStartTimes = new long[depth * 2];
+				System.arraycopy(spans, 0, newSpans, 0, depth);
+				System.arraycopy(startTimes, 0, newStartTimes, 0, depth);
+				spans = newSpans;
+				startTimes = newStartTimes;
+			}
+			spans[depth] = span;
+			startTimes[depth] = startTime;
+			depth ++;
+		}
+	}
+
+	/**
+	 * Handle of a pre-resolved node in the RunTime hierarchy.
+	 */
+	public static class Span{
+		protected RunTimeProfiler profiler;
+		protected RunTime runTime;
+		protected NumberStatistics<Long> statistics;
+
+		protected Span(RunTimeProfiler profiler, RunTime runTime){
+			this.profiler = profiler;
+			this.runTime = runTime;
+			this.statistics = runTime.statistics;
+		}
+
+		/**
+		 * Start timing of this span in current thread
+		 */
+		public void start(){
+			profiler.start(this);
+		}
+
+		/**
+		 * End timing of this span in current thread
+		 */
+		public void end(){
+			profiler.end(this);
+		}
+
+		/**
+		 * Record a duration directly
+		 * @param nanoDurationTime	the duration in nanoseconds
+		 */
+		public void add(long nanoDurationTime){
+			if (profiler.enabled){
+				record(nanoDurationTime);
+			}
+		}
+
+		protected void record(long nanoDurationTime){
+			if (runTime.firstRunStartTime.get() == 0){
+				runTime.firstRunStartTime.compareAndSet(0, System.currentTimeMillis());
+			}
+			statistics.evaluate(nanoDurationTime);
+		}
+
+		public RunTime getRunTime(){
+			return runTime;
+		}
+	}
+
+	/**
+	 * Constructor.<br>
+	 * 构造方法。
+	 *
+	 * @param description	Any text that describes the root RunTime.
+	 */
+	public RunTimeProfiler(String description){
+		root = new RunTime(description, new StripedLongStatistics());
+		rootSpan = new Span(this, root);
+		spans = new ArrayList<Span>();
+		spans.add(rootSpan);
+	}
+
+	/**
+	 * Get the handle of a span in the hierarchy, create the RunTime objects along the path if they do not exist yet.
+	 * This method is not for hot paths, the returned handle should be kept for later use.<br>
+	 * 获得某个层次下的记录句柄，如果路径上的RunTime对象不存在则创建它们。
+	 *
+	 * @param descriptionPath	descriptions of the detail RunTime objects from the root down to the one needed.
+	 * 							If it is empty, the root span will be returned.
+	 * @return	the handle
+	 */
+	synchronized public Span getSpan(String... descriptionPath){
+		RunTime current = root;
+		for (String description: descriptionPath){
+			RunTime child = current.detail.getMap().get(description);
+			if (child == null){
+				child = new RunTime(description, new StripedLongStatistics());
+				current.addDetail(child);
+			}
+			current = child;
+		}
+		for (Span span: spans){
+			if (span.runTime == current){
+				return span;
+			}
+		}
+		Span span = new Span(this, current);
+		spans.add(span);
+		return span;
+	}
+
+	/**
+	 * Get the handle of the root
+	 * @return	handle of the root RunTime
+	 */
+	public Span getRootSpan(){
+		return rootSpan;
+	}
+
+	/**
+	 * Start timing of a span in current thread.
+	 * It must be paired with an end() in the same thread.
+	 * @param span	the span
+	 */
+	public void start(Span span){
+		if (enabled){
+			frames.get().push(span, System.nanoTime());
+		}
+	}
+
+	/**
+	 * End timing of a span in current thread.
+	 * If the span is not the latest one started, the spans started after it are discarded without being recorded,
+	 * the span itself is ended, and then an IllegalStateException is thrown,
+	 * so that the mismatch is reported while later calls in current thread still work.
+	 * @param span	the span which should be the latest one started in current thread and not ended yet
+	 * @throws IllegalStateException	if the span is not the latest one started in current thread
+	 */
+	public void end(Span span){
+		long endTime = System.nanoTime();
+		Frames f = frames.get();
+		int top = f.depth - 1;
+		int i = top;
+		while (i >= 0 && f.spans[i] != span){
+			i --;
+		}
+		if (i < 0){
+			return;		// it was started when the profiler was disabled
+		}
+		Span latest = f.spans[top];
+		for (int j = top; j >= i; j --){
+			f.spans[j] = null;
+		}
+		f.depth = i;
+		if (enabled){
+			span.record(endTime - f.startTimes[i]);
+		}
+		if (i < top){
+			throw new IllegalStateException("Span '" + span.runTime.getDescription()
+					+ "' is not the latest one started in current thread: '" + latest.runTime.getDescription()
+					+ "', " + (top - i) + " span(s) started after it have been discarded");
+		}
+	}
+
+	/**
+	 * End timing of the latest span started in current thread.
+	 */
+	public void end(){
+		Frames f = frames.get();
+		if (f.depth > 0){
+			end(f.spans[f.depth - 1]);
+		}
+	}
+
+	/**
+	 * Get the depth of started but not ended spans in current thread
+	 * @return	the depth, 0 if there is no span started.
+	 */
+	public int getDepth(){
+		return frames.get().depth;
+	}
+
+	/**
+	 * Reset all the statistics, while keeping the spans valid.
+	 */
+	synchronized public void reset(){
+		for (Span span: spans){
+			span.statistics.reset();
+			span.runTime.firstRunStartTime.set(0);
+		}
+	}
+
+	/**
+	 * Get the root RunTime holding the results.
+	 * Please do not call reset() on it directly, use reset() of the profiler instead.
+	 * @return	the root RunTime
+	 */
+	public RunTime getRunTime(){
+		return root;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enable or disable the profiler. When it is disabled, nothing will be recorded.
+	 * @param enabled	true to enable, false to disable
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public String toString(){
+		return root.toString();
+	}
+
+}
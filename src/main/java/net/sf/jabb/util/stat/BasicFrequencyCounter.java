@@ -19,9 +19,11 @@ package net.sf.jabb.util.stat;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.TimeZone;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +40,7 @@ import net.sf.jabb.util.col.PutIfAbsentMap;
 public class BasicFrequencyCounter extends FrequencyCounter {
 	protected PutIfAbsentMap<Long, AtomicLong> counters;
 	protected long granularity;
+	protected TimePeriodBucketCalculator bucketCalculator;
 	protected long purgeBefore;
 	protected Object recordLock = new Object();
 	
@@ -52,11 +55,31 @@ public class BasicFrequencyCounter extends FrequencyCounter {
 	 */
 	public BasicFrequencyCounter(long granularity, TimeUnit unit,
 			long purgePeriod, TimeUnit purgeUnit){
-		Map<Long, AtomicLong> map = null;
 		this.granularity = TimeUnit.MILLISECONDS.convert(granularity, unit);
 		if (this.granularity > TimeUnit.MILLISECONDS.convert(1, TimeUnit.HOURS)){
 			throw new IllegalArgumentException("The granularity cannot exceed 1 hour.");
 		}
+		initCounters(purgePeriod, purgeUnit);
+	}
+
+	/**
+	 * Create an instance with buckets aligned to calendar periods in a time zone,
+	 * such as local days, weeks, months or years. There is no limitation on the granularity.
+	 * 如果purgePeriod参数不为0则会自动进行历史数据清除。
+	 * @param granularity	period of the buckets
+	 * @param timeZone		the time zone according to which the buckets are aligned
+	 * @param purgePeriod	历史数据的保留时间长度
+	 * @param purgeUnit		历史数据保留时间长度的单位
+	 */
+	public BasicFrequencyCounter(TimePeriod granularity, TimeZone timeZone,
+			long purgePeriod, TimeUnit purgeUnit){
+		this.bucketCalculator = new TimePeriodBucketCalculator(granularity, timeZone);
+		this.granularity = granularity.toMilliseconds();
+		initCounters(purgePeriod, purgeUnit);
+	}
+
+	protected void initCounters(long purgePeriod, TimeUnit purgeUnit){
+		Map<Long, AtomicLong> map = null;
 		if (purgePeriod == 0){
 			this.purgeBefore = 0;
 			map = new HashMap<Long, AtomicLong>();	// better performance, but doesn't no guarantee on ordering
@@ -89,8 +112,17 @@ public class BasicFrequencyCounter extends FrequencyCounter {
 	 * @param definition	配置信息
 	 */
 	public BasicFrequencyCounter(FrequencyCounterDefinition definition){
-		this(definition.getGranularity(), TimeUnit.MILLISECONDS,
-				definition.getPurgeBefore(), TimeUnit.MILLISECONDS);
+		if (definition.getCalendarPeriod() == null){
+			this.granularity = definition.getGranularity();
+			if (this.granularity > TimeUnit.MILLISECONDS.convert(1, TimeUnit.HOURS)){
+				throw new IllegalArgumentException("The granularity cannot exceed 1 hour.");
+			}
+		}else{
+			this.bucketCalculator = new TimePeriodBucketCalculator(definition.getCalendarPeriod(), 
+					definition.getTimeZone() == null ? TimeZone.getDefault() : definition.getTimeZone());
+			this.granularity = definition.getGranularity();
+		}
+		initCounters(definition.getPurgeBefore(), TimeUnit.MILLISECONDS);
 	}
 	
 	/**
@@ -100,13 +132,56 @@ public class BasicFrequencyCounter extends FrequencyCounter {
 	 */
 	@Override
 	public void count(long when, int times){
-		long recWhen = when - (when % granularity);
+		count(when, (long)times);
+	}
+	
+	/**
+	 * 记录在某时刻发生了多少次，次数可以超过int的范围。
+	 * @param when	发生的时刻
+	 * @param times	次数
+	 */
+	public void count(long when, long times){
+		long recWhen = bucketStart(when);
 		counters.get(recWhen).addAndGet(times);
 		if (purgeBefore != 0){
 			purge(when - purgeBefore);
 		}
 	}
 	
+	/**
+	 * Get the start time of the bucket that a time falls into
+	 * @param when	the time
+	 * @return	start time of the bucket
+	 */
+	protected long bucketStart(long when){
+		return bucketCalculator == null ? when - (when % granularity) : bucketCalculator.getBucketStart(when);
+	}
+	
+	/**
+	 * Get the calculator of bucket boundaries if the buckets are aligned to calendar periods
+	 * @return	the calculator, or null if the buckets have fixed length
+	 */
+	public TimePeriodBucketCalculator getBucketCalculator(){
+		return bucketCalculator;
+	}
+	
+	/**
+	 * 获得计数颗粒度。
+	 * For buckets aligned to calendar periods, it is the nominal length of the period.
+	 * @return	以毫秒为单位的颗粒度
+	 */
+	public long getGranularity(){
+		return granularity;
+	}
+	
+	/**
+	 * 获得保留多少时间之内的历史数据
+	 * @return	以毫秒为单位的保留时间长度，0表示不自动清除
+	 */
+	public long getPurgeBefore(){
+		return purgeBefore;
+	}
+	
 	/**
 	 * 获得全部计数统计
 	 * @return	返回的Map的Key是以毫秒为单位的时间，value是计数值。
@@ -115,6 +190,38 @@ public class BasicFrequencyCounter extends FrequencyCounter {
 		return counters.getMap();
 	}
 	
+	/**
+	 * Visit the counts of buckets within a time range in time order.
+	 * If the counter was created with a non-zero purgePeriod, no intermediate collection is created.
+	 * Otherwise the bucket times within the range have to be collected and sorted first.
+	 * @param fromWhen	start of the range, inclusive
+	 * @param toWhen	end of the range, exclusive
+	 * @param visitor	the visitor to be called for each bucket
+	 */
+	public void visitCounts(long fromWhen, long toWhen, CountVisitor visitor){
+		Map<Long, AtomicLong> map = counters.getMap();
+		if (map instanceof NavigableMap){
+			for (Map.Entry<Long, AtomicLong> entry: ((NavigableMap<Long, AtomicLong>)map).subMap(fromWhen, true, toWhen, false).entrySet()){
+				visitor.visit(entry.getKey(), entry.getValue().get());
+			}
+		}else{
+			long[] times = new long[map.size()];
+			int n = 0;
+			for (Long t: map.keySet()){
+				if (t >= fromWhen && t < toWhen && n < times.length){
+					times[n++] = t;
+				}
+			}
+			Arrays.sort(times, 0, n);
+			for (int i = 0; i < n; i ++){
+				AtomicLong c = map.get(times[i]);
+				if (c != null){
+					visitor.visit(times[i], c.get());
+				}
+			}
+		}
+	}
+
 	/**
 	 * Get the summary value of all the counts
 	 * @return the summary value of all the counts
@@ -134,7 +241,7 @@ public class BasicFrequencyCounter extends FrequencyCounter {
 	 */
 	@Override
 	public long getCount(long when){
-		Long recWhen = when - (when % granularity);
+		Long recWhen = bucketStart(when);
 		AtomicLong times = counters.get(recWhen);
 		return times == null ? 0 : times.longValue(); 
 	}
@@ -0,0 +1,262 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.stat;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Accumulator of a BigInteger sum that can be updated by many threads concurrently without contention.
+ * <p>
+ * Values are added to primitive long cells, each padded to occupy its own cache line
+ * and selected by a per-thread probe which moves to another cell whenever the thread
+ * finds contention on its current one.
+ * Only when a cell is going to overflow, its value is carried into a BigInteger base.
+ * The BigInteger result is calculated only when {@link #get()} is called.
+ * Compared with AtomicBigInteger, adding does not allocate any object unless there is an overflow,
+ * while getting the sum is more expensive and only weakly consistent with concurrent updates.
+ *
+ * @author Zhengmao HU (James)
+ *
+ */
+public class BigIntegerAdder extends Number implements Serializable {
+	private static final long serialVersionUID = -1806393357587585567L;
+
+	protected static final int MAX_CELLS = 64;
+
+	/**
+	 * Per-thread hash for selecting the cell, it is never zero
+	 */
+	protected static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue(){
+			long id = Thread.currentThread().getId();
+			int h = (int)(id ^ (id >>> 16)) * 0x9E3779B9;
+			return new int[]{h == 0 ? 1 : h};
+		}
+	};
+
+	static class CellLeftPadding implements Serializable{
+		private static final long serialVersionUID = -8004396385462575476L;
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	static class CellValue extends CellLeftPadding{
+		private static final long serialVersionUID = 2904734946883003883L;
+		volatile long value;
+	}
+
+	/**
+	 * A cell holding a part of the sum
+	 */
+	static class Cell extends CellValue{
+		private static final long serialVersionUID = -3419102366398328010L;
+		long q1, q2, q3, q4, q5, q6, q7;
+
+		static final AtomicLongFieldUpdater<CellValue> VALUE = AtomicLongFieldUpdater.newUpdater(CellValue.class, "value");
+	}
+
+	protected Cell[] cells;
+	protected int mask;
+	protected AtomicReference<BigInteger> base;
+
+	/**
+	 * Create an instance with initial value of zero and the number of cells decided by the number of available processors.
+	 */
+	public BigIntegerAdder(){
+		this(BigInteger.ZERO, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create an instance with the number of cells decided by the number of available processors.
+	 * @param initialValue		the initial value
+	 */
+	public BigIntegerAdder(BigInteger initialValue){
+		this(initialValue, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create an instance.
+	 * @param initialValue		the initial value
+	 * @param concurrencyLevel	estimated number of threads that add values concurrently. It decides the number of cells.
+	 */
+	public BigIntegerAdder(BigInteger initialValue, int concurrencyLevel){
+		int n = 1;
+		while (n < concurrencyLevel && n < MAX_CELLS){
+			n <<= 1;
+		}
+		cells = new Cell[n];
+		for (int i = 0; i < n; i ++){
+			cells[i] = new Cell();
+		}
+		mask = n - 1;
+		base = new AtomicReference<BigInteger>(initialValue);
+	}
+
+	/**
+	 * Get the probe of current thread.
+	 * @return	the array holding the probe value as its only element
+	 */
+	protected static int[] probe(){
+		return PROBE.get();
+	}
+
+	/**
+	 * Move the probe of current thread to a pseudo-random next value, using xorshift.
+	 * @param probe	the array holding the probe value
+	 * @return	the new probe value
+	 */
+	protected static int advanceProbe(int[] probe){
+		int h = probe[0];
+		h ^= h << 13;
+		h ^= h >>> 17;
+		h ^= h << 5;
+		probe[0] = h;
+		return h;
+	}
+
+	protected void addToBase(BigInteger delta){
+		BigInteger current;
+		do{
+			current = base.get();
+		}while(!base.compareAndSet(current, current.add(delta)));
+	}
+
+	/**
+	 * Add a value
+	 * @param delta	the value to be added
+	 */
+	public void add(long delta){
+		int[] probe = probe();
+		Cell cell = cells[probe[0] & mask];
+		for(;;){
+			long v = cell.value;
+			long n = v + delta;
+			if (((v ^ n) & (delta ^ n)) < 0){	// overflow
+				if (Cell.VALUE.compareAndSet(cell, v, 0)){
+					addToBase(BigInteger.valueOf(v).add(BigInteger.valueOf(delta)));
+					return;
+				}
+			}else if (Cell.VALUE.compareAndSet(cell, v, n)){
+				return;
+			}
+			// contended, try another cell next time and from now on
+			cell = cells[advanceProbe(probe) & mask];
+		}
+	}
+
+	/**
+	 * Add a value
+	 * @param delta	the value to be added
+	 */
+	public void add(BigInteger delta){
+		if (delta.bitLength() < 64){
+			add(delta.longValue());
+		}else{
+			addToBase(delta);
+		}
+	}
+
+	/**
+	 * Add one
+	 */
+	public void increment(){
+		add(1L);
+	}
+
+	/**
+	 * Subtract one
+	 */
+	public void decrement(){
+		add(-1L);
+	}
+
+	/**
+	 * Get the current sum. Updates happening concurrently may or may not be included.
+	 * @return	the sum
+	 */
+	public BigInteger get(){
+		BigInteger result = base.get();
+		long sum = 0;
+		for (Cell cell: cells){
+			long v = cell.value;
+			long n = sum + v;
+			if (((sum ^ n) & (v ^ n)) < 0){	// overflow
+				result = result.add(BigInteger.valueOf(sum));
+				sum = v;
+			}else{
+				sum = n;
+			}
+		}
+		return result.add(BigInteger.valueOf(sum));
+	}
+
+	/**
+	 * Reset the sum to zero.
+	 * Updates happening concurrently may or may not be cleared.
+	 */
+	public void reset(){
+		for (Cell cell: cells){
+			cell.value = 0;
+		}
+		base.set(BigInteger.ZERO);
+	}
+
+	/**
+	 * Get the sum and reset it to zero.
+	 * Updates happening concurrently may be included in the result or be kept after the reset, but never lost.
+	 * @return	the sum before reset
+	 */
+	public BigInteger getThenReset(){
+		BigInteger result = base.getAndSet(BigInteger.ZERO);
+		for (Cell cell: cells){
+			long v = Cell.VALUE.getAndSet(cell, 0);
+			if (v != 0){
+				result = result.add(BigInteger.valueOf(v));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return get().toString();
+	}
+
+	@Override
+	public int intValue() {
+		return get().intValue();
+	}
+
+	@Override
+	public long longValue() {
+		return get().longValue();
+	}
+
+	@Override
+	public float floatValue() {
+		return get().floatValue();
+	}
+
+	@Override
+	public double doubleValue() {
+		return get().doubleValue();
+	}
+
+}
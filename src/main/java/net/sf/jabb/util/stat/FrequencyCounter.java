@@ -27,6 +27,17 @@ import java.util.concurrent.TimeUnit;
  */
 public abstract class FrequencyCounter {
 
+	/**
+	 * Callback for visiting the counts of buckets one by one, without any boxed object created.
+	 */
+	public static interface CountVisitor {
+		/**
+		 * Called for each bucket
+		 * @param when	start time of the bucket
+		 * @param count	count of the bucket
+		 */
+		void visit(long when, long count);
+	}
 
 	/**
 	 * 记录在某时刻发生了多少次
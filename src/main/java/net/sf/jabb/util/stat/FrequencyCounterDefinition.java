@@ -16,6 +16,7 @@ limitations under the License.
 
 package net.sf.jabb.util.stat;
 
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -28,6 +29,8 @@ public class FrequencyCounterDefinition {
 	protected Object id;
 	protected long granularity;
 	protected long purgeBefore;
+	protected TimePeriod calendarPeriod;
+	protected TimeZone timeZone;
 	
 	/**
 	 * 创建一个不自动删除历史数据的频次计数器配置信息对象
@@ -59,6 +62,26 @@ public class FrequencyCounterDefinition {
 		this.purgeBefore = TimeUnit.MILLISECONDS.convert(purgePeriod, purgeUnit);
 	}
 
+	/**
+	 * Create a definition of a counter with buckets aligned to calendar periods in a time zone,
+	 * such as local days, weeks, months or years.
+	 * @param id			频次计数器的ID，如果频次计数器需要被作为PackagedFrequencyCounter中
+	 * 						的一部分，那么就有必要设置ID，如果只是单独作为BasicFrequencyCounter
+	 * 						使用，那么就可以设置为null。
+	 * @param granularity	period of the buckets, for example, 1 day or 1 month
+	 * @param timeZone		the time zone according to which the buckets are aligned
+	 * @param purgePeriod	多少时间之前的历史数据需要自动清除，比如1、3。0表示不自动清除。
+	 * @param purgeUnit		purgePeriod的时间单位，比如TimeUnit.DAYS。
+	 */
+	public FrequencyCounterDefinition(Object id, TimePeriod granularity, TimeZone timeZone,
+			long purgePeriod, TimeUnit purgeUnit){
+		this.id = id;
+		this.calendarPeriod = granularity;
+		this.timeZone = timeZone;
+		this.granularity = granularity.toMilliseconds();
+		this.purgeBefore = purgePeriod == 0 ? 0 : TimeUnit.MILLISECONDS.convert(purgePeriod, purgeUnit);
+	}
+
 	/**
 	 * 获得颗粒度
 	 * @return the granularity
@@ -75,6 +98,22 @@ public class FrequencyCounterDefinition {
 		return purgeBefore;
 	}
 
+	/**
+	 * Get the calendar period of the buckets
+	 * @return the period, or null if the buckets have fixed length
+	 */
+	public TimePeriod getCalendarPeriod() {
+		return calendarPeriod;
+	}
+
+	/**
+	 * Get the time zone according to which the buckets are aligned
+	 * @return the time zone, or null if the buckets have fixed length
+	 */
+	public TimeZone getTimeZone() {
+		return timeZone;
+	}
+
 	/**
 	 * 获得ID
 	 * @return the id
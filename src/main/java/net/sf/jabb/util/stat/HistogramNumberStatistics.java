@@ -0,0 +1,325 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.stat;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+
+/**
+ * Statistics of long values that, in addition to count/sum/min/max, also keeps a histogram
+ * so that percentiles can be calculated. It is thread-safe.
+ * <p>
+ * The histogram has logarithmic buckets similar to HdrHistogram: every power of 2 range is divided into
+ * 2^significantBits linear sub-buckets, so the relative error of percentiles is less than 1/2^significantBits.
+ * Values below 2^significantBits are kept exactly. The memory used is fixed and the evaluation
+ * does not allocate any object.
+ * <p>
+ * Only non-negative values are supported by the histogram. Negative values are
+ * counted as zero in the histogram, while their count/sum/min/max are still accurate.
+ *
+ * @author Zhengmao HU (James)
+ *
+ */
+public class HistogramNumberStatistics implements NumberStatistics<Long>, Serializable {
+	private static final long serialVersionUID = -3320646553806713417L;
+
+	public static final int DEFAULT_SIGNIFICANT_BITS = 7;
+
+	protected int significantBits;
+	protected int subBucketCount;
+	protected AtomicLongArray buckets;
+	protected StripedLongStatistics summary;
+
+	/**
+	 * Create an instance with default precision which ensures relative errors of percentiles less than 1%.
+	 */
+	public HistogramNumberStatistics(){
+		this(DEFAULT_SIGNIFICANT_BITS);
+	}
+
+	/**
+	 * Create an instance.
+	 * @param significantBits	number of significant binary bits kept for values, can be from 1 to 14.
+	 * 							The memory needed is (64 - significantBits) * 2^significantBits longs.
+	 */
+	public HistogramNumberStatistics(int significantBits){
+		if (significantBits < 1 || significantBits > 14){
+			throw new IllegalArgumentException("The significant bits must be between 1 and 14: " + significantBits);
+		}
+		this.significantBits = significantBits;
+		this.subBucketCount = 1 << significantBits;
+		this.buckets = new AtomicLongArray((64 - significantBits) * subBucketCount);
+		this.summary = new StripedLongStatistics();
+	}
+
+	/**
+	 * Get the bucket index of a value
+	 * @param value	the value, must not be negative
+	 * @return	index of the bucket
+	 */
+	protected int bucketIndex(long value){
+		if (value < subBucketCount){
+			return value < 0 ? 0 : (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - significantBits;
+		return (shift << significantBits) + (int)(value >>> shift);
+	}
+
+	/**
+	 * Get the lowest value that would fall into the bucket
+	 * @param index	index of the bucket
+	 * @return	the lowest value
+	 */
+	protected long bucketLowestValue(int index){
+		if (index < subBucketCount){
+			return index;
+		}
+		int shift = (index >>> significantBits) - 1;
+		long mantissa = index - ((long)shift << significantBits);
+		return mantissa << shift;
+	}
+
+	/**
+	 * Get the highest value that would fall into the bucket
+	 * @param index	index of the bucket
+	 * @return	the highest value
+	 */
+	protected long bucketHighestValue(int index){
+		if (index < subBucketCount){
+			return index;
+		}
+		int shift = (index >>> significantBits) - 1;
+		long mantissa = index - ((long)shift << significantBits);
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	@Override
+	public void evaluate(int value) {
+		evaluate((long)value);
+	}
+
+	@Override
+	public void evaluate(long value) {
+		buckets.incrementAndGet(bucketIndex(value));
+		summary.evaluate(value);
+	}
+
+	@Override
+	public void evaluate(BigInteger value) {
+		evaluate(value.longValue());
+	}
+
+	/**
+	 * Get the value at a specified percentile.
+	 * The result is the highest value equivalent to the one found in the histogram, but never exceeds the max.
+	 * The 0th percentile is always the min.
+	 * @param percentile	the percentile, from 0 to 100, for example, 50, 99, 99.9
+	 * @return	the value at the percentile, or null if no value had been evaluated
+	 */
+	public Long getPercentile(double percentile){
+		if (percentile < 0 || percentile > 100){
+			throw new IllegalArgumentException("The percentile must be between 0 and 100: " + percentile);
+		}
+		long total = 0;
+		int length = buckets.length();
+		long[] snapshot = new long[length];
+		for (int i = 0; i < length; i ++){
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0){
+			return null;
+		}
+		if (percentile == 0){
+			return summary.getMin();
+		}
+		long target = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+		long accumulated = 0;
+		for (int i = 0; i < length; i ++){
+			accumulated += snapshot[i];
+			if (accumulated >= target){
+				long result = bucketHighestValue(i);
+				Long max = summary.getMax();
+				Long min = summary.getMin();
+				if (max != null && result > max){
+					result = max;
+				}
+				if (min != null && result < min){
+					result = min;
+				}
+				return result;
+			}
+		}
+		return summary.getMax();
+	}
+
+	/**
+	 * Get the values at specified percentiles.
+	 * @param percentiles	the percentiles, each from 0 to 100
+	 * @return	values at the percentiles, elements in it will be null if no value had been evaluated
+	 */
+	public Long[] getPercentiles(double... percentiles){
+		Long[] result = new Long[percentiles.length];
+		for (int i = 0; i < percentiles.length; i ++){
+			result[i] = getPercentile(percentiles[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the median, which is the same as getPercentile(50)
+	 * @return	the median, or null if no value had been evaluated
+	 */
+	public Long getMedian(){
+		return getPercentile(50);
+	}
+
+	/**
+	 * Get the count of values within a range
+	 * @param fromValue		lowest value of the range, inclusive
+	 * @param toValue		highest value of the range, inclusive
+	 * @return	count of values fall into the buckets covering the range
+	 */
+	public long getCount(long fromValue, long toValue){
+		long result = 0;
+		for (int i = bucketIndex(fromValue); i <= bucketIndex(toValue); i ++){
+			result += buckets.get(i);
+		}
+		return result;
+	}
+
+	public int getSignificantBits() {
+		return significantBits;
+	}
+
+	@Override
+	public Double getAvg() {
+		return summary.getAvg();
+	}
+
+	@Override
+	public BigDecimal getAvg(int scale) {
+		return summary.getAvg(scale);
+	}
+
+	@Override
+	public Long getMin() {
+		return summary.getMin();
+	}
+
+	@Override
+	public Long getMax() {
+		return summary.getMax();
+	}
+
+	@Override
+	public Long getSum() {
+		return summary.getSum();
+	}
+
+	@Override
+	public long getCount() {
+		return summary.getCount();
+	}
+
+	@Override
+	public void reset() {
+		summary.reset();
+		for (int i = 0; i < buckets.length(); i ++){
+			buckets.set(i, 0);
+		}
+	}
+
+	/**
+	 * Reset to a specified status.
+	 * Because the distribution is unknown, all the values will be regarded as the average in the histogram.
+	 */
+	@Override
+	public void reset(long newCount, Long newSum, Long newMin, Long newMax) {
+		reset();
+		merge(newCount, newSum, newMin, newMax);
+	}
+
+	/**
+	 * Merge another statistics into this one.
+	 * Because the distribution is unknown, all the values will be regarded as the average in the histogram.
+	 */
+	@Override
+	public void merge(long count, Long sum, Long min, Long max) {
+		if (count > 0 && sum != null){
+			buckets.addAndGet(bucketIndex(sum / count), count);
+		}
+		summary.merge(count, sum, min, max);
+	}
+
+	/**
+	 * Merge another statistics into this one.
+	 * If the other one is also a HistogramNumberStatistics with the same significant bits,
+	 * the histograms are merged accurately. Otherwise all the values are regarded as the average in the histogram.
+	 */
+	@Override
+	public void merge(NumberStatistics<? extends Number> other) {
+		if (other == null || other.getCount() <= 0){
+			return;
+		}
+		if (other instanceof HistogramNumberStatistics && ((HistogramNumberStatistics)other).significantBits == significantBits){
+			HistogramNumberStatistics that = (HistogramNumberStatistics) other;
+			for (int i = 0; i < buckets.length(); i ++){
+				long x = that.buckets.get(i);
+				if (x != 0){
+					buckets.addAndGet(i, x);
+				}
+			}
+			summary.merge(that.summary);
+		}else{
+			merge(other.getCount(), other.getSum().longValue(), other.getMin().longValue(), other.getMax().longValue());
+		}
+	}
+
+	@Override
+	public int hashCode(){
+		return summary.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object other){
+		if (other == this){
+			return true;
+		}
+		if (other == null || !(other instanceof NumberStatistics<?>)){
+			return false;
+		}
+		NumberStatistics<?> that = (NumberStatistics<?>) other;
+		return new EqualsBuilder()
+			.append(this.getCount(), that.getCount())
+			.append(this.getSum(), that.getSum() == null ? null : Long.valueOf(that.getSum().longValue()))
+			.append(this.getMin(), that.getMin() == null ? null : Long.valueOf(that.getMin().longValue()))
+			.append(this.getMax(), that.getMax() == null ? null : Long.valueOf(that.getMax().longValue()))
+			.isEquals();
+	}
+
+	@Override
+	public String toString(){
+		return "(" + getCount() + ", " + getSum() + ", " + getMin() + "/" + getMax()
+				+ ", p50=" + getPercentile(50) + " p99=" + getPercentile(99) + " p999=" + getPercentile(99.9) + ")";
+	}
+
+}
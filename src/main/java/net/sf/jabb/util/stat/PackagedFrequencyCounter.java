@@ -17,15 +17,32 @@ limitations under the License.
 package net.sf.jabb.util.stat;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 打包封装好的频次计数工具
+ * <p>
+ * In roll-up mode, only the counter with the finest granularity is updated when counting,
+ * and the counters with coarser granularities are derived from it incrementally 
+ * when the fine grained buckets close. A fine grained bucket is regarded as closed and rolled up
+ * when an event belonging to two buckets later arrives, or when {@link #rollUp(long)} is called.
+ * Bucket boundaries are those of the finest counter, which can be aligned to a calendar period.
+ * Events arriving after their bucket had been rolled up are counted into all the counters directly.
+ * Counting an event that is not late takes no lock, the counting thread only registers itself
+ * in a striped count of writers in flight. A roll-up moves the water mark first and then waits for
+ * the registered writers to finish before reading the closed buckets, so it never misses an event counted
+ * in the middle of it. Late events are counted while holding the lock of roll-up, which is rare.
  * 
  * @author Zhengmao HU (James)
  *
@@ -34,17 +51,29 @@ public class PackagedFrequencyCounter extends FrequencyCounter{
 	protected Map<Object, BasicFrequencyCounter> countersMap;
 	protected Collection<BasicFrequencyCounter> counters;
 	
+	protected boolean rollUp;
+	protected BasicFrequencyCounter finestCounter;
+	protected BasicFrequencyCounter[] coarserCounters;
+	protected volatile long rolledUpTill = Long.MIN_VALUE;
+	protected ReentrantLock rollUpLock;
+
+	protected static final int MAX_STRIPES = 16;
+	/**
+	 * Number of longs in a cache line, stripes of writers are padded by this to avoid false sharing
+	 */
+	protected static final int CACHE_LINE_LONGS = 8;
+	protected int stripeMask;
+	/**
+	 * Number of counting threads in flight, one stripe every CACHE_LINE_LONGS elements
+	 */
+	protected AtomicLongArray writers;
+	
 	/**
 	 * 创建包含多个BasicFrequencyCounter对象的计数器组合
 	 * @param counterDefinitions	各个BasicFrequencyCounter的配置信息，请注意它们的ID必须设置
 	 */
 	public PackagedFrequencyCounter(Collection<FrequencyCounterDefinition> counterDefinitions){
-		countersMap = new HashMap<Object, BasicFrequencyCounter>(counterDefinitions.size());
-		for (FrequencyCounterDefinition def: counterDefinitions){
-			BasicFrequencyCounter counter = new BasicFrequencyCounter(def);
-			countersMap.put(def.getId(), counter);
-		}
-		counters = countersMap.values();
+		this(false, counterDefinitions);
 	}
 	
 	/**
@@ -52,12 +81,72 @@ public class PackagedFrequencyCounter extends FrequencyCounter{
 	 * @param counterDefinitions	各个BasicFrequencyCounter的配置信息，请注意它们的ID必须设置
 	 */
 	public PackagedFrequencyCounter(FrequencyCounterDefinition... counterDefinitions){
-		countersMap = new HashMap<Object, BasicFrequencyCounter>(counterDefinitions.length);
+		this(false, Arrays.asList(counterDefinitions));
+	}
+
+	/**
+	 * 创建包含多个BasicFrequencyCounter对象的计数器组合
+	 * @param rollUp				Whether the roll-up mode should be enabled. In roll-up mode the granularities of all counters
+	 * 								must be multiples of the finest one, and the finest one must keep at least two buckets of history.
+	 * 								Counters aligned to calendar periods are not checked, their periods should be multiples of the finest one in local time.
+	 * @param counterDefinitions	各个BasicFrequencyCounter的配置信息，请注意它们的ID必须设置
+	 */
+	public PackagedFrequencyCounter(boolean rollUp, Collection<FrequencyCounterDefinition> counterDefinitions){
+		countersMap = new HashMap<Object, BasicFrequencyCounter>(counterDefinitions.size());
 		for (FrequencyCounterDefinition def: counterDefinitions){
 			BasicFrequencyCounter counter = new BasicFrequencyCounter(def);
 			countersMap.put(def.getId(), counter);
 		}
 		counters = countersMap.values();
+		this.rollUp = rollUp;
+		if (rollUp){
+			setupRollUp();
+		}
+	}
+
+	/**
+	 * 创建包含多个BasicFrequencyCounter对象的计数器组合
+	 * @param rollUp				Whether the roll-up mode should be enabled. In roll-up mode the granularities of all counters
+	 * 								must be multiples of the finest one, and the finest one must keep at least two buckets of history.
+	 * 								Counters aligned to calendar periods are not checked, their periods should be multiples of the finest one in local time.
+	 * @param counterDefinitions	各个BasicFrequencyCounter的配置信息，请注意它们的ID必须设置
+	 */
+	public PackagedFrequencyCounter(boolean rollUp, FrequencyCounterDefinition... counterDefinitions){
+		this(rollUp, Arrays.asList(counterDefinitions));
+	}
+	
+	protected void setupRollUp(){
+		for (BasicFrequencyCounter counter: counters){
+			if (finestCounter == null || counter.getGranularity() < finestCounter.getGranularity()){
+				finestCounter = counter;
+			}
+		}
+		if (finestCounter == null){
+			throw new IllegalArgumentException("At least one counter definition is needed for roll-up mode.");
+		}
+		long fineGranularity = finestCounter.getGranularity();
+		if (finestCounter.getPurgeBefore() < 2 * fineGranularity){
+			throw new IllegalArgumentException("In roll-up mode the counter with the finest granularity must keep history of at least two times of its granularity.");
+		}
+		List<BasicFrequencyCounter> coarser = new ArrayList<BasicFrequencyCounter>(counters.size());
+		for (BasicFrequencyCounter counter: counters){
+			if (counter == finestCounter){
+				continue;
+			}
+			if (counter.getBucketCalculator() == null && counter.getGranularity() % fineGranularity != 0){
+				throw new IllegalArgumentException("In roll-up mode granularities must be multiples of the finest one: " 
+						+ counter.getGranularity() + " vs " + fineGranularity);
+			}
+			coarser.add(counter);
+		}
+		coarserCounters = coarser.toArray(new BasicFrequencyCounter[coarser.size()]);
+		rollUpLock = new ReentrantLock();
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES){
+			stripes <<= 1;
+		}
+		stripeMask = stripes - 1;
+		writers = new AtomicLongArray(stripes * CACHE_LINE_LONGS);
 	}
 
 	/**
@@ -86,10 +175,110 @@ public class PackagedFrequencyCounter extends FrequencyCounter{
 
 	@Override
 	public void count(long when, int times) {
-		for (BasicFrequencyCounter counter: counters){
-			counter.count(when, times);
+		if (rollUp){
+			// bucket boundaries come from the finest counter because it may be aligned to a calendar period
+			long recWhen = finestCounter.bucketStart(when);
+			long previous = finestCounter.bucketStart(recWhen - 1);
+			if (previous > rolledUpTill){
+				// wait rather than try, a try would hardly succeed while other threads keep counting
+				rollUp(previous, true);
+			}
+			// a roll-up waits for registered writers, so the check and the write cannot be separated by it
+			int stripe = stripeIndex() * CACHE_LINE_LONGS;
+			boolean counted = false;
+			writers.incrementAndGet(stripe);
+			try{
+				if (recWhen >= rolledUpTill){
+					finestCounter.count(when, times);
+					counted = true;
+				}
+			}finally{
+				writers.decrementAndGet(stripe);
+			}
+			if (!counted){
+				// late event, its bucket has been or is being rolled up
+				rollUpLock.lock();
+				try{
+					for (BasicFrequencyCounter counter: counters){
+						counter.count(when, times);
+					}
+				}finally{
+					rollUpLock.unlock();
+				}
+			}
+		}else{
+			for (BasicFrequencyCounter counter: counters){
+				counter.count(when, times);
+			}
 		}
-		
+	}
+	
+	/**
+	 * Roll up the buckets of the finest counter into the coarser counters.
+	 * It is needed only in roll-up mode, and normally it is triggered automatically by counting.
+	 * Calling it explicitly is useful before reading from the coarser counters when 
+	 * the most recent data need to be included.
+	 * @param tillWhen	buckets before this time will be rolled up
+	 */
+	public void rollUp(long tillWhen){
+		if (rollUp){
+			rollUp(tillWhen, true);
+		}
+	}
+	
+	protected int stripeIndex(){
+		long id = Thread.currentThread().getId();
+		return (int)(id ^ (id >>> 16)) & stripeMask;
+	}
+
+	/**
+	 * Wait for the counting threads registered as writers to finish
+	 */
+	protected void awaitWriters(){
+		for (int i = 0; i < writers.length(); i += CACHE_LINE_LONGS){
+			while (writers.get(i) != 0){
+				Thread.yield();
+			}
+		}
+	}
+
+	protected void rollUp(long tillWhen, boolean wait){
+		ReentrantLock lock = rollUpLock;
+		if (wait){
+			lock.lock();
+		}else if (!lock.tryLock()){
+			return;		// someone else is doing it, or is counting a late event
+		}
+		try{
+			long from = rolledUpTill;
+			if (tillWhen <= from){
+				return;
+			}
+			// writers registered after this will see it and count late events under the lock,
+			// writers registered before this may still be adding to the buckets being closed
+			rolledUpTill = tillWhen;
+			awaitWriters();
+			NavigableMap<Long, AtomicLong> closed = ((NavigableMap<Long, AtomicLong>)finestCounter.getCounts())
+					.subMap(from, true, tillWhen, false);
+			for (Map.Entry<Long, AtomicLong> entry: closed.entrySet()){
+				long count = entry.getValue().get();
+				if (count != 0){
+					for (BasicFrequencyCounter counter: coarserCounters){
+						counter.count(entry.getKey(), count);
+					}
+				}
+			}
+		}finally{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Check whether this counter is in roll-up mode
+	 * @return true if only the finest counter is updated when counting
+	 */
+	public boolean isRollUp(){
+		return rollUp;
 	}
 	
 
@@ -0,0 +1,395 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.stat;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Frequency counter backed by a fixed size ring of primitive long slots.
+ * <p>
+ * Compared with BasicFrequencyCounter, counting does not allocate anything:
+ * the time slot is located by arithmetic, the count is added to one of several striped cells
+ * so that concurrent threads do not fight for the same cache line,
+ * and old data are purged by simply reusing the slot when the ring wraps around.
+ * Explicit purging only moves a water mark so it takes constant time.
+ * <p>
+ * Every counting thread registers itself in a striped writer count of the slot before checking the time of the slot,
+ * and a thread reusing the slot waits for those writers to finish before clearing it,
+ * so that a count can never be added to a slot after it has been reused for a newer bucket.
+ * <p>
+ * The number of slots is decided by purgeBefore/granularity, so purgeBefore must not be zero.
+ * Events arriving later than the retention period are ignored, the same as they would have been
+ * purged immediately by BasicFrequencyCounter.
+ *
+ * @author Zhengmao HU (James)
+ *
+ */
+public class RingBufferFrequencyCounter extends FrequencyCounter {
+	/**
+	 * Slot time of a slot that has never been used
+	 */
+	protected static final long SLOT_EMPTY = Long.MIN_VALUE;
+	/**
+	 * Slot time of a slot that is being cleared for reuse
+	 */
+	protected static final long SLOT_RESETTING = Long.MIN_VALUE + 1;
+
+	protected static final int MAX_STRIPES = 16;
+	/**
+	 * Number of longs in a cache line, stripes are padded by this to avoid false sharing
+	 */
+	protected static final int CACHE_LINE_LONGS = 8;
+
+	protected long granularity;
+	protected long purgeBefore;
+	protected int slots;
+	/**
+	 * Distance between the cells of the same slot in adjacent stripes,
+	 * it is at least one cache line more than the number of slots
+	 */
+	protected int stride;
+	protected int stripes;
+	protected int stripeMask;
+
+	/**
+	 * Start time of the bucket held by each slot
+	 */
+	protected AtomicLongArray slotTimes;
+	/**
+	 * Counts laid out as [stripe][slot] with padding between stripes, so that cells of the same slot 
+	 * in different stripes are never in the same cache line, even if there are only a few slots.
+	 */
+	protected AtomicLongArray cells;
+	/**
+	 * Number of threads that may be adding to each cell, laid out the same as cells
+	 */
+	protected AtomicLongArray writers;
+	/**
+	 * The latest time that has been counted
+	 */
+	protected AtomicLong latestWhen;
+	/**
+	 * Buckets before this time had been purged explicitly
+	 */
+	protected AtomicLong purgedTill;
+
+	/**
+	 * Create an instance with the number of stripes decided by the number of available processors.
+	 * @param granularity	granularity of the counting
+	 * @param unit			unit of the granularity
+	 * @param purgePeriod	how long the history data will be kept, must not be zero
+	 * @param purgeUnit		unit of the purgePeriod
+	 */
+	public RingBufferFrequencyCounter(long granularity, TimeUnit unit,
+			long purgePeriod, TimeUnit purgeUnit){
+		this(granularity, unit, purgePeriod, purgeUnit, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create an instance.
+	 * @param granularity	granularity of the counting
+	 * @param unit			unit of the granularity
+	 * @param purgePeriod	how long the history data will be kept, must not be zero
+	 * @param purgeUnit		unit of the purgePeriod
+	 * @param concurrencyLevel	estimated number of threads that count concurrently,
+	 * 							it decides the number of striped cells per slot.
+	 */
+	public RingBufferFrequencyCounter(long granularity, TimeUnit unit,
+			long purgePeriod, TimeUnit purgeUnit, int concurrencyLevel){
+		this.granularity = TimeUnit.MILLISECONDS.convert(granularity, unit);
+		if (this.granularity <= 0){
+			throw new IllegalArgumentException("The granularity must be at least 1 millisecond.");
+		}
+		if (purgePeriod <= 0 || purgeUnit == null){
+			throw new IllegalArgumentException("The purge period must be specified for a ring buffer based frequency counter.");
+		}
+		this.purgeBefore = TimeUnit.MILLISECONDS.convert(purgePeriod, purgeUnit);
+		long numSlots = purgeBefore / this.granularity + 2;	// one for the bucket partially covered and one for the current bucket
+		if (numSlots > Integer.MAX_VALUE / MAX_STRIPES - 2 * CACHE_LINE_LONGS){
+			throw new IllegalArgumentException("Too many slots needed: " + numSlots);
+		}
+		this.slots = (int) numSlots;
+		this.stride = (slots + CACHE_LINE_LONGS - 1) / CACHE_LINE_LONGS * CACHE_LINE_LONGS + CACHE_LINE_LONGS;
+
+		int s = 1;
+		while (s < concurrencyLevel && s < MAX_STRIPES){
+			s <<= 1;
+		}
+		this.stripes = s;
+		this.stripeMask = s - 1;
+
+		slotTimes = new AtomicLongArray(slots);
+		for (int i = 0; i < slots; i ++){
+			slotTimes.set(i, SLOT_EMPTY);
+		}
+		cells = new AtomicLongArray(stride * stripes);
+		writers = new AtomicLongArray(stride * stripes);
+		latestWhen = new AtomicLong(Long.MIN_VALUE);
+		purgedTill = new AtomicLong(Long.MIN_VALUE);
+	}
+
+	/**
+	 * Create an instance according to the definition
+	 * @param definition	the definition, its purgeBefore must not be zero,
+	 * 						and it must not be aligned to a calendar period because slots have fixed length
+	 */
+	public RingBufferFrequencyCounter(FrequencyCounterDefinition definition){
+		this(fixedGranularity(definition), TimeUnit.MILLISECONDS,
+				definition.getPurgeBefore(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Get the granularity of a definition that has buckets of fixed length
+	 * @param definition	the definition
+	 * @return	the granularity in milliseconds
+	 * @throws IllegalArgumentException	if the definition is aligned to a calendar period
+	 */
+	protected static long fixedGranularity(FrequencyCounterDefinition definition){
+		if (definition.getCalendarPeriod() != null){
+			throw new IllegalArgumentException("Calendar periods are not supported by a ring buffer based frequency counter: " 
+					+ definition.getCalendarPeriod());
+		}
+		return definition.getGranularity();
+	}
+
+	protected int slotIndex(long recWhen){
+		long i = (recWhen / granularity) % slots;
+		return (int) (i < 0 ? i + slots : i);
+	}
+
+	protected int stripeIndex(){
+		long id = Thread.currentThread().getId();
+		return (int)(id ^ (id >>> 16)) & stripeMask;
+	}
+
+	/**
+	 * The time before which the data should be regarded as purged
+	 * @return	the earliest bucket time that is still valid
+	 */
+	protected long validSince(){
+		long latest = latestWhen.get();
+		long autoPurged = latest == Long.MIN_VALUE ? Long.MIN_VALUE : latest - purgeBefore;
+		return Math.max(autoPurged, purgedTill.get());
+	}
+
+	protected long sumSlot(int index){
+		long sum = 0;
+		for (int i = index; i < cells.length(); i += stride){
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Clear a slot that had been marked as SLOT_RESETTING, after the threads that may be adding to it have finished.
+	 * @param index	index of the slot
+	 */
+	protected void resetSlot(int index){
+		for (int i = index; i < cells.length(); i += stride){
+			while (writers.get(i) != 0){
+				Thread.yield();
+			}
+			cells.set(i, 0);
+		}
+	}
+
+	@Override
+	public void count(long when, int times) {
+		long recWhen = when - (when % granularity);
+		int index = slotIndex(recWhen);
+		int cell = stripeIndex() * stride + index;
+		for(;;){
+			long t;
+			// the slot will not be cleared while we are registered as a writer
+			writers.incrementAndGet(cell);
+			try{
+				t = slotTimes.get(index);
+				if (t == recWhen){
+					cells.addAndGet(cell, times);
+					break;
+				}
+			}finally{
+				writers.decrementAndGet(cell);
+			}
+			if (t == SLOT_RESETTING){
+				Thread.yield();
+			}else if (t > recWhen){
+				return;		// too late, the slot had already been reused by a newer bucket
+			}else if (slotTimes.compareAndSet(index, t, SLOT_RESETTING)){
+				resetSlot(index);
+				slotTimes.set(index, recWhen);
+			}
+		}
+
+		long latest;
+		while ((latest = latestWhen.get()) < when){
+			if (latestWhen.compareAndSet(latest, when)){
+				break;
+			}
+		}
+	}
+
+	@Override
+	public long getCount(long when) {
+		long recWhen = when - (when % granularity);
+		int index = slotIndex(recWhen);
+		if (slotTimes.get(index) != recWhen || recWhen < validSince()){
+			return 0;
+		}
+		return sumSlot(index);
+	}
+
+	/**
+	 * Get the total count within a time range.
+	 * The semantics are the same as BasicFrequencyCounter: buckets whose start time fall into the range are counted.
+	 * @param fromWhen		start of the range
+	 * @param toWhen		end of the range
+	 * @param fromInclusive	whether the start is inclusive
+	 * @param toInclusive	whether the end is inclusive
+	 * @return				the total count
+	 */
+	@Override
+	public long getCount(long fromWhen, long toWhen, boolean fromInclusive,
+			boolean toInclusive) {
+		long since = validSince();
+		long count = 0;
+		for (int index = 0; index < slots; index ++){
+			long t = slotTimes.get(index);
+			if (t == SLOT_EMPTY || t == SLOT_RESETTING || t < since){
+				continue;
+			}
+			if ((fromInclusive ? t >= fromWhen : t > fromWhen) && (toInclusive ? t <= toWhen : t < toWhen)){
+				count += sumSlot(index);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Purge history data before a specified time. It takes constant time
+	 * because only a water mark is moved, the slots will be reused later.
+	 * @param tillWhen	data of buckets before this time will be purged
+	 */
+	@Override
+	public void purge(long tillWhen) {
+		long till;
+		while ((till = purgedTill.get()) < tillWhen){
+			if (purgedTill.compareAndSet(till, tillWhen)){
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Get a snapshot of all the counts
+	 * @return	a sorted map with the start time of the buckets as key and the counts as value
+	 */
+	public Map<Long, Long> getCounts(){
+		long since = validSince();
+		TreeMap<Long, Long> result = new TreeMap<Long, Long>();
+		for (int index = 0; index < slots; index ++){
+			long t = slotTimes.get(index);
+			if (t == SLOT_EMPTY || t == SLOT_RESETTING || t < since){
+				continue;
+			}
+			result.put(t, sumSlot(index));
+		}
+		return result;
+	}
+
+	/**
+	 * Visit the counts of buckets within a time range in time order, without creating any object.
+	 * It takes time proportional to the number of buckets covered by the range, limited by the number of slots.
+	 * @param fromWhen	start of the range, inclusive
+	 * @param toWhen	end of the range, exclusive
+	 * @param visitor	the visitor to be called for each bucket
+	 */
+	public void visitCounts(long fromWhen, long toWhen, CountVisitor visitor){
+		long since = validSince();
+		long latest = latestWhen.get();
+		if (latest == Long.MIN_VALUE){
+			return;
+		}
+		long from = Math.max(fromWhen, since);
+		long t = from - (from % granularity);
+		if (t < from){
+			t += granularity;
+		}
+		long to = Math.min(toWhen, latest + 1);
+		for (; t < to; t += granularity){
+			int index = slotIndex(t);
+			if (slotTimes.get(index) == t){
+				visitor.visit(t, sumSlot(index));
+			}
+		}
+	}
+
+	/**
+	 * Get the summary value of all the counts
+	 * @return the summary value of all the counts
+	 */
+	public BigInteger getTotalCounts(){
+		BigInteger result = BigInteger.ZERO;
+		for (Long c: getCounts().values()){
+			result = result.add(BigInteger.valueOf(c));
+		}
+		return result;
+	}
+
+	/**
+	 * Get the granularity
+	 * @return	the granularity in milliseconds
+	 */
+	public long getGranularity() {
+		return granularity;
+	}
+
+	/**
+	 * Get the retention period
+	 * @return	the retention period in milliseconds
+	 */
+	public long getPurgeBefore() {
+		return purgeBefore;
+	}
+
+	@Override
+	public String toString(){
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		pw.format("granularity=%d(ms) purgeBefore=%d(ms) slots=%d stripes=%d\n", granularity, purgeBefore, slots, stripes);
+
+		boolean isFirst = true;
+		for (Map.Entry<Long, Long> entry: getCounts().entrySet()){
+			if (isFirst){
+				isFirst = false;
+			}else{
+				pw.print('\n');
+			}
+			pw.format(" %1$tY%1$tm%1$td %1$tH:%1$tM:%1$tS.%1$tL (%1$20d) -> %2$20d", entry.getKey(), entry.getValue());
+		}
+
+		return sw.toString();
+	}
+
+}
@@ -0,0 +1,290 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.stat;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * Statistics of long values that can be updated by many threads concurrently without contention.
+ * <p>
+ * Count, sum, min and max are kept in several cells, each padded to occupy its own cache line.
+ * A thread always updates the cell selected by its thread ID, and the cells are merged when reading.
+ * It is a drop-in replacement of AtomicLongStatistics when there are many threads evaluating
+ * values into the same instance, while reading is more expensive and only weakly consistent
+ * with concurrent evaluations.
+ *
+ * @author Zhengmao HU (James)
+ *
+ */
+public class StripedLongStatistics implements NumberStatistics<Long>, Serializable {
+	private static final long serialVersionUID = -6468937302125563185L;
+
+	protected static final int MAX_CELLS = 64;
+
+	/**
+	 * Padding before the fields, so that the fields are on their own cache line
+	 */
+	static class CellLeftPadding implements Serializable{
+		private static final long serialVersionUID = 5838312582736713446L;
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	static class CellFields extends CellLeftPadding{
+		private static final long serialVersionUID = 5402452802569128133L;
+		volatile long count;
+		volatile long sum;
+		volatile long min = Long.MAX_VALUE;
+		volatile long max = Long.MIN_VALUE;
+	}
+
+	/**
+	 * A cell holding a part of the statistics
+	 */
+	static class Cell extends CellFields{
+		private static final long serialVersionUID = -2993002213718922736L;
+		long q1, q2, q3, q4, q5, q6, q7;
+
+		static final AtomicLongFieldUpdater<CellFields> COUNT = AtomicLongFieldUpdater.newUpdater(CellFields.class, "count");
+		static final AtomicLongFieldUpdater<CellFields> SUM = AtomicLongFieldUpdater.newUpdater(CellFields.class, "sum");
+		static final AtomicLongFieldUpdater<CellFields> MIN = AtomicLongFieldUpdater.newUpdater(CellFields.class, "min");
+		static final AtomicLongFieldUpdater<CellFields> MAX = AtomicLongFieldUpdater.newUpdater(CellFields.class, "max");
+
+		void evaluate(long value){
+			long x;
+			while(value < (x = min) && !MIN.compareAndSet(this, x, value)){
+				// retry
+			}
+			while(value > (x = max) && !MAX.compareAndSet(this, x, value)){
+				// retry
+			}
+			SUM.addAndGet(this, value);
+			COUNT.incrementAndGet(this);	// updated last, so that min/max are visible once count is
+		}
+
+		void merge(long count, long sum, Long min, Long max){
+			if (count == 0){
+				return;		// min/max of an empty stripe are only sentinels, they must not be taken
+			}
+			long x;
+			if (min != null){
+				while(min < (x = this.min) && !MIN.compareAndSet(this, x, min)){
+					// retry
+				}
+			}
+			if (max != null){
+				while(max > (x = this.max) && !MAX.compareAndSet(this, x, max)){
+					// retry
+				}
+			}
+			SUM.addAndGet(this, sum);
+			COUNT.addAndGet(this, count);
+		}
+
+		void reset(){
+			count = 0;
+			sum = 0;
+			min = Long.MAX_VALUE;
+			max = Long.MIN_VALUE;
+		}
+	}
+
+	protected Cell[] cells;
+	protected int mask;
+
+	/**
+	 * Create an instance with the number of cells decided by the number of available processors.
+	 */
+	public StripedLongStatistics(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create an instance
+	 * @param concurrencyLevel	estimated number of threads that evaluate values concurrently.
+	 * 							It decides the number of cells.
+	 */
+	public StripedLongStatistics(int concurrencyLevel){
+		int n = 1;
+		while (n < concurrencyLevel && n < MAX_CELLS){
+			n <<= 1;
+		}
+		cells = new Cell[n];
+		for (int i = 0; i < n; i ++){
+			cells[i] = new Cell();
+		}
+		mask = n - 1;
+	}
+
+	public StripedLongStatistics(long count, Long sum, Long min, Long max){
+		this();
+		reset(count, sum, min, max);
+	}
+
+	protected Cell cell(){
+		long id = Thread.currentThread().getId();
+		return cells[(int)(id ^ (id >>> 16)) & mask];
+	}
+
+	@Override
+	public int hashCode(){
+		return new HashCodeBuilder()
+				.append(getCount())
+				.append(getSum())
+				.append(getMin())
+				.append(getMax())
+				.toHashCode();
+	}
+
+	@Override
+	public boolean equals(Object other){
+		if (other == this){
+			return true;
+		}
+		if (other == null || !(other instanceof NumberStatistics<?>)){
+			return false;
+		}
+		NumberStatistics<?> that = (NumberStatistics<?>) other;
+		return new EqualsBuilder()
+			.append(this.getCount(), that.getCount())
+			.append(this.getSum(), that.getSum() == null ? null : Long.valueOf(that.getSum().longValue()))
+			.append(this.getMin(), that.getMin() == null ? null : Long.valueOf(that.getMin().longValue()))
+			.append(this.getMax(), that.getMax() == null ? null : Long.valueOf(that.getMax().longValue()))
+			.isEquals();
+	}
+
+	@Override
+	public void evaluate(int value) {
+		cell().evaluate(value);
+	}
+
+	@Override
+	public void evaluate(long value) {
+		cell().evaluate(value);
+	}
+
+	@Override
+	public void evaluate(BigInteger value) {
+		cell().evaluate(value.longValue());
+	}
+
+	@Override
+	public Double getAvg() {
+		long countValue = getCount();
+		if (countValue > 0){
+			Long min = getMin();
+			if (min != null && min.equals(getMax())){
+				return min.doubleValue();
+			}else{
+				return getSum().doubleValue()/countValue;
+			}
+		}else{
+			return null;
+		}
+	}
+
+	@Override
+	public BigDecimal getAvg(int scale) {
+		return new BigDecimal(getAvg()).setScale(scale, BigDecimal.ROUND_HALF_UP);
+	}
+
+	@Override
+	public Long getMin() {
+		boolean found = false;
+		long result = Long.MAX_VALUE;
+		for (Cell cell: cells){
+			if (cell.count != 0){
+				found = true;
+				long x = cell.min;
+				if (x < result){
+					result = x;
+				}
+			}
+		}
+		return found ? result : null;
+	}
+
+	@Override
+	public Long getMax() {
+		boolean found = false;
+		long result = Long.MIN_VALUE;
+		for (Cell cell: cells){
+			if (cell.count != 0){
+				found = true;
+				long x = cell.max;
+				if (x > result){
+					result = x;
+				}
+			}
+		}
+		return found ? result : null;
+	}
+
+	@Override
+	public Long getSum() {
+		long result = 0;
+		for (Cell cell: cells){
+			result += cell.sum;
+		}
+		return result;
+	}
+
+	@Override
+	public long getCount() {
+		long result = 0;
+		for (Cell cell: cells){
+			result += cell.count;
+		}
+		return result;
+	}
+
+	@Override
+	public void reset() {
+		for (Cell cell: cells){
+			cell.reset();
+		}
+	}
+
+	@Override
+	public void reset(long newCount, Long newSum, Long newMin, Long newMax) {
+		reset();
+		cells[0].merge(newCount, newSum == null ? 0 : newSum, newMin, newMax);
+	}
+
+	@Override
+	public void merge(long count, Long sum, Long min, Long max) {
+		cell().merge(count, sum == null ? 0 : sum, min, max);
+	}
+
+	@Override
+	public void merge(NumberStatistics<? extends Number> other) {
+		if (other != null && other.getCount() > 0){
+			merge(other.getCount(), other.getSum().longValue(), other.getMin().longValue(), other.getMax().longValue());
+		}
+	}
+
+	@Override
+	public String toString(){
+		return "(" + getCount() + ", " + getSum() + ", " + getMin() + "/" + getMax() + ")";
+	}
+
+}
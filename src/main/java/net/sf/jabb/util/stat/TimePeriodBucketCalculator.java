@@ -0,0 +1,348 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.stat;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Calculator of bucket boundaries that are aligned to a TimePeriod in a time zone.
+ * For example, with a period of 1 day the buckets start at local midnight,
+ * with a period of 3 months the buckets start at the first day of January, April, July and October.
+ * It is thread-safe.
+ * <p>
+ * For periods with units shorter than hours, buckets have fixed length and are aligned to the local time
+ * with simple arithmetic. For hours and longer units, buckets follow the local wall clock,
+ * so that they can be of different lengths because of daylight saving time or calendar months.
+ * Their boundaries are calculated with Calendar in advance and kept in a table covering a range of time.
+ * Finding the bucket of a time within the range is a binary search over the table.
+ * The table replaced by the latest rebuild is kept as well, so that alternating between two
+ * ranges of time, such as current events mixed with late ones, does not rebuild the tables over and over.
+ * A table is rebuilt only when a time out of both ranges is encountered.
+ * No object is created in either case unless a table needs to be rebuilt.
+ * <p>
+ * When the amount of the period is larger than 1, buckets are aligned to the multiples of the amount
+ * counted from 1 January 1970 (in local time) for hours, days and weeks,
+ * from January for months, and from year 0 for years.
+ *
+ * @author Zhengmao HU (James)
+ *
+ */
+public class TimePeriodBucketCalculator {
+	protected static final long DAY = 1000L * 3600 * 24;
+	protected static final long HOUR = 1000L * 3600;
+
+	/**
+	 * Number of buckets covered by the boundary table
+	 */
+	protected static final int TABLE_SIZE = 256;
+	/**
+	 * Number of buckets before the one triggering the rebuild of the table
+	 */
+	protected static final int TABLE_HEAD = 32;
+
+	protected TimePeriodUnit unit;
+	protected long amount;
+	protected TimeZone timeZone;
+	protected int firstDayOfWeek;
+	protected long fixedLength;
+
+	/**
+	 * Start times of consecutive buckets, in ascending order
+	 */
+	protected volatile long[] boundaries;
+	/**
+	 * The table replaced by the latest rebuild
+	 */
+	protected volatile long[] previousBoundaries;
+
+	/**
+	 * Create an instance with the default time zone and Monday as the first day of a week
+	 * @param period		the period of the buckets
+	 */
+	public TimePeriodBucketCalculator(TimePeriod period){
+		this(period, TimeZone.getDefault());
+	}
+
+	/**
+	 * Create an instance with Monday as the first day of a week
+	 * @param period		the period of the buckets
+	 * @param timeZone		the time zone according to which the buckets are aligned
+	 */
+	public TimePeriodBucketCalculator(TimePeriod period, TimeZone timeZone){
+		this(period, timeZone, Calendar.MONDAY);
+	}
+
+	/**
+	 * Create an instance
+	 * @param period		the period of the buckets
+	 * @param timeZone		the time zone according to which the buckets are aligned
+	 * @param firstDayOfWeek	the first day of a week, such as Calendar.SUNDAY or Calendar.MONDAY.
+	 * 							It matters only when the unit of the period is WEEKS.
+	 */
+	public TimePeriodBucketCalculator(TimePeriod period, TimeZone timeZone, int firstDayOfWeek){
+		if (period == null || period.getUnit() == null || period.getAmount() <= 0){
+			throw new IllegalArgumentException("The period must have a positive amount and a unit: " + period);
+		}
+		if (firstDayOfWeek < Calendar.SUNDAY || firstDayOfWeek > Calendar.SATURDAY){
+			throw new IllegalArgumentException("Invalid first day of week: " + firstDayOfWeek);
+		}
+		this.unit = period.getUnit();
+		this.amount = period.getAmount();
+		this.timeZone = (TimeZone) timeZone.clone();
+		this.firstDayOfWeek = firstDayOfWeek;
+		if (unit.isShorterThan(TimePeriodUnit.HOURS)){
+			this.fixedLength = amount * unit.toMilliseconds();
+		}
+		this.boundaries = new long[0];
+		this.previousBoundaries = boundaries;
+	}
+
+	/**
+	 * Get the start time of the bucket that a time falls into
+	 * @param when	the time
+	 * @return	start time of the bucket, inclusive
+	 */
+	public long getBucketStart(long when){
+		if (fixedLength > 0){
+			int offset = timeZone.getOffset(when);
+			return floorDiv(when + offset, fixedLength) * fixedLength - offset;
+		}
+		long[] table = boundaries;
+		int i = indexInTable(table, when);
+		if (i < 0){
+			table = otherTable(when);
+			i = indexInTable(table, when);
+		}
+		return table[i];
+	}
+
+	/**
+	 * Get the end time of the bucket that a time falls into, which is also the start time of the next bucket
+	 * @param when	the time
+	 * @return	end time of the bucket, exclusive
+	 */
+	public long getBucketEnd(long when){
+		if (fixedLength > 0){
+			return getBucketStart(when) + fixedLength;
+		}
+		long[] table = boundaries;
+		int i = indexInTable(table, when);
+		if (i < 0){
+			table = otherTable(when);
+			i = indexInTable(table, when);
+		}
+		return table[i + 1];
+	}
+
+	/**
+	 * Find the bucket in the table
+	 * @param table	the boundary table
+	 * @param when	the time
+	 * @return	index of the bucket start, or -1 if the time is out of the range covered by the table
+	 */
+	protected static int indexInTable(long[] table, long when){
+		if (table.length < 2 || when < table[0] || when >= table[table.length - 1]){
+			return -1;
+		}
+		int i = Arrays.binarySearch(table, when);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Get the previous table if it covers a time, otherwise rebuild the table
+	 * @param when	the time not covered by the current table
+	 * @return	a table covering the time
+	 */
+	protected long[] otherTable(long when){
+		long[] table = previousBoundaries;
+		if (indexInTable(table, when) >= 0){
+			return table;
+		}
+		return rebuild(when);
+	}
+
+	/**
+	 * Rebuild the boundary table to cover a time. The current table becomes the previous one.
+	 * @param when	the time to be covered
+	 * @return	the new table
+	 */
+	synchronized protected long[] rebuild(long when){
+		long[] table = boundaries;
+		if (indexInTable(table, when) >= 0){
+			return table;	// rebuilt by another thread
+		}
+		table = previousBoundaries;
+		if (indexInTable(table, when) >= 0){
+			return table;	// rebuilt by another thread
+		}
+		GregorianCalendar calendar = new GregorianCalendar(timeZone);
+		calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+		long first = alignedOrdinal(when) - TABLE_HEAD * amount;
+		long[] newTable = new long[TABLE_SIZE + 1];
+		int n = 0;
+		for (int i = 0; i <= TABLE_SIZE; i ++){
+			long t = ordinalToMillis(calendar, first + i * amount);
+			if (n == 0 || t > newTable[n - 1]){		// local times skipped by daylight saving time collapse into the next
+				newTable[n++] = t;
+			}
+		}
+		table = n == newTable.length ? newTable : Arrays.copyOf(newTable, n);
+		previousBoundaries = boundaries;
+		boundaries = table;
+		return table;
+	}
+
+	/**
+	 * Get the ordinal of the bucket, aligned to the amount, that a time falls into.
+	 * The ordinal is the number of hours/days/weeks/months/years in local time.
+	 * @param when	the time
+	 * @return	the ordinal
+	 */
+	protected long alignedOrdinal(long when){
+		long local = when + timeZone.getOffset(when);
+		long epochDay = floorDiv(local, DAY);
+		long ordinal;
+		switch(unit){
+		case HOURS:
+			ordinal = epochDay * 24 + floorMod(local, DAY) / HOUR;
+			break;
+		case DAYS:
+			ordinal = epochDay;
+			break;
+		case WEEKS:
+			ordinal = floorDiv(epochDay - firstWeekStartDay(), 7);
+			break;
+		case MONTHS:
+			long[] ymd = civilFromDays(epochDay);
+			ordinal = ymd[0] * 12 + ymd[1] - 1;
+			break;
+		case YEARS:
+			ordinal = civilFromDays(epochDay)[0];
+			break;
+		default:
+			throw new IllegalStateException("Unexpected unit: " + unit);
+		}
+		return ordinal - floorMod(ordinal, amount);
+	}
+
+	/**
+	 * Convert the ordinal back to the start time of it
+	 * @param calendar	the calendar used for the calculation
+	 * @param ordinal	the ordinal
+	 * @return	the start time of the ordinal
+	 */
+	protected long ordinalToMillis(GregorianCalendar calendar, long ordinal){
+		long epochDay;
+		int hour = 0;
+		switch(unit){
+		case HOURS:
+			epochDay = floorDiv(ordinal, 24);
+			hour = (int) floorMod(ordinal, 24);
+			break;
+		case DAYS:
+			epochDay = ordinal;
+			break;
+		case WEEKS:
+			epochDay = firstWeekStartDay() + ordinal * 7;
+			break;
+		case MONTHS:
+			epochDay = daysFromCivil(floorDiv(ordinal, 12), floorMod(ordinal, 12) + 1, 1);
+			break;
+		case YEARS:
+			epochDay = daysFromCivil(ordinal, 1, 1);
+			break;
+		default:
+			throw new IllegalStateException("Unexpected unit: " + unit);
+		}
+		long[] ymd = civilFromDays(epochDay);
+		calendar.clear();
+		calendar.set((int)ymd[0], (int)ymd[1] - 1, (int)ymd[2], hour, 0, 0);
+		return calendar.getTimeInMillis();
+	}
+
+	/**
+	 * Get the epoch day of a day that is the first day of a week
+	 * @return	the epoch day, which is between 0 and 6
+	 */
+	protected long firstWeekStartDay(){
+		return floorMod(firstDayOfWeek - Calendar.THURSDAY, 7);	// 1 January 1970 is Thursday
+	}
+
+	/**
+	 * Calculate the number of days since 1 January 1970 in proleptic Gregorian calendar
+	 * @param year	the year
+	 * @param month	the month, from 1 to 12
+	 * @param day	the day of month, from 1 to 31
+	 * @return	number of days
+	 */
+	protected static long daysFromCivil(long year, long month, long day){
+		year -= month <= 2 ? 1 : 0;
+		long era = floorDiv(year, 400);
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * Calculate the date from the number of days since 1 January 1970 in proleptic Gregorian calendar
+	 * @param epochDay	number of days
+	 * @return	year, month (from 1 to 12), and day of month
+	 */
+	protected static long[] civilFromDays(long epochDay){
+		epochDay += 719468;
+		long era = floorDiv(epochDay, 146097);
+		long dayOfEra = epochDay - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		long month = mp + (mp < 10 ? 3 : -9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		return new long[]{year, month, day};
+	}
+
+	protected static long floorDiv(long x, long y){
+		long q = x / y;
+		return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+	}
+
+	protected static long floorMod(long x, long y){
+		return x - floorDiv(x, y) * y;
+	}
+
+	/**
+	 * Get the period
+	 * @return	a new TimePeriod object representing the period of the buckets
+	 */
+	public TimePeriod getPeriod(){
+		return new TimePeriod(amount, unit);
+	}
+
+	public TimeZone getTimeZone(){
+		return (TimeZone) timeZone.clone();
+	}
+
+	public int getFirstDayOfWeek(){
+		return firstDayOfWeek;
+	}
+
+}
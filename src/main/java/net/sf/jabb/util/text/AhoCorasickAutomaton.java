@@ -0,0 +1,280 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.text;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton for finding keywords in a text in a single pass.<br>
+ * 用Aho-Corasick算法在一遍扫描中查找文本中的关键词。
+ * <p>
+ * The keywords are plain strings, each identified by its index in the list given when constructing.
+ * Matches are found in leftmost-longest manner: the match starting at the smallest position is found,
+ * and if there are several keywords starting there, the longest one is chosen.
+ * This is exactly the same as trying {@link StringStartWithMatcher} from each position of the text,
+ * but the text is scanned only once instead of being re-scanned from every position.
+ * <p>
+ * The trie is kept in flat arrays with the children of each state sorted by character.
+ * It is immutable after construction, so one instance can be shared by many threads.
+ * Finding does not create any object.
+ *
+ * @author Zhengmao HU (James)
+ *
+ */
+public class AhoCorasickAutomaton implements Serializable{
+	private static final long serialVersionUID = -3021598357914788286L;
+
+	/**
+	 * Number of characters from the root to each state
+	 */
+	protected int[] depth;
+	/**
+	 * Failure link of each state
+	 */
+	protected int[] fail;
+	/**
+	 * For each state, index of the longest keyword that is a suffix of the path to the state, or -1 if there is none.
+	 */
+	protected int[] output;
+	/**
+	 * Children of state s are at positions from childStart[s] (inclusive) to childStart[s+1] (exclusive)
+	 * of childChars and childStates, sorted by the character.
+	 */
+	protected int[] childStart;
+	protected char[] childChars;
+	protected int[] childStates;
+	/**
+	 * Length of each keyword
+	 */
+	protected int[] keywordLengths;
+
+	/**
+	 * Constructor.<br>
+	 * 构造方法。
+	 *
+	 * @param keywords	The keywords, each of them will be identified by its index in the list.
+	 * 					Empty strings are ignored.<br>
+	 * 					关键词列表，每个关键词由它在列表中的位置来标识。空字符串会被忽略。
+	 */
+	public AhoCorasickAutomaton(List<String> keywords){
+		int maxStates = 1;
+		for (String keyword: keywords){
+			maxStates += keyword.length();
+		}
+		int[] terminal = new int[maxStates];
+		int[] tmpDepth = new int[maxStates];
+		Arrays.fill(terminal, -1);
+		Map<Long, Integer> edges = new HashMap<Long, Integer>();
+		int numStates = 1;
+		keywordLengths = new int[keywords.size()];
+		for (int k = 0; k < keywords.size(); k ++){
+			String keyword = keywords.get(k);
+			keywordLengths[k] = keyword.length();
+			if (keyword.length() == 0){
+				continue;
+			}
+			int s = 0;
+			for (int i = 0; i < keyword.length(); i ++){
+				Long key = edgeKey(s, keyword.charAt(i));
+				Integer t = edges.get(key);
+				if (t == null){
+					t = numStates ++;
+					tmpDepth[t] = i + 1;
+					edges.put(key, t);
+				}
+				s = t;
+			}
+			terminal[s] = k;
+		}
+
+		// flatten the edges, sorting the keys sorts them by state and then by character
+		long[] keys = new long[edges.size()];
+		int n = 0;
+		for (Long key: edges.keySet()){
+			keys[n++] = key;
+		}
+		Arrays.sort(keys);
+		childStart = new int[numStates + 1];
+		childChars = new char[keys.length];
+		childStates = new int[keys.length];
+		for (int i = 0; i < keys.length; i ++){
+			childStart[(int)(keys[i] >>> 16) + 1] ++;
+			childChars[i] = (char) keys[i];
+			childStates[i] = edges.get(keys[i]);
+		}
+		for (int s = 0; s < numStates; s ++){
+			childStart[s + 1] += childStart[s];
+		}
+		depth = Arrays.copyOf(tmpDepth, numStates);
+
+		// failure links and outputs, in breadth-first order
+		fail = new int[numStates];
+		output = new int[numStates];
+		output[0] = -1;
+		int[] queue = new int[numStates];
+		int head = 0, tail = 0;
+		queue[tail++] = 0;
+		while (head < tail){
+			int u = queue[head++];
+			for (int i = childStart[u]; i < childStart[u + 1]; i ++){
+				int v = childStates[i];
+				char c = childChars[i];
+				if (u == 0){
+					fail[v] = 0;
+				}else{
+					int f = fail[u];
+					int t;
+					while ((t = child(f, c)) < 0 && f != 0){
+						f = fail[f];
+					}
+					fail[v] = t < 0 ? 0 : t;
+				}
+				output[v] = terminal[v] >= 0 ? terminal[v] : output[fail[v]];
+				queue[tail++] = v;
+			}
+		}
+	}
+
+	static protected long edgeKey(int state, char c){
+		return ((long)state << 16) | c;
+	}
+
+	/**
+	 * Get the child state through a character
+	 * @param state	the parent state
+	 * @param c		the character
+	 * @return	the child state, or -1 if there is no such child
+	 */
+	protected int child(int state, char c){
+		int low = childStart[state];
+		int high = childStart[state + 1] - 1;
+		while (low <= high){
+			int mid = (low + high) >>> 1;
+			char x = childChars[mid];
+			if (x < c){
+				low = mid + 1;
+			}else if (x > c){
+				high = mid - 1;
+			}else{
+				return childStates[mid];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the next state, following failure links when necessary
+	 * @param state	the current state
+	 * @param c		the next character
+	 * @return	the next state
+	 */
+	protected int next(int state, char c){
+		for(;;){
+			int t = child(state, c);
+			if (t >= 0){
+				return t;
+			}
+			if (state == 0){
+				return 0;
+			}
+			state = fail[state];
+		}
+	}
+
+	/**
+	 * Find the leftmost-longest keyword in the text, starting from the specified position.<br>
+	 * 从指定位置开始，查找文本中最靠左的最长关键词。
+	 *
+	 * @param text			The text.<br>文本。
+	 * @param startIndex	The position to start finding.<br>从文本的这个位置开始查找。
+	 * @return	-1 if no keyword can be found; otherwise the end position of the keyword found (exclusive)
+	 * 			in the higher 32 bits and the index of the keyword in the lower 32 bits,
+	 * 			use {@link #endOf(long)} and {@link #keywordOf(long)} to get them.<br>
+	 * 			返回-1表示没有找到；否则高32位是找到的关键词的结束位置，低32位是关键词的序号。
+	 */
+	public long find(CharSequence text, int startIndex){
+		int bestStart = Integer.MAX_VALUE;
+		int bestEnd = -1;
+		int bestKeyword = -1;
+		int state = 0;
+		int l = text.length();
+		for (int i = startIndex; i < l; i ++){
+			state = next(state, text.charAt(i));
+			if (bestKeyword >= 0 && i + 1 - depth[state] > bestStart){
+				break;		// no match starting at or before bestStart can be found any more
+			}
+			int k = output[state];
+			if (k >= 0){
+				int start = i + 1 - keywordLengths[k];
+				if (start <= bestStart){
+					bestStart = start;
+					bestEnd = i + 1;
+					bestKeyword = k;
+				}
+			}
+		}
+		return bestKeyword < 0 ? -1 : ((long)bestEnd << 32) | bestKeyword;
+	}
+
+	/**
+	 * Get the end position from the result of {@link #find(CharSequence, int)}
+	 * @param found	the result of find(...), must not be -1
+	 * @return	end position of the keyword found, exclusive
+	 */
+	static public int endOf(long found){
+		return (int)(found >>> 32);
+	}
+
+	/**
+	 * Get the keyword index from the result of {@link #find(CharSequence, int)}
+	 * @param found	the result of find(...), must not be -1
+	 * @return	index of the keyword found
+	 */
+	static public int keywordOf(long found){
+		return (int) found;
+	}
+
+	/**
+	 * Get the number of keywords
+	 * @return	number of keywords including the empty ones
+	 */
+	public int getKeywordCount(){
+		return keywordLengths.length;
+	}
+
+	/**
+	 * Get the length of a keyword
+	 * @param keywordIndex	index of the keyword
+	 * @return	length of the keyword
+	 */
+	public int getKeywordLength(int keywordIndex){
+		return keywordLengths[keywordIndex];
+	}
+
+	/**
+	 * Get the number of states
+	 * @return	number of states including the root
+	 */
+	public int getSize(){
+		return depth.length;
+	}
+
+}
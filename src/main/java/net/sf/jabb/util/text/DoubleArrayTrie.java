@@ -0,0 +1,283 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.text;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Double-array trie of strings, for exact lookup and longest prefix matching.<br>
+ * 字符串的双数组字典树，用于精确查找和最长前缀匹配。
+ * <p>
+ * The keys are plain strings, each identified by its index in the list given when constructing.
+ * All the states are kept in two int arrays: the children of state s through character c is at
+ * base[s] + c + 1, and check[] of it must be s; the end of a key is marked by a child at base[s]
+ * whose base[] holds the negated index of the key.
+ * It takes much less memory than a trie built with objects, and looking up does not create any object.
+ * It is immutable after construction, so one instance can be shared by many threads.
+ * <p>
+ * 关键字就是普通的字符串，每个关键字由它在构造时给出的列表中的位置来标识。
+ * 所有的状态都保存在两个int数组中：状态s经过字符c到达的子状态位于base[s] + c + 1，并且它的check[]必须为s；
+ * 关键字的结尾由位于base[s]的子状态来标记，它的base[]中保存的是关键字序号的相反数。
+ * 它比用对象构建的字典树占用的内存少得多，查找时也不会创建任何对象。构造之后是不可变的，所以一个实例可以被多个线程共用。
+ *
+ * @author Zhengmao HU (James)
+ *
+ */
+public class DoubleArrayTrie implements Serializable{
+	private static final long serialVersionUID = -1460624223720917211L;
+	
+	static protected final int FREE = -1;
+	static protected final int ROOT_CHECK = -2;
+
+	protected int[] base;
+	protected int[] check;
+	protected int keyCount;
+	
+	transient protected int nextCheckPos;
+	transient protected int maxUsed;
+
+	/**
+	 * Constructor.<br>
+	 * 构造方法。
+	 *
+	 * @param keys	The keys, each of them will be identified by its index in the list.
+	 * 				Empty strings are ignored. If there are duplicated keys, the first one counts.<br>
+	 * 				关键字列表，每个关键字由它在列表中的位置来标识。空字符串会被忽略。如果有重复的关键字，则以第一个为准。
+	 */
+	public DoubleArrayTrie(final List<String> keys){
+		keyCount = keys.size();
+		Integer[] sorted = new Integer[keyCount];
+		for (int i = 0; i < keyCount; i ++){
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>(){
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				int result = keys.get(o1).compareTo(keys.get(o2));
+				return result != 0 ? result : o1.compareTo(o2);
+			}
+		});
+		int lo = 0;
+		while (lo < keyCount && keys.get(sorted[lo]).length() == 0){
+			lo ++;
+		}
+		
+		int capacity = Math.max(1024, keyCount * 4);
+		base = new int[capacity];
+		check = new int[capacity];
+		Arrays.fill(check, FREE);
+		check[0] = ROOT_CHECK;
+		nextCheckPos = 1;
+		if (lo < keyCount){
+			insert(0, keys, sorted, lo, keyCount, 0);
+		}
+		base = Arrays.copyOf(base, maxUsed + 1);
+		check = Arrays.copyOf(check, maxUsed + 1);
+	}
+	
+	/**
+	 * Insert the children of a state
+	 * @param s			the state
+	 * @param keys		all the keys
+	 * @param sorted	indexes of the keys in sorted order
+	 * @param lo		start of the range of sorted keys having the path to the state as prefix, inclusive
+	 * @param hi		end of the range, exclusive
+	 * @param depth		length of the path to the state
+	 */
+	protected void insert(int s, List<String> keys, Integer[] sorted, int lo, int hi, int depth){
+		// children codes and their ranges, in ascending order because the keys are sorted
+		int[] codes = new int[hi - lo];
+		int[] starts = new int[hi - lo + 1];
+		int n = 0;
+		for (int i = lo; i < hi; i ++){
+			String key = keys.get(sorted[i]);
+			int code = key.length() == depth ? 0 : key.charAt(depth) + 1;
+			if (n == 0 || codes[n - 1] != code){
+				codes[n] = code;
+				starts[n] = i;
+				n ++;
+			}
+		}
+		starts[n] = hi;
+		
+		int begin = findBase(codes, n);
+		base[s] = begin;
+		for (int k = 0; k < n; k ++){
+			int t = begin + codes[k];
+			check[t] = s;
+			if (t > maxUsed){
+				maxUsed = t;
+			}
+		}
+		for (int k = 0; k < n; k ++){
+			int t = begin + codes[k];
+			if (codes[k] == 0){
+				base[t] = -(sorted[starts[k]] + 1);	// the first of duplicated keys
+			}else{
+				insert(t, keys, sorted, starts[k], starts[k + 1], depth + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Find a base value such that all the children can be placed
+	 * @param codes	the codes of the children in ascending order
+	 * @param n		number of children
+	 * @return	the base value
+	 */
+	protected int findBase(int[] codes, int n){
+		int first = codes[0];
+		int pos = Math.max(first + 1, nextCheckPos) - 1;
+		int occupied = 0;
+		boolean isFirstFree = true;
+		int begin;
+		outer:
+		while (true){
+			pos ++;
+			ensureCapacity(pos);
+			if (check[pos] != FREE){
+				occupied ++;
+				continue;
+			}else if (isFirstFree){
+				nextCheckPos = pos;
+				isFirstFree = false;
+			}
+			begin = pos - first;
+			ensureCapacity(begin + codes[n - 1]);
+			for (int k = 1; k < n; k ++){
+				if (check[begin + codes[k]] != FREE){
+					continue outer;
+				}
+			}
+			break;
+		}
+		// skip the dense area next time
+		if (occupied * 20 >= (pos - nextCheckPos + 1) * 19){
+			nextCheckPos = pos;
+		}
+		return begin;
+	}
+	
+	protected void ensureCapacity(int index){
+		if (index >= base.length){
+			int capacity = Math.max(index + 1, base.length * 2);
+			int oldLength = check.length;
+			base = Arrays.copyOf(base, capacity);
+			check = Arrays.copyOf(check, capacity);
+			Arrays.fill(check, oldLength, capacity, FREE);
+		}
+	}
+	
+	/**
+	 * Find the index of a key.<br>
+	 * 查找关键字的序号。
+	 * 
+	 * @param key	the key<br>关键字
+	 * @return	index of the key, or -1 if not found<br>关键字的序号，没有找到则返回-1
+	 */
+	public int get(CharSequence key){
+		int s = 0;
+		for (int i = 0; i < key.length(); i ++){
+			int t = base[s] + key.charAt(i) + 1;
+			if (t >= check.length || check[t] != s){
+				return -1;
+			}
+			s = t;
+		}
+		return valueOf(s);
+	}
+	
+	/**
+	 * Get the index of the key ending at a state
+	 * @param s	the state
+	 * @return	index of the key, or -1 if no key ends here
+	 */
+	protected int valueOf(int s){
+		int u = base[s];
+		if (s != 0 && u >= 0 && u < check.length && check[u] == s && base[u] < 0){
+			return -base[u] - 1;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Find the longest key that the text starts with from a position.<br>
+	 * 查找文本从指定位置开始的最长关键字。
+	 *
+	 * @param text			The text.<br>文本。
+	 * @param startIndex	The position.<br>从文本的这个位置开始匹配。
+	 * @return	-1 if no key can be found; otherwise the end position of the key found (exclusive)
+	 * 			in the higher 32 bits and the index of the key in the lower 32 bits,
+	 * 			use {@link #endOf(long)} and {@link #keyOf(long)} to get them.<br>
+	 * 			返回-1表示没有找到；否则高32位是找到的关键字的结束位置，低32位是关键字的序号。
+	 */
+	public long longestPrefixOf(CharSequence text, int startIndex){
+		long found = -1;
+		int s = 0;
+		int l = text.length();
+		for (int i = startIndex; i < l; i ++){
+			int t = base[s] + text.charAt(i) + 1;
+			if (t >= check.length || check[t] != s){
+				break;
+			}
+			s = t;
+			int u = base[s];
+			if (u < check.length && check[u] == s && base[u] < 0){
+				found = ((long)(i + 1) << 32) | (-base[u] - 1);
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Get the end position from the result of {@link #longestPrefixOf(CharSequence, int)}
+	 * @param found	the result of longestPrefixOf(...), must not be -1
+	 * @return	end position of the key found, exclusive
+	 */
+	static public int endOf(long found){
+		return (int)(found >>> 32);
+	}
+
+	/**
+	 * Get the key index from the result of {@link #longestPrefixOf(CharSequence, int)}
+	 * @param found	the result of longestPrefixOf(...), must not be -1
+	 * @return	index of the key found
+	 */
+	static public int keyOf(long found){
+		return (int) found;
+	}
+	
+	/**
+	 * Get the number of keys
+	 * @return	number of keys including the empty and duplicated ones
+	 */
+	public int getKeyCount(){
+		return keyCount;
+	}
+	
+	/**
+	 * Get the length of the arrays
+	 * @return	length of the base and check arrays
+	 */
+	public int getSize(){
+		return base.length;
+	}
+
+}
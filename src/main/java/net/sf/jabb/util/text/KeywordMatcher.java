@@ -16,8 +16,13 @@ limitations under the License.
 
 package net.sf.jabb.util.text;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -26,6 +31,27 @@ import org.apache.commons.lang3.mutable.MutableInt;
  * To check which keywords a text matches, and for each matched keyword how many 
  * occurrences are found.<br>
  * 检查文本当中匹配了哪些关键词，以及每个被匹配到的关键词出现了多少次。
+ * <p>
+ * By default the text is scanned only once by an {@link AhoCorasickAutomaton}.
+ * The original engine, which tries a {@link StringStartWithMatcher} from every position of the text,
+ * can still be chosen when constructing. Both engines give exactly the same result:
+ * from left to right, at each position the longest keyword is matched, 
+ * and then the matching continues after it.
+ * <p>
+ * 默认使用{@link AhoCorasickAutomaton}对文本只扫描一遍；也可以在构造时选择原先的、
+ * 从文本每个位置开始尝试{@link StringStartWithMatcher}的方式。两种方式的匹配结果完全相同。
+ * <p>
+ * Each distinct attachment is assigned a dense integer ID when constructing.
+ * {@link #match(CharSequence, int[])} and {@link #match(CharSequence, MatchVisitor)} report hits by these IDs,
+ * so that no object is created when matching if the counts array or the visitor is reused.
+ * <p>
+ * 每个不同的附件对象在构造时被分配一个连续的整数ID。使用{@link #match(CharSequence, int[])}或
+ * {@link #match(CharSequence, MatchVisitor)}时匹配结果通过这些ID给出，如果重复使用计数数组或visitor，匹配过程中不会创建任何对象。
+ * <p>
+ * Instances serialized by earlier versions, which had neither the single-pass engine nor the attachment IDs,
+ * can still be deserialized, and the attachment IDs are assigned when deserializing.
+ * <p>
+ * 早期版本序列化的实例（没有单遍扫描引擎，也没有附件ID）仍然可以被反序列化，附件ID会在反序列化的时候分配。
  *  
  * @author Zhengmao HU (James)
  *
@@ -34,6 +60,28 @@ public class KeywordMatcher implements Serializable{
 	private static final long serialVersionUID = 4468307142195949790L;
 	
 	protected StringStartWithMatcher matcher;
+	protected AhoCorasickAutomaton automaton;
+	protected KeywordDefinition[] keywords;
+	/**
+	 * Distinct attachments, indexed by their IDs
+	 */
+	protected Object[] attachments;
+	protected Map<Object, Integer> attachmentIds;
+	
+	/**
+	 * Callback for receiving keyword hits.<br>
+	 * 接收关键词匹配结果的回调接口。
+	 */
+	public static interface MatchVisitor{
+		/**
+		 * Called when a keyword is matched.<br>
+		 * 匹配到一个关键词时被调用。
+		 * @param attachmentId	ID of the attachment of the keyword<br>关键词所对应的附件的ID
+		 * @param start			start position of the keyword in the text, inclusive<br>关键词在文本中的开始位置（包含）
+		 * @param end			end position of the keyword in the text, exclusive<br>关键词在文本中的结束位置（不包含）
+		 */
+		void matched(int attachmentId, int start, int end);
+	}
 	
 	/**
 	 * Constructs a copy which has exactly the same matching definition as the original one.<br>
@@ -42,7 +90,11 @@ public class KeywordMatcher implements Serializable{
 	 * @param toBeCopied	original object<br>原本
 	 */
 	public KeywordMatcher(KeywordMatcher toBeCopied){
-		this.matcher = new StringStartWithMatcher(toBeCopied.matcher);
+		this.matcher = toBeCopied.matcher;		// immutable, so it can be shared
+		this.automaton = toBeCopied.automaton;	// immutable, so it can be shared
+		this.keywords = toBeCopied.keywords;
+		this.attachments = toBeCopied.attachments;
+		this.attachmentIds = toBeCopied.attachmentIds;
 	}
 	
 	/**
@@ -70,11 +122,79 @@ public class KeywordMatcher implements Serializable{
 	 * 								是否占用更多内存，而换取速度上的提升。
 	 */
 	public KeywordMatcher(Map<String, ? extends Object> keywordDefinitions, boolean moreSpaceForSpeed) {
-		Map<String, Object> newDefinitions = new HashMap<String, Object>(keywordDefinitions.size());
+		this(keywordDefinitions, moreSpaceForSpeed, true);
+	}
+
+	/**
+	 * Constructs a matcher object with specified keywords and specified matching engine.<br>
+	 * 根据关键词列表，创建一个使用指定匹配引擎的匹配器。
+	 * 
+	 * @param keywordDefinitions	Keywords and their associated attachment as identifier.<br>
+	 * 								关键词以及与之对应的结果标识附件对象。
+	 * @param moreSpaceForSpeed		Whether or not to consume
+	 * 								more memory for better matching speed. 
+	 * 								It is used only when singlePass is false.<br>
+	 * 								是否占用更多内存，而换取速度上的提升。仅当singlePass为false时有效。
+	 * @param singlePass			true to scan the text only once with {@link AhoCorasickAutomaton}, 
+	 * 								false to try {@link StringStartWithMatcher} from every position of the text.<br>
+	 * 								true表示使用{@link AhoCorasickAutomaton}对文本只扫描一遍，
+	 * 								false表示从文本的每个位置开始尝试{@link StringStartWithMatcher}。
+	 */
+	public KeywordMatcher(Map<String, ? extends Object> keywordDefinitions, boolean moreSpaceForSpeed, boolean singlePass) {
+		keywords = new KeywordDefinition[keywordDefinitions.size()];
+		int k = 0;
 		for (Map.Entry<String, ? extends Object> entry : keywordDefinitions.entrySet()){
-			newDefinitions.put(entry.getKey(), new KeywordDefinition(entry.getKey(), entry.getValue()));
+			keywords[k++] = new KeywordDefinition(entry.getKey(), entry.getValue());
+		}
+		assignAttachmentIds();
+		
+		if (singlePass){
+			List<String> words = new ArrayList<String>(keywords.length);
+			for (KeywordDefinition keyword: keywords){
+				words.add(keyword.getKeyword());
+			}
+			automaton = new AhoCorasickAutomaton(words);
+		}else{
+			Map<String, Object> newDefinitions = new HashMap<String, Object>(keywords.length);
+			for (KeywordDefinition keyword: keywords){
+				newDefinitions.put(keyword.getKeyword(), keyword);
+			}
+			matcher = new StringStartWithMatcher(newDefinitions, moreSpaceForSpeed);
+		}
+	}
+
+	/**
+	 * Assign an ID to each distinct attachment of the keywords, and build attachments and attachmentIds.
+	 */
+	protected void assignAttachmentIds(){
+		attachmentIds = new HashMap<Object, Integer>();
+		List<Object> distinctAttachments = new ArrayList<Object>();
+		for (KeywordDefinition keyword: keywords){
+			Integer id = attachmentIds.get(keyword.attachement);
+			if (id == null){
+				id = distinctAttachments.size();
+				distinctAttachments.add(keyword.attachement);
+				attachmentIds.put(keyword.attachement, id);
+			}
+			keyword.attachmentId = id;
+		}
+		attachments = distinctAttachments.toArray();
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		if (keywords == null && matcher != null){
+			// serialized by an earlier version, in which the keywords could only be found in the matcher
+			Map<Object, Boolean> found = new IdentityHashMap<Object, Boolean>();
+			List<KeywordDefinition> list = new ArrayList<KeywordDefinition>();
+			for (Object o: matcher.attachments){
+				if (o instanceof KeywordDefinition && found.put(o, Boolean.TRUE) == null){
+					list.add((KeywordDefinition) o);
+				}
+			}
+			keywords = list.toArray(new KeywordDefinition[list.size()]);
+			assignAttachmentIds();
 		}
-		matcher = new StringStartWithMatcher(newDefinitions, moreSpaceForSpeed);
 	}
 
 	/**
@@ -88,8 +208,92 @@ public class KeywordMatcher implements Serializable{
 	 * 			返回匹配上的全部关键词所对应的attachment（在Map的Key中），以及它们出现的次数（在Map的Value中）。
 	 */
 	public Map<Object, MutableInt> match(CharSequence text){
-		Map<Object, MutableInt> result = null;
-		if (text != null && text.length() > 0){
+		MapCollector collector = new MapCollector();
+		scan(text, null, collector);
+		return collector.result;
+	}
+	
+	/**
+	 * Collects hits into a map as returned by {@link KeywordMatcher#match(CharSequence)}
+	 */
+	protected class MapCollector implements MatchVisitor{
+		Map<Object, MutableInt> result;
+		
+		@Override
+		public void matched(int attachmentId, int start, int end) {
+			if (result == null){
+				result = new HashMap<Object, MutableInt>(); 
+			}
+			Object attachment = attachments[attachmentId];
+			MutableInt count = result.get(attachment);
+			if (count == null){
+				result.put(attachment, new MutableInt(1));
+			}else{
+				count.increment();
+			}
+		}
+	}
+	
+	/**
+	 * Do the matching test, and add the number of occurrences of each attachment into an array.<br>
+	 * 进行匹配，并把每个附件对象被匹配到的次数加到数组中。
+	 * 
+	 * @param text		the text string to be tested<br>待匹配的文本
+	 * @param counts	The array into which the numbers of occurrences will be added, indexed by attachment ID.
+	 * 					Its length must be at least {@link #getAttachmentCount()}.
+	 * 					It is not cleared before adding, so it can be used to accumulate the counts of many texts.<br>
+	 * 					以附件ID为下标的计数数组，匹配次数会被加到其中。它的长度不能小于{@link #getAttachmentCount()}。
+	 * 					加之前不会被清零，所以可以用来累计多个文本的匹配次数。
+	 * @return	total number of occurrences of all keywords<br>所有关键词匹配到的总次数
+	 */
+	public int match(CharSequence text, int[] counts){
+		if (counts.length < attachments.length){
+			throw new IllegalArgumentException("The length of the counts array must be at least " + attachments.length);
+		}
+		return scan(text, counts, null);
+	}
+
+	/**
+	 * Do the matching test, and notify each occurrence of keywords to a visitor.<br>
+	 * 进行匹配，并将匹配到的每个关键词通知给visitor。
+	 * 
+	 * @param text		the text string to be tested<br>待匹配的文本
+	 * @param visitor	the visitor to be notified, in the order of the keywords' positions in the text<br>
+	 * 					接收通知的visitor，通知的顺序与关键词在文本中的位置顺序一致
+	 * @return	total number of occurrences of all keywords<br>所有关键词匹配到的总次数
+	 */
+	public int match(CharSequence text, MatchVisitor visitor){
+		return scan(text, null, visitor);
+	}
+	
+	/**
+	 * Find keywords in the text from left to right. At each position the longest keyword is matched, 
+	 * and then the matching continues after it.
+	 * @param text		the text
+	 * @param counts	counts array to be updated, can be null
+	 * @param visitor	visitor to be notified, can be null
+	 * @return	total number of occurrences of all keywords
+	 */
+	protected int scan(CharSequence text, int[] counts, MatchVisitor visitor){
+		int hits = 0;
+		if (text == null || text.length() == 0){
+			return hits;
+		}
+		if (automaton != null){
+			int i = 0;
+			long found;
+			while ((found = automaton.find(text, i)) != -1){
+				i = AhoCorasickAutomaton.endOf(found);
+				KeywordDefinition keyword = keywords[AhoCorasickAutomaton.keywordOf(found)];
+				hits ++;
+				if (counts != null){
+					counts[keyword.attachmentId] ++;
+				}
+				if (visitor != null){
+					visitor.matched(keyword.attachmentId, i - keyword.keyword.length(), i);
+				}
+			}
+		}else{
 			int i = 0;
 			while (i < text.length()){
 				Object o = matcher.match(text, i);
@@ -97,23 +301,74 @@ public class KeywordMatcher implements Serializable{
 					i ++;
 				}else{
 					KeywordDefinition keyword = (KeywordDefinition) o;
-					String word = keyword.getKeyword();
-					Object attachment = keyword.getAttachement();
-					i += word.length();
-					if (result == null){
-						result = new HashMap<Object, MutableInt>(); 
+					int start = i;
+					i += keyword.keyword.length();
+					hits ++;
+					if (counts != null){
+						counts[keyword.attachmentId] ++;
 					}
-					if (result.containsKey(attachment)){
-						result.get(attachment).increment();
-					}else{
-						result.put(attachment, new MutableInt(1));
+					if (visitor != null){
+						visitor.matched(keyword.attachmentId, start, i);
 					}
 				}
 			}
 		}
+		return hits;
+	}
+	
+	/**
+	 * Convert the counts array into the same form as returned by {@link #match(CharSequence)}.<br>
+	 * 把计数数组转换为与{@link #match(CharSequence)}的返回结果相同的形式。
+	 * 
+	 * @param counts	the counts array indexed by attachment ID<br>以附件ID为下标的计数数组
+	 * @return	attachments (as the Key in the Map) and occurrences count (as the Value in the Map), 
+	 * 			or null if all the counts are zero.<br>
+	 * 			附件对象（在Map的Key中）以及它们出现的次数（在Map的Value中），如果所有计数都为0则返回null。
+	 */
+	public Map<Object, MutableInt> toMap(int[] counts){
+		Map<Object, MutableInt> result = null;
+		for (int id = 0; id < attachments.length; id ++){
+			if (counts[id] != 0){
+				if (result == null){
+					result = new HashMap<Object, MutableInt>(); 
+				}
+				result.put(attachments[id], new MutableInt(counts[id]));
+			}
+		}
 		return result;
 	}
 	
+	/**
+	 * Get the number of distinct attachments, which is also the minimal length of the counts array.<br>
+	 * 获得不同的附件对象的个数，也就是计数数组的最小长度。
+	 * @return	number of distinct attachments<br>不同的附件对象的个数
+	 */
+	public int getAttachmentCount(){
+		return attachments.length;
+	}
+	
+	/**
+	 * Get the attachment by its ID.<br>
+	 * 根据ID获得附件对象。
+	 * @param attachmentId	ID of the attachment<br>附件ID
+	 * @return	the attachment<br>附件对象
+	 */
+	public Object getAttachment(int attachmentId){
+		return attachments[attachmentId];
+	}
+	
+	/**
+	 * Get the ID of an attachment.<br>
+	 * 获得附件对象的ID。
+	 * @param attachment	the attachment<br>附件对象
+	 * @return	ID of the attachment, or -1 if it is not an attachment of any keyword<br>
+	 * 			附件ID，如果它不是任何关键词的附件则返回-1
+	 */
+	public int getAttachmentId(Object attachment){
+		Integer id = attachmentIds.get(attachment);
+		return id == null ? -1 : id;
+	}
+	
 }
 
 /**
@@ -127,12 +382,18 @@ class KeywordDefinition implements Serializable{
 
 	String keyword;
 	Object attachement;
+	int attachmentId;
 	
 	KeywordDefinition(String keyword, Object attachment){
 		this.keyword = keyword;
 		this.attachement = attachment;
 	}
 	
+	KeywordDefinition(String keyword, Object attachment, int attachmentId){
+		this(keyword, attachment);
+		this.attachmentId = attachmentId;
+	}
+	
 	public String getKeyword() {
 		return keyword;
 	}
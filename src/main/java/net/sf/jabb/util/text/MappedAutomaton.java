@@ -0,0 +1,336 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.text;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * State machine stepping directly from transition tables in a ByteBuffer, 
+ * which is normally a memory-mapped snapshot file.<br>
+ * 直接使用ByteBuffer（一般是内存映射的快照文件）中的状态转换表的状态机。
+ * <p>
+ * The tables are the same as those of dk.brics.automaton.RunAutomaton, plus the index of the attachment
+ * of each state. Nothing is copied onto the heap when loading, so that it takes little time 
+ * regardless of the size of the tables, and different JVMs mapping the same file share the page cache.
+ * It is immutable, so one instance can be shared by many threads.
+ * <p>
+ * 状态转换表与dk.brics.automaton.RunAutomaton的相同，另外还有每个状态所对应的附件的序号。
+ * 加载时不会把状态转换表复制到堆中，所以无论表有多大，加载都很快，而且映射同一文件的多个JVM共用操作系统的页面缓存。
+ * 它是不可变的，所以一个实例可以被多个线程共用。
+ * <p>
+ * The table mapping each of the 65536 characters to its character interval is written only when
+ * the transition table is larger than it, for small state machines the interval is found by binary search
+ * over the start points instead, the same as RunAutomaton does when it is not tableized.
+ * <p>
+ * 每个字符所属字符区间的对照表只有在状态转换表比它大的时候才会写出，对于小的状态机则通过对区间起点进行二分查找来确定字符区间，
+ * 这与RunAutomaton在不使用对照表时的做法相同。
+ * <p>
+ * Layout of the data, all numbers are big-endian:
+ * <pre>
+ * int		magic number
+ * int		version
+ * int		number of states
+ * int		initial state
+ * int		number of character intervals
+ * int		number of distinct attachments
+ * int		number of entries in the character interval table, either 0 or 65536 (not in version 1, where it is always 65536)
+ * int[]	attachment index of each state, -1 means no attachment
+ * int[]	transitions, states times character intervals, -1 means no transition
+ * char[]	start points of the character intervals
+ * char[]	character interval of each of the 65536 characters, if there is the table
+ * byte[]	whether each state is an accept state
+ * int		length of the trailer
+ * byte[]	the trailer, which is written and read by {@link StartWithMatcher}
+ * </pre>
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+public class MappedAutomaton implements Serializable{
+	private static final long serialVersionUID = 2366480651522860617L;
+
+	static final int MAGIC = 0x4A53574D;	// JSWM
+	static final int VERSION = 2;
+	static final int HEADER_LENGTH = 7 * 4;
+	static final int HEADER_LENGTH_V1 = 6 * 4;
+	static final int NUM_CHARS = Character.MAX_VALUE + 1;
+	
+	transient protected ByteBuffer buffer;
+	transient protected int size;
+	transient protected int initialState;
+	transient protected int numPoints;
+	transient protected int numAttachments;
+	transient protected int attachmentIndexOffset;
+	transient protected int transitionsOffset;
+	transient protected int pointsOffset;
+	/**
+	 * -1 if there is no character interval table
+	 */
+	transient protected int classmapOffset;
+	transient protected int acceptOffset;
+	transient protected int trailerOffset;
+
+	/**
+	 * Create an instance backed by the data in a ByteBuffer.
+	 * The content of the ByteBuffer must not be changed afterwards.<br>
+	 * 根据ByteBuffer中的数据创建实例，之后不能再改变ByteBuffer的内容。
+	 * 
+	 * @param data	the data, from position 0 to the limit.<br>数据，从0到limit。
+	 */
+	public MappedAutomaton(ByteBuffer data){
+		init(data);
+	}
+	
+	protected void init(ByteBuffer data){
+		this.buffer = data.duplicate();
+		if (buffer.limit() < HEADER_LENGTH_V1 || buffer.getInt(0) != MAGIC){
+			throw new IllegalArgumentException("Not a matcher snapshot.");
+		}
+		int version = buffer.getInt(4);
+		int classmapEntries;
+		if (version == 1){
+			attachmentIndexOffset = HEADER_LENGTH_V1;
+			classmapEntries = NUM_CHARS;
+		}else if (version == VERSION && buffer.limit() >= HEADER_LENGTH){
+			attachmentIndexOffset = HEADER_LENGTH;
+			classmapEntries = buffer.getInt(24);
+		}else{
+			throw new IllegalArgumentException("Unsupported version of matcher snapshot: " + version);
+		}
+		size = buffer.getInt(8);
+		initialState = buffer.getInt(12);
+		numPoints = buffer.getInt(16);
+		numAttachments = buffer.getInt(20);
+		transitionsOffset = attachmentIndexOffset + size * 4;
+		pointsOffset = transitionsOffset + size * numPoints * 4;
+		classmapOffset = classmapEntries == 0 ? -1 : pointsOffset + numPoints * 2;
+		acceptOffset = pointsOffset + numPoints * 2 + classmapEntries * 2;
+		trailerOffset = acceptOffset + size;
+		if (size <= 0 || numPoints <= 0 || (long)size * numPoints * 4 > Integer.MAX_VALUE
+				|| (classmapEntries != 0 && classmapEntries != NUM_CHARS)
+				|| trailerOffset < 0 || buffer.limit() < trailerOffset + 4 
+				|| buffer.limit() < trailerOffset + 4 + buffer.getInt(trailerOffset)){
+			throw new IllegalArgumentException("Matcher snapshot is truncated or corrupted.");
+		}
+	}
+	
+	/**
+	 * Write the tables of a RunAutomaton in the format that can be loaded by this class.<br>
+	 * 把RunAutomaton的状态转换表按照本类可以加载的格式写出。
+	 * 
+	 * @param runAutomaton		the state machine<br>状态机
+	 * @param attachmentIndex	index of the attachment of each state, -1 means no attachment<br>每个状态对应的附件的序号，-1表示没有附件
+	 * @param numAttachments	number of distinct attachments<br>不同附件的个数
+	 * @param trailer			the trailer<br>附加数据
+	 * @param out				the output<br>输出
+	 * @throws IOException		if failed to write
+	 */
+	static public void write(RunAutomaton runAutomaton, int[] attachmentIndex, int numAttachments, byte[] trailer, DataOutputStream out) throws IOException{
+		int size = runAutomaton.getSize();
+		char[] points = runAutomaton.getCharIntervals();
+		boolean withClassmap = (long)size * points.length * 4 > NUM_CHARS * 2;
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(size);
+		out.writeInt(runAutomaton.getInitialState());
+		out.writeInt(points.length);
+		out.writeInt(numAttachments);
+		out.writeInt(withClassmap ? NUM_CHARS : 0);
+		for (int s = 0; s < size; s ++){
+			out.writeInt(attachmentIndex[s]);
+		}
+		for (int s = 0; s < size; s ++){
+			for (char c: points){
+				out.writeInt(runAutomaton.step(s, c));
+			}
+		}
+		for (char c: points){
+			out.writeChar(c);
+		}
+		if (withClassmap){
+			int interval = 0;
+			for (int c = 0; c < NUM_CHARS; c ++){
+				while (interval + 1 < points.length && points[interval + 1] <= c){
+					interval ++;
+				}
+				out.writeChar(interval);
+			}
+		}
+		for (int s = 0; s < size; s ++){
+			out.writeByte(runAutomaton.isAccept(s) ? 1 : 0);
+		}
+		out.writeInt(trailer.length);
+		out.write(trailer);
+	}
+	
+	/**
+	 * Write all the data backing this instance.<br>
+	 * 把本实例所依据的数据全部写出。
+	 * 
+	 * @param out	the output<br>输出
+	 * @throws IOException	if failed to write
+	 */
+	public void write(DataOutputStream out) throws IOException{
+		write(out, getLength());
+	}
+	
+	/**
+	 * Write the tables of this instance with a different trailer.<br>
+	 * 把本实例的状态转换表与另外的附加数据一起写出。
+	 * 
+	 * @param trailer	the trailer<br>附加数据
+	 * @param out		the output<br>输出
+	 * @throws IOException	if failed to write
+	 */
+	public void write(byte[] trailer, DataOutputStream out) throws IOException{
+		write(out, trailerOffset);
+		out.writeInt(trailer.length);
+		out.write(trailer);
+	}
+	
+	protected void write(DataOutputStream out, int length) throws IOException{
+		ByteBuffer data = buffer.duplicate();
+		data.position(0);
+		data.limit(length);
+		byte[] chunk = new byte[64 * 1024];
+		while (data.hasRemaining()){
+			int l = Math.min(chunk.length, data.remaining());
+			data.get(chunk, 0, l);
+			out.write(chunk, 0, l);
+		}
+	}
+	
+	/**
+	 * Get the trailer as a byte array.<br>
+	 * 取得附加数据。
+	 * 
+	 * @return	the trailer
+	 */
+	public byte[] getTrailer(){
+		ByteBuffer data = buffer.duplicate();
+		byte[] trailer = new byte[data.getInt(trailerOffset)];
+		data.position(trailerOffset + 4);
+		data.get(trailer);
+		return trailer;
+	}
+	
+	/**
+	 * Get the length of the data, up to the end of the trailer.
+	 * Anything after it in the ByteBuffer is not part of this state machine.<br>
+	 * 取得数据的长度，到附加数据的末尾为止。ByteBuffer中在此之后的内容不属于本状态机。
+	 * @return	the length in bytes
+	 */
+	public int getLength(){
+		return trailerOffset + 4 + buffer.getInt(trailerOffset);
+	}
+	
+	/**
+	 * Get the initial state.<br>
+	 * 取得初始状态。
+	 * @return	the initial state
+	 */
+	public int getInitialState(){
+		return initialState;
+	}
+	
+	/**
+	 * Get the number of states.<br>
+	 * 取得状态的个数。
+	 * @return	number of states
+	 */
+	public int getSize(){
+		return size;
+	}
+	
+	/**
+	 * Get the number of distinct attachments.<br>
+	 * 取得不同附件的个数。
+	 * @return	number of distinct attachments
+	 */
+	public int getAttachmentCount(){
+		return numAttachments;
+	}
+	
+	/**
+	 * Make a transition.<br>
+	 * 进行状态转换。
+	 * @param state	the current state
+	 * @param c		the character
+	 * @return	the new state, or -1 if there is no transition
+	 */
+	public int step(int state, char c){
+		int interval;
+		if (classmapOffset >= 0){
+			interval = buffer.getChar(classmapOffset + (c << 1));
+		}else{
+			// the last interval starting at or before c, the first one always starts at 0
+			int low = 0;
+			int high = numPoints;
+			while (high - low > 1){
+				int mid = (low + high) >>> 1;
+				if (buffer.getChar(pointsOffset + (mid << 1)) > c){
+					high = mid;
+				}else{
+					low = mid;
+				}
+			}
+			interval = low;
+		}
+		return buffer.getInt(transitionsOffset + ((state * numPoints + interval) << 2));
+	}
+	
+	/**
+	 * Test if a state is an accept state.<br>
+	 * 判断是否是接受状态。
+	 * @param state	the state
+	 * @return	true if it is an accept state
+	 */
+	public boolean isAccept(int state){
+		return buffer.get(acceptOffset + state) != 0;
+	}
+	
+	/**
+	 * Get the index of the attachment of a state.<br>
+	 * 取得状态所对应的附件的序号。
+	 * @param state	the state
+	 * @return	index of the attachment, or -1 if the state has no attachment
+	 */
+	public int getAttachmentIndex(int state){
+		return buffer.getInt(attachmentIndexOffset + (state << 2));
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		out.defaultWriteObject();
+		out.writeInt(getLength());
+		write(new DataOutputStream(out));
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		byte[] data = new byte[in.readInt()];
+		in.readFully(data);
+		init(ByteBuffer.wrap(data));
+	}
+
+}
@@ -16,7 +16,11 @@ limitations under the License.
 
 package net.sf.jabb.util.text;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -41,6 +45,12 @@ import dk.brics.automaton.RunAutomaton;
  * 这个类的一个实例可用来多次对不同的字符串进行替换，每次替换时的性能开销很小。因此它适合用在替换条件固定，
  * 但待替换字符串数量巨大的情形下。
  * 注意这里的正则表达式不支持“^”和“$”。
+ * <p>
+ * Large text can be processed in streaming manner with {@link #replaceAll(Reader, Writer)}
+ * and {@link #replaceFirst(Reader, Writer)}, without the need to load it into memory entirely.
+ * <p>
+ * 可以用{@link #replaceAll(Reader, Writer)}和{@link #replaceFirst(Reader, Writer)}以流的方式处理大量文本，
+ * 而不需要将其全部加载到内存中。
  * 
  * @author Zhengmao HU (James)
  *
@@ -104,6 +114,11 @@ public class RegExpSubstitution implements Serializable{
 		runAutomation = new RunAutomaton(BasicOperations.union(list), moreSpaceForSpeed);
 	}
 	
+	/**
+	 * Default size of the buffer used in streaming replacement
+	 */
+	static protected final int DEFAULT_BUFFER_SIZE = 8192;
+
 	/**
 	 * Do replacement.<br>
 	 * 进行替换。
@@ -116,16 +131,166 @@ public class RegExpSubstitution implements Serializable{
 	 * 				替换后的结果；如果没有发生替换，则结果与原来输入的字符串完全相同。
 	 */
 	protected String replace(CharSequence text, boolean firstOnly){
-		StringBuilder sb = new StringBuilder();
 		AutomatonMatcher am = runAutomation.newMatcher(text);
+		if (!am.find()){
+			return text.toString();		// for String it is the original instance
+		}
+		return replace(text, am, firstOnly).toString();
+	}
+	
+	/**
+	 * Do replacement after the first occurrence had been found.<br>
+	 * 在已经找到第一个出现的地方之后进行替换。
+	 * 
+	 * @param text			The original text.<br>替换前的原始文本。
+	 * @param am			The matcher that has found the first occurrence.<br>已经找到第一个出现的地方的匹配器。
+	 * @param firstOnly		If true, then only do replacement upon the first occurrence; 
+	 * 						otherwise, replace in all the occurrences.<br>
+	 * 						如果为true则只替换第一个出现的地方，否则全部替换。
+	 * @return		The result of substitution.<br>替换后的结果。
+	 */
+	protected StringBuilder replace(CharSequence text, AutomatonMatcher am, boolean firstOnly){
+		StringBuilder sb = new StringBuilder(text.length() + replacement.length());
 		int lastEnd = 0;
-		while (am.find() && (firstOnly == false || lastEnd == 0)){
+		do{
 			sb.append(text, lastEnd, am.start());
 			lastEnd = am.end();
 			sb.append(replacement);
-		}
+		}while(!firstOnly && am.find());
 		sb.append(text, lastEnd, text.length());
-		return sb.toString();
+		return sb;
+	}
+	
+	/**
+	 * Do replacement over a CharBuffer.<br>
+	 * 对CharBuffer进行替换。
+	 * 
+	 * @param text	The original text, from its position to its limit.<br>替换前的原始文本，从position到limit。
+	 * @param firstOnly		If true, then only do replacement upon the first occurrence; 
+	 * 						otherwise, replace in all the occurrences.<br>
+	 * 						如果为true则只替换第一个出现的地方，否则全部替换。
+	 * @return		If no match found, the original CharBuffer instance; 
+	 * 				otherwise a new CharBuffer containing the result and ready for reading.<br>
+	 * 				如果没有发生替换，则返回原来的CharBuffer实例；否则返回一个新的包含替换结果并且可以直接读取的CharBuffer。
+	 */
+	protected CharBuffer replace(CharBuffer text, boolean firstOnly){
+		AutomatonMatcher am = runAutomation.newMatcher(text);
+		if (!am.find()){
+			return text;
+		}
+		StringBuilder sb = replace(text, am, firstOnly);
+		char[] result = new char[sb.length()];
+		sb.getChars(0, result.length, result, 0);
+		return CharBuffer.wrap(result);
+	}
+	
+	/**
+	 * Do replacement in streaming manner. 
+	 * Text is read into a buffer and written out as soon as it is known that it will not be part of any occurrence,
+	 * so the lookahead is bounded by the longest text the regular expressions can run over from a position.
+	 * The buffer grows only when such text is longer than the buffer.<br>
+	 * 以流的方式进行替换。文本被读入缓冲区，一旦确定不属于任何匹配就被写出，
+	 * 所以向前查看的长度不会超过正则表达式从一个位置开始所能经过的最长文本。只有当这样的文本比缓冲区更长的时候缓冲区才会增长。
+	 * 
+	 * @param reader		The original text.<br>替换前的原始文本。
+	 * @param writer		To where the result will be written.<br>替换后的结果被写到这里。
+	 * @param firstOnly		If true, then only do replacement upon the first occurrence; 
+	 * 						otherwise, replace in all the occurrences.<br>
+	 * 						如果为true则只替换第一个出现的地方，否则全部替换。
+	 * @return	Number of occurrences replaced.<br>被替换的地方的个数。
+	 * @throws IOException	If failed to read or write.<br>如果读写失败。
+	 */
+	protected long replace(Reader reader, Writer writer, boolean firstOnly) throws IOException{
+		char[] buf = new char[DEFAULT_BUFFER_SIZE];
+		int len = 0;			// number of chars in the buffer
+		int pos = 0;			// where the next search begins
+		int pending = 0;		// chars from here to pos have not been written
+		boolean eof = false;
+		long count = 0;
+		int initialState = runAutomation.getInitialState();
+		boolean emptyMatch = runAutomation.isAccept(initialState);
+		
+		while(true){
+			if (firstOnly && count > 0){
+				// copy the rest
+				writer.write(buf, pending, len - pending);
+				int n;
+				while ((n = reader.read(buf)) != -1){
+					writer.write(buf, 0, n);
+				}
+				break;
+			}
+			
+			// find the longest occurrence starting from pos
+			int matchEnd = emptyMatch ? pos : -1;
+			int p = initialState;
+			int i = pos;
+			while(true){
+				if (i == len){
+					if (eof){
+						break;
+					}
+					// make room and read more
+					writer.write(buf, pending, pos - pending);
+					if (pos > 0){
+						System.arraycopy(buf, pos, buf, 0, len - pos);
+						len -= pos;
+						i -= pos;
+						if (matchEnd >= 0){
+							matchEnd -= pos;
+						}
+						pos = 0;
+					}else if (len == buf.length){
+						char[] newBuf = new char[buf.length * 2];
+						System.arraycopy(buf, 0, newBuf, 0, len);
+						buf = newBuf;
+					}
+					pending = pos;
+					int n = reader.read(buf, len, buf.length - len);
+					if (n == -1){
+						eof = true;
+						continue;
+					}
+					len += n;
+				}
+				p = runAutomation.step(p, buf[i]);
+				if (p == -1){
+					break;
+				}
+				if (runAutomation.isAccept(p)){
+					matchEnd = i + 1;
+				}
+				i ++;
+			}
+			
+			if (pos == len && eof){
+				if (matchEnd == pos){		// the regular expressions match empty string
+					writer.write(buf, pending, pos - pending);
+					writer.write(replacement);
+					count ++;
+				}else{
+					writer.write(buf, pending, len - pending);
+				}
+				break;
+			}
+			if (matchEnd > pos){
+				writer.write(buf, pending, pos - pending);
+				writer.write(replacement);
+				count ++;
+				pos = matchEnd;
+				pending = pos;
+			}else{
+				if (matchEnd == pos){		// empty occurrence, the char here is kept
+					writer.write(buf, pending, pos - pending);
+					writer.write(replacement);
+					count ++;
+					pending = pos;
+				}
+				pos ++;
+			}
+		}
+		writer.flush();
+		return count;
 	}
 	
 	/**
@@ -158,22 +323,69 @@ public class RegExpSubstitution implements Serializable{
 	 * 				替换后的结果；如果没有发生替换，则结果与原来输入的字符串完全相同。
 	 */
 	public String replaceLast(CharSequence text){
-		StringBuilder sb = new StringBuilder();
 		AutomatonMatcher am = runAutomation.newMatcher(text);
-		int start = 0;
-		int end = 0;
-		while (am.find()){
+		if (!am.find()){
+			return text.toString();		// for String it is the original instance
+		}
+		int start;
+		int end;
+		do{
 			start = am.start();
 			end = am.end();
-		}
-		if (start != 0 || end != 0){
-			sb.append(text, 0, start);
-			sb.append(replacement);
-			sb.append(text, end, text.length());
-		}else{
-			sb.append(text);
-		}
+		}while (am.find());
+		StringBuilder sb = new StringBuilder(text.length() + replacement.length());
+		sb.append(text, 0, start);
+		sb.append(replacement);
+		sb.append(text, end, text.length());
 		return sb.toString();
 	}
+	
+	/**
+	 * Replace only the first occurrence.<br>
+	 * 只替换第一个出现的地方
+	 * @param text	The original text, from its position to its limit.<br>替换前的原始文本，从position到limit。
+	 * @return		If no match found, the original CharBuffer instance; 
+	 * 				otherwise a new CharBuffer containing the result and ready for reading.<br>
+	 * 				如果没有发生替换，则返回原来的CharBuffer实例；否则返回一个新的包含替换结果并且可以直接读取的CharBuffer。
+	 */
+	public CharBuffer replaceFirst(CharBuffer text){
+		return replace(text, true);
+	}
+	
+	/**
+	 * Replace all the occurrences.<br>
+	 * 替换所有出现的地方
+	 * @param text	The original text, from its position to its limit.<br>替换前的原始文本，从position到limit。
+	 * @return		If no match found, the original CharBuffer instance; 
+	 * 				otherwise a new CharBuffer containing the result and ready for reading.<br>
+	 * 				如果没有发生替换，则返回原来的CharBuffer实例；否则返回一个新的包含替换结果并且可以直接读取的CharBuffer。
+	 */
+	public CharBuffer replaceAll(CharBuffer text){
+		return replace(text, false);
+	}
+	
+	/**
+	 * Replace only the first occurrence, in streaming manner. Neither the reader nor the writer will be closed.<br>
+	 * 以流的方式只替换第一个出现的地方。读写对象都不会被关闭。
+	 * @param reader	The original text.<br>替换前的原始文本。
+	 * @param writer	To where the result will be written.<br>替换后的结果被写到这里。
+	 * @return	Number of occurrences replaced, either 0 or 1.<br>被替换的地方的个数，0或1。
+	 * @throws IOException	If failed to read or write.<br>如果读写失败。
+	 */
+	public long replaceFirst(Reader reader, Writer writer) throws IOException{
+		return replace(reader, writer, true);
+	}
+	
+	/**
+	 * Replace all the occurrences, in streaming manner. Neither the reader nor the writer will be closed.<br>
+	 * 以流的方式替换所有出现的地方。读写对象都不会被关闭。
+	 * @param reader	The original text.<br>替换前的原始文本。
+	 * @param writer	To where the result will be written.<br>替换后的结果被写到这里。
+	 * @return	Number of occurrences replaced.<br>被替换的地方的个数。
+	 * @throws IOException	If failed to read or write.<br>如果读写失败。
+	 */
+	public long replaceAll(Reader reader, Writer writer) throws IOException{
+		return replace(reader, writer, false);
+	}
 
 }
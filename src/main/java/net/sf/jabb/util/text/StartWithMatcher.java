@@ -16,15 +16,28 @@ limitations under the License.
 
 package net.sf.jabb.util.text;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import dk.brics.automaton.Automaton;
 import dk.brics.automaton.BasicOperations;
@@ -66,6 +79,24 @@ import dk.brics.automaton.RunAutomaton;
  * <p>
  * 底层实现基于
  * <a href="http://www.brics.dk/automaton/">dk.brics.automaton.RunAutomaton</a>。
+ * <p>
+ * Instances are not modified by matching, so they are thread-safe and can be shared by many threads.
+ * <p>
+ * 匹配过程不会修改实例，所以实例是线程安全的，可以被多个线程共用。
+ * <p>
+ * Building the state machine can take long time when there are many matching definitions.
+ * The state machine can be saved as a snapshot with {@link #saveSnapshot(File)} once,
+ * and then be loaded by the loadSnapshot(File) method of the subclasses.
+ * The loaded instance steps states directly from the memory-mapped file.
+ * Attachments that are StartWithMatcher(s) themselves, such as the matchers of the second step 
+ * in {@link UrlStartWithMatcher}, are saved as sections of the same snapshot and are mapped as well.
+ * Other attachments are de-serialized onto the heap when loading, so the time of loading 
+ * depends on the number and size of distinct attachments, not on the size of the state machines.
+ * <p>
+ * 当匹配方式定义很多的时候，创建状态机会花很长时间。可以一次性地用{@link #saveSnapshot(File)}把状态机保存为快照，
+ * 然后用子类的loadSnapshot(File)方法加载。加载得到的实例直接使用内存映射的文件进行状态转换。
+ * 本身就是StartWithMatcher的附件（比如{@link UrlStartWithMatcher}中第二步的匹配器）被保存为同一快照中的分段，也同样被内存映射。
+ * 其他附件在加载时被反序列化到堆中，所以加载所需的时间取决于不同附件的个数和大小，而不是状态机的大小。
  * 
  * @author Zhengmao HU (James)
  *
@@ -78,23 +109,57 @@ public class StartWithMatcher implements Serializable{
 	protected RunAutomaton runAutomaton;
 	/**
 	 * runAutomation的每一个state对应一个attachment对象。
+	 * If the instance was loaded from a snapshot, it contains only distinct attachments,
+	 * and {@link MappedAutomaton#getAttachmentIndex(int)} tells which one a state corresponds to.
 	 */
 	protected Object[] attachments;
+	/**
+	 * The state machine backed by a snapshot, it is null unless the instance was loaded from a snapshot.
+	 * When it is not null, runAutomaton is null.<br>
+	 * 基于快照的状态机，仅当实例是从快照加载的时候才不为null，此时runAutomaton为null。
+	 */
+	protected MappedAutomaton mappedAutomaton;
 	
 	/**
 	 * Create a copy, the copy will have exactly the same matching 
 	 * definitions as the original copy.<br>
 	 * 创建一个副本，这个副本与原先的对象具有完全相同匹配方式。
+	 * <p>
+	 * The internal state machine and attachments are shared with the original copy, so that copying
+	 * is cheap regardless of the number of matching definitions.
+	 * Since matching never modifies them, there is no need to make copies for different threads,
+	 * one instance can be used by many threads concurrently.
+	 * <p>
+	 * 副本与原本共用内部状态机和附件，所以无论匹配方式定义有多少，复制都很快。
+	 * 由于匹配过程不会修改它们，所以不需要为每个线程创建副本，一个实例可以被多个线程同时使用。
 	 * 
 	 * @param toBeCopied	The original copy.<br>原本。
 	 */
 	public StartWithMatcher(StartWithMatcher toBeCopied){
-		this.attachments = toBeCopied.attachments;
-		try {
-			this.runAutomaton = toBeCopied.copyRunAutomaton();
-		} catch (Exception e) {
-			throw new UnsupportedOperationException(e);
-		}
+		this(toBeCopied, false);
+	}
+
+	/**
+	 * Create a copy, the copy will have exactly the same matching 
+	 * definitions as the original copy.<br>
+	 * 创建一个副本，这个副本与原先的对象具有完全相同匹配方式。
+	 * <p>
+	 * The internal state machine (dk.brics.automaton.RunAutomaton) is always shared because it is immutable.
+	 * The attachments array is copied only when asked, which is needed only if the copy is going to be
+	 * modified by subclasses, for example through {@link #setAttachmentByExample(String, Object, String)}.
+	 * <p>
+	 * 内部状态机（dk.brics.automaton.RunAutomaton）是不可变的，所以总是共用。
+	 * 仅当需要时才复制附件数组，只有在子类要修改副本（比如通过{@link #setAttachmentByExample(String, Object, String)}）时才需要这样做。
+	 * 
+	 * @param toBeCopied		The original copy.<br>原本。
+	 * @param copyAttachments	Whether or not to make a copy of the attachments array
+	 * 							instead of sharing it with the original copy.<br>
+	 * 							是否复制附件数组，而不是与原本共用。
+	 */
+	protected StartWithMatcher(StartWithMatcher toBeCopied, boolean copyAttachments){
+		this.runAutomaton = toBeCopied.runAutomaton;
+		this.mappedAutomaton = toBeCopied.mappedAutomaton;
+		this.attachments = copyAttachments ? toBeCopied.attachments.clone() : toBeCopied.attachments;
 	}
 
 	/**
@@ -122,6 +187,239 @@ public class StartWithMatcher implements Serializable{
 	}
 
 	
+	/**
+	 * Placeholder of a StartWithMatcher attachment in the trailer of a snapshot,
+	 * the attachment itself is saved as a snapshot section after the trailer.
+	 */
+	protected static class SnapshotSection implements Serializable{
+		private static final long serialVersionUID = -2853396219616185226L;
+		protected String className;
+		/**
+		 * Offset from the end of the trailer
+		 */
+		protected int offset;
+		protected int length;
+		
+		protected SnapshotSection(String className, int offset, int length){
+			this.className = className;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * Serializes attachments for the trailer, with StartWithMatcher(s) written as snapshot sections
+	 */
+	protected static class SnapshotOutputStream extends ObjectOutputStream{
+		protected ByteArrayOutputStream sections;
+		
+		protected SnapshotOutputStream(OutputStream out, ByteArrayOutputStream sections) throws IOException{
+			super(out);
+			this.sections = sections;
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException{
+			if (obj instanceof StartWithMatcher){
+				int offset = sections.size();
+				((StartWithMatcher) obj).saveSnapshot(sections);
+				return new SnapshotSection(obj.getClass().getName(), offset, sections.size() - offset);
+			}
+			return obj;
+		}
+	}
+	
+	/**
+	 * De-serializes attachments from the trailer, with snapshot sections mapped as StartWithMatcher(s)
+	 */
+	protected static class SnapshotInputStream extends ObjectInputStream{
+		protected ByteBuffer snapshot;
+		protected int sectionsOffset;
+		
+		protected SnapshotInputStream(InputStream in, ByteBuffer snapshot, int sectionsOffset) throws IOException{
+			super(in);
+			this.snapshot = snapshot;
+			this.sectionsOffset = sectionsOffset;
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException{
+			if (obj instanceof SnapshotSection){
+				SnapshotSection section = (SnapshotSection) obj;
+				long start = (long)sectionsOffset + section.offset;
+				if (section.offset < 0 || section.length < 0 || start + section.length > snapshot.limit()){
+					throw new IllegalArgumentException("Matcher snapshot is truncated or corrupted.");
+				}
+				ByteBuffer data = snapshot.duplicate();
+				data.position((int) start);
+				data.limit((int) start + section.length);
+				try{
+					Class<?> c = Class.forName(section.className, true, StartWithMatcher.class.getClassLoader());
+					if (!StartWithMatcher.class.isAssignableFrom(c)){
+						throw new IllegalArgumentException("Not a matcher in the snapshot: " + section.className);
+					}
+					Constructor<?> constructor = c.getDeclaredConstructor(ByteBuffer.class);
+					constructor.setAccessible(true);
+					return constructor.newInstance(data.slice());
+				}catch(InvocationTargetException e){
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException){
+						throw (IOException) cause;
+					}else if (cause instanceof RuntimeException){
+						throw (RuntimeException) cause;
+					}
+					throw new IOException("Failed to load " + section.className + " in the snapshot.", cause);
+				}catch(Exception e){
+					if (e instanceof RuntimeException){
+						throw (RuntimeException) e;
+					}
+					throw new IOException("Failed to load " + section.className + " in the snapshot.", e);
+				}
+			}
+			return obj;
+		}
+	}
+	
+	/**
+	 * Create an instance from a snapshot saved by {@link #saveSnapshot(OutputStream)}.
+	 * The state machine is not copied out of the ByteBuffer, 
+	 * so the content of the ByteBuffer must not be changed afterwards.<br>
+	 * 根据用{@link #saveSnapshot(OutputStream)}保存的快照创建实例。
+	 * 状态机不会被复制出ByteBuffer，所以之后不能再改变ByteBuffer的内容。
+	 * 
+	 * @param snapshot	The snapshot, from position 0 to the limit.<br>快照，从0到limit。
+	 * @throws IOException	If the attachments in the snapshot cannot be de-serialized.<br>如果快照中的附件无法被反序列化。
+	 */
+	protected StartWithMatcher(ByteBuffer snapshot) throws IOException{
+		this.mappedAutomaton = new MappedAutomaton(snapshot);
+		ObjectInputStream ois = new SnapshotInputStream(new ByteArrayInputStream(mappedAutomaton.getTrailer()), 
+				snapshot, mappedAutomaton.getLength());
+		try{
+			String className = ois.readUTF();
+			boolean compatible = false;
+			for (Class<?> c = getClass(); c != null; c = c.getSuperclass()){
+				if (c.getName().equals(className)){
+					compatible = true;
+					break;
+				}
+			}
+			if (!compatible){
+				throw new IllegalArgumentException("The snapshot was saved from " + className + " and cannot be loaded as " + getClass().getName());
+			}
+			this.attachments = (Object[]) ois.readObject();
+		}catch(ClassNotFoundException e){
+			throw new IOException("Failed to de-serialize attachments in the snapshot.", e);
+		}finally{
+			ois.close();
+		}
+		if (attachments.length != mappedAutomaton.getAttachmentCount()){
+			throw new IllegalArgumentException("Matcher snapshot is corrupted.");
+		}
+	}
+
+	/**
+	 * Map a snapshot file into memory.<br>
+	 * 把快照文件映射到内存。
+	 * 
+	 * @param file	The snapshot file.<br>快照文件。
+	 * @return	The memory-mapped content of the file.<br>内存映射的文件内容。
+	 * @throws IOException	If the file cannot be mapped.<br>如果无法映射文件。
+	 */
+	static protected ByteBuffer mapSnapshot(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());	// the mapping stays valid after closing
+		}finally{
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Check whether this instance was loaded from a snapshot.<br>
+	 * 检查本实例是否是从快照加载的。
+	 * 
+	 * @return	true if the state machine is backed by a snapshot.<br>如果状态机基于快照则返回true。
+	 */
+	public boolean isFromSnapshot(){
+		return mappedAutomaton != null;
+	}
+	
+	/**
+	 * Save the state machine and attachments as a snapshot.
+	 * The attachments must be serializable, 
+	 * and those that are StartWithMatcher(s) are saved as snapshot sections after the trailer.<br>
+	 * 把状态机和附件保存为快照，附件必须是可以序列化的，其中本身是StartWithMatcher的附件被保存为附加数据之后的快照分段。
+	 * 
+	 * @param out	The output stream, it will not be closed.<br>输出流，它不会被关闭。
+	 * @throws IOException	If failed to write.<br>如果写出失败。
+	 */
+	public void saveSnapshot(OutputStream out) throws IOException{
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+		ByteArrayOutputStream sections = new ByteArrayOutputStream();
+		if (mappedAutomaton != null){
+			// attachments are already distinct
+			mappedAutomaton.write(serializeTrailer(attachments, sections), dos);
+		}else{
+			int[] attachmentIndex = new int[attachments.length];
+			Map<Object, Integer> indexes = new IdentityHashMap<Object, Integer>();
+			List<Object> distinct = new ArrayList<Object>();
+			for (int i = 0; i < attachments.length; i ++){
+				Object attachment = attachments[i];
+				if (attachment == null){
+					attachmentIndex[i] = -1;
+				}else{
+					Integer index = indexes.get(attachment);
+					if (index == null){
+						index = distinct.size();
+						indexes.put(attachment, index);
+						distinct.add(attachment);
+					}
+					attachmentIndex[i] = index;
+				}
+			}
+			
+			MappedAutomaton.write(runAutomaton, attachmentIndex, distinct.size(), serializeTrailer(distinct.toArray(), sections), dos);
+		}
+		sections.writeTo(dos);
+		dos.flush();
+	}
+	
+	/**
+	 * Serialize the class name and the distinct attachments as the trailer of a snapshot
+	 * @param distinctAttachments	the distinct attachments
+	 * @param sections				where the attachments that are StartWithMatcher(s) will be saved
+	 * @return	the trailer
+	 * @throws IOException	if the attachments cannot be serialized
+	 */
+	protected byte[] serializeTrailer(Object[] distinctAttachments, ByteArrayOutputStream sections) throws IOException{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new SnapshotOutputStream(baos, sections);
+		oos.writeUTF(getClass().getName());
+		oos.writeObject(distinctAttachments);
+		oos.close();
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Save the state machine and attachments as a snapshot file.
+	 * The attachments must be serializable.<br>
+	 * 把状态机和附件保存为快照文件，附件必须是可以序列化的。
+	 * 
+	 * @param file	The file to be written.<br>要写入的文件。
+	 * @throws IOException	If failed to write.<br>如果写出失败。
+	 */
+	public void saveSnapshot(File file) throws IOException{
+		OutputStream out = new FileOutputStream(file);
+		try{
+			saveSnapshot(out);
+		}finally{
+			out.close();
+		}
+	}
+	
 	/**
 	 * Initialize the state machine (dk.brics.automaton.RunAutomaton).<br>
 	 * 初始化状态机（dk.brics.automaton.RunAutomaton）。
@@ -182,6 +480,9 @@ public class StartWithMatcher implements Serializable{
 	 * 					正则表达式字符串（仅被用在抛出的异常消息中）
 	 */
 	protected void setAttachmentByExample(String example, Object att, String exp){
+		if (mappedAutomaton != null){
+			throw new UnsupportedOperationException("Attachments of an instance loaded from a snapshot cannot be changed.");
+		}
 		int p = getLastAcceptedState(example, 0);
 		if (p != -1){
 			this.attachments[p] = att;
@@ -214,6 +515,9 @@ public class StartWithMatcher implements Serializable{
 	 * 			匹配到的状态编号，返回-1表示没有与任何一个正则表达式相匹配。
 	 */
 	protected int getLastAcceptedState(CharSequence text, int startIndex){
+		if (mappedAutomaton != null){
+			return getLastAcceptedState(mappedAutomaton, text, startIndex);
+		}
 		int lastAcceptedState = -1;
 		
 		int p = runAutomaton.getInitialState();
@@ -234,6 +538,82 @@ public class StartWithMatcher implements Serializable{
 		return lastAcceptedState;
 	}
 	
+	/**
+	 * The same as {@link #getLastAcceptedState(CharSequence, int)} but using the state machine loaded from a snapshot.<br>
+	 * 与{@link #getLastAcceptedState(CharSequence, int)}相同，但是使用从快照加载的状态机。
+	 * 
+	 * @param mapped			The state machine.<br>状态机。
+	 * @param text				The text to be tested.<br>待进行匹配检查的文本。
+	 * @param startIndex		The position to start matching test.<br>从文本的这个位置开始匹配。
+	 * @return	The state number that matched, return -1 if no expression can match the text.<br>
+	 * 			匹配到的状态编号，返回-1表示没有与任何一个正则表达式相匹配。
+	 */
+	protected int getLastAcceptedState(MappedAutomaton mapped, CharSequence text, int startIndex){
+		int lastAcceptedState = -1;
+		
+		int p = mapped.getInitialState();
+		int l = text.length();
+		for (int i = startIndex; i < l; i++) {
+			p = mapped.step(p, text.charAt(i));
+			if (p == -1) {
+				break;
+			}
+			if (mapped.isAccept(p)){
+				lastAcceptedState = p;
+			}
+		}
+		return lastAcceptedState;
+	}
+	
+	/**
+	 * Get the initial state of the state machine.<br>
+	 * 取得状态机的初始状态。
+	 * 
+	 * @return	The initial state.<br>初始状态。
+	 */
+	protected int getInitialState(){
+		return mappedAutomaton == null ? runAutomaton.getInitialState() : mappedAutomaton.getInitialState();
+	}
+	
+	/**
+	 * Make a transition of the state machine.<br>
+	 * 进行一次状态转换。
+	 * 
+	 * @param state	The current state.<br>当前状态。
+	 * @param c		The character.<br>字符。
+	 * @return	The new state, or -1 if there is no transition.<br>新的状态，-1表示无法转换。
+	 */
+	protected int step(int state, char c){
+		return mappedAutomaton == null ? runAutomaton.step(state, c) : mappedAutomaton.step(state, c);
+	}
+	
+	/**
+	 * Test if a state is an accept state.<br>
+	 * 判断一个状态是否是接受状态。
+	 * 
+	 * @param state	The state.<br>状态。
+	 * @return	true if it is an accept state.<br>是接受状态则返回true。
+	 */
+	protected boolean isAccept(int state){
+		return mappedAutomaton == null ? runAutomaton.isAccept(state) : mappedAutomaton.isAccept(state);
+	}
+	
+	/**
+	 * Get the attachment object corresponding to a state.<br>
+	 * 取得状态所对应的附件对象。
+	 * 
+	 * @param state	The state number.<br>状态编号。
+	 * @return	The attachment object, or null if there is none.<br>附件对象，没有的话返回null。
+	 */
+	protected Object getAttachment(int state){
+		if (mappedAutomaton == null){
+			return attachments[state];
+		}else{
+			int index = mappedAutomaton.getAttachmentIndex(state);
+			return index == -1 ? null : attachments[index];
+		}
+	}
+	
 	/**
 	 * By utilizing the state machine (dk.brics.automaton.RunAutomaton), get all the accepted matching state.
 	 * The matching test starts at specified position.<br>
@@ -248,10 +628,11 @@ public class StartWithMatcher implements Serializable{
 		List<Integer> states = new ArrayList<Integer>();
 		int lastAcceptedState = -1;
 		
-		int p = runAutomaton.getInitialState();
+		MappedAutomaton mapped = mappedAutomaton;
+		int p = mapped == null ? runAutomaton.getInitialState() : mapped.getInitialState();
 		int l = text.length();
 		for (int i = startIndex; i < l; i++) {
-			p = runAutomaton.step(p, text.charAt(i));
+			p = mapped == null ? runAutomaton.step(p, text.charAt(i)) : mapped.step(p, text.charAt(i));
 			if (p == -1) {
 				if (lastAcceptedState == -1){
 					return null;
@@ -259,7 +640,7 @@ public class StartWithMatcher implements Serializable{
 					break;
 				}
 			}
-			if (runAutomaton.isAccept(p)){
+			if (mapped == null ? runAutomaton.isAccept(p) : mapped.isAccept(p)){
 				states.add(p);
 				lastAcceptedState = p;
 			}
@@ -291,7 +672,7 @@ public class StartWithMatcher implements Serializable{
 	 */
 	public Object match(CharSequence text, int startIndex){
 		int p = getLastAcceptedState(text, startIndex);
-		return (p == -1) ? null : attachments[p];
+		return (p == -1) ? null : getAttachment(p);
 	}
 	
 	/**
@@ -319,7 +700,7 @@ public class StartWithMatcher implements Serializable{
 		}else{
 			List<Object> result = new ArrayList<Object>(states.size());
 			for (int p: states){
-				result.add(attachments[p]);
+				result.add(getAttachment(p));
 			}
 			return result;
 		}
@@ -390,7 +771,10 @@ public class StartWithMatcher implements Serializable{
 	 * @return	a copy made by serializing and then de-serializing
 	 * @throws IOException
 	 * @throws ClassNotFoundException
+	 * @deprecated	The state machine is immutable and can be shared, copying it is slow and doubles memory usage.
+	 * 				Copy constructors no longer use this method.
 	 */
+	@Deprecated
 	protected RunAutomaton copyRunAutomaton() throws IOException, ClassNotFoundException{
 		RunAutomaton result;
 		
@@ -16,6 +16,9 @@ limitations under the License.
 
 package net.sf.jabb.util.text;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -94,6 +97,31 @@ public class StringStartWithMatcher extends StartWithMatcher {
 		super(toBeCopied);
 	}
 
+	/**
+	 * Create an instance from a snapshot saved by {@link #saveSnapshot(java.io.OutputStream)}.
+	 * The content of the ByteBuffer must not be changed afterwards.<br>
+	 * 根据用{@link #saveSnapshot(java.io.OutputStream)}保存的快照创建实例，之后不能再改变ByteBuffer的内容。
+	 * 
+	 * @param snapshot	快照，从0到limit。<br>The snapshot, from position 0 to the limit.
+	 * @throws IOException	如果快照中的附件无法被反序列化。<br>If the attachments in the snapshot cannot be de-serialized.
+	 */
+	public StringStartWithMatcher(ByteBuffer snapshot) throws IOException {
+		super(snapshot);
+	}
+	
+	/**
+	 * Load an instance from a snapshot file saved by {@link #saveSnapshot(File)}.
+	 * The file is memory-mapped, and the state machine is used directly from the mapped file.<br>
+	 * 从用{@link #saveSnapshot(File)}保存的快照文件加载实例。文件被映射到内存，状态机直接使用映射的文件。
+	 * 
+	 * @param file	快照文件。<br>The snapshot file.
+	 * @return	加载的实例。<br>The instance loaded.
+	 * @throws IOException	如果无法读取文件。<br>If the file cannot be read.
+	 */
+	public static StringStartWithMatcher loadSnapshot(File file) throws IOException {
+		return new StringStartWithMatcher(mapSnapshot(file));
+	}
+
 	/**
 	 * Normalize matching definitions according to requirements of {@link StartWithMatcher}.<br>
 	 * 根据{@link StartWithMatcher}的需要来规范化匹配条件定义。
@@ -0,0 +1,469 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.text;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * URL matcher having the same matching strings as {@link UrlStartWithMatcher}, 
+ * but matching strings can be added or removed without rebuilding everything.<br>
+ * 与{@link UrlStartWithMatcher}使用相同的匹配字符串的URL匹配器，但是可以增加或删除匹配字符串而不需要全部重建。
+ * <p>
+ * The host parts of the matching strings are kept in a trie of reversed host names,
+ * each node of which has the group of matching strings having that host (exact or with "*." wildcard).
+ * The path parts within a group are matched by a {@link StringStartWithMatcher} belonging to that group only,
+ * so an update rebuilds only the group affected.
+ * <p>
+ * 匹配字符串的主机部分保存在反序主机名的字典树中，树的每个节点上有具有该主机（精确或带有“*.”通配符）的一组匹配字符串。
+ * 每组中的路径部分由仅属于该组的{@link StringStartWithMatcher}进行匹配，所以更新时只需要重建受影响的那一组。
+ * <p>
+ * Updates are published in copy-on-write manner: the nodes on the way from the root to the group
+ * affected are copied and then the new root is published, all the other nodes are shared.
+ * Matching never takes any lock and always sees a consistent version. 
+ * Updates are serialized by the lock of this instance. 
+ * <p>
+ * 更新以写时复制的方式发布：从根到受影响的组之间的节点被复制，然后新的根被发布，其他节点都是共用的。
+ * 匹配时从不加锁，总是能看到一致的版本。更新操作使用本实例的锁来串行化。
+ * <p>
+ * When several matching strings match the URL, the one with the longest path part wins, 
+ * and if there are more than one, the one with the most specific host wins 
+ * (exact host is more specific than wildcard, longer wildcard is more specific than shorter one).
+ * Matching strings without path part are regarded as having the shortest path part.
+ * This is the same as UrlStartWithMatcher in normal cases.
+ * <p>
+ * 当多个匹配字符串都能匹配URL的时候，路径部分最长的胜出，如果这样的有多个，则主机最具体的胜出
+ * （精确的主机比通配符更具体，较长的通配符比较短的更具体）。没有路径部分的匹配字符串被认为路径部分最短。
+ * 一般情况下这与UrlStartWithMatcher相同。
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+public class UpdatableUrlStartWithMatcher implements Serializable{
+	private static final long serialVersionUID = -2620325592958736152L;
+
+	protected boolean moreSpaceForSpeed;
+	protected volatile Node root;
+	protected int size;
+	
+	/**
+	 * Create an empty instance. When creating internal data structure, choose to consume more memory for better matching speed.<br>
+	 * 创建一个空的实例；在创建内部数据结构的时候，选择占用更多内存，而换取速度上的提升。
+	 */
+	public UpdatableUrlStartWithMatcher(){
+		this(true);
+	}
+	
+	/**
+	 * Create an empty instance.<br>
+	 * 创建一个空的实例。
+	 * @param moreSpaceForSpeed  是否占用更多内存，而换取速度上的提升。
+	 * 								<br>Whether or not to consume
+	 * 								more memory for better matching speed.
+	 */
+	public UpdatableUrlStartWithMatcher(boolean moreSpaceForSpeed){
+		this.moreSpaceForSpeed = moreSpaceForSpeed;
+		this.root = Node.EMPTY;
+	}
+	
+	/**
+	 * Create a new instance according to matching strings and their corresponding attachment objects.
+	 * When creating internal data structure, choose to consume more memory for better matching speed.<br>
+	 * 根据匹配字符串、匹配字符串所对应的附件对象，创建一个新的实例；
+	 * 在创建内部数据结构的时候，选择占用更多内存，而换取速度上的提升。
+	 * 
+	 * @param matchingDefinitions	Key是匹配字符串，Value是附件对象。
+	 * 					<br>Key is the matching string, Value is its associated attachment object.
+	 */
+	public UpdatableUrlStartWithMatcher(Map<String, ? extends Object> matchingDefinitions){
+		this(true);
+		putAll(matchingDefinitions);
+	}
+	
+	/**
+	 * Add a matching string or replace the attachment object of an existing one.<br>
+	 * 增加一个匹配字符串，或者替换已有匹配字符串的附件对象。
+	 * 
+	 * @param matchingString	匹配字符串<br>The matching string
+	 * @param attachment		附件对象<br>The attachment object
+	 */
+	public void put(String matchingString, Object attachment){
+		putAll(Collections.singletonMap(matchingString, attachment));
+	}
+	
+	/**
+	 * Add matching strings or replace the attachment objects of existing ones.
+	 * The update is published once after all of them have been applied.<br>
+	 * 增加一批匹配字符串，或者替换已有匹配字符串的附件对象。全部更新完成之后一次性发布。
+	 * 
+	 * @param matchingDefinitions	Key是匹配字符串，Value是附件对象。
+	 * 					<br>Key is the matching string, Value is its associated attachment object.
+	 */
+	synchronized public void putAll(Map<String, ? extends Object> matchingDefinitions){
+		update(matchingDefinitions, Collections.<String>emptySet());
+	}
+	
+	/**
+	 * Remove a matching string.<br>
+	 * 删除一个匹配字符串。
+	 * 
+	 * @param matchingString	匹配字符串<br>The matching string
+	 * @return	true if it existed and was removed.<br>如果存在并被删除则返回true。
+	 */
+	synchronized public boolean remove(String matchingString){
+		int sizeBefore = size;
+		update(Collections.<String, Object>emptyMap(), Collections.singleton(matchingString));
+		return size < sizeBefore;
+	}
+	
+	/**
+	 * Remove matching strings. The update is published once after all of them have been removed.<br>
+	 * 删除一批匹配字符串，全部删除之后一次性发布。
+	 * 
+	 * @param matchingStrings	匹配字符串<br>The matching strings
+	 */
+	synchronized public void removeAll(Collection<String> matchingStrings){
+		update(Collections.<String, Object>emptyMap(), matchingStrings);
+	}
+	
+	/**
+	 * Get the number of matching strings.<br>
+	 * 取得匹配字符串的个数。
+	 * 
+	 * @return	number of matching strings
+	 */
+	synchronized public int size(){
+		return size;
+	}
+	
+	/**
+	 * Apply changes group by group and then publish the new root.
+	 * @param puts		matching strings to be added or replaced
+	 * @param removes	matching strings to be removed
+	 */
+	protected void update(Map<String, ? extends Object> puts, Collection<String> removes){
+		Map<String, GroupChange> changes = new LinkedHashMap<String, GroupChange>();
+		for (String matchingString: removes){
+			changeOf(changes, matchingString).remove();
+		}
+		for (Map.Entry<String, ? extends Object> e: puts.entrySet()){
+			changeOf(changes, e.getKey()).put(e.getValue());
+		}
+		
+		Node newRoot = root;
+		for (GroupChange change: changes.values()){
+			Group oldGroup = newRoot.find(change.key, change.wildcard);
+			Group newGroup = change.applyTo(oldGroup, moreSpaceForSpeed);
+			size += (newGroup == null ? 0 : newGroup.size()) - (oldGroup == null ? 0 : oldGroup.size());
+			if (newGroup != oldGroup){
+				newRoot = newRoot.with(change.key, 0, change.wildcard, newGroup);
+				if (newRoot == null){
+					newRoot = Node.EMPTY;
+				}
+			}
+		}
+		root = newRoot;
+	}
+	
+	/**
+	 * Find or create the change of the group a matching string belongs to
+	 */
+	static protected PathChange changeOf(Map<String, GroupChange> changes, String matchingString){
+		String[] splited = UrlStartWithMatcher.splitURL(matchingString);
+		String reversedBeforePart = splited[0];
+		String afterPart = splited[1];
+		boolean wildcard = reversedBeforePart.endsWith(".*");
+		String key = wildcard ? reversedBeforePart.substring(0, reversedBeforePart.length() - 1) : reversedBeforePart;
+		String changeKey = (wildcard ? "*" : "=") + key;
+		GroupChange change = changes.get(changeKey);
+		if (change == null){
+			change = new GroupChange(key, wildcard);
+			changes.put(changeKey, change);
+		}
+		return new PathChange(change, afterPart == null ? "" : afterPart);
+	}
+	
+	/**
+	 * Find out which matching string matches the URL. URL can start with protocol (such as "http://"), or not.
+	 * No lock is taken and no object is created.<br>
+	 * 进行匹配判断，URL可以包含协议头，也可以不包含，匹配时对大小写不敏感。不加锁，也不创建任何对象。
+	 * 
+	 * @param url	需要进行匹配判断的URL<br>The URL need to be tested.
+	 * @return	匹配到的字符串所对应的附件，如果找不到任何匹配，则返回null
+	 * 			<br>The corresponding attachment object of the matching string that matches the URL.
+	 * 			Return null if no matching found.
+	 */
+	public Object match(CharSequence url){
+		int hostStart = UrlStartWithMatcher.indexOf(url, "://", 0);
+		hostStart = hostStart == -1 ? 0 : hostStart + 3;
+		int pathStart = UrlStartWithMatcher.indexOf(url, "/", hostStart);
+		if (pathStart == -1){
+			pathStart = url.length();
+		}
+		
+		int bestLength = -1;
+		Object best = null;
+		Node node = root;
+		for (int i = pathStart - 1; i >= hostStart - 1; i --){
+			Group group;
+			if (i >= hostStart){
+				node = node.child(Character.toLowerCase(url.charAt(i)));
+				if (node == null){
+					break;
+				}
+				group = node.wildcard;
+			}else{
+				group = node.exact;
+			}
+			if (group != null){
+				// groups found later are more specific, so they win if the path length is the same
+				if (group.pathMatcher != null){
+					int p = UrlStartWithMatcher.getLastAcceptedStateOfPath(group.pathMatcher, url, pathStart + 1);
+					if (p != -1){
+						PathRule rule = (PathRule) group.pathMatcher.getAttachment(p);
+						if (rule != null && rule.length >= bestLength){
+							bestLength = rule.length;
+							best = rule.attachment;
+						}
+					}
+				}
+				if (group.hasHostRule && 0 >= bestLength){
+					bestLength = 0;
+					best = group.hostAttachment;
+				}
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Node of the trie of reversed hosts. It is immutable.
+	 */
+	static protected class Node implements Serializable{
+		private static final long serialVersionUID = 8254911713470416372L;
+		static final Node EMPTY = new Node(new char[0], new Node[0], null, null);
+		
+		final char[] chars;		// sorted
+		final Node[] children;
+		final Group exact;		// for the host ending here
+		final Group wildcard;	// for "*." followed by the host ending here
+		
+		Node(char[] chars, Node[] children, Group exact, Group wildcard){
+			this.chars = chars;
+			this.children = children;
+			this.exact = exact;
+			this.wildcard = wildcard;
+		}
+		
+		Node child(char c){
+			int i = Arrays.binarySearch(chars, c);
+			return i >= 0 ? children[i] : null;
+		}
+		
+		Group find(String key, boolean isWildcard){
+			Node node = this;
+			for (int i = 0; i < key.length() && node != null; i ++){
+				node = node.child(key.charAt(i));
+			}
+			return node == null ? null : (isWildcard ? node.wildcard : node.exact);
+		}
+		
+		boolean isEmpty(){
+			return chars.length == 0 && exact == null && wildcard == null;
+		}
+		
+		/**
+		 * Create a copy with the group replaced, nodes not on the path are shared
+		 * @return the new node, or null if it becomes empty
+		 */
+		Node with(String key, int depth, boolean isWildcard, Group group){
+			if (depth == key.length()){
+				Node n = isWildcard ? new Node(chars, children, exact, group) : new Node(chars, children, group, wildcard);
+				return n.isEmpty() ? null : n;
+			}
+			char c = key.charAt(depth);
+			int i = Arrays.binarySearch(chars, c);
+			Node oldChild = i >= 0 ? children[i] : EMPTY;
+			Node newChild = oldChild.with(key, depth + 1, isWildcard, group);
+			char[] newChars;
+			Node[] newChildren;
+			if (i >= 0){
+				if (newChild == null){
+					newChars = new char[chars.length - 1];
+					newChildren = new Node[chars.length - 1];
+					System.arraycopy(chars, 0, newChars, 0, i);
+					System.arraycopy(chars, i + 1, newChars, i, chars.length - i - 1);
+					System.arraycopy(children, 0, newChildren, 0, i);
+					System.arraycopy(children, i + 1, newChildren, i, chars.length - i - 1);
+				}else{
+					newChars = chars;
+					newChildren = children.clone();
+					newChildren[i] = newChild;
+				}
+			}else{
+				if (newChild == null){
+					return this;
+				}
+				i = -i - 1;
+				newChars = new char[chars.length + 1];
+				newChildren = new Node[chars.length + 1];
+				System.arraycopy(chars, 0, newChars, 0, i);
+				System.arraycopy(chars, i, newChars, i + 1, chars.length - i);
+				System.arraycopy(children, 0, newChildren, 0, i);
+				System.arraycopy(children, i, newChildren, i + 1, chars.length - i);
+				newChars[i] = c;
+				newChildren[i] = newChild;
+			}
+			Node n = new Node(newChars, newChildren, exact, wildcard);
+			return n.isEmpty() ? null : n;
+		}
+	}
+	
+	/**
+	 * Matching strings having the same host. It is immutable.
+	 */
+	static protected class Group implements Serializable{
+		private static final long serialVersionUID = -3297398780131633105L;
+		
+		final boolean hasHostRule;
+		final Object hostAttachment;
+		final Map<String, Object> pathRules;
+		final StringStartWithMatcher pathMatcher;
+		
+		Group(boolean hasHostRule, Object hostAttachment, Map<String, Object> pathRules, boolean moreSpaceForSpeed){
+			this.hasHostRule = hasHostRule;
+			this.hostAttachment = hostAttachment;
+			this.pathRules = pathRules;
+			if (pathRules.size() > 0){
+				Map<String, PathRule> m = new HashMap<String, PathRule>(pathRules.size());
+				for (Map.Entry<String, Object> e: pathRules.entrySet()){
+					m.put(e.getKey(), new PathRule(e.getKey().length(), e.getValue()));
+				}
+				pathMatcher = new StringStartWithMatcher(m, moreSpaceForSpeed);
+			}else{
+				pathMatcher = null;
+			}
+		}
+		
+		Group(boolean hasHostRule, Object hostAttachment, Map<String, Object> pathRules, StringStartWithMatcher pathMatcher){
+			this.hasHostRule = hasHostRule;
+			this.hostAttachment = hostAttachment;
+			this.pathRules = pathRules;
+			this.pathMatcher = pathMatcher;
+		}
+		
+		int size(){
+			return pathRules.size() + (hasHostRule ? 1 : 0);
+		}
+	}
+	
+	/**
+	 * A matching string with path part
+	 */
+	static protected class PathRule implements Serializable{
+		private static final long serialVersionUID = 4931508066327935711L;
+		final int length;
+		final Object attachment;
+		
+		PathRule(int length, Object attachment){
+			this.length = length;
+			this.attachment = attachment;
+		}
+	}
+	
+	/**
+	 * Changes to be applied to a group
+	 */
+	static protected class GroupChange{
+		final String key;
+		final boolean wildcard;
+		Boolean putHost;		// null: unchanged, TRUE: put, FALSE: remove
+		Object hostAttachment;
+		Map<String, Object> pathPuts = new HashMap<String, Object>();
+		Map<String, Boolean> pathRemoves = new HashMap<String, Boolean>();
+		
+		GroupChange(String key, boolean wildcard){
+			this.key = key;
+			this.wildcard = wildcard;
+		}
+		
+		Group applyTo(Group group, boolean moreSpaceForSpeed){
+			boolean hasHostRule = group != null && group.hasHostRule;
+			Object hostAttachment = group == null ? null : group.hostAttachment;
+			if (putHost != null){
+				hasHostRule = putHost;
+				hostAttachment = putHost ? this.hostAttachment : null;
+			}
+			Map<String, Object> pathRules = group == null ? Collections.<String, Object>emptyMap() : group.pathRules;
+			if (pathPuts.size() > 0 || pathRemoves.size() > 0){
+				pathRules = new HashMap<String, Object>(pathRules);
+				pathRules.keySet().removeAll(pathRemoves.keySet());
+				pathRules.putAll(pathPuts);
+				pathRules = Collections.unmodifiableMap(pathRules);
+			}
+			if (!hasHostRule && pathRules.size() == 0){
+				return null;
+			}
+			if (group != null && pathRules == group.pathRules){
+				if (hasHostRule == group.hasHostRule && hostAttachment == group.hostAttachment){
+					return group;
+				}
+				return new Group(hasHostRule, hostAttachment, pathRules, group.pathMatcher);
+			}
+			return new Group(hasHostRule, hostAttachment, pathRules, moreSpaceForSpeed);
+		}
+	}
+	
+	/**
+	 * Change of one matching string within a group
+	 */
+	static protected class PathChange{
+		final GroupChange groupChange;
+		final String path;
+		
+		PathChange(GroupChange groupChange, String path){
+			this.groupChange = groupChange;
+			this.path = path;
+		}
+		
+		void put(Object attachment){
+			if (path.length() == 0){
+				groupChange.putHost = Boolean.TRUE;
+				groupChange.hostAttachment = attachment;
+			}else{
+				groupChange.pathRemoves.remove(path);
+				groupChange.pathPuts.put(path, attachment);
+			}
+		}
+		
+		void remove(){
+			if (path.length() == 0){
+				groupChange.putHost = Boolean.FALSE;
+				groupChange.hostAttachment = null;
+			}else{
+				groupChange.pathPuts.remove(path);
+				groupChange.pathRemoves.put(path, Boolean.TRUE);
+			}
+		}
+	}
+
+}
@@ -16,7 +16,10 @@ limitations under the License.
 
 package net.sf.jabb.util.text;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -103,6 +106,31 @@ public class UrlStartWithMatcher extends StartWithMatcher {
 		super(toBeCopied);
 	}
 
+	/**
+	 * Create an instance from a snapshot saved by {@link #saveSnapshot(java.io.OutputStream)}.
+	 * The content of the ByteBuffer must not be changed afterwards.<br>
+	 * 根据用{@link #saveSnapshot(java.io.OutputStream)}保存的快照创建实例，之后不能再改变ByteBuffer的内容。
+	 * 
+	 * @param snapshot	快照，从0到limit。<br>The snapshot, from position 0 to the limit.
+	 * @throws IOException	如果快照中的附件无法被反序列化。<br>If the attachments in the snapshot cannot be de-serialized.
+	 */
+	public UrlStartWithMatcher(ByteBuffer snapshot) throws IOException {
+		super(snapshot);
+	}
+	
+	/**
+	 * Load an instance from a snapshot file saved by {@link #saveSnapshot(File)}.
+	 * The file is memory-mapped, and the state machine is used directly from the mapped file.<br>
+	 * 从用{@link #saveSnapshot(File)}保存的快照文件加载实例。文件被映射到内存，状态机直接使用映射的文件。
+	 * 
+	 * @param file	快照文件。<br>The snapshot file.
+	 * @return	加载的实例。<br>The instance loaded.
+	 * @throws IOException	如果无法读取文件。<br>If the file cannot be read.
+	 */
+	public static UrlStartWithMatcher loadSnapshot(File file) throws IOException {
+		return new UrlStartWithMatcher(mapSnapshot(file));
+	}
+
 	/**
 	 * Normalize matching definitions according to requirements of {@link StartWithMatcher}.<br>
 	 * 根据{@link StartWithMatcher}的需要来规范化匹配条件定义。
@@ -227,16 +255,116 @@ public class UrlStartWithMatcher extends StartWithMatcher {
 	 * 			Return null if no matching found.
 	 */
 	public Object match(String url){
-		String[] splited = splitURL(url);
-		String reversedBeforePart = splited[0];
-		String afterPart = splited[1];
+		return match((CharSequence)url);
+	}
+	
+	/**
+	 * Find out which matching string matches the URL. URL can start with protocol (such as "http://"), or not.<br>
+	 * 进行匹配判断，URL可以包含协议头，也可以不包含，匹配时对大小写不敏感。
+	 * <p>
+	 * Matching is case insensitive. 
+	 * The state machine walks the host part backwards and the path part forwards directly over the URL,
+	 * with characters lower-cased on the fly, so that no object is created.
+	 * <p>
+	 * 匹配时对大小写不敏感。状态机直接在URL上反向扫描主机部分、正向扫描路径部分，字符被逐个转为小写，不会创建任何对象。
+	 * 
+	 * @param url	需要进行匹配判断的URL<br>The URL need to be tested.
+	 * @return	匹配到的字符串所对应的附件，如果找不到任何匹配，则返回null
+	 * 			<br>The corresponding attachment object of the matching string that matches the URL.
+	 * 			Return null if no matching found.
+	 */
+	@Override
+	public Object match(CharSequence url){
+		int hostStart = indexOf(url, "://", 0);
+		hostStart = hostStart == -1 ? 0 : hostStart + 3;
+		int pathStart = indexOf(url, "/", hostStart);
+		if (pathStart == -1){
+			pathStart = url.length();
+		}
 		
-		UrlStartWithMatcherStep2 step2 = (UrlStartWithMatcherStep2) super.match(reversedBeforePart + "$");
+		int p = getLastAcceptedStateOfReversedHost(this, url, hostStart, pathStart);
+		if (p == -1){
+			return null;
+		}
+		UrlStartWithMatcherStep2 step2 = (UrlStartWithMatcherStep2) getAttachment(p);
 		if (step2 == null){
 			return null;
 		}else{
-			return step2.match(reversedBeforePart, afterPart);
+			return step2.match(url, hostStart, pathStart);
+		}
+	}
+	
+	/**
+	 * Find the first occurrence of a string in a CharSequence.
+	 * @param text		the text to be searched
+	 * @param s			the string to be found
+	 * @param fromIndex	the position to start searching
+	 * @return	position of the first occurrence, or -1 if not found
+	 */
+	static protected int indexOf(CharSequence text, String s, int fromIndex){
+		int last = text.length() - s.length();
+		char first = s.charAt(0);
+		for (int i = fromIndex; i <= last; i ++){
+			if (text.charAt(i) == first){
+				int j = 1;
+				while (j < s.length() && text.charAt(i + j) == s.charAt(j)){
+					j ++;
+				}
+				if (j == s.length()){
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Run the state machine of a matcher over the host part of a URL backwards, lower-cased, 
+	 * and then over the "$" terminator.
+	 * It is equivalent to running over the reversed host part of {@link #splitURL(String)} with "$" appended.
+	 * @param matcher	the matcher
+	 * @param url		the URL
+	 * @param hostStart	start position of the host part, inclusive
+	 * @param hostEnd	end position of the host part, exclusive
+	 * @return	the last accepted state, or -1 if nothing can be accepted
+	 */
+	static protected int getLastAcceptedStateOfReversedHost(StartWithMatcher matcher, CharSequence url, int hostStart, int hostEnd){
+		int lastAcceptedState = -1;
+		int p = matcher.getInitialState();
+		for (int i = hostEnd - 1; i >= hostStart - 1; i --){
+			p = matcher.step(p, i >= hostStart ? Character.toLowerCase(url.charAt(i)) : '$');
+			if (p == -1){
+				break;
+			}
+			if (matcher.isAccept(p)){
+				lastAcceptedState = p;
+			}
 		}
+		return lastAcceptedState;
+	}
+	
+	/**
+	 * Run the state machine of a matcher over the path part of a URL, lower-cased.
+	 * It is equivalent to running over the path part of {@link #splitURL(String)}.
+	 * @param matcher	the matcher
+	 * @param url		the URL
+	 * @param pathStart	start position of the path part, inclusive
+	 * @return	the last accepted state, or -1 if nothing can be accepted
+	 */
+	static protected int getLastAcceptedStateOfPath(StartWithMatcher matcher, CharSequence url, int pathStart){
+		int lastAcceptedState = -1;
+		int p = matcher.getInitialState();
+		int l = url.length();
+		for (int i = pathStart; i < l; i ++){
+			p = matcher.step(p, Character.toLowerCase(url.charAt(i)));
+			if (p == -1){
+				break;
+			}
+			if (matcher.isAccept(p)){
+				lastAcceptedState = p;
+			}
+		}
+		return lastAcceptedState;
 	}
 	
 	/**
@@ -317,6 +445,28 @@ class UrlStartWithMatcherStep2 implements Serializable{
 		return o;
 	}
 	
+	/**
+	 * Match directly over the URL without creating any object
+	 * @param url		the URL
+	 * @param hostStart	start position of the host part, inclusive
+	 * @param pathStart	end position of the host part, exclusive; the path part starts after the slash here
+	 * @return	the attachment, or null if not matched
+	 */
+	public Object match(CharSequence url, int hostStart, int pathStart){
+		int p = UrlStartWithMatcher.getLastAcceptedStateOfPath(matcher, url, pathStart + 1);
+		if (p != -1){
+			Object o = matcher.getAttachment(p);
+			if (o != null){
+				return o;
+			}
+		}
+		if (step1Attachment != null){
+			return step1Attachment;
+		}
+		p = UrlStartWithMatcher.getLastAcceptedStateOfReversedHost(additionalStep1Matcher, url, hostStart, pathStart);
+		return p == -1 ? null : additionalStep1Matcher.getAttachment(p);
+	}
+	
 	public String toString(){
 		StringBuffer buff = new StringBuffer();
 		buff.append("[(");
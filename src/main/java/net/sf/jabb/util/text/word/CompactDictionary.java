@@ -0,0 +1,228 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.text.word;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.jabb.util.text.DoubleArrayTrie;
+
+/**
+ * 紧凑的只读词典。
+ * <p>
+ * Compact and read-only dictionary of words.
+ * The words are kept in a {@link DoubleArrayTrie}, and their types are kept as bit masks in an int array,
+ * so that no String or {@link Word} object is kept for each word. Compared with {@link Dictionary},
+ * it takes only a small fraction of the memory.
+ * It is immutable after construction, so it can be shared by many threads without any lock.
+ * To reload, just build a new instance and replace the old one.
+ * <p>
+ * 词条保存在{@link DoubleArrayTrie}中，它们的类型以位掩码的形式保存在一个int数组中，
+ * 所以不需要为每个词条保留String或{@link Word}对象。与{@link Dictionary}相比，它只占用很小一部分内存。
+ * 构造之后是不可变的，所以可以不加锁地被多个线程共用。需要重新加载的时候，创建一个新的实例替换掉旧的即可。
+ * 
+ * @author Zhengmao HU (James)
+ *
+ */
+public class CompactDictionary implements Serializable{
+	private static final long serialVersionUID = 4466120331473211625L;
+
+	protected DoubleArrayTrie trie;
+	protected int[] types;
+	/**
+	 * Keyword attachments by the index of the words, null if none of the words has an attachment
+	 */
+	protected Object[] keywordAttachments;
+	protected int wordCount;
+
+	/**
+	 * 根据一批词条创建一个实例。如果有重复的词条，则它们的类型会被合并，关键词附件以最后一个为准，与{@link Dictionary#addWord(Word)}相同。
+	 * <p>
+	 * Create an instance from a batch of words. If there are duplicated words, their types will be merged,
+	 * and the last keyword attachment counts, the same as {@link Dictionary#addWord(Word)}.
+	 * 
+	 * @param words					词条<br>The words.
+	 * @param types					每个词条的类型，定义在Word类中<br>Types of each word, which are defined in the class Word.
+	 * @param keywordAttachments	每个词条的关键词附件，可以为null<br>Keyword attachments of each word, can be null.
+	 */
+	public CompactDictionary(List<String> words, int[] types, Object[] keywordAttachments){
+		build(words, types, keywordAttachments);
+	}
+	
+	/**
+	 * 创建一个实例，其内容是拷贝自一个{@link Dictionary}。
+	 * <p>
+	 * Create an instance which is a copy of a {@link Dictionary}.
+	 * 
+	 * @param dictionary	the dictionary to be copied
+	 */
+	public CompactDictionary(Dictionary dictionary){
+		List<Word> all = new ArrayList<Word>(dictionary.getWords().values());
+		List<String> words = new ArrayList<String>(all.size());
+		int[] types = new int[all.size()];
+		Object[] keywordAttachments = new Object[all.size()];
+		for (Word word: all){
+			types[words.size()] = word.getTypes();
+			keywordAttachments[words.size()] = word.getKeywordAttachment();
+			words.add(word.getWord());
+		}
+		build(words, types, keywordAttachments);
+	}
+	
+	protected void build(List<String> words, int[] types, Object[] keywordAttachments){
+		if (types.length != words.size() || (keywordAttachments != null && keywordAttachments.length != words.size())){
+			throw new IllegalArgumentException("Lengths of the words, types and keyword attachments must be the same.");
+		}
+		trie = new DoubleArrayTrie(words);
+		this.types = new int[words.size()];
+		boolean hasAttachment = false;
+		if (keywordAttachments != null){
+			for (Object attachment: keywordAttachments){
+				if (attachment != null){
+					hasAttachment = true;
+					break;
+				}
+			}
+		}
+		this.keywordAttachments = hasAttachment ? new Object[words.size()] : null;
+		for (int i = 0; i < words.size(); i ++){
+			int index = trie.get(words.get(i));
+			if (index < 0){
+				continue;	// empty word
+			}
+			if (index == i){
+				wordCount ++;
+			}
+			this.types[index] |= types[i];
+			if (hasAttachment){
+				this.keywordAttachments[index] = keywordAttachments[i];
+			}
+		}
+	}
+	
+	/**
+	 * 从流中载入一批指定类型的词条，不会为词条创建{@link Word}对象。
+	 * <p>
+	 * Load a batch of words of specified type from stream, without creating {@link Word} objects.
+	 * The same as {@link Dictionary#loadWords(InputStream, int)}, words of type {@link Word#TYPE_KEYWORD}
+	 * have themselves as the keyword attachments.
+	 * 
+	 * @param is		输入流<br>The stream to read from.
+	 * @param wordType	类型，定义在Word类中<br>Type of the words, which is defined in the class Word.
+	 * @return	the dictionary loaded
+	 * @throws IOException
+	 */
+	static public CompactDictionary load(InputStream is, int wordType) throws IOException{
+		BufferedReader br = new BufferedReader(new InputStreamReader(is));
+		List<String> words = new ArrayList<String>();
+		String w = null;
+		while ((w=br.readLine()) != null){
+			words.add(w);
+		}
+		int[] types = new int[words.size()];
+		Arrays.fill(types, wordType);
+		return new CompactDictionary(words, types, 
+				(wordType & Word.TYPE_KEYWORD) != 0 ? words.toArray() : null);
+	}
+	
+	/**
+	 * 查找词条的序号。
+	 * <p>
+	 * Find the index of a word.
+	 * @param word	the word
+	 * @return	index of the word, or -1 if not found
+	 */
+	public int indexOf(CharSequence word){
+		return trie.get(word);
+	}
+	
+	/**
+	 * 判断词典中是否有这个词条。
+	 * <p>
+	 * Check whether the word is in the dictionary.
+	 * @param word	the word
+	 * @return	true if the word is in the dictionary
+	 */
+	public boolean contains(CharSequence word){
+		return trie.get(word) >= 0;
+	}
+	
+	/**
+	 * 获取词条的类型。
+	 * <p>
+	 * Get the types of a word.
+	 * @param word	the word
+	 * @return	bit mask of the types, 0 if the word is not in the dictionary
+	 */
+	public int getTypes(CharSequence word){
+		int index = trie.get(word);
+		return index < 0 ? 0 : types[index];
+	}
+	
+	/**
+	 * 根据序号获取词条的类型。
+	 * <p>
+	 * Get the types of a word by its index.
+	 * @param wordIndex	index of the word, as returned by {@link #indexOf(CharSequence)} or {@link #longestPrefixOf(CharSequence, int)}
+	 * @return	bit mask of the types
+	 */
+	public int getTypesByIndex(int wordIndex){
+		return types[wordIndex];
+	}
+	
+	/**
+	 * 获取词条的关键词附件。
+	 * <p>
+	 * Get the keyword attachment of a word.
+	 * @param word	the word
+	 * @return	the keyword attachment, null if the word is not in the dictionary or it has no attachment
+	 */
+	public Object getKeywordAttachment(CharSequence word){
+		int index = trie.get(word);
+		return index < 0 || keywordAttachments == null ? null : keywordAttachments[index];
+	}
+	
+	/**
+	 * 查找文本从指定位置开始的最长词条。
+	 * <p>
+	 * Find the longest word that the text starts with from a position.
+	 * @param text			the text
+	 * @param startIndex	the position
+	 * @return	the same as {@link DoubleArrayTrie#longestPrefixOf(CharSequence, int)}, 
+	 * 			use {@link DoubleArrayTrie#endOf(long)} and {@link DoubleArrayTrie#keyOf(long)} to get the end position and the index of the word.
+	 */
+	public long longestPrefixOf(CharSequence text, int startIndex){
+		return trie.longestPrefixOf(text, startIndex);
+	}
+	
+	/**
+	 * 获取词条的数量。
+	 * <p>
+	 * Get the number of distinct words.
+	 * @return	number of distinct and non-empty words
+	 */
+	public int getWordCount(){
+		return wordCount;
+	}
+
+}
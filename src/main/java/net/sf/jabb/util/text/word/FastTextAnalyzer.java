@@ -16,43 +16,181 @@ limitations under the License.
 
 package net.sf.jabb.util.text.word;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
+import javolution.util.FastList;
+import javolution.util.FastSet;
+
+import net.sf.jabb.util.text.DoubleArrayTrie;
 import net.sf.jabb.util.text.KeywordMatcher;
 
 
 /**
- * 基于KeywordMatcher分词的文本分析器。
+ * 基于字典树正向最大匹配分词的文本分析器。
+ * <p>
+ * Text Analyzer doing forward maximum matching segmentation over a {@link CompactDictionary}.
+ * At each position of the text, the longest word in the dictionary is taken; 
+ * runs of letters and digits before the CJK blocks (such as English words and numbers) are always taken as a whole;
+ * other letters not in the dictionary are taken as single character words; 
+ * white spaces, punctuations, and words of type {@link Word#TYPE_IGNORE} or {@link Word#TYPE_SEPARATOR} are skipped.
+ * It is less accurate than MMSeg complex mode, but several times faster.
+ * <p>
+ * 在文本的每个位置上，取字典中最长的词；CJK区块之前的字母和数字（比如英文单词和数字）总是连续地作为一个词；
+ * 字典中没有的其他文字作为单字词；空白、标点、以及{@link Word#TYPE_IGNORE}或{@link Word#TYPE_SEPARATOR}类型的词被跳过。
+ * 它不如MMSeg复杂模式准确，但是要快好几倍。
  * <p>
- * Text Analyzer.
+ * The dictionary is immutable and is replaced as a whole when reloading, so the analyzer is thread-safe without any lock.
+ * Keywords are matched by {@link KeywordMatcher}, the same as {@link MmsegTextAnalyzer}.<br>
+ * 字典是不可变的，重新加载时整体替换，所以分析器不需要加锁就是线程安全的。关键词由{@link KeywordMatcher}进行匹配，与{@link MmsegTextAnalyzer}相同。
  * 
  * @author Zhengmao HU (James)
  *
  */
 public class FastTextAnalyzer extends TextAnalyzer {
-	protected ChineseWordIdentifier cwIdentifier;
-	protected WordIdentifier wIdentifier;
+	/**
+	 * Name of the words file in the dictionary directory or in the class path
+	 */
+	static public final String WORDS_FILE = "words.dic";
+	/**
+	 * Characters before this are not in CJK blocks
+	 */
+	static protected final char CJK_START = '\u2E80';
+	
+	/**
+	 * The dictionary currently in use, it is replaced as a whole when reloading
+	 */
+	protected volatile CompactDictionary dictionary;
 	protected KeywordMatcher kwMatcher;
+	/**
+	 * Whether the dictionary was loaded from dictionaryPath, only in that case it can be reloaded
+	 */
+	protected boolean loadedFromPath;
 	
+	/**
+	 * Create an instance with the dictionary loaded from the words file in a directory.<br>
+	 * 使用从目录中的词条文件加载的字典创建实例。
+	 * 
+	 * @param dictionaryPath		字典文件所在目录，如果为null，则使用class path中的data/words.dic
+	 * 								<br>Directory of the dictionary file, if it is null, data/words.dic in the class path will be used.
+	 * @param keywordDefinitions	关键词字的定义
+	 * @param lengthDefinitions		文本长度类别定义
+	 */
 	public FastTextAnalyzer(String dictionaryPath, 
 			Map<String, ? extends Object> keywordDefinitions, 
 			Map<Integer, ? extends Object> lengthDefinitions){
-		super(dictionaryPath, keywordDefinitions, lengthDefinitions);
+		this(loadDictionary(dictionaryPath), keywordDefinitions, lengthDefinitions);
+		this.dictionaryPath = dictionaryPath;
+		this.loadedFromPath = true;
+	}
+	
+	/**
+	 * Create an instance with a copy of a dictionary.
+	 * Changes to the dictionary afterwards will not affect the analyzer.<br>
+	 * 使用指定字典的拷贝创建实例，之后对这个字典的改变不会影响分析器。
+	 * 
+	 * @param dictionary			字典
+	 * @param keywordDefinitions	关键词字的定义
+	 * @param lengthDefinitions		文本长度类别定义
+	 */
+	public FastTextAnalyzer(Dictionary dictionary, 
+			Map<String, ? extends Object> keywordDefinitions, 
+			Map<Integer, ? extends Object> lengthDefinitions){
+		this(new CompactDictionary(dictionary), keywordDefinitions, lengthDefinitions);
+	}
+	
+	/**
+	 * Create an instance with a compact dictionary.
+	 * The same dictionary can be shared by many analyzers.<br>
+	 * 使用指定的紧凑词典创建实例，同一个词典可以被多个分析器共用。
+	 * 
+	 * @param dictionary			字典
+	 * @param keywordDefinitions	关键词字的定义
+	 * @param lengthDefinitions		文本长度类别定义
+	 */
+	public FastTextAnalyzer(CompactDictionary dictionary, 
+			Map<String, ? extends Object> keywordDefinitions, 
+			Map<Integer, ? extends Object> lengthDefinitions){
+		super(null, keywordDefinitions, lengthDefinitions);
 		
-		cwIdentifier = new ChineseWordIdentifier();
-		wIdentifier = new WordIdentifier(cwIdentifier);
-
+		this.dictionary = dictionary;
 		kwMatcher = keywordDefinitions == null ? 
 				null : new KeywordMatcher(keywordDefinitions);
 	}
+	
+	/**
+	 * Load the dictionary as normal words.<br>
+	 * 加载字典，其中的词条都作为正常词汇。
+	 * 
+	 * @param dictionaryPath	字典文件所在目录，如果为null，则使用class path中的data/words.dic
+	 * 							<br>Directory of the dictionary file, if it is null, data/words.dic in the class path will be used.
+	 * @return	the dictionary loaded
+	 */
+	static protected CompactDictionary loadDictionary(String dictionaryPath){
+		try{
+			InputStream is;
+			if (dictionaryPath == null){
+				is = FastTextAnalyzer.class.getClassLoader().getResourceAsStream("data/" + WORDS_FILE);
+				if (is == null){
+					throw new IllegalArgumentException("Dictionary file not found in class path: data/" + WORDS_FILE);
+				}
+			}else{
+				is = new FileInputStream(new File(dictionaryPath, WORDS_FILE));
+			}
+			try{
+				return CompactDictionary.load(is, Word.TYPE_NORMAL);
+			}finally{
+				is.close();
+			}
+		}catch(IOException e){
+			throw new IllegalArgumentException("Failed to load dictionary from: " + dictionaryPath, e);
+		}
+	}
+	
+	/**
+	 * Load the dictionary again from the dictionary path specified when constructing, and then replace the one in use.
+	 * Analyzing going on is not blocked, it just continues with the old dictionary.
+	 * It can only be used if the analyzer was created with a dictionary path.<br>
+	 * 从构造时指定的字典路径重新加载字典，然后替换掉正在使用的字典。正在进行的分析不会被阻塞，它会继续使用旧的字典。
+	 * 只有当分析器是用字典路径创建的时候才能使用。
+	 * @throws IllegalStateException	if the analyzer was created with a dictionary rather than a dictionary path
+	 */
+	public void reloadDictionary(){
+		if (!loadedFromPath){
+			throw new IllegalStateException("The analyzer was not created with a dictionary path, so there is nothing to reload from.");
+		}
+		setDictionary(loadDictionary(dictionaryPath));
+	}
+	
+	/**
+	 * Get the dictionary in use.<br>
+	 * 获取正在使用的字典。
+	 * @return	the dictionary
+	 */
+	public CompactDictionary getDictionary(){
+		return dictionary;
+	}
+	
+	/**
+	 * Replace the dictionary in use. Analyzing going on is not blocked, it just continues with the old dictionary.<br>
+	 * 替换掉正在使用的字典。正在进行的分析不会被阻塞，它会继续使用旧的字典。
+	 * @param dictionary	the new dictionary
+	 */
+	public void setDictionary(CompactDictionary dictionary){
+		this.dictionary = dictionary;
+	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jabb.util.text.word.TextAnalyzer#analyzeKeywords(net.sf.jabb.util.text.word.AnalyzedText)
 	 */
 	@Override
 	void analyzeKeywords(AnalyzedText aText) {
-		// TODO Auto-generated method stub
-
+		if (kwMatcher != null){
+			aText.setMatchedKeywords(kwMatcher.match(aText.getText()));
+		}
 	}
 
 	/* (non-Javadoc)
@@ -60,8 +198,55 @@ public class FastTextAnalyzer extends TextAnalyzer {
 	 */
 	@Override
 	void analyzeWords(AnalyzedText aText) {
-		// TODO Auto-generated method stub
+		FastList<String> list = new FastList<String>();
+		FastSet<String> set = new FastSet<String>();
+		
+		CompactDictionary dict = dictionary;
+		String text = aText.getText();
+		int l = text.length();
+		int i = 0;
+		while (i < l){
+			char c = text.charAt(i);
+			int end;
+			String w = null;
+			if (c < CJK_START && Character.isLetterOrDigit(c)){
+				end = i + 1;
+				while (end < l && text.charAt(end) < CJK_START && Character.isLetterOrDigit(text.charAt(end))){
+					end ++;
+				}
+				w = text.substring(i, end);
+			}else{
+				long found = dict.longestPrefixOf(text, i);
+				if (found != -1){
+					end = DoubleArrayTrie.endOf(found);
+					if ((dict.getTypesByIndex(DoubleArrayTrie.keyOf(found)) & (Word.TYPE_IGNORE | Word.TYPE_SEPARATOR)) == 0){
+						w = text.substring(i, end);
+					}
+				}else{
+					end = i + 1;
+					if (Character.isLetterOrDigit(c)){
+						w = String.valueOf(c);
+					}
+				}
+			}
+			if (w != null){
+				list.add(w);
+				set.add(w);
+			}
+			i = end;
+		}
+		aText.setWords(list);
+		aText.setUniqueWords(set);
+	}
 
+	@Override
+	void reloadDefinitions(
+			Map<String, ? extends Object> keywordDefinitions,
+			Map<Integer, ? extends Object> lengthDefinitions) {
+		super.reloadDefinitions(keywordDefinitions, lengthDefinitions);
+		
+		kwMatcher = keywordDefinitions == null ? 
+			null : new KeywordMatcher(keywordDefinitions);
 	}
 
 }
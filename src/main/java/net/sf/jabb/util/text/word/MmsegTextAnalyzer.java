@@ -36,14 +36,23 @@ import com.chenlb.mmseg4j.SimpleSeg;
  * 基于mmseg4j分词的文本分析器。
  * <p>
  * Text Analyzer.
+ * <p>
+ * Each thread has its own segmenter, all of them share the same dictionary, 
+ * so that texts can be analyzed by many threads concurrently without any lock.<br>
+ * 每个线程有自己的分词器，它们共用同一个字典，所以可以在多个线程中同时进行分析而不需要加锁。
  * 
  * @author Zhengmao HU (James)
  *
  */
 public class MmsegTextAnalyzer extends TextAnalyzer {
 	protected com.chenlb.mmseg4j.Dictionary dict; 
-	protected Seg seg;
-	protected MMSeg mmSeg;
+	protected int type;
+	protected ThreadLocal<MMSeg> mmSegs = new ThreadLocal<MMSeg>(){
+		@Override
+		protected MMSeg initialValue(){
+			return new MMSeg(new StringReader(""), createSeg());
+		}
+	};
 	protected KeywordMatcher kwMatcher;
 	
 	public MmsegTextAnalyzer(int type, String dictionaryPath, 
@@ -56,23 +65,28 @@ public class MmsegTextAnalyzer extends TextAnalyzer {
 		}else{
 			dict = com.chenlb.mmseg4j.Dictionary.getInstance(dictionaryPath);
 		}
+		this.type = type;
+		mmSegs.set(new MMSeg(new StringReader(""), createSeg()));	// validates the type
+		
+		kwMatcher = keywordDefinitions == null ? 
+				null : new KeywordMatcher(keywordDefinitions);
+	}
+	
+	/**
+	 * Create a segmenter according to the type. Segmenters are not thread-safe, but they can share the dictionary.
+	 * @return	a new segmenter
+	 */
+	protected Seg createSeg(){
 		switch (type){
 		case TYPE_MMSEG_SIMPLE:
-			seg = new SimpleSeg(dict);
-			break;
+			return new SimpleSeg(dict);
 		case TYPE_MMSEG_COMPLEX:
-			seg = new ComplexSeg(dict);
-			break;
+			return new ComplexSeg(dict);
 		case TYPE_MMSEG_MAXWORD:
-			seg = new MaxWordSeg(dict);
-			break;
+			return new MaxWordSeg(dict);
 		default:
 			throw new IllegalArgumentException("Supported types are: TYPE_MMSEG_SIMPLE, TYPE_MMSEG_COMPLEX, TYPE_MMSEG_MAXWORD");
 		}
-		mmSeg = new MMSeg(new StringReader(""), seg);
-		
-		kwMatcher = keywordDefinitions == null ? 
-				null : new KeywordMatcher(keywordDefinitions);
 	}
 
 
@@ -96,17 +110,16 @@ public class MmsegTextAnalyzer extends TextAnalyzer {
 
 		com.chenlb.mmseg4j.Word word = null;
 		Reader sr = new StringReader(aText.getText());
-		synchronized(mmSeg){
-			mmSeg.reset(sr);
-			try{
-				while((word=mmSeg.next())!=null) {
-					String w = word.getString();
-					list.add(w);
-					set.add(w);
-				}
-			}catch(IOException e){
-				throw new RuntimeException("IOException occurred", e);
+		MMSeg mmSeg = mmSegs.get();
+		mmSeg.reset(sr);
+		try{
+			while((word=mmSeg.next())!=null) {
+				String w = word.getString();
+				list.add(w);
+				set.add(w);
 			}
+		}catch(IOException e){
+			throw new RuntimeException("IOException occurred", e);
 		}
 		aText.setWords(list);
 		aText.setUniqueWords(set);
@@ -16,12 +16,26 @@ limitations under the License.
 
 package net.sf.jabb.util.text.word;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Text Analyzer; Result of the analysis will be hold in {@link AnalyzedText}.<br>
  * 文本分析器；分析的结果会放在{@link AnalyzedText}中。
+ * <p>
+ * Instances are thread-safe. Batches of texts can be analyzed in parallel with {@link #analyzeAll(Collection)}.<br>
+ * 实例是线程安全的。可以用{@link #analyzeAll(Collection)}对一批文本进行并行分析。
  * 
  * @author Zhengmao HU (James)
  *
@@ -40,10 +54,15 @@ public abstract class TextAnalyzer {
 	 */
 	static public final int TYPE_MMSEG_COMPLEX = 3;
 	/**
-	 * 使用KeywordMatcher与自定义的字典表进行分词（试验中，尚不完善）
+	 * 使用双数组字典树对字典进行正向最大匹配分词，速度快但准确度稍低，参见{@link FastTextAnalyzer}
 	 */
 	static public final int TYPE_FAST = 4;
 	
+	/**
+	 * Number of tasks that each thread will have when analyzing a batch, more tasks give better balance.
+	 */
+	static protected final int TASKS_PER_THREAD = 4;
+	
 	protected String dictionaryPath;
 	protected Map<String, ? extends Object> keywordDefinitions;
 	protected TreeMap<Integer, ? extends Object> lengthDefinitions;
@@ -142,6 +161,85 @@ public abstract class TextAnalyzer {
 		return analyze(text, false);
 	}
 	
+	/**
+	 * Analyze a batch of texts in parallel, using the default thread pool
+	 * which has as many daemon threads as the number of available processors.<br>
+	 * 使用缺省的线程池对一批文本进行并行分析，缺省线程池中守护线程的个数与可用的处理器个数相同。
+	 * 
+	 * @param texts	The texts to be analyzed.<br>待分析的文本。
+	 * @return	Results of the analysis, in the same order as the texts.<br>分析结果，与文本的次序相同。
+	 */
+	public List<AnalyzedText> analyzeAll(Collection<String> texts){
+		return analyzeAll(texts, DefaultThreadPoolHolder.threadPool, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Analyze a batch of texts in parallel. 
+	 * The texts are divided into consecutive slices, each of which is analyzed by one task in the thread pool.<br>
+	 * 对一批文本进行并行分析。文本被分成连续的若干段，每一段由线程池中的一个任务进行分析。
+	 * 
+	 * @param texts				The texts to be analyzed.<br>待分析的文本。
+	 * @param executorService	The thread pool in which the analysis will be done.<br>在这个线程池中进行分析。
+	 * @param parallelism		How many threads are expected to be used.<br>预计会用到几个线程。
+	 * @return	Results of the analysis, in the same order as the texts.<br>分析结果，与文本的次序相同。
+	 */
+	public List<AnalyzedText> analyzeAll(Collection<String> texts, ExecutorService executorService, int parallelism){
+		final String[] input = texts.toArray(new String[texts.size()]);
+		final AnalyzedText[] output = new AnalyzedText[input.length];
+		int numTasks = Math.min(input.length, Math.max(1, parallelism) * TASKS_PER_THREAD);
+		if (numTasks <= 1){
+			for (int i = 0; i < input.length; i ++){
+				output[i] = analyze(input[i]);
+			}
+			return Arrays.asList(output);
+		}
+		
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numTasks);
+		for (int t = 0; t < numTasks; t ++){
+			final int from = (int)((long)input.length * t / numTasks);
+			final int to = (int)((long)input.length * (t + 1) / numTasks);
+			tasks.add(new Callable<Object>(){
+				@Override
+				public Object call() throws Exception {
+					for (int i = from; i < to; i ++){
+						output[i] = analyze(input[i]);
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Object> future: executorService.invokeAll(tasks)){
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while analyzing texts", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException){
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to analyze texts", e.getCause());
+		}
+		return Arrays.asList(output);
+	}
+	
+	/**
+	 * Holder of the default thread pool, so that it will not be created unless it is used.
+	 */
+	static class DefaultThreadPoolHolder{
+		static final ExecutorService threadPool = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(), new ThreadFactory(){
+					private final AtomicInteger count = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "TextAnalyzer-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+	
 	/**
 	 * 进行文本长度分析——分析文本的长度落在哪个类别区间。
 	 * @param aText		用来获取原始文本以及存放结果
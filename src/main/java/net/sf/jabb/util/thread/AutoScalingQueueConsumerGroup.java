@@ -0,0 +1,672 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.thread;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jabb.util.parallel.BackoffStrategies;
+import net.sf.jabb.util.parallel.BackoffStrategy;
+import net.sf.jabb.util.text.NameDeduplicator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A group of QueueConsumer(s) working on the same queue, with the number of consumers adjusted automatically according to the load.<br>
+ * 一批并行处理同一个队列的QueueConsumer，其数量根据负载自动调整。
+ * <p>
+ * Consumers are created by a {@link ConsumerFactory}. At least <code>minConsumers</code> of them are running after start,
+ * and periodically the queue depth, the latency (time data stays in the queue, estimated from the depth and the dequeue rate)
+ * and the processing time (time between a consumer getting data from the queue and asking for more) are measured:
+ * <ul>
+ * 	<li>If the estimated latency exceeds <code>maxLatencyMillis</code>, consumers are added immediately,
+ * 		as many as needed for clearing the backlog within that time, but no more than <code>maxConsumers</code>.</li>
+ * 	<li>If one less consumer could handle the load with utilization below <code>scaleDownUtilization</code>,
+ * 		and this has been true for a period decided by the scale down {@link BackoffStrategy}, one consumer is retired.
+ * 		The period is computed from the number of consecutive retirements since the last scale up,
+ * 		so that the group shrinks cautiously and does not oscillate.</li>
+ * </ul>
+ * <p>
+ * 消费者由{@link ConsumerFactory}创建。启动之后至少有<code>minConsumers</code>个消费者在运行，
+ * 并且会定期测量队列长度、延迟（数据在队列中停留的时间，根据队列长度和出队速率估算）和处理时间（消费者从队列取得数据到再次取数据之间的时间）：
+ * <ul>
+ * 	<li>如果估算的延迟超过<code>maxLatencyMillis</code>，立即增加消费者，数量为在这个时间内处理完积压数据所需要的数量，但不超过<code>maxConsumers</code>。</li>
+ * 	<li>如果少一个消费者也能以低于<code>scaleDownUtilization</code>的利用率处理负载，并且这种情况持续了由缩减{@link BackoffStrategy}决定的一段时间，
+ * 		则让一个消费者退出。这段时间根据自上次扩充以来连续退出的次数计算，从而让这组消费者谨慎地缩减而不会振荡。</li>
+ * </ul>
+ * <p>
+ * Each consumer is given its own view of the queue through which the measurements are done,
+ * so data should be put into the queue returned by {@link #getQueue()} or through {@link #queue(Object)}.
+ * A retired consumer stops getting data from its view, and it is interrupted only if it is waiting for data in the view,
+ * so the processing going on is never disturbed. The adjustment does not wait for retired consumers to finish,
+ * but {@link #stop(boolean)} does.
+ * <p>
+ * 每个消费者得到的是队列的一个视图，测量就是通过它进行的，所以数据应该放进{@link #getQueue()}返回的队列中或者通过{@link #queue(Object)}放入。
+ * 退出的消费者不会再从它的视图中得到数据，并且只有在它正在视图中等待数据的时候才会被中断，所以正在进行的处理不会被打扰。
+ * 调整的时候不会等待退出的消费者结束，但是{@link #stop(boolean)}会等待。
+ *
+ * @author Zhengmao HU (James)
+ *
+ * @param <E>	Type of the data in the queue.<br>队列中数据的类型
+ */
+public class AutoScalingQueueConsumerGroup<E> extends QueueConsumerGroup<E> {
+	private static final Log log = LogFactory.getLog(AutoScalingQueueConsumerGroup.class);
+
+	static protected final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+	static protected final long DEFAULT_MAX_LATENCY_MILLIS = 1000;
+	static protected final double DEFAULT_SCALE_DOWN_UTILIZATION = 0.7;
+
+	/**
+	 * Creates QueueConsumer(s) when the group needs more of them.<br>
+	 * 在需要更多消费者的时候创建QueueConsumer。
+	 *
+	 * @param <E>	Type of the data in the queue.<br>队列中数据的类型
+	 */
+	public static interface ConsumerFactory<E> {
+		/**
+		 * Create a new consumer, its queue and thread pool will be set by the group.<br>
+		 * 创建一个新的消费者，它的队列和线程池会由这一组来设置。
+		 * @return	a new QueueConsumer that has not been started
+		 */
+		QueueConsumer<E> createConsumer();
+	}
+
+	protected ConsumerFactory<E> consumerFactory;
+	protected int minConsumers;
+	protected int maxConsumers;
+	protected long checkIntervalMillis = DEFAULT_CHECK_INTERVAL_MILLIS;
+	protected long maxLatencyMillis = DEFAULT_MAX_LATENCY_MILLIS;
+	protected double scaleDownUtilization = DEFAULT_SCALE_DOWN_UTILIZATION;
+	protected BackoffStrategy scaleDownBackoff = BackoffStrategies.exponentialBackoff(1000, 60000);
+
+	protected NameDeduplicator nameDeduplicator = new NameDeduplicator();
+	/**
+	 * Views of the queue given to the active consumers, in the order they were added
+	 */
+	protected List<MeteredQueue<E>> active = new ArrayList<MeteredQueue<E>>();
+	/**
+	 * Consumers retired but may not have finished yet
+	 */
+	protected List<QueueConsumer<E>> retired = new ArrayList<QueueConsumer<E>>();
+	protected ScheduledExecutorService scaler;
+	protected boolean running;
+
+	protected long lastCheckNanos;
+	protected int consecutiveScaleDowns;
+	protected boolean quiet;
+	protected long quietSinceNanos;
+
+	protected volatile long estimatedLatencyMillis;
+	protected volatile double utilization;
+	protected volatile double averageProcessingMillis;
+
+	/**
+	 * Constructor.<br>
+	 * 创建实例。
+	 *
+	 * @param workQueue			The queue that data for processing will be fetched from.<br>
+	 * 							消费者将从这个队列取得待处理数据。
+	 * @param executorService	Thread pool that working threads will be get from, null means consumers will use their own.<br>
+	 * 							指定让消费者从这里获得工作线程，null表示消费者使用它们自己的线程池。
+	 * @param minConsumers		Minimum number of consumers.<br>
+	 * 							最少有多少个消费者。
+	 * @param maxConsumers		Maximum number of consumers.<br>
+	 * 							最多有多少个消费者。
+	 * @param consumerFactory	The factory creating consumers.<br>
+	 * 							创建消费者的工厂。
+	 */
+	public AutoScalingQueueConsumerGroup(BlockingQueue<E> workQueue, ExecutorService executorService,
+			int minConsumers, int maxConsumers, ConsumerFactory<E> consumerFactory){
+		super(workQueue, executorService);
+		if (minConsumers < 1 || maxConsumers < minConsumers){
+			throw new IllegalArgumentException("Invalid minConsumers/maxConsumers: " + minConsumers + "/" + maxConsumers);
+		}
+		if (consumerFactory == null){
+			throw new IllegalArgumentException("consumerFactory must not be null");
+		}
+		this.minConsumers = minConsumers;
+		this.maxConsumers = maxConsumers;
+		this.consumerFactory = consumerFactory;
+		this.consumers = new ConcurrentSkipListMap<String, QueueConsumer<E>>();
+	}
+
+	/**
+	 * Constructor.<br>
+	 * 创建实例。
+	 *
+	 * @param workQueueSize		Size of the ArrayBlockingQueue to be created from which data for processing will be fetched.<br>
+	 * 							将被创建的ArrayBlockingQueue队列的大小，消费者将从这个队列取得待处理数据。
+	 * @param executorService	Thread pool that working threads will be get from, null means consumers will use their own.<br>
+	 * 							指定让消费者从这里获得工作线程，null表示消费者使用它们自己的线程池。
+	 * @param minConsumers		Minimum number of consumers.<br>
+	 * 							最少有多少个消费者。
+	 * @param maxConsumers		Maximum number of consumers.<br>
+	 * 							最多有多少个消费者。
+	 * @param consumerFactory	The factory creating consumers.<br>
+	 * 							创建消费者的工厂。
+	 */
+	public AutoScalingQueueConsumerGroup(int workQueueSize, ExecutorService executorService,
+			int minConsumers, int maxConsumers, ConsumerFactory<E> consumerFactory){
+		this(new ArrayBlockingQueue<E>(workQueueSize), executorService, minConsumers, maxConsumers, consumerFactory);
+	}
+
+	/**
+	 * Start the minimum number of consumers (or the ones left from last time) and the periodical adjustment.<br>
+	 * 启动最少数量的消费者（或者上次留下来的那些消费者）以及定期的调整。
+	 */
+	@Override
+	public synchronized void start(){
+		if (running){
+			return;
+		}
+		running = true;
+		for (MeteredQueue<E> q: active){
+			q.consumer.start();
+		}
+		while (active.size() < minConsumers){
+			addConsumer();
+		}
+		lastCheckNanos = System.nanoTime();
+		quiet = false;
+		consecutiveScaleDowns = 0;
+		scaler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat(getClass().getSimpleName() + "-scaler-%d").setDaemon(true).build());
+		scaler.scheduleWithFixedDelay(new Runnable(){
+			@Override
+			public void run() {
+				try{
+					adjust();
+				}catch(RuntimeException e){
+					log.error("Failed to adjust the number of consumers", e);
+				}
+			}
+		}, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the periodical adjustment and then all the consumers;
+	 * This method will not return until all consumers are stopped.<br>
+	 * 停止定期的调整以及所有消费者，这个方法会等到所有消费者结束才返回。
+	 *
+	 * @param afterQueueEmpty	true if working thread should keep processing until the queue is empty;<br>
+	 * 							false if working thread should stop after finished current work;<br>
+	 * 							如果为true，则工作线程要等到队列处理空了才结束；<br>
+	 * 							如果为false，则工作线程处理完当前数据就结束。
+	 */
+	@Override
+	public void stop(boolean afterQueueEmpty){
+		List<QueueConsumer<E>> retiredConsumers;
+		synchronized(this){
+			running = false;
+			if (scaler != null){
+				scaler.shutdown();
+				scaler = null;
+			}
+			retiredConsumers = new ArrayList<QueueConsumer<E>>(retired);
+			retired.clear();
+		}
+		super.stop(afterQueueEmpty);
+		for (QueueConsumer<E> c: retiredConsumers){
+			awaitStopped(c);
+		}
+	}
+
+	/**
+	 * Wait for a retired consumer to finish, without interrupting it.
+	 * @param c	the consumer
+	 */
+	protected void awaitStopped(QueueConsumer<E> c){
+		while (!isStopped(c)){
+			try {
+				c.joinWorker(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	static protected boolean isStopped(QueueConsumer<?> c){
+		int m = c.mode.get();
+		return m == QueueConsumer.MODE_STOPPED || m == QueueConsumer.MODE_INIT;
+	}
+
+	/**
+	 * Measure the load and add or retire consumers when necessary. It is called periodically after start.<br>
+	 * 测量负载并在需要的时候增加或减少消费者。启动之后它被定期调用。
+	 */
+	protected synchronized void adjust(){
+		if (!running){
+			return;
+		}
+		long now = System.nanoTime();
+		long interval = Math.max(1, now - lastCheckNanos);
+		lastCheckNanos = now;
+		long n = 0;
+		long busy = 0;
+		for (MeteredQueue<E> q: active){
+			long d = q.dequeued;
+			n += d - q.reportedDequeued;
+			q.reportedDequeued = d;
+			long b = q.getBusyNanos(now);
+			busy += Math.max(0, b - q.reportedBusyNanos);
+			q.reportedBusyNanos = b;
+		}
+		for (Iterator<QueueConsumer<E>> it = retired.iterator(); it.hasNext();){
+			if (isStopped(it.next())){
+				it.remove();
+			}
+		}
+		int depth = queue.size();
+		int count = active.size();
+
+		long latency = depth == 0 ? 0 : (n == 0 ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(depth * interval / n));
+		double processingNanos = n == 0 ? 0 : (double) busy / n;
+		estimatedLatencyMillis = latency;
+		utilization = Math.min(1.0, (double) busy / interval / count);
+		averageProcessingMillis = processingNanos / 1000000;
+
+		if (latency > maxLatencyMillis && count < maxConsumers){
+			int needed = (int) Math.ceil(depth * processingNanos / TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis));
+			int target = Math.min(maxConsumers, Math.max(count + 1, needed));
+			while (active.size() < target){
+				addConsumer();
+			}
+			consecutiveScaleDowns = 0;
+			quiet = false;
+			if (log.isDebugEnabled()){
+				log.debug("Scaled up to " + target + " consumers, queue depth: " + depth + ", estimated latency: " + latency + "ms");
+			}
+		}else if (count > minConsumers && latency <= maxLatencyMillis
+				&& (double) busy / interval / (count - 1) < scaleDownUtilization){
+			if (!quiet){
+				quiet = true;
+				quietSinceNanos = now;
+			}else if (now - quietSinceNanos >= TimeUnit.MILLISECONDS.toNanos(scaleDownBackoff.computeBackoffMilliseconds(consecutiveScaleDowns + 1))){
+				retireConsumer();
+				consecutiveScaleDowns ++;
+				quietSinceNanos = now;
+				if (log.isDebugEnabled()){
+					log.debug("Scaled down to " + active.size() + " consumers, utilization: " + utilization);
+				}
+			}
+		}else{
+			quiet = false;
+		}
+	}
+
+	/**
+	 * Create a consumer through the factory, add it to the group and start it if the group is running.<br>
+	 * 通过工厂创建一个消费者，把它加入这一组，并且如果这一组正在运行就启动它。
+	 */
+	protected void addConsumer(){
+		QueueConsumer<E> c = consumerFactory.createConsumer();
+		String newName = nameDeduplicator.deduplicate(c.getName());
+		c.setName(newName);
+		if (threadPool != null){
+			c.setExecutorService(threadPool);
+		}
+		MeteredQueue<E> q = new MeteredQueue<E>(queue, c);
+		c.setQueue(q);
+		consumers.put(newName, c);
+		active.add(q);
+		if (running){
+			c.start();
+		}
+	}
+
+	/**
+	 * Ask the most recently added consumer to stop and remove it from the group, without waiting for it to finish.<br>
+	 * 让最近加入的消费者停止并把它从这一组中去掉，不等待它结束。
+	 */
+	protected void retireConsumer(){
+		MeteredQueue<E> q = active.remove(active.size() - 1);
+		consumers.remove(q.consumer.getName());
+		retired.add(q.consumer);
+		q.retire();
+	}
+
+	/**
+	 * Get the number of consumers currently in the group.<br>
+	 * 取得这一组中当前消费者的数量。
+	 * @return	number of consumers
+	 */
+	public int getConsumerCount(){
+		return consumers.size();
+	}
+
+	/**
+	 * Get the latency estimated in the last check.<br>
+	 * 取得最近一次检查时估算的延迟。
+	 * @return	estimated time in milliseconds that data stays in the queue, Long.MAX_VALUE if nothing had been taken from a non-empty queue
+	 */
+	public long getEstimatedLatencyMillis() {
+		return estimatedLatencyMillis;
+	}
+
+	/**
+	 * Get the utilization of consumers measured in the last check.<br>
+	 * 取得最近一次检查时测量的消费者利用率。
+	 * @return	between 0 and 1, the portion of time consumers were busy processing data
+	 */
+	public double getUtilization() {
+		return utilization;
+	}
+
+	/**
+	 * Get the average processing time measured in the last check.<br>
+	 * 取得最近一次检查时测量的平均处理时间。
+	 * @return	average processing time in milliseconds of each piece of data
+	 */
+	public double getAverageProcessingMillis() {
+		return averageProcessingMillis;
+	}
+
+	public int getMinConsumers() {
+		return minConsumers;
+	}
+
+	public int getMaxConsumers() {
+		return maxConsumers;
+	}
+
+	public long getCheckIntervalMillis() {
+		return checkIntervalMillis;
+	}
+
+	/**
+	 * Set how often the load is measured and the number of consumers adjusted, it takes effect after next start.<br>
+	 * 设置多长时间测量一次负载和调整消费者数量，下次启动的时候生效。
+	 * @param checkIntervalMillis	interval in milliseconds
+	 */
+	public void setCheckIntervalMillis(long checkIntervalMillis) {
+		this.checkIntervalMillis = checkIntervalMillis;
+	}
+
+	public long getMaxLatencyMillis() {
+		return maxLatencyMillis;
+	}
+
+	/**
+	 * Set the maximum latency, more consumers will be added when the estimated latency exceeds it.<br>
+	 * 设置最大延迟，估算的延迟超过它的时候会增加消费者。
+	 * @param maxLatencyMillis	the maximum time in milliseconds data should stay in the queue
+	 */
+	public synchronized void setMaxLatencyMillis(long maxLatencyMillis) {
+		this.maxLatencyMillis = maxLatencyMillis;
+	}
+
+	public double getScaleDownUtilization() {
+		return scaleDownUtilization;
+	}
+
+	/**
+	 * Set the utilization threshold, a consumer can be retired only if the utilization of the remaining ones would be below it.<br>
+	 * 设置利用率阈值，只有剩下的消费者的利用率会低于它的时候才能让一个消费者退出。
+	 * @param scaleDownUtilization	between 0 and 1
+	 */
+	public synchronized void setScaleDownUtilization(double scaleDownUtilization) {
+		this.scaleDownUtilization = scaleDownUtilization;
+	}
+
+	public BackoffStrategy getScaleDownBackoff() {
+		return scaleDownBackoff;
+	}
+
+	/**
+	 * Set the strategy deciding how long the load should stay low before retiring a consumer.
+	 * The argument passed to it is 1 for the first retirement after a scale up, 2 for the second, and so on.<br>
+	 * 设置决定让一个消费者退出之前负载需要保持低位多长时间的策略。
+	 * 传给它的参数在扩充之后第一次退出时为1，第二次为2，依此类推。
+	 * @param scaleDownBackoff	the strategy
+	 */
+	public synchronized void setScaleDownBackoff(BackoffStrategy scaleDownBackoff) {
+		this.scaleDownBackoff = scaleDownBackoff;
+	}
+
+	/**
+	 * The view of the queue given to each consumer, measuring how many data had been taken
+	 * and how long the consumer had been busy processing them.
+	 * It should be used by only one consumer, so the measurements are kept without any contention.
+	 * After being retired, it gives out no more data and asks the consumer to stop.
+	 *
+	 * @param <E>	Type of the data in the queue
+	 */
+	protected static class MeteredQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>{
+		protected final BlockingQueue<E> queue;
+		protected final QueueConsumer<E> consumer;
+
+		protected volatile boolean retired;
+		/**
+		 * The thread waiting for data in take() or poll(timeout), it is guarded by this
+		 */
+		protected Thread waiting;
+
+		/**
+		 * Number of data taken, written only by the consumer
+		 */
+		protected volatile long dequeued;
+		/**
+		 * Number of data taken that had already been counted by the group
+		 */
+		protected long reportedDequeued;
+
+		protected volatile boolean busy;
+		protected volatile long busySinceNanos;
+		protected volatile long busyNanos;
+		/**
+		 * Busy time that had already been counted by the group
+		 */
+		protected long reportedBusyNanos;
+
+		protected MeteredQueue(BlockingQueue<E> queue, QueueConsumer<E> consumer){
+			this.queue = queue;
+			this.consumer = consumer;
+		}
+
+		/**
+		 * Ask the consumer to stop after current processing, interrupting it only if it is waiting for data
+		 */
+		protected void retire(){
+			consumer.preStop(false);
+			synchronized(this){
+				retired = true;
+				if (waiting != null){
+					waiting.interrupt();
+				}
+			}
+		}
+
+		/**
+		 * Called by the consumer before getting data
+		 * @return	true if the consumer can go on getting data
+		 */
+		protected boolean beforeGet(){
+			idle();
+			if (retired){
+				consumer.preStop(false);	// in case it was not running yet when being retired
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Called by the consumer before waiting for data
+		 * @throws InterruptedException	if it had been retired
+		 */
+		protected void beforeWait() throws InterruptedException{
+			synchronized(this){
+				if (!beforeGet()){
+					throw new InterruptedException("Retired");
+				}
+				waiting = Thread.currentThread();
+			}
+		}
+
+		/**
+		 * Called by the consumer after waiting for data, no interruption for retirement can happen after it
+		 */
+		protected void afterWait(){
+			synchronized(this){
+				waiting = null;
+			}
+			if (retired){
+				Thread.interrupted();	// the interruption for retirement came too late, it should not disturb the processing
+			}
+		}
+
+		/**
+		 * Called when the consumer comes back for more data
+		 */
+		protected void idle(){
+			if (busy){
+				busy = false;
+				busyNanos += System.nanoTime() - busySinceNanos;
+			}
+		}
+
+		/**
+		 * Called when the consumer got data
+		 * @param n	number of data got
+		 */
+		protected void got(int n){
+			if (n > 0){
+				dequeued += n;
+				busySinceNanos = System.nanoTime();
+				busy = true;
+			}
+		}
+
+		/**
+		 * Get the accumulated busy time
+		 * @param now	current value of System.nanoTime()
+		 * @return	busy time in nanoseconds including the current processing if there is one
+		 */
+		protected long getBusyNanos(long now){
+			long b = busyNanos;
+			if (busy){
+				b += Math.max(0, now - busySinceNanos);
+			}
+			return b;
+		}
+
+		@Override
+		public E poll() {
+			if (!beforeGet()){
+				return null;
+			}
+			E obj = queue.poll();
+			got(obj == null ? 0 : 1);
+			return obj;
+		}
+
+		@Override
+		public E take() throws InterruptedException {
+			beforeWait();
+			E obj;
+			try{
+				obj = queue.take();
+			}finally{
+				afterWait();
+			}
+			got(1);
+			return obj;
+		}
+
+		@Override
+		public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+			beforeWait();
+			E obj;
+			try{
+				obj = queue.poll(timeout, unit);
+			}finally{
+				afterWait();
+			}
+			got(obj == null ? 0 : 1);
+			return obj;
+		}
+
+		@Override
+		public int drainTo(Collection<? super E> c) {
+			if (!beforeGet()){
+				return 0;
+			}
+			int n = queue.drainTo(c);
+			got(n);
+			return n;
+		}
+
+		@Override
+		public int drainTo(Collection<? super E> c, int maxElements) {
+			if (!beforeGet()){
+				return 0;
+			}
+			int n = queue.drainTo(c, maxElements);
+			got(n);
+			return n;
+		}
+
+		@Override
+		public boolean offer(E e) {
+			return queue.offer(e);
+		}
+
+		@Override
+		public void put(E e) throws InterruptedException {
+			queue.put(e);
+		}
+
+		@Override
+		public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+			return queue.offer(e, timeout, unit);
+		}
+
+		@Override
+		public E peek() {
+			return queue.peek();
+		}
+
+		@Override
+		public int size() {
+			return queue.size();
+		}
+
+		@Override
+		public int remainingCapacity() {
+			return queue.remainingCapacity();
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return queue.iterator();
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.thread;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sf.jabb.util.parallel.BackoffStrategies;
+import net.sf.jabb.util.parallel.BackoffStrategy;
+import co.paralleluniverse.fibers.DefaultFiberScheduler;
+import co.paralleluniverse.fibers.Fiber;
+import co.paralleluniverse.fibers.FiberScheduler;
+import co.paralleluniverse.fibers.SuspendExecution;
+import co.paralleluniverse.strands.Strand;
+import co.paralleluniverse.strands.SuspendableRunnable;
+import co.paralleluniverse.strands.concurrent.Semaphore;
+
+/**
+ * A template for processing data one by one from a queue in Quasar fibers rather than threads.<br>
+ * 一个在Quasar纤程而不是线程中从队列中逐个取得数据进行处理的模板。
+ * <p>
+ * The working loop of each instance runs in a fiber, so thousands of instances can be running
+ * without thousands of threads. Optionally, each piece of data can be processed in its own fiber,
+ * with a limit on how many of them can be in flight at the same time, which is suitable for I/O heavy processing.
+ * Start and stop work exactly the same as other QueueConsumer(s): {@link #stop(boolean)} with true
+ * keeps processing until the queue is empty, with false stops after current work has been finished,
+ * and in both cases it does not return until all the data in flight have been processed.
+ * <p>
+ * 每个实例的工作循环运行在一个纤程中，所以可以有成千上万个实例同时运行而不需要成千上万个线程。
+ * 也可以让每个数据都在它自己的纤程中处理，同时限制正在处理中的数据的数量，这适合于I/O繁重的处理。
+ * 启动和停止与其他的QueueConsumer完全相同：{@link #stop(boolean)}的参数为true则一直处理到队列空了为止，
+ * 为false则处理完当前数据就结束，两种情况下都要等到所有正在处理中的数据处理完了才返回。
+ * <p>
+ * Since a fiber should not be blocked by {@link BlockingQueue#take()}, the queue is polled without blocking,
+ * and the fiber sleeps for a while according to a {@link BackoffStrategy} when the queue is empty.
+ * The cost is latency when idle: data arriving at an idle consumer may wait up to the longest sleep
+ * before being picked up, which is {@value #DEFAULT_MAX_IDLE_WAIT_MILLIS} milliseconds with the default strategy.
+ * Specify a strategy with shorter sleeps if that matters more than the CPU spent on polling.
+ * The application must be running with Quasar instrumentation (normally as a java agent),
+ * and {@link #process(Object)} can call other suspendable methods.
+ * The thread pool of QueueConsumer is not used.
+ * <p>
+ * 由于纤程不应该被{@link BlockingQueue#take()}阻塞，所以对队列进行非阻塞的poll，队列为空的时候纤程根据{@link BackoffStrategy}睡眠一会儿。
+ * 代价是空闲时的延迟：到达空闲消费者的数据最多可能要等待最长的一次睡眠时间才会被取走，使用缺省策略时是{@value #DEFAULT_MAX_IDLE_WAIT_MILLIS}毫秒。
+ * 如果这比轮询所耗费的CPU更重要，请指定睡眠时间更短的策略。
+ * 应用程序必须在Quasar instrumentation下运行（通常是作为java agent），{@link #process(Object)}中可以调用其他可挂起的方法。
+ * QueueConsumer的线程池不会被使用。
+ *
+ * @author Zhengmao HU (James)
+ *
+ * @param <E>	Type of the data in the queue.<br>队列中数据的类型
+ */
+abstract public class FiberQueueConsumer<E> extends QueueConsumer<E> {
+	/**
+	 * Maximum time in milliseconds to sleep when the queue is empty, used by the default idle backoff strategy
+	 */
+	static protected final long DEFAULT_MAX_IDLE_WAIT_MILLIS = 50;
+
+	protected FiberScheduler scheduler;
+	protected int maxInFlight;
+	protected Semaphore inFlight;
+	protected BackoffStrategy idleBackoff;
+	protected int idleAttempts;
+
+	/**
+	 * The fiber running the working loop
+	 */
+	protected volatile Fiber<Void> fiber;
+
+	/**
+	 * Constructor to create an instance.<br>
+	 * 创建一个实例。
+	 *
+	 * @param workQueue			The queue that data for processing will be fetched from.<br>
+	 * 							本实例将从这个队列取得待处理数据。
+	 * @param name				Name of this instance, which determines the naming of the fiber.<br>
+	 * 							本个实例的名称，会被用在纤程名里。
+	 * @param scheduler			The scheduler of the fibers, null means the default one.<br>
+	 * 							纤程的调度器，null表示使用缺省的调度器。
+	 * @param maxInFlight		Maximum number of data being processed at the same time, each in its own fiber;
+	 * 							1 means data are processed one by one in the fiber of the working loop.<br>
+	 * 							最多同时处理多少个数据，每个数据在它自己的纤程中处理；1表示在工作循环的纤程中逐个处理。
+	 * @param idleBackoff		Decides how long to sleep when the queue is found empty for n times in a row, null means the default one.<br>
+	 * 							决定当连续n次发现队列为空的时候睡眠多长时间，null表示使用缺省的策略。
+	 */
+	public FiberQueueConsumer(BlockingQueue<E> workQueue, String name, FiberScheduler scheduler, int maxInFlight, BackoffStrategy idleBackoff){
+		super(workQueue, name, null);
+		if (maxInFlight < 1){
+			throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+		}
+		this.scheduler = scheduler;
+		this.maxInFlight = maxInFlight;
+		this.inFlight = maxInFlight > 1 ? new Semaphore(maxInFlight) : null;
+		this.idleBackoff = idleBackoff == null ? BackoffStrategies.exponentialBackoff(1, DEFAULT_MAX_IDLE_WAIT_MILLIS) : idleBackoff;
+	}
+
+	/**
+	 * Constructor to create an instance using the default fiber scheduler and the default idle backoff strategy.<br>
+	 * 创建一个使用缺省纤程调度器和缺省空闲退避策略的实例。
+	 *
+	 * @param workQueue			The queue that data for processing will be fetched from.<br>
+	 * 							本实例将从这个队列取得待处理数据。
+	 * @param name				Name of this instance, which determines the naming of the fiber.<br>
+	 * 							本个实例的名称，会被用在纤程名里。
+	 * @param maxInFlight		Maximum number of data being processed at the same time, each in its own fiber;
+	 * 							1 means data are processed one by one in the fiber of the working loop.<br>
+	 * 							最多同时处理多少个数据，每个数据在它自己的纤程中处理；1表示在工作循环的纤程中逐个处理。
+	 */
+	public FiberQueueConsumer(BlockingQueue<E> workQueue, String name, int maxInFlight){
+		this(workQueue, name, null, maxInFlight, null);
+	}
+
+	/**
+	 * Constructor to create an instance that processes data one by one, using the default fiber scheduler
+	 * and the default idle backoff strategy.<br>
+	 * 创建一个逐个处理数据、使用缺省纤程调度器和缺省空闲退避策略的实例。
+	 *
+	 * @param workQueue			The queue that data for processing will be fetched from.<br>
+	 * 							本实例将从这个队列取得待处理数据。
+	 * @param name				Name of this instance, which determines the naming of the fiber.<br>
+	 * 							本个实例的名称，会被用在纤程名里。
+	 */
+	public FiberQueueConsumer(BlockingQueue<E> workQueue, String name){
+		this(workQueue, name, null, 1, null);
+	}
+
+	/**
+	 * Constructor to create an instance that processes data one by one, using the default fiber scheduler
+	 * and the default idle backoff strategy. The queue should be set afterwards, normally by QueueConsumerGroup.<br>
+	 * 创建一个逐个处理数据、使用缺省纤程调度器和缺省空闲退避策略的实例。队列需要之后再设置，通常是由QueueConsumerGroup设置。
+	 *
+	 * @param name				Name of this instance, which determines the naming of the fiber.<br>
+	 * 							本个实例的名称，会被用在纤程名里。
+	 */
+	public FiberQueueConsumer(String name){
+		this(null, name, null, 1, null);
+	}
+
+	@Override
+	protected void launch() {
+		SuspendableRunnable target = new SuspendableRunnable(){
+			private static final long serialVersionUID = -1734542717338960460L;
+
+			@Override
+			public void run() throws SuspendExecution, InterruptedException {
+				work();
+			}
+		};
+		Fiber<Void> f = new Fiber<Void>(name, scheduler == null ? DefaultFiberScheduler.getInstance() : scheduler, target);
+		fiber = f;
+		f.start();
+	}
+
+	@Override
+	protected void joinWorker(long millis) throws InterruptedException {
+		Fiber<Void> f = fiber;
+		if (f == null){
+			Thread.sleep(1);	// not yet launched
+			return;
+		}
+		try {
+			f.join(millis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// still running
+		} catch (ExecutionException e) {
+			// the exception had been reported by the fiber
+		}
+	}
+
+	@Override
+	protected void interruptWorker() {
+		Fiber<Void> f = fiber;
+		if (f != null){
+			f.interrupt();
+		}
+	}
+
+	/**
+	 * The working loop, which has the same state transitions as {@link QueueConsumer#run()}.
+	 * @throws SuspendExecution	not a real exception
+	 */
+	protected void work() throws SuspendExecution{
+		if (!mode.compareAndSet(MODE_START, MODE_RUNNING)){
+			throw new IllegalStateException("Should be in state MODE_START, but actully not.");
+		}
+
+		int m;	//保证值一致
+		while(((m = mode.get()) == MODE_RUNNING) || (m == MODE_STOP_WHEN_EMPTY && queue.size() > 0)){
+			consumeInFiber();
+		}
+		if (inFlight != null){
+			// wait for all the data in flight
+			inFlight.acquireUninterruptibly(maxInFlight);
+			inFlight.release(maxInFlight);
+		}
+		if (!mode.compareAndSet(MODE_STOP_WHEN_EMPTY, MODE_STOPPED) && !mode.compareAndSet(MODE_STOP_ASAP, MODE_STOPPED)){
+			throw new IllegalStateException("Should be in state MODE_STOP_WHEN_EMPTY or MODE_STOP_ASAP, but actully not.");
+		}
+	}
+
+	/**
+	 * Take one piece of data from the queue and process it, or sleep for a while if the queue is empty.
+	 * @throws SuspendExecution	not a real exception
+	 */
+	protected void consumeInFiber() throws SuspendExecution{
+		final E obj = queue.poll();
+		if (obj == null){
+			if (idleAttempts < 30){
+				idleAttempts ++;
+			}
+			try {
+				Strand.sleep(idleBackoff.computeBackoffMilliseconds(idleAttempts));
+			} catch (InterruptedException e) {
+				// asked to stop
+			}
+			return;
+		}
+		idleAttempts = 0;
+		if (inFlight == null){
+			process(obj);
+		}else{
+			inFlight.acquireUninterruptibly();
+			SuspendableRunnable target = new SuspendableRunnable(){
+				private static final long serialVersionUID = 4125440713932745651L;
+
+				@Override
+				public void run() throws SuspendExecution, InterruptedException {
+					try{
+						process(obj);
+					}finally{
+						inFlight.release();
+					}
+				}
+			};
+			new Fiber<Void>(scheduler == null ? DefaultFiberScheduler.getInstance() : scheduler, target).start();
+		}
+	}
+
+	/**
+	 * This method is implemented only for the case that this instance is run by a thread directly,
+	 * normally it is not used because the working loop runs in a fiber.<br>
+	 * 这个方法仅用于本实例直接由线程运行的情况，通常它不会被用到，因为工作循环运行在纤程中。
+	 */
+	@Override
+	protected void consume() {
+		try {
+			consumeInFiber();
+		} catch (SuspendExecution e) {
+			// this is not a real exception
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Process one piece of data - this method should be overridden in subclass.
+	 * It runs in a fiber and can call other suspendable methods.<br>
+	 * 处理一份数据——这个方法应该在子类中被重载。它运行在纤程中，可以调用其他可挂起的方法。
+	 *
+	 * @param obj	The data taken from queue, which needs to be processed<br>
+	 * 				从队列中取出的待处理数据。
+	 * @throws SuspendExecution	not a real exception
+	 */
+	abstract public void process(E obj) throws SuspendExecution;
+
+}
@@ -34,13 +34,15 @@ import java.util.concurrent.TimeUnit;
  * Maximum size of a batch and maximum time for waiting for new data can be configured.
  * If the maximum size limit reached, or maximum wait time limit reached, all
  * data in current batch will be processed, and further data taken will be put
- * into later batches.
+ * into later batches. The maximum wait time applies to the whole batch, counted from
+ * the first piece of data in the batch, and data are drained from the queue in chunks.
  * Duplicated data will be discarded in a batch, which means, if there are duplicated data
  * taken from the queue in a batch, only one instance of those duplicated will be 
  * processed.
  * <p>
  * 每批会尽可能地多取一些数据，可以设定每批最大的数据量，以及最长的等待时间。
  * 如果达到了这个量，或者是达到了这个时间，则当前批的数据就处理掉，然后开始下一批。
+ * 最长等待时间针对的是整批数据，从这一批的第一个数据开始算起，数据是成块地从队列中取出的。
  * 每批数据中如果有重复的，会被剔除掉，也就是说，在一批当中不会重复处理。
  * 
  * @author Zhengmao HU (James)
@@ -51,6 +53,10 @@ abstract public class QueueBatchUniqueProcessor<E> extends QueueConsumer<E> {
 	protected int maxBatchSize;
 	protected long pollTimeout;
 	protected TimeUnit pollTimeoutUnit;
+	/**
+	 * The batch, which is reused after each round of processing
+	 */
+	protected LinkedHashSet<E> batch = new LinkedHashSet<E>();
 
 	/**
 	 * Constructor to create an instance.<br>
@@ -270,34 +276,17 @@ abstract public class QueueBatchUniqueProcessor<E> extends QueueConsumer<E> {
 	 */
 	@Override
 	protected void consume() {
-		int size = 0;
-		LinkedHashSet<E> batch = new LinkedHashSet<E>();
-		E obj = null;
 		try {
-			obj = queue.take();
+			fetch(batch, maxBatchSize, pollTimeout, pollTimeoutUnit);
 		} catch (InterruptedException e) {
 			return;
 		}
-		batch.add(obj);
-		size++;
-		if (pollTimeout == 0){
-			// no waiting
-			while(size < maxBatchSize && (obj = queue.poll()) != null){
-				batch.add(obj);
-				size++;
-			}
-		}else{
-			// need to wait for a while
-			try {
-				while(size < maxBatchSize && (obj = queue.poll(pollTimeout, pollTimeoutUnit)) != null){
-					batch.add(obj);
-					size++;
-				}
-			} catch (InterruptedException e) {
-				// do nothing because we need to have the batch processed;
-			}
+		Thread.interrupted();	// if interrupted while waiting for more data, we still need to have the batch processed
+		try{
+			process(batch);
+		}finally{
+			batch.clear();
 		}
-		process(batch);
 	}
 
 	/**
@@ -320,8 +309,9 @@ abstract public class QueueBatchUniqueProcessor<E> extends QueueConsumer<E> {
 	 *  it will return immediately from the selection operation, possibly with a non-zero value, 
 	 *  just as if the selector's wakeup method were invoked. 
 	 *  
-	 * @param batch	The data taken from queue, which needs to be processed<br>
-	 * 				从队列中取出的待处理数据。
+	 * @param batch	The data taken from queue, which needs to be processed. 
+	 * 				The Set is reused for later batches, so do not keep any reference to it after this method returns.<br>
+	 * 				从队列中取出的待处理数据。这个Set会被后面的批次重复使用，所以这个方法返回之后不要再保留对它的引用。
 	 */
 	abstract public void process(Set<E> batch);
 
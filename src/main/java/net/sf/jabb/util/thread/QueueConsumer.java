@@ -16,9 +16,11 @@ limitations under the License.
 
 package net.sf.jabb.util.thread;
 
+import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -209,7 +211,42 @@ public abstract class QueueConsumer<E> implements Runnable{
 	 */
 	public void start(){
 		if (mode.compareAndSet(MODE_INIT, MODE_START)){
-			threadPool.execute(this);
+			launch();
+		}
+	}
+	
+	/**
+	 * Launch the worker that will call {@link #run()}, subclasses may override it to run in something other than
+	 * a thread from the thread pool, together with {@link #joinWorker(long)} and {@link #interruptWorker()}.<br>
+	 * 启动调用{@link #run()}的工作者，子类可以重载它以便不在线程池的线程中运行，同时也要重载{@link #joinWorker(long)}和{@link #interruptWorker()}。
+	 */
+	protected void launch(){
+		threadPool.execute(this);
+	}
+	
+	/**
+	 * Wait for the worker to finish.<br>
+	 * 等待工作者结束。
+	 * @param millis	maximum time to wait in milliseconds
+	 * @throws InterruptedException	if interrupted while waiting
+	 */
+	protected void joinWorker(long millis) throws InterruptedException{
+		Thread t = thread;
+		if (t != null){
+			t.join(millis);
+		}else{
+			Thread.sleep(1);	// not yet started running
+		}
+	}
+	
+	/**
+	 * Interrupt the worker.<br>
+	 * 中断工作者。
+	 */
+	protected void interruptWorker(){
+		Thread t = thread;
+		if (t != null){
+			t.interrupt();
 		}
 	}
 	
@@ -237,14 +274,14 @@ public abstract class QueueConsumer<E> implements Runnable{
 		while(!(mode.compareAndSet(MODE_STOPPED, MODE_INIT) 
 				|| mode.get() == MODE_INIT)){
 			try {
-				thread.join(100);
+				joinWorker(100);
 			} catch (InterruptedException e) {
 				// do nothing
 			}
 			preStop(afterQueueEmpty);
 			// 也存在这种可能性：在while作判断的时候，queue.size()>0，
 			// 而take()的时候已经没东西取了，所以join之后也不能死等，要反复interrupt。
-			thread.interrupt();
+			interruptWorker();
 		}
 	}
 	
@@ -284,6 +321,54 @@ public abstract class QueueConsumer<E> implements Runnable{
 		}
 	}
 	
+	/**
+	 * Take a batch of data from the queue into a collection, for use in {@link #consume()} of subclasses.<br>
+	 * 从队列中取出一批数据放入集合中，供子类的{@link #consume()}方法使用。
+	 * <p>
+	 * It waits until at least one piece of data is available, then drains the queue with 
+	 * {@link BlockingQueue#drainTo(java.util.Collection, int)} in chunks until the batch is full,
+	 * or until the wait time limit counted from the first piece of data has been reached.
+	 * The wait time limit applies to the whole batch, not to each piece of data.
+	 * <p>
+	 * 先等待到至少有一个数据，然后用{@link BlockingQueue#drainTo(java.util.Collection, int)}成块地取出数据，
+	 * 直到这一批满了，或者从第一个数据开始算起的等待时间到了。等待时间限制针对的是整批数据，而不是每个数据。
+	 * 
+	 * @param batch			The collection that data will be added to, it can be reused between batches.<br>
+	 * 						数据会被加入这个集合，它可以在各批之间重复使用。
+	 * @param maxBatchSize	Maximum number of data to be taken.<br>最多取出多少个数据。
+	 * @param maxWait		Maximum time to wait for more data after the first one has been taken, 0 means no waiting.<br>
+	 * 						取到第一个数据之后最多再等待多长时间，0表示不等待。
+	 * @param maxWaitUnit	Unit of the maxWait parameter.<br>maxWait的单位。
+	 * @return	Number of data taken, which may be larger than the size of the collection if it is a Set.<br>
+	 * 			取出的数据个数，如果集合是Set，这个数可能比集合的大小要大。
+	 * @throws InterruptedException	if interrupted while waiting for the first piece of data. 
+	 * 			If interrupted while waiting for more data, the batch is returned as is and the interrupt status is set.<br>
+	 * 			如果在等待第一个数据的时候发生了中断。如果是在等待更多数据的时候发生了中断，则直接返回已经取得的数据，并设置中断状态。
+	 */
+	protected int fetch(Collection<? super E> batch, int maxBatchSize, long maxWait, TimeUnit maxWaitUnit) throws InterruptedException{
+		int n = queue.drainTo(batch, maxBatchSize);
+		if (n == 0){
+			batch.add(queue.take());
+			n = 1 + queue.drainTo(batch, maxBatchSize - 1);
+		}
+		if (maxWait > 0 && n < maxBatchSize){
+			long deadline = System.nanoTime() + maxWaitUnit.toNanos(maxWait);
+			try{
+				long remaining;
+				E obj;
+				while(n < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0 
+						&& (obj = queue.poll(remaining, TimeUnit.NANOSECONDS)) != null){
+					batch.add(obj);
+					n ++;
+					n += queue.drainTo(batch, maxBatchSize - n);
+				}
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		return n;
+	}
+	
 	/**
 	 * Consume the data in queue - this method should be overridden in subclass.<br>
 	 * 处理队列中的数据——这个方法应该在子类中被重载。
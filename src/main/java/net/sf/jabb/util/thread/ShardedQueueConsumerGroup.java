@@ -0,0 +1,489 @@
+/*
+Copyright 2015 Zhengmao HU (James)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.sf.jabb.util.thread;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jabb.util.col.RingBufferBlockingQueue;
+import net.sf.jabb.util.text.NameDeduplicator;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A group of QueueConsumer(s) each of which works on its own queue (shard).<br>
+ * 一批QueueConsumer，每个QueueConsumer处理它自己的队列（分片）。
+ * <p>
+ * Data queued through {@link #queue(Object)} are routed to one of the shards.
+ * If a {@link KeyExtractor} is specified, data with the same key always go to the same shard,
+ * otherwise data are distributed to the shards in round-robin manner.
+ * Since producers and consumers of different shards do not contend with each other,
+ * it scales better than {@link QueueConsumerGroup} which has all the QueueConsumer(s) working on the same queue.
+ * <p>
+ * 通过{@link #queue(Object)}放入的数据会被分派到某个分片。如果指定了{@link KeyExtractor}，
+ * 则具有相同key的数据总是进入同一个分片，否则数据被轮流分派到各个分片。
+ * 由于不同分片的生产者和消费者之间没有争用，它比所有QueueConsumer处理同一个队列的{@link QueueConsumerGroup}有更好的伸缩性。
+ * <p>
+ * If work stealing is not enabled, data with the same key are processed in the order they were queued.
+ * If work stealing is enabled, a QueueConsumer whose own shard is empty takes data from the busiest shard,
+ * so that the load is balanced, but data with the same key are no longer guaranteed to be processed in order.
+ * <p>
+ * 如果没有启用工作窃取，具有相同key的数据会按照它们被放入的顺序处理。
+ * 如果启用了工作窃取，自己的分片为空的QueueConsumer会从最忙的分片取数据，从而使负载均衡，但是具有相同key的数据就不再保证按顺序处理了。
+ *
+ * @author Zhengmao HU (James)
+ *
+ * @param <E>	Type of the data in the queue.<br>队列中数据的类型
+ *
+ */
+public class ShardedQueueConsumerGroup<E> extends QueueConsumerGroup<E> {
+	/**
+	 * How long an idle QueueConsumer waits on its own shard before trying to steal again, in milliseconds
+	 */
+	static protected final long STEAL_INTERVAL_MILLIS = 10;
+
+	/**
+	 * Extractor of the key that decides which shard the data goes to.<br>
+	 * 从数据中提取key，用于决定数据进入哪个分片。
+	 *
+	 * @param <E>	Type of the data in the queue.<br>队列中数据的类型
+	 */
+	public static interface KeyExtractor<E> {
+		/**
+		 * Get the key of the data
+		 * @param obj	the data
+		 * @return	the key, data with equal keys go to the same shard. It can be null.
+		 */
+		Object keyOf(E obj);
+	}
+
+	protected List<Shard<E>> shards;
+	protected KeyExtractor<E> keyExtractor;
+	protected boolean workStealing;
+	protected AtomicInteger roundRobin = new AtomicInteger();
+
+	/**
+	 * Constructor.<br>
+	 * 创建实例。
+	 * <p>
+	 * Duplicated names of QueueConsumer(s) will be renamed automatically when adding to this group.
+	 * <p>
+	 * 当被加入的时候，QueueConsumer如果有名称重复，会被自动改名。
+	 *
+	 * @param shardQueueSize	Size of the queue to be created for each QueueConsumer.<br>
+	 * 							为每个QueueConsumer创建的队列的大小。
+	 * @param keyExtractor		Extractor of the key for routing, null means round-robin routing.<br>
+	 * 							用于分派的key的提取器，null表示轮流分派。
+	 * @param workStealing		Whether QueueConsumer(s) with empty shard take data from the busiest shard.<br>
+	 * 							分片为空的QueueConsumer是否从最忙的分片取数据。
+	 * @param executorService	Thread pool that working threads will be get from, null means not specified.<br>
+	 * 							指定让本实例从这里获得所有工作线程，null表示不指定。
+	 * @param queueConsumers	QueueConsumer(s) that will work together.<br>
+	 * 							会一起工作的QueueConsumer。
+	 */
+	public ShardedQueueConsumerGroup(int shardQueueSize, KeyExtractor<E> keyExtractor, boolean workStealing,
+			ExecutorService executorService, Collection<? extends QueueConsumer<E>> queueConsumers){
+		super((BlockingQueue<E>)null, executorService);
+		if (queueConsumers.size() == 0){
+			throw new IllegalArgumentException("There must be at least one QueueConsumer.");
+		}
+		this.keyExtractor = keyExtractor;
+		this.workStealing = workStealing;
+		List<Shard<E>> list = new ArrayList<Shard<E>>(queueConsumers.size());
+		NameDeduplicator ndd = new NameDeduplicator();
+		for (QueueConsumer<E> c: queueConsumers){
+			Shard<E> shard = new Shard<E>(new RingBufferBlockingQueue<E>(shardQueueSize), list, workStealing);
+			list.add(shard);
+			String newName = ndd.deduplicate(c.getName());
+			c.setName(newName);
+			if (threadPool != null){
+				c.setExecutorService(threadPool);
+			}
+			c.setQueue(shard);
+			consumers.put(newName, c);
+		}
+		shards = Collections.unmodifiableList(list);
+		queue = new AllShards<E>(shards);
+	}
+
+	/**
+	 * Constructor.<br>
+	 * 创建实例。
+	 * <p>
+	 * Duplicated names of QueueConsumer(s) will be renamed automatically when adding to this group.
+	 * <p>
+	 * 当被加入的时候，QueueConsumer如果有名称重复，会被自动改名。
+	 *
+	 * @param shardQueueSize	Size of the queue to be created for each QueueConsumer.<br>
+	 * 							为每个QueueConsumer创建的队列的大小。
+	 * @param keyExtractor		Extractor of the key for routing, null means round-robin routing.<br>
+	 * 							用于分派的key的提取器，null表示轮流分派。
+	 * @param workStealing		Whether QueueConsumer(s) with empty shard take data from the busiest shard.<br>
+	 * 							分片为空的QueueConsumer是否从最忙的分片取数据。
+	 * @param executorService	Thread pool that working threads will be get from, null means not specified.<br>
+	 * 							指定让本实例从这里获得所有工作线程，null表示不指定。
+	 * @param queueConsumers	QueueConsumer(s) that will work together.<br>
+	 * 							会一起工作的QueueConsumer。
+	 */
+	public ShardedQueueConsumerGroup(int shardQueueSize, KeyExtractor<E> keyExtractor, boolean workStealing,
+			ExecutorService executorService, QueueConsumer<E>... queueConsumers){
+		this(shardQueueSize, keyExtractor, workStealing, executorService, Arrays.asList(queueConsumers));
+	}
+
+	/**
+	 * Put data into the shard it belongs to for processing, if the shard still has space
+	 * this method will return immediately without waiting for the data to be actually processed.<br>
+	 * 把待处理数据放入它所属的分片，如果分片中还有空位置则这个方法会立即返回而不是等待实际处理完成。
+	 * <p>
+	 * If the shard has no space left, this method will wait for the space then put data into it.
+	 * <p>
+	 * 如果分片中没有空位置了，则会等待分片空出位置来之后再把数据放进去。
+	 *
+	 * @param obj	Data need to be processed<br>
+	 * 				待处理的数据。
+	 * @throws InterruptedException if interrupted while waiting for space to become available.<br>
+	 * 								如果分片已满而在等待空出位置的时候发生了中断。
+	 */
+	@Override
+	public void queue(E obj) throws InterruptedException{
+		shardOf(obj).own.put(obj);
+	}
+
+	/**
+	 * Find the shard that the data should go to
+	 * @param obj	the data
+	 * @return	the shard
+	 */
+	protected Shard<E> shardOf(E obj){
+		int n = shards.size();
+		if (keyExtractor == null){
+			return shards.get((roundRobin.getAndIncrement() & Integer.MAX_VALUE) % n);
+		}
+		Object key = keyExtractor.keyOf(obj);
+		int h = key == null ? 0 : key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return shards.get((h & Integer.MAX_VALUE) % n);
+	}
+
+	/**
+	 * Get a read-only view of all the shards.<br>
+	 * 取得所有分片的只读视图。
+	 * <p>
+	 * There is no single work queue in this group, the view can be used to inspect the data waiting for processing,
+	 * such as checking size() or isEmpty(), but methods that put data into or take data out of it
+	 * throw UnsupportedOperationException. Use {@link #queue(Object)} to put data.
+	 * <p>
+	 * 本组中并没有单一的工作队列，这个视图可以用来查看等待处理的数据，比如检查size()或isEmpty()，
+	 * 但是放入或取出数据的方法会抛出UnsupportedOperationException。请通过{@link #queue(Object)}放入数据。
+	 * @return	the read-only view of all the shards
+	 */
+	@Override
+	public BlockingQueue<E> getQueue() {
+		return queue;
+	}
+
+	/**
+	 * Get the shards, one for each QueueConsumer, in the order the QueueConsumer(s) were given when constructing.<br>
+	 * 获取各个分片，每个QueueConsumer一个，其顺序与构造时给出QueueConsumer的顺序相同。
+	 * @return	the shards, as seen by the QueueConsumer(s)
+	 */
+	public List<? extends BlockingQueue<E>> getShards(){
+		return shards;
+	}
+
+	/**
+	 * Get the total number of data in all the shards.<br>
+	 * 获取所有分片中数据的总数。
+	 * @return	total number of data waiting for processing
+	 */
+	public int size(){
+		return queue.size();
+	}
+
+	public boolean isWorkStealing(){
+		return workStealing;
+	}
+
+	/**
+	 * Read-only view of all the shards, its size is the total number of data in them.
+	 *
+	 * @param <E>	Type of the data in the queue.
+	 */
+	protected static class AllShards<E> extends AbstractQueue<E> implements BlockingQueue<E>{
+		protected final List<Shard<E>> shards;
+
+		protected AllShards(List<Shard<E>> shards){
+			this.shards = shards;
+		}
+
+		protected UnsupportedOperationException readOnly(){
+			return new UnsupportedOperationException("The queue of a sharded group is a read-only view, use queue(...) of the group to put data.");
+		}
+
+		@Override
+		public int size() {
+			int size = 0;
+			for (Shard<E> shard: shards){
+				size += shard.own.size();
+			}
+			return size;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			for (Shard<E> shard: shards){
+				if (!shard.own.isEmpty()){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public E peek() {
+			for (Shard<E> shard: shards){
+				E e = shard.own.peek();
+				if (e != null){
+					return e;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			List<Iterator<E>> iterators = new ArrayList<Iterator<E>>(shards.size());
+			for (Shard<E> shard: shards){
+				iterators.add(shard.own.iterator());
+			}
+			return Iterators.unmodifiableIterator(Iterators.concat(iterators.iterator()));
+		}
+
+		@Override
+		public int remainingCapacity() {
+			long remaining = 0;
+			for (Shard<E> shard: shards){
+				remaining += shard.own.remainingCapacity();
+			}
+			return (int) Math.min(remaining, Integer.MAX_VALUE);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			throw readOnly();
+		}
+
+		@Override
+		public boolean offer(E e) {
+			throw readOnly();
+		}
+
+		@Override
+		public void put(E e) throws InterruptedException {
+			throw readOnly();
+		}
+
+		@Override
+		public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+			throw readOnly();
+		}
+
+		@Override
+		public E poll() {
+			throw readOnly();
+		}
+
+		@Override
+		public E take() throws InterruptedException {
+			throw readOnly();
+		}
+
+		@Override
+		public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+			throw readOnly();
+		}
+
+		@Override
+		public int drainTo(Collection<? super E> c) {
+			throw readOnly();
+		}
+
+		@Override
+		public int drainTo(Collection<? super E> c, int maxElements) {
+			throw readOnly();
+		}
+
+	}
+
+	/**
+	 * The queue seen by a QueueConsumer. It takes data from its own queue first,
+	 * and takes data from the busiest sibling if its own queue is empty and work stealing is enabled.
+	 *
+	 * @param <E>	Type of the data in the queue.
+	 */
+	protected static class Shard<E> extends AbstractQueue<E> implements BlockingQueue<E>{
+		protected final BlockingQueue<E> own;
+		protected final List<Shard<E>> siblings;
+		protected final boolean workStealing;
+
+		protected Shard(BlockingQueue<E> own, List<Shard<E>> siblings, boolean workStealing){
+			this.own = own;
+			this.siblings = siblings;
+			this.workStealing = workStealing;
+		}
+
+		/**
+		 * Find the sibling with the most data
+		 * @return	the busiest sibling, or null if all the siblings are empty
+		 */
+		protected Shard<E> busiest(){
+			Shard<E> result = null;
+			int max = 0;
+			for (Shard<E> s: siblings){
+				int size;
+				if (s != this && (size = s.own.size()) > max){
+					max = size;
+					result = s;
+				}
+			}
+			return result;
+		}
+
+		protected E steal(){
+			if (workStealing){
+				Shard<E> victim = busiest();
+				if (victim != null){
+					return victim.own.poll();
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public E poll() {
+			E e = own.poll();
+			return e == null ? steal() : e;
+		}
+
+		@Override
+		public E take() throws InterruptedException {
+			if (!workStealing){
+				return own.take();
+			}
+			for(;;){
+				E e = poll();
+				if (e != null){
+					return e;
+				}
+				e = own.poll(STEAL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if (e != null){
+					return e;
+				}
+			}
+		}
+
+		@Override
+		public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+			if (!workStealing){
+				return own.poll(timeout, unit);
+			}
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			for(;;){
+				E e = poll();
+				if (e != null){
+					return e;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0){
+					return null;
+				}
+				e = own.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(STEAL_INTERVAL_MILLIS)), TimeUnit.NANOSECONDS);
+				if (e != null){
+					return e;
+				}
+			}
+		}
+
+		@Override
+		public int drainTo(Collection<? super E> c) {
+			return drainTo(c, Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Drain from its own queue, or if it is empty and work stealing is enabled,
+		 * drain up to half of the data in the busiest sibling.
+		 */
+		@Override
+		public int drainTo(Collection<? super E> c, int maxElements) {
+			int n = own.drainTo(c, maxElements);
+			if (n == 0 && workStealing){
+				Shard<E> victim = busiest();
+				if (victim != null){
+					n = victim.own.drainTo(c, Math.min(maxElements, (victim.own.size() + 1) / 2));
+				}
+			}
+			return n;
+		}
+
+		@Override
+		public boolean offer(E e) {
+			return own.offer(e);
+		}
+
+		@Override
+		public void put(E e) throws InterruptedException {
+			own.put(e);
+		}
+
+		@Override
+		public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+			return own.offer(e, timeout, unit);
+		}
+
+		@Override
+		public E peek() {
+			return own.peek();
+		}
+
+		@Override
+		public int size() {
+			return own.size();
+		}
+
+		@Override
+		public int remainingCapacity() {
+			return own.remainingCapacity();
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return own.iterator();
+		}
+
+	}
+
+}
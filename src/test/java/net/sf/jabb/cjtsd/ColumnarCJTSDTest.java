@@ -0,0 +1,174 @@
+/**
+ * 
+ */
+package net.sf.jabb.cjtsd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class ColumnarCJTSDTest {
+
+	static ColumnarCJTSD sample(){
+		ColumnarCJTSD data = new ColumnarCJTSD("m", 2);
+		data.add(1000, 60);
+		data.add(1060, 60);
+		data.add(1120, 60);
+		data.add(1180, 1);
+		data.add(1181, 1);
+		data.add(1182, 60);
+		data.add(1242, 60);
+		for (long c: new long[]{5, 3, 0, 1000000000000L, -2, 7}){
+			data.addCount(c);
+		}
+		for (double v: new double[]{1.5, 1.5, 2.25, Double.NaN, -3.0, 1e300, 12}){
+			data.addValue('a', v);
+		}
+		data.addValue('x', 100);
+		return data;
+	}
+
+	static void assertSame(ColumnarCJTSD expected, ColumnarCJTSD actual){
+		assertEquals(expected.getUnit(), actual.getUnit());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i ++){
+			assertEquals(expected.getTimestamp(i), actual.getTimestamp(i));
+			assertEquals(expected.getDuration(i), actual.getDuration(i));
+		}
+		assertEquals(expected.hasCounts(), actual.hasCounts());
+		assertEquals(expected.cSize, actual.cSize);
+		for (int i = 0; i < expected.cSize; i ++){
+			assertEquals(expected.getCount(i), actual.getCount(i));
+		}
+		for (char column: ColumnarCJTSD.VALUE_COLUMNS.toCharArray()){
+			assertEquals(expected.hasValues(column), actual.hasValues(column));
+			int index = ColumnarCJTSD.valueColumnIndex(column);
+			assertEquals(expected.valueSizes[index], actual.valueSizes[index]);
+			for (int i = 0; i < expected.valueSizes[index]; i ++){
+				assertEquals(expected.getValue(column, i), actual.getValue(column, i), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testAdd() {
+		ColumnarCJTSD data = sample();
+		assertEquals(7, data.size());
+		assertEquals(Arrays.asList(60, -1, -1, 1, -1, 60), data.toPlain().getD());
+		assertEquals(60, data.getDuration(2));
+		assertEquals(1, data.getDuration(4));
+		assertEquals(60, data.getDuration(6));
+		assertEquals(60 * 60 * 1000L, data.getDurationMillis(6));
+		assertEquals(1000 * 60 * 1000L, data.getTimestampMillis(0));
+		assertFalse(data.hasCount(6));
+		assertFalse(data.hasValue('a', 3));
+		assertTrue(data.hasValue('a', 4));
+		assertFalse(data.hasValues('s'));
+		assertNull(data.toPlain().getS());
+		assertNull(data.toPlain().getA().get(3));
+	}
+
+	@Test
+	public void testPlainRoundTrip() {
+		ColumnarCJTSD data = sample();
+		ColumnarCJTSD copy = ColumnarCJTSD.of(data.toPlain());
+		assertSame(data, copy);
+		copy.add(1302, 60);
+		assertEquals(60, copy.getDuration(7));
+		assertEquals(Arrays.asList(60, -1, -1, 1, -1, 60), copy.toPlain().getD());
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws Exception {
+		ColumnarCJTSD data = sample();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CJTSDBinaryCodec.encode(data, out);
+		CJTSDBinaryCodec.encode(new ColumnarCJTSD(), out);
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		assertSame(data, CJTSDBinaryCodec.decode(in));
+		assertSame(new ColumnarCJTSD(), CJTSDBinaryCodec.decode(in));
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testBinarySize() throws Exception {
+		ColumnarCJTSD data = new ColumnarCJTSD("s", 16);
+		for (int i = 0; i < 1000; i ++){
+			data.add(1500000000L + i * 60, 60);
+			data.addCount(100 + i % 3);
+			data.addValue('a', 20.5);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CJTSDBinaryCodec.encode(data, out);
+		assertTrue(out.size() < 1000 * 2 + 200);
+		assertSame(data, CJTSDBinaryCodec.decode(new ByteArrayInputStream(out.toByteArray())));
+	}
+
+	@Test
+	public void testBinaryWithLength() throws Exception {
+		ColumnarCJTSD data = sample();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CJTSDBinaryCodec.encode(data, out);
+		byte[] bytes = out.toByteArray();
+		assertSame(data, CJTSDBinaryCodec.decode(new ByteArrayInputStream(bytes), bytes.length));
+		try{
+			CJTSDBinaryCodec.decode(new ByteArrayInputStream(bytes), bytes.length - 1);
+			fail("Reading beyond the length should fail");
+		}catch(EOFException e){
+			// expected
+		}
+	}
+
+	@Test
+	public void testBinaryWithHugeCount() throws Exception {
+		// version 1, unit 's', then 2^31-1 timestamps claimed by a 5-byte varint
+		byte[] bytes = new byte[]{1, 's', (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07, 0, 0, 0};
+		try{
+			CJTSDBinaryCodec.decode(new ByteArrayInputStream(bytes), bytes.length);
+			fail("The count should have been rejected before allocating");
+		}catch(IllegalArgumentException e){
+			// expected
+		}
+		try{
+			CJTSDBinaryCodec.decode(new ByteArrayInputStream(bytes));
+			fail("The input should have ended");
+		}catch(EOFException e){
+			// expected, without allocating for all the elements claimed
+		}
+	}
+
+	@Test
+	public void testJsonRoundTrip() throws Exception {
+		ColumnarCJTSD data = sample();
+		StringWriter writer = new StringWriter();
+		CJTSDJsonCodec.write(data, writer);
+		String json = writer.toString();
+		assertTrue(json.startsWith("{\"u\":\"m\",\"t\":[1000,1060,"));
+		assertTrue(json.contains("\"a\":[1.5,1.5,2.25,null,-3,1.0E300,12]"));
+		assertSame(data, CJTSDJsonCodec.read(new StringReader(json)));
+
+		ColumnarCJTSD parsed = CJTSDJsonCodec.read(new StringReader("{\"t\":[1,2],\"d\":[5],\"o\":[{\"k\":[1]},\"x\"],\"c\":[],\"s\":[null,1]}"));
+		assertNull(parsed.getUnit());
+		assertEquals(5, parsed.getDuration(1));
+		assertTrue(parsed.hasCounts());
+		assertFalse(parsed.hasCount(0));
+		assertFalse(parsed.hasValue('s', 0));
+		assertEquals(1.0, parsed.getValue('s', 1), 0);
+	}
+
+}
@@ -0,0 +1,121 @@
+/**
+ * 
+ */
+package net.sf.jabb.cjtsd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jabb.util.stat.BasicFrequencyCounter;
+import net.sf.jabb.util.stat.FrequencyCounterDefinition;
+import net.sf.jabb.util.stat.PackagedFrequencyCounter;
+import net.sf.jabb.util.stat.RingBufferFrequencyCounter;
+import net.sf.jabb.util.stat.TimePeriod;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class FrequencyCounterExporterTest {
+	static final long MINUTE = 60 * 1000L;
+
+	@Test
+	public void testBasic() {
+		BasicFrequencyCounter counter = new BasicFrequencyCounter(1, TimeUnit.MINUTES, 1, TimeUnit.DAYS);
+		FrequencyCounterExporter exporter = new FrequencyCounterExporter(counter);
+		assertEquals("m", exporter.getUnit());
+		counter.count(10 * MINUTE + 5, 3);
+		counter.count(11 * MINUTE, 2);
+		counter.count(13 * MINUTE + 59999, 1);
+
+		ColumnarCJTSD data = exporter.exportClosed(13 * MINUTE + 10);
+		assertEquals(Arrays.asList(10L, 11L), data.toPlain().getT());
+		assertEquals(Arrays.asList(1), data.toPlain().getD());
+		assertEquals(Arrays.asList(3L, 2L), data.toPlain().getC());
+
+		assertEquals(0, exporter.exportClosed(13 * MINUTE + 20).size());
+		counter.count(14 * MINUTE, 4);
+		data = exporter.exportClosed(15 * MINUTE);
+		assertEquals(Arrays.asList(13L, 14L), data.toPlain().getT());
+		assertEquals(Arrays.asList(1L, 4L), data.toPlain().getC());
+		assertEquals(15 * MINUTE, exporter.getExportedTill());
+
+		data = exporter.export(11 * MINUTE, 14 * MINUTE);
+		assertEquals(Arrays.asList(11L, 13L), data.toPlain().getT());
+	}
+
+	@Test
+	public void testUnorderedBasic() {
+		BasicFrequencyCounter counter = new BasicFrequencyCounter(5, TimeUnit.SECONDS);
+		FrequencyCounterExporter exporter = new FrequencyCounterExporter(counter);
+		assertEquals("s", exporter.getUnit());
+		for (int i = 20; i >= 0; i --){
+			counter.count(i * 5000L, i);
+		}
+		ColumnarCJTSD data = exporter.exportClosed(100001);
+		assertEquals(20, data.size());
+		assertEquals(0, data.getTimestamp(0));
+		assertEquals(95, data.getTimestamp(19));
+		assertEquals(5, data.getDuration(19));
+		assertEquals(19, data.getCount(19));
+	}
+
+	@Test
+	public void testRingBuffer() {
+		RingBufferFrequencyCounter counter = new RingBufferFrequencyCounter(100, TimeUnit.MILLISECONDS, 1, TimeUnit.SECONDS);
+		FrequencyCounterExporter exporter = new FrequencyCounterExporter(counter);
+		assertEquals("S", exporter.getUnit());
+		assertEquals(0, exporter.exportClosed(1000).size());
+		counter.count(1000, 1);
+		counter.count(1150, 2);
+		counter.count(1420, 3);
+		ColumnarCJTSD data = exporter.exportClosed(1450);
+		assertEquals(Arrays.asList(1000L, 1100L), data.toPlain().getT());
+		assertEquals(Arrays.asList(100), data.toPlain().getD());
+		assertEquals(Arrays.asList(1L, 2L), data.toPlain().getC());
+		counter.count(5000, 1);		// the history before 4000 is purged
+		data = exporter.exportClosed(5100);
+		assertEquals(Arrays.asList(5000L), data.toPlain().getT());
+	}
+
+	@Test
+	public void testPackagedRollUp() {
+		PackagedFrequencyCounter packaged = new PackagedFrequencyCounter(true,
+				new FrequencyCounterDefinition("minute", 1, TimeUnit.MINUTES, 1, TimeUnit.HOURS),
+				new FrequencyCounterDefinition("hour", 1, TimeUnit.HOURS, 1, TimeUnit.DAYS));
+		Map<Object, FrequencyCounterExporter> exporters = FrequencyCounterExporter.of(packaged);
+		for (int i = 0; i < 120; i ++){
+			packaged.count(i * MINUTE, 1);
+		}
+		ColumnarCJTSD hours = exporters.get("hour").exportClosed(120 * MINUTE);
+		assertEquals(Arrays.asList(0L, 60L), hours.toPlain().getT());
+		assertEquals(Arrays.asList(60), hours.toPlain().getD());
+		assertEquals(Arrays.asList(60L, 60L), hours.toPlain().getC());
+		ColumnarCJTSD minutes = exporters.get("minute").exportClosed(120 * MINUTE);
+		assertEquals(61, minutes.size());		// one hour of history is kept
+		assertEquals(59, minutes.getTimestamp(0));
+	}
+
+	@Test
+	public void testCalendarAligned() {
+		BasicFrequencyCounter counter = new BasicFrequencyCounter(TimePeriod.from("1 month"), TimeZone.getTimeZone("UTC"), 0, null);
+		FrequencyCounterExporter exporter = new FrequencyCounterExporter(counter);
+		assertEquals("s", exporter.getUnit());
+		long day = 24 * 3600L;
+		counter.count(0, 1);					// 1970-01
+		counter.count(31 * day * 1000, 2);		// 1970-02
+		counter.count(59 * day * 1000, 3);		// 1970-03
+		counter.count(90 * day * 1000, 4);		// 1970-04
+		ColumnarCJTSD data = exporter.exportClosed(90 * day * 1000 + 1);
+		assertEquals(Arrays.asList(0L, 31 * day, 59 * day), data.toPlain().getT());
+		assertEquals(Arrays.asList((int)(31 * day), (int)(28 * day), (int)(31 * day)), data.toPlain().getD());
+		assertEquals(Arrays.asList(1L, 2L, 3L), data.toPlain().getC());
+	}
+
+}
@@ -0,0 +1,236 @@
+/**
+ *
+ */
+package net.sf.jabb.util.col;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class RingBufferBlockingQueueTest {
+
+	@Test
+	public void testFifo() throws InterruptedException {
+		RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(5);
+		assertEquals(5, queue.getSizeLimit());
+		assertNull(queue.poll());
+		assertNull(queue.peek());
+		for (int round = 0; round < 10; round ++){
+			for (int i = 0; i < 5; i ++){
+				assertTrue(queue.offer(round * 10 + i));
+			}
+			assertFalse(queue.offer(-1));
+			assertFalse(queue.offer(-1, 10, TimeUnit.MILLISECONDS));
+			assertEquals(5, queue.size());
+			assertEquals(0, queue.remainingCapacity());
+			assertEquals(Arrays.asList(round * 10, round * 10 + 1, round * 10 + 2, round * 10 + 3, round * 10 + 4), new ArrayList<Integer>(queue));
+			assertEquals(Integer.valueOf(round * 10), queue.peek());
+			assertEquals(Integer.valueOf(round * 10), queue.take());
+			List<Integer> drained = new ArrayList<Integer>();
+			assertEquals(3, queue.drainTo(drained, 3));
+			assertEquals(Arrays.asList(round * 10 + 1, round * 10 + 2, round * 10 + 3), drained);
+			assertEquals(Integer.valueOf(round * 10 + 4), queue.poll(10, TimeUnit.MILLISECONDS));
+			assertTrue(queue.isEmpty());
+			assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	public void testSizeLimit() throws InterruptedException {
+		final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(10, 3);
+		for (int i = 0; i < 3; i ++){
+			queue.put(i);
+		}
+		assertFalse(queue.offer(3));
+
+		queue.setSizeLimit(2);
+		assertEquals(0, queue.remainingCapacity());
+		queue.poll();
+		assertFalse(queue.offer(3));
+
+		final CountDownLatch done = new CountDownLatch(1);
+		new Thread(){
+			@Override
+			public void run(){
+				try {
+					queue.put(3);
+					queue.put(4);
+					queue.put(5);
+					done.countDown();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}.start();
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+		queue.setSizeLimit(0);
+		assertEquals(10, queue.getSizeLimit());
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5), new ArrayList<Integer>(queue));
+
+		try{
+			queue.setSizeLimit(11);
+			fail("size limit larger than the capacity should not be accepted");
+		}catch(IllegalArgumentException e){
+			// expected
+		}
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final RingBufferBlockingQueue<Long> queue = new RingBufferBlockingQueue<Long>(100, 16);
+		final int producers = 4;
+		final int consumers = 4;
+		final int perProducer = 100000;
+		final AtomicLong sum = new AtomicLong();
+		final AtomicLong count = new AtomicLong();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p ++){
+			final long base = p * (long)perProducer;
+			threads.add(new Thread(){
+				@Override
+				public void run(){
+					try {
+						for (int i = 0; i < perProducer; i ++){
+							queue.put(base + i);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		for (int c = 0; c < consumers; c ++){
+			threads.add(new Thread(){
+				@Override
+				public void run(){
+					try {
+						Long last = null;
+						for (int i = 0; i < perProducer; i ++){
+							Long x = queue.take();
+							if (last != null && x / perProducer == last / perProducer){
+								assertTrue(x > last);	// elements from the same producer are in order
+							}
+							last = x;
+							sum.addAndGet(x);
+							count.incrementAndGet();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		for (Thread t: threads){
+			t.start();
+		}
+		for (Thread t: threads){
+			t.join(30000);
+		}
+		long n = (long)producers * perProducer;
+		assertEquals(n, count.get());
+		assertEquals(n * (n - 1) / 2, sum.get());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testRemove() throws InterruptedException {
+		RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(5);
+		for (int i = 1; i <= 5; i ++){
+			queue.put(i);
+		}
+		assertTrue(queue.remove(Integer.valueOf(3)));
+		assertFalse(queue.remove(Integer.valueOf(3)));
+		assertFalse(queue.remove(Integer.valueOf(9)));
+		assertEquals(Arrays.asList(1, 2, 4, 5), new ArrayList<Integer>(queue));
+		assertFalse(queue.offer(6));		// the removed one still occupies its slot
+		
+		assertTrue(queue.remove(Integer.valueOf(1)));
+		assertEquals(Integer.valueOf(2), queue.peek());
+		assertEquals(Integer.valueOf(2), queue.poll());
+		assertEquals(Integer.valueOf(4), queue.peek());
+		
+		Iterator<Integer> it = queue.iterator();
+		assertEquals(Integer.valueOf(4), it.next());
+		it.remove();
+		assertEquals(Arrays.asList(5), new ArrayList<Integer>(queue));
+		assertTrue(queue.offer(6));
+		assertTrue(queue.offer(7));
+		assertTrue(queue.removeAll(Arrays.asList(5, 7)));
+		assertEquals(Integer.valueOf(6), queue.take());
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testRemoveFromThreadPool() throws InterruptedException {
+		RingBufferBlockingQueue<Runnable> queue = new RingBufferBlockingQueue<Runnable>(10);
+		ThreadPoolExecutor threadPool = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, queue);
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final AtomicLong ran = new AtomicLong();
+		threadPool.execute(new Runnable(){
+			@Override
+			public void run() {
+				try {
+					blocker.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		Runnable[] tasks = new Runnable[3];
+		for (int i = 0; i < tasks.length; i ++){
+			tasks[i] = new Runnable(){
+				@Override
+				public void run() {
+					ran.incrementAndGet();
+				}
+			};
+			threadPool.execute(tasks[i]);
+		}
+		assertTrue(threadPool.remove(tasks[1]));
+		assertEquals(2, queue.toArray().length);
+		blocker.countDown();
+		threadPool.shutdown();
+		assertTrue(threadPool.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(2, ran.get());
+	}
+
+	@Test
+	public void testWithThreadPool() throws InterruptedException {
+		RingBufferBlockingQueue<Runnable> queue = new RingBufferBlockingQueue<Runnable>(100, 40);
+		ThreadPoolExecutor threadPool = new ThreadPoolExecutor(10, 10, 5, TimeUnit.SECONDS, queue);	// all threads started before the queue fills up
+		final CountDownLatch done = new CountDownLatch(50);
+		for (int i = 0; i < 50; i ++){
+			threadPool.execute(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(100L);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					done.countDown();
+				}
+			});
+			assertTrue(queue.size() <= queue.getSizeLimit());
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		threadPool.shutdown();
+	}
+
+}
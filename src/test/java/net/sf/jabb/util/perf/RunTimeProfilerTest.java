@@ -0,0 +1,120 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class RunTimeProfilerTest {
+
+	@Test
+	public void testConcurrentSpans() throws InterruptedException {
+		final RunTimeProfiler profiler = new RunTimeProfiler("Test");
+		final RunTimeProfiler.Span outer = profiler.getSpan("Outer");
+		final RunTimeProfiler.Span inner = profiler.getSpan("Outer", "Inner");
+		assertSame(inner, profiler.getSpan("Outer", "Inner"));
+		
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i ++){
+			threads[i] = new Thread(){
+				@Override
+				public void run(){
+					for (int j = 0; j < 1000; j ++){
+						outer.start();
+						inner.start();
+						inner.end();
+						profiler.end();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		assertEquals(8000L, outer.getRunTime().statistics.getCount());
+		assertEquals(8000L, inner.getRunTime().statistics.getCount());
+		assertEquals(0, profiler.getDepth());
+		
+		profiler.reset();
+		assertEquals(0L, inner.getRunTime().statistics.getCount());
+		assertSame(inner.getRunTime(), profiler.getRunTime().getAllDetail().get("Outer").getAllDetail().get("Inner"));
+	}
+
+	@Test
+	public void testReportWhileAddingSpans() throws InterruptedException {
+		final RunTimeProfiler profiler = new RunTimeProfiler("Test");
+		final Throwable[] error = new Throwable[1];
+		Thread reporter = new Thread(){
+			@Override
+			public void run(){
+				try{
+					for (int i = 0; i < 500; i ++){
+						profiler.getRunTime().toString();
+						profiler.getRunTime().getTotalRunTime();
+					}
+				}catch(Throwable t){
+					error[0] = t;
+				}
+			}
+		};
+		reporter.start();
+		for (int i = 0; i < 500 && reporter.isAlive(); i ++){
+			RunTimeProfiler.Span span = profiler.getSpan("Span " + i);
+			span.start();
+			span.end();
+		}
+		reporter.join();
+		if (error[0] != null){
+			throw new AssertionError(error[0]);
+		}
+		assertEquals(profiler.getRunTime().getAllDetail().size(), profiler.getRunTime().getDetailSnapshot().size());
+	}
+
+	@Test
+	public void testMismatchedEnd(){
+		RunTimeProfiler profiler = new RunTimeProfiler("Test");
+		RunTimeProfiler.Span a = profiler.getSpan("A");
+		RunTimeProfiler.Span b = profiler.getSpan("B");
+		a.start();
+		b.start();
+		try{
+			a.end();
+			fail("The mismatch should be reported");
+		}catch(IllegalStateException e){
+			// expected
+		}
+		assertEquals(0, profiler.getDepth());
+		assertEquals(1L, a.getRunTime().statistics.getCount());
+		assertEquals(0L, b.getRunTime().statistics.getCount());
+		
+		// the stack has been unwound, so later calls still work
+		b.start();
+		b.end();
+		a.start();
+		a.end();
+		assertEquals(0, profiler.getDepth());
+		assertEquals(2L, a.getRunTime().statistics.getCount());
+		assertEquals(1L, b.getRunTime().statistics.getCount());
+	}
+	
+	@Test
+	public void testDisabled(){
+		RunTimeProfiler profiler = new RunTimeProfiler("Test");
+		RunTimeProfiler.Span a = profiler.getSpan("A");
+		profiler.setEnabled(false);
+		a.start();
+		profiler.setEnabled(true);
+		a.end();
+		assertEquals(0L, a.getRunTime().statistics.getCount());
+		assertEquals(0, profiler.getDepth());
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.stat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class BigIntegerAdderTest {
+
+	@Test
+	public void testOverflow() {
+		BigIntegerAdder adder = new BigIntegerAdder(BigInteger.TEN, 1);
+		adder.add(Long.MAX_VALUE);
+		adder.add(Long.MAX_VALUE);
+		adder.add(Long.MAX_VALUE);
+		assertEquals(BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(3)).add(BigInteger.TEN), adder.get());
+		adder.add(Long.MIN_VALUE);
+		adder.add(Long.MIN_VALUE);
+		adder.add(Long.MIN_VALUE);
+		adder.add(Long.MIN_VALUE);
+		assertEquals(BigInteger.valueOf(10 - 3 - Long.MAX_VALUE - 1), adder.get());
+		
+		BigInteger big = BigInteger.valueOf(Long.MAX_VALUE).pow(3);
+		adder.reset();
+		adder.add(big);
+		adder.increment();
+		assertEquals(big.add(BigInteger.ONE), adder.getThenReset());
+		assertEquals(BigInteger.ZERO, adder.get());
+	}
+
+	@Test
+	public void testProbe() {
+		int[] probe = BigIntegerAdder.probe();
+		assertSame(probe, BigIntegerAdder.probe());
+		boolean[] visited = new boolean[BigIntegerAdder.MAX_CELLS];
+		int count = 0;
+		for (int i = 0; i < 10000 && count < visited.length; i ++){
+			int h = BigIntegerAdder.advanceProbe(probe);
+			assertTrue(h != 0);
+			assertEquals(h, probe[0]);
+			if (!visited[h & (visited.length - 1)]){
+				visited[h & (visited.length - 1)] = true;
+				count ++;
+			}
+		}
+		assertEquals("a contended thread should be able to move to any cell", visited.length, count);
+	}
+
+	@Test
+	public void testConcurrentAdding() throws InterruptedException{
+		final BigIntegerAdder adder = new BigIntegerAdder();
+		final long delta = Long.MAX_VALUE / 1000;
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i ++){
+			threads[i] = new Thread(){
+				@Override
+				public void run(){
+					for (int j = 0; j < 100000; j ++){
+						adder.add(delta);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		assertEquals(BigInteger.valueOf(delta).multiply(BigInteger.valueOf(800000)), adder.get());
+	}
+
+}
@@ -0,0 +1,80 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.stat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class HistogramNumberStatisticsTest {
+
+	@Test
+	public void testPercentiles() {
+		HistogramNumberStatistics s = new HistogramNumberStatistics();
+		assertNull(s.getPercentile(50));
+		for (long i = 1; i <= 100000; i ++){
+			s.evaluate(i * 1000);
+		}
+		assertEquals(100000L, s.getCount());
+		assertEquals(1000L, s.getMin().longValue());
+		assertEquals(100000000L, s.getMax().longValue());
+		assertEquals(100000000L, s.getPercentile(100).longValue());
+		assertEquals(1000L, s.getPercentile(0).longValue());
+		assertAccurate(50000000L, s.getMedian());
+		assertAccurate(99000000L, s.getPercentile(99));
+		assertAccurate(99900000L, s.getPercentile(99.9));
+	}
+	
+	@Test
+	public void testSmallValuesAreExact(){
+		HistogramNumberStatistics s = new HistogramNumberStatistics(7);
+		for (int i = 0; i < 100; i ++){
+			s.evaluate(i);
+		}
+		assertEquals(49L, s.getPercentile(50).longValue());
+		assertEquals(98L, s.getPercentile(99).longValue());
+		assertEquals(10L, s.getCount(0, 9));
+	}
+	
+	@Test
+	public void testMergeAndSerialization() throws Exception{
+		HistogramNumberStatistics s1 = new HistogramNumberStatistics();
+		HistogramNumberStatistics s2 = new HistogramNumberStatistics();
+		for (long i = 1; i <= 1000; i ++){
+			s1.evaluate(i);
+			s2.evaluate(i + 1000);
+		}
+		s1.merge(s2);
+		assertEquals(2000L, s1.getCount());
+		assertAccurate(1000L, s1.getMedian());
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(s1);
+		oos.close();
+		HistogramNumberStatistics copy = (HistogramNumberStatistics) new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject();
+		assertEquals(s1, copy);
+		assertEquals(s1.getPercentile(99), copy.getPercentile(99));
+		
+		HistogramNumberStatistics s3 = new HistogramNumberStatistics();
+		s3.merge(new AtomicLongStatistics(10L, 100L, 1L, 19L));
+		assertEquals(10L, s3.getPercentile(50).longValue());
+	}
+	
+	protected void assertAccurate(long expected, Long actual){
+		assertTrue("expected " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 100);
+	}
+
+}
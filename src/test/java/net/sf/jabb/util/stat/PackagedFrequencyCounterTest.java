@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package net.sf.jabb.util.stat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class PackagedFrequencyCounterTest {
+
+	protected PackagedFrequencyCounter create(boolean rollUp){
+		return new PackagedFrequencyCounter(rollUp,
+				new FrequencyCounterDefinition("1s", 1, TimeUnit.SECONDS, 10, TimeUnit.MINUTES),
+				new FrequencyCounterDefinition("1m", 1, TimeUnit.MINUTES, 3, TimeUnit.HOURS),
+				new FrequencyCounterDefinition("1h", 1, TimeUnit.HOURS, 7, TimeUnit.HOURS));
+	}
+
+	@Test
+	public void testRollUpSameAsNormal() {
+		PackagedFrequencyCounter normal = create(false);
+		PackagedFrequencyCounter rollUp = create(true);
+		assertTrue(rollUp.isRollUp());
+
+		Random random = new Random(54321);
+		long base = 1420070400000L;
+		long when = base;
+		for (int i = 0; i < 20000; i ++){
+			when += random.nextInt(1000);
+			long t = when - random.nextInt(1500);	// some events come a little bit late
+			normal.count(t, 1);
+			rollUp.count(t, 1);
+		}
+		rollUp.rollUp(when + 1);
+
+		for (String id: new String[]{"1m", "1h"}){
+			assertEquals(normal.getCounter(id).getTotalCounts(), rollUp.getCounter(id).getTotalCounts());
+			assertEquals(normal.getCounter(id).getCount(base, when + 1), rollUp.getCounter(id).getCount(base, when + 1));
+		}
+		assertEquals(normal.getCounter("1s").getTotalCounts(), rollUp.getCounter("1s").getTotalCounts());
+	}
+
+	@Test
+	public void testConcurrentCountAndRollUp() throws InterruptedException {
+		final PackagedFrequencyCounter rollUp = create(true);
+		final long base = 1420070400000L;
+		final int threads = 4;
+		final int perThread = 50000;
+		final AtomicBoolean done = new AtomicBoolean(false);
+		List<Thread> counting = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t ++){
+			final int seed = t;
+			counting.add(new Thread(){
+				@Override
+				public void run(){
+					Random random = new Random(seed);
+					for (int i = 0; i < perThread; i ++){
+						// all threads move forward in time at the same pace, crossing many buckets
+						rollUp.count(base + i * 10L + random.nextInt(20), 1);
+					}
+				}
+			});
+		}
+		Thread rollingUp = new Thread(){
+			@Override
+			public void run(){
+				long till = base;
+				while (!done.get()){
+					till += 100;
+					rollUp.rollUp(till);
+					Thread.yield();
+				}
+			}
+		};
+		rollingUp.start();
+		for (Thread t: counting){
+			t.start();
+		}
+		for (Thread t: counting){
+			t.join();
+		}
+		done.set(true);
+		rollingUp.join();
+		rollUp.rollUp(base + perThread * 10L + 1000);
+
+		long total = (long)threads * perThread;
+		assertEquals(BigInteger.valueOf(total), rollUp.getCounter("1s").getTotalCounts());
+		assertEquals(BigInteger.valueOf(total), rollUp.getCounter("1m").getTotalCounts());
+		assertEquals(BigInteger.valueOf(total), rollUp.getCounter("1h").getTotalCounts());
+	}
+
+	@Test
+	public void testRollUpCalendarPeriods() {
+		TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+		PackagedFrequencyCounter normal = new PackagedFrequencyCounter(false,
+				new FrequencyCounterDefinition("1d", TimePeriod.from("1 day"), newYork, 30, TimeUnit.DAYS),
+				new FrequencyCounterDefinition("1M", TimePeriod.from("1 month"), newYork, 365, TimeUnit.DAYS));
+		PackagedFrequencyCounter rollUp = new PackagedFrequencyCounter(true,
+				new FrequencyCounterDefinition("1d", TimePeriod.from("1 day"), newYork, 30, TimeUnit.DAYS),
+				new FrequencyCounterDefinition("1M", TimePeriod.from("1 month"), newYork, 365, TimeUnit.DAYS));
+
+		Random random = new Random(12345);
+		long base = 1425528000000L;		// 2015-03-05 00:00 in New York, daylight saving time starts on 2015-03-08
+		long when = base;
+		for (int i = 0; i < 20000; i ++){
+			when += random.nextInt(1000 * 1000);
+			long t = when - random.nextInt(30 * 3600 * 1000);	// some events come more than a day late
+			normal.count(t, 1);
+			rollUp.count(t, 1);
+		}
+		rollUp.rollUp(when + 1);
+
+		assertEquals(normal.getCounter("1M").getTotalCounts(), rollUp.getCounter("1M").getTotalCounts());
+		assertEquals(normal.getCounter("1M").getCounts().toString(), rollUp.getCounter("1M").getCounts().toString());
+		assertEquals(normal.getCounter("1d").getCounts().toString(), rollUp.getCounter("1d").getCounts().toString());
+	}
+
+	@Test
+	public void testCountWithoutLock() throws InterruptedException {
+		final PackagedFrequencyCounter rollUp = create(true);
+		final long base = 1420070400000L;
+		rollUp.rollUp(base);
+		rollUp.rollUpLock.lock();	// as if a roll-up were in progress in another thread
+		try{
+			Thread counting = new Thread(){
+				@Override
+				public void run(){
+					for (int i = 0; i < 1000; i ++){
+						rollUp.count(base + i, 1);		// not late, all in the current bucket
+					}
+				}
+			};
+			counting.start();
+			counting.join(5000);
+			assertFalse("counting should not wait for the lock", counting.isAlive());
+		}finally{
+			rollUp.rollUpLock.unlock();
+		}
+		assertEquals(1000, rollUp.getCounter("1s").getCount(base));
+		
+		rollUp.rollUp(base + 1000);
+		rollUp.count(base + 1, 1);		// late
+		assertEquals(1001, rollUp.getCounter("1s").getCount(base));
+		assertEquals(1001, rollUp.getCounter("1m").getCount(base));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRollUpGranularityNotMultiple(){
+		new PackagedFrequencyCounter(true,
+				new FrequencyCounterDefinition("2s", 2, TimeUnit.SECONDS, 10, TimeUnit.MINUTES),
+				new FrequencyCounterDefinition("3s", 3, TimeUnit.SECONDS, 10, TimeUnit.MINUTES));
+	}
+
+}
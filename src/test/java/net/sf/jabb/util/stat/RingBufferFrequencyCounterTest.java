@@ -0,0 +1,113 @@
+/**
+ *
+ */
+package net.sf.jabb.util.stat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class RingBufferFrequencyCounterTest {
+
+	@Test
+	public void testSameAsBasic() {
+		BasicFrequencyCounter basic = new BasicFrequencyCounter(10, TimeUnit.SECONDS, 5, TimeUnit.MINUTES);
+		RingBufferFrequencyCounter ring = new RingBufferFrequencyCounter(10, TimeUnit.SECONDS, 5, TimeUnit.MINUTES);
+
+		Random random = new Random(12345);
+		long base = 1420070400000L;
+		for (int i = 0; i < 10000; i ++){
+			long when = base + i * 97 + random.nextInt(3000);
+			int times = random.nextInt(5) + 1;
+			basic.count(when, times);
+			ring.count(when, times);
+		}
+		long end = base + 10000 * 97;
+		for (long from = end - TimeUnit.MINUTES.toMillis(10); from < end; from += 3333){
+			assertEquals(basic.getCount(from), ring.getCount(from));
+			assertEquals(basic.getCount(from, end), ring.getCount(from, end));
+			assertEquals(basic.getCount(from, end, false, true), ring.getCount(from, end, false, true));
+		}
+		assertEquals(basic.getTotalCounts(), ring.getTotalCounts());
+
+		basic.purge(end - TimeUnit.MINUTES.toMillis(1));
+		ring.purge(end - TimeUnit.MINUTES.toMillis(1));
+		assertEquals(basic.getTotalCounts(), ring.getTotalCounts());
+		assertEquals(basic.getCounts().size(), ring.getCounts().size());
+	}
+
+	@Test
+	public void testConcurrentCounting() throws InterruptedException{
+		final RingBufferFrequencyCounter ring = new RingBufferFrequencyCounter(1, TimeUnit.SECONDS, 1, TimeUnit.HOURS, 8);
+		final long base = 1420070400000L;
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i ++){
+			threads[i] = new Thread(){
+				@Override
+				public void run(){
+					for (int j = 0; j < 100000; j ++){
+						ring.count(base + j % 60000);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		assertEquals(800000L, ring.getCount(base, base + 60000));
+		assertEquals(8 * 2 * 1000L, ring.getCount(base + 30000));
+		assertEquals(8 * 1000L, ring.getCount(base + 50000));
+	}
+
+	@Test
+	public void testConcurrentCrossingBuckets() throws InterruptedException{
+		// 5 slots, so the same slot is reused every 5 buckets
+		final RingBufferFrequencyCounter ring = new RingBufferFrequencyCounter(10, TimeUnit.MILLISECONDS, 30, TimeUnit.MILLISECONDS, 8);
+		final int buckets = 200000;
+		final int perBucket = 5;
+		final int stale = 1000;
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i ++){
+			threads[i] = new Thread(){
+				@Override
+				public void run(){
+					for (int b = 5; b < buckets; b ++){
+						for (int k = 0; k < perBucket; k ++){
+							ring.count(b * 10L + k, 1);
+						}
+						// an event of the bucket that used the same slot before, it should never leak into a newer bucket
+						ring.count((b - 5) * 10L, stale);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		for (Long count: ring.getCounts().values()){
+			assertTrue("count: " + count, count <= threads.length * perBucket);
+		}
+		assertEquals(threads.length * perBucket, ring.getCount((buckets - 1) * 10L));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNoPurgePeriod(){
+		new RingBufferFrequencyCounter(new FrequencyCounterDefinition("x", 1, TimeUnit.SECONDS));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testCalendarPeriod(){
+		new RingBufferFrequencyCounter(new FrequencyCounterDefinition("x", TimePeriod.from("1 day"), TimeZone.getTimeZone("UTC"), 30, TimeUnit.DAYS));
+	}
+}
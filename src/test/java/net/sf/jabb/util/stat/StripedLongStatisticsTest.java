@@ -0,0 +1,98 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.stat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class StripedLongStatisticsTest {
+
+	@Test
+	public void testAvg() {
+		StripedLongStatistics s = new StripedLongStatistics(100L, 100L, 1L, 1L);
+		
+		assertEquals((double)1, s.getAvg().doubleValue(), 0.000001);
+		
+		s.reset(3L, 100L, -100L, 100L);
+		assertEquals((double)33.33333333, s.getAvg().doubleValue(), 0.0001);
+		assertEquals(33, s.getAvg(20).toBigInteger().intValue());
+		assertEquals(23, s.getAvg(20).toString().length());
+		
+		s.reset();
+		assertNull(s.getAvg());
+		assertNull(s.getMin());
+		assertNull(s.getMax());
+	}
+
+	@Test
+	public void testMerge(){
+		StripedLongStatistics s0 = new StripedLongStatistics();
+		s0.evaluate(-1);
+		s0.evaluate(2);
+		StripedLongStatistics s = new StripedLongStatistics();
+		s.merge(s0);
+		assertEquals(-1, s.getMin().intValue());
+		assertEquals(2, s.getMax().intValue());
+		assertEquals(1, s.getSum().intValue());
+		assertEquals(2L, s.getCount());
+		assertEquals(new AtomicLongStatistics(2L, 1L, -1L, 2L), s);
+	}
+
+	@Test
+	public void testMergeEmpty(){
+		StripedLongStatistics s = new StripedLongStatistics(1);
+		s.merge(0, 0L, Long.MIN_VALUE, Long.MAX_VALUE);
+		s.merge(new StripedLongStatistics());
+		assertEquals(0L, s.getCount());
+		assertNull(s.getMin());
+		assertNull(s.getMax());
+		
+		s.evaluate(5);
+		s.merge(0, 0L, -100L, 100L);
+		assertEquals(new AtomicLongStatistics(1L, 5L, 5L, 5L), s);
+		
+		StripedLongStatistics s0 = new StripedLongStatistics(1);
+		s0.evaluate(-1);
+		s0.evaluate(2);
+		s.merge(s0);
+		s.merge(0, 0L, Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(new AtomicLongStatistics(3L, 6L, -1L, 5L), s);
+		
+		s.reset(0, null, -100L, 100L);
+		s.evaluate(7);
+		assertEquals(new AtomicLongStatistics(1L, 7L, 7L, 7L), s);
+	}
+
+	@Test
+	public void testConcurrentEvaluation() throws InterruptedException{
+		final StripedLongStatistics s = new StripedLongStatistics(16);
+		Thread[] threads = new Thread[16];
+		for (int i = 0; i < threads.length; i ++){
+			final int base = i * 1000;
+			threads[i] = new Thread(){
+				@Override
+				public void run(){
+					for (int j = 1; j <= 1000; j ++){
+						s.evaluate(base + j);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		assertEquals(16000L, s.getCount());
+		assertEquals(16000L * 16001 / 2, s.getSum().longValue());
+		assertEquals(1L, s.getMin().longValue());
+		assertEquals(16000L, s.getMax().longValue());
+	}
+
+}
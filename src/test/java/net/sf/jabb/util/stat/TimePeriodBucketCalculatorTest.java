@@ -0,0 +1,131 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.stat;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class TimePeriodBucketCalculatorTest {
+	static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+	static final TimeZone KATHMANDU = TimeZone.getTimeZone("Asia/Kathmandu");
+	static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	static long time(TimeZone zone, int year, int month, int day, int hour, int minute){
+		GregorianCalendar c = new GregorianCalendar(zone);
+		c.clear();
+		c.set(year, month - 1, day, hour, minute, 0);
+		return c.getTimeInMillis();
+	}
+
+	@Test
+	public void testMinutes() {
+		TimePeriodBucketCalculator calculator = new TimePeriodBucketCalculator(TimePeriod.from("15 minutes"), KATHMANDU);
+		long when = time(KATHMANDU, 2015, 3, 10, 10, 29);
+		assertEquals(time(KATHMANDU, 2015, 3, 10, 10, 15), calculator.getBucketStart(when));
+		assertEquals(time(KATHMANDU, 2015, 3, 10, 10, 30), calculator.getBucketEnd(when));
+	}
+
+	@Test
+	public void testDays() {
+		TimePeriodBucketCalculator calculator = new TimePeriodBucketCalculator(TimePeriod.from("1 day"), NEW_YORK);
+		long when = time(NEW_YORK, 2015, 3, 8, 23, 59);
+		assertEquals(time(NEW_YORK, 2015, 3, 8, 0, 0), calculator.getBucketStart(when));
+		assertEquals(time(NEW_YORK, 2015, 3, 9, 0, 0), calculator.getBucketEnd(when));
+		assertEquals(23 * 3600 * 1000L, calculator.getBucketEnd(when) - calculator.getBucketStart(when));	// daylight saving time starts
+		
+		when = time(NEW_YORK, 1990, 1, 1, 0, 0);	// far away, the table will be rebuilt
+		assertEquals(when, calculator.getBucketStart(when));
+		assertEquals(when, calculator.getBucketStart(when + 1000));
+
+		calculator = new TimePeriodBucketCalculator(TimePeriod.from("2 days"), UTC);
+		assertEquals(0, calculator.getBucketStart(time(UTC, 1970, 1, 2, 12, 0)));
+		assertEquals(time(UTC, 1969, 12, 30, 0, 0), calculator.getBucketStart(time(UTC, 1969, 12, 31, 12, 0)));
+	}
+
+	@Test
+	public void testHours() {
+		TimePeriodBucketCalculator calculator = new TimePeriodBucketCalculator(TimePeriod.from("1 hour"), NEW_YORK);
+		long when = time(NEW_YORK, 2015, 3, 8, 3, 30);	// 2:00 to 3:00 was skipped
+		assertEquals(time(NEW_YORK, 2015, 3, 8, 3, 0), calculator.getBucketStart(when));
+		assertEquals(time(NEW_YORK, 2015, 3, 8, 1, 0), calculator.getBucketStart(when - 3600 * 1000L));
+		assertEquals(3600 * 1000L, calculator.getBucketEnd(when) - calculator.getBucketStart(when));
+	}
+
+	@Test
+	public void testWeeks() {
+		TimePeriodBucketCalculator calculator = new TimePeriodBucketCalculator(TimePeriod.from("1 week"), UTC);
+		assertEquals(time(UTC, 2015, 6, 15, 0, 0), calculator.getBucketStart(time(UTC, 2015, 6, 21, 23, 0)));	// Monday
+		calculator = new TimePeriodBucketCalculator(TimePeriod.from("1 week"), UTC, Calendar.SUNDAY);
+		assertEquals(time(UTC, 2015, 6, 21, 0, 0), calculator.getBucketStart(time(UTC, 2015, 6, 21, 23, 0)));
+		assertEquals(time(UTC, 2015, 6, 28, 0, 0), calculator.getBucketEnd(time(UTC, 2015, 6, 21, 23, 0)));
+	}
+
+	@Test
+	public void testMonthsAndYears() {
+		TimePeriodBucketCalculator calculator = new TimePeriodBucketCalculator(TimePeriod.from("1 month"), NEW_YORK);
+		long when = time(NEW_YORK, 2016, 2, 29, 12, 0);
+		assertEquals(time(NEW_YORK, 2016, 2, 1, 0, 0), calculator.getBucketStart(when));
+		assertEquals(time(NEW_YORK, 2016, 3, 1, 0, 0), calculator.getBucketEnd(when));
+
+		calculator = new TimePeriodBucketCalculator(TimePeriod.from("3 months"), NEW_YORK);
+		assertEquals(time(NEW_YORK, 2016, 1, 1, 0, 0), calculator.getBucketStart(when));
+		assertEquals(time(NEW_YORK, 2016, 4, 1, 0, 0), calculator.getBucketEnd(when));
+
+		calculator = new TimePeriodBucketCalculator(TimePeriod.from("1 year"), NEW_YORK);
+		assertEquals(time(NEW_YORK, 2016, 1, 1, 0, 0), calculator.getBucketStart(when));
+		assertEquals(time(NEW_YORK, 2017, 1, 1, 0, 0), calculator.getBucketEnd(when));
+		assertEquals(time(NEW_YORK, 2016, 1, 1, 0, 0), calculator.getBucketEnd(time(NEW_YORK, 2015, 12, 31, 23, 59)));
+	}
+
+	@Test
+	public void testAlternatingRanges() {
+		final AtomicLong rebuilds = new AtomicLong();
+		TimePeriodBucketCalculator calculator = new TimePeriodBucketCalculator(TimePeriod.from("1 day"), NEW_YORK){
+			@Override
+			protected synchronized long[] rebuild(long when){
+				rebuilds.incrementAndGet();
+				return super.rebuild(when);
+			}
+		};
+		long recent = time(NEW_YORK, 2015, 3, 8, 12, 0);
+		long late = time(NEW_YORK, 2014, 3, 8, 12, 0);	// a year earlier, out of the range of the table
+		for (int i = 0; i < 10; i ++){
+			assertEquals(time(NEW_YORK, 2015, 3, 8, 0, 0), calculator.getBucketStart(recent));
+			assertEquals(time(NEW_YORK, 2014, 3, 9, 0, 0), calculator.getBucketEnd(late));
+		}
+		assertEquals(2, rebuilds.get());
+		
+		long far = time(NEW_YORK, 2010, 3, 8, 12, 0);
+		assertEquals(time(NEW_YORK, 2010, 3, 8, 0, 0), calculator.getBucketStart(far));
+		assertEquals(time(NEW_YORK, 2014, 3, 8, 0, 0), calculator.getBucketStart(late));	// kept as the previous table
+		assertEquals(3, rebuilds.get());
+		assertEquals(time(NEW_YORK, 2015, 3, 8, 0, 0), calculator.getBucketStart(recent));
+		assertEquals(4, rebuilds.get());
+	}
+
+	@Test
+	public void testCounter() {
+		BasicFrequencyCounter counter = new BasicFrequencyCounter(TimePeriod.from("1 month"), NEW_YORK, 365, TimeUnit.DAYS);
+		counter.count(time(NEW_YORK, 2015, 1, 31, 23, 59), 1);
+		counter.count(time(NEW_YORK, 2015, 2, 1, 0, 0), 2);
+		counter.count(time(NEW_YORK, 2015, 2, 28, 23, 59), 3);
+		Map<Long, AtomicLong> counts = counter.getCounts();
+		assertEquals(2, counts.size());
+		assertEquals(1, counts.get(time(NEW_YORK, 2015, 1, 1, 0, 0)).get());
+		assertEquals(5, counter.getCount(time(NEW_YORK, 2015, 2, 15, 0, 0)));
+	}
+
+}
@@ -0,0 +1,84 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.text.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.sf.jabb.util.text.DoubleArrayTrie;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class DoubleArrayTrieTest {
+
+	@Test
+	public void testSimple() {
+		DoubleArrayTrie trie = new DoubleArrayTrie(Arrays.asList("中国", "中国人", "", "中", "abc", "ab", "中国"));
+		assertEquals(0, trie.get("中国"));
+		assertEquals(1, trie.get("中国人"));
+		assertEquals(3, trie.get("中"));
+		assertEquals(-1, trie.get(""));
+		assertEquals(-1, trie.get("a"));
+		assertEquals(-1, trie.get("中国人民"));
+		
+		long found = trie.longestPrefixOf("我是中国人民", 2);
+		assertEquals(5, DoubleArrayTrie.endOf(found));
+		assertEquals(1, DoubleArrayTrie.keyOf(found));
+		found = trie.longestPrefixOf("abd", 0);
+		assertEquals(2, DoubleArrayTrie.endOf(found));
+		assertEquals(5, DoubleArrayTrie.keyOf(found));
+		assertEquals(-1, trie.longestPrefixOf("abd", 1));
+		assertEquals(-1, trie.longestPrefixOf("abd", 3));
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(1);
+		String alphabet = "abcdxyz中国人民￿\u0000";
+		List<String> keys = new ArrayList<String>();
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		for (int i = 0; i < 5000; i ++){
+			String key = randomString(random, alphabet, 1 + random.nextInt(8));
+			keys.add(key);
+			if (!expected.containsKey(key)){
+				expected.put(key, i);
+			}
+		}
+		DoubleArrayTrie trie = new DoubleArrayTrie(keys);
+		for (int i = 0; i < 20000; i ++){
+			String text = randomString(random, alphabet, random.nextInt(10));
+			Integer index = expected.get(text);
+			assertEquals(text, index == null ? -1 : index.intValue(), trie.get(text));
+			
+			long longest = -1;
+			for (int end = text.length(); end > 0; end --){
+				Integer k = expected.get(text.substring(0, end));
+				if (k != null){
+					longest = ((long)end << 32) | k;
+					break;
+				}
+			}
+			assertEquals(text, longest, trie.longestPrefixOf(text, 0));
+		}
+	}
+	
+	static String randomString(Random random, String alphabet, int length){
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i ++){
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,189 @@
+package net.sf.jabb.util.text.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import net.sf.jabb.util.text.AhoCorasickAutomaton;
+import net.sf.jabb.util.text.KeywordMatcher;
+
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class KeywordMatcherTest {
+	
+	/**
+	 * Looks the same as an instance serialized by the version without the single-pass engine and the attachment IDs
+	 */
+	static class OldFormKeywordMatcher extends KeywordMatcher{
+		private static final long serialVersionUID = 1L;
+
+		OldFormKeywordMatcher(Map<String, ? extends Object> keywordDefinitions){
+			super(keywordDefinitions, true, false);
+			keywords = null;
+			attachments = null;
+			attachmentIds = null;
+		}
+	}
+	
+	static protected KeywordMatcher roundTrip(KeywordMatcher m) throws IOException, ClassNotFoundException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(m);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		try{
+			return (KeywordMatcher) in.readObject();
+		}finally{
+			in.close();
+		}
+	}
+	
+	@Test
+	public void testSerialization() throws IOException, ClassNotFoundException {
+		Map<String, Object> keywords = new HashMap<String, Object>();
+		keywords.put("bc", "BC");
+		keywords.put("abcde", "ABCDE");
+		keywords.put("中国", "China");
+		keywords.put("中华", "China");
+		String text = "abcdx abcde bcd 中国 中华";
+		for (KeywordMatcher m: new KeywordMatcher[]{
+				new KeywordMatcher(keywords), new KeywordMatcher(keywords, true, false), new OldFormKeywordMatcher(keywords)}){
+			KeywordMatcher copy = roundTrip(m);
+			Map<Object, MutableInt> result = copy.match(text);
+			assertEquals(2, result.get("BC").intValue());
+			assertEquals(1, result.get("ABCDE").intValue());
+			assertEquals(2, result.get("China").intValue());
+			assertEquals(3, result.size());
+			assertEquals(3, copy.getAttachmentCount());
+			int[] counts = new int[copy.getAttachmentCount()];
+			assertEquals(5, copy.match(text, counts));
+			assertEquals(2, counts[copy.getAttachmentId("China")]);
+		}
+	}
+
+	@Test
+	public void testLeftmostLongest() {
+		Map<String, Object> keywords = new HashMap<String, Object>();
+		keywords.put("bc", "BC");
+		keywords.put("abcde", "ABCDE");
+		keywords.put("cd", "CD");
+		keywords.put("中国", "China");
+		keywords.put("中国人", "Chinese");
+		keywords.put("a.b", "A.B");
+		KeywordMatcher m = new KeywordMatcher(keywords);
+		
+		Map<Object, MutableInt> result = m.match("abcdx abcde bcd cdx 中国人 中国 a.b axb");
+		assertEquals(2, result.get("BC").intValue());
+		assertEquals(1, result.get("ABCDE").intValue());
+		assertEquals(1, result.get("CD").intValue());
+		assertEquals(1, result.get("Chinese").intValue());
+		assertEquals(1, result.get("China").intValue());
+		assertEquals(1, result.get("A.B").intValue());
+		assertEquals(6, result.size());
+		
+		assertNull(m.match("xyz"));
+		assertNull(m.match(""));
+		assertNull(m.match(null));
+	}
+	
+	@Test
+	public void testAutomaton() {
+		AhoCorasickAutomaton a = new AhoCorasickAutomaton(java.util.Arrays.asList("he", "she", "his", "hers", ""));
+		long found = a.find("ushers", 0);
+		assertEquals(4, AhoCorasickAutomaton.endOf(found));
+		assertEquals(1, AhoCorasickAutomaton.keywordOf(found));
+		found = a.find("ushers", 4);
+		assertEquals(-1, found);
+		found = a.find("hers", 0);
+		assertEquals(4, AhoCorasickAutomaton.endOf(found));
+		assertEquals(3, AhoCorasickAutomaton.keywordOf(found));
+	}
+	
+	@Test
+	public void testSameAsOriginal() {
+		Random random = new Random(12345);
+		for (int round = 0; round < 20; round ++){
+			Map<String, Object> keywords = new HashMap<String, Object>();
+			for (int i = 0; i < 50; i ++){
+				String keyword = randomString(random, 1 + random.nextInt(5));
+				keywords.put(keyword, random.nextInt(20));
+			}
+			KeywordMatcher singlePass = new KeywordMatcher(keywords, true, true);
+			KeywordMatcher original = new KeywordMatcher(keywords, true, false);
+			for (int i = 0; i < 50; i ++){
+				String text = randomString(random, random.nextInt(200));
+				assertEquals(text, toIntMap(original.match(text)), toIntMap(singlePass.match(text)));
+			}
+		}
+	}
+	
+	static String randomString(Random random, int length){
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i ++){
+			sb.append((char)('a' + random.nextInt(4)));
+		}
+		return sb.toString();
+	}
+	
+	static Map<Object, Integer> toIntMap(Map<Object, MutableInt> result){
+		if (result == null){
+			return null;
+		}
+		Map<Object, Integer> map = new HashMap<Object, Integer>();
+		for (Map.Entry<Object, MutableInt> entry: result.entrySet()){
+			map.put(entry.getKey(), entry.getValue().intValue());
+		}
+		return map;
+	}
+
+	@Test
+	public void testCounts() {
+		Map<String, Object> keywords = new HashMap<String, Object>();
+		keywords.put("apple", "fruit");
+		keywords.put("pear", "fruit");
+		keywords.put("carrot", "vegetable");
+		for (boolean singlePass: new boolean[]{true, false}){
+			KeywordMatcher m = new KeywordMatcher(keywords, true, singlePass);
+			assertEquals(2, m.getAttachmentCount());
+			int fruit = m.getAttachmentId("fruit");
+			int vegetable = m.getAttachmentId("vegetable");
+			assertEquals("fruit", m.getAttachment(fruit));
+			assertEquals(-1, m.getAttachmentId("meat"));
+			
+			int[] counts = new int[m.getAttachmentCount()];
+			assertEquals(3, m.match("apple, pear and carrot", counts));
+			assertEquals(2, counts[fruit]);
+			assertEquals(1, counts[vegetable]);
+			assertEquals(1, m.match("pear", counts));
+			assertEquals(3, counts[fruit]);
+			assertEquals(toIntMap(m.match("apple, pear and carrot pear")), toIntMap(m.toMap(counts)));
+			assertNull(m.toMap(new int[2]));
+			
+			final StringBuilder sb = new StringBuilder();
+			m.match("a carrot", new KeywordMatcher.MatchVisitor(){
+				@Override
+				public void matched(int attachmentId, int start, int end) {
+					sb.append(attachmentId).append(':').append(start).append('-').append(end);
+				}
+			});
+			assertEquals(vegetable + ":2-8", sb.toString());
+			
+			KeywordMatcher copy = new KeywordMatcher(m);
+			assertEquals(fruit, copy.getAttachmentId("fruit"));
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.text.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import net.sf.jabb.util.text.RegExpSubstitution;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class RegExpSubstitutionTest {
+	
+	/**
+	 * Reader returning only a few chars each time
+	 */
+	static class SlowReader extends Reader{
+		Reader reader;
+		Random random;
+		
+		SlowReader(String text, Random random){
+			this.reader = new StringReader(text);
+			this.random = random;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			return reader.read(cbuf, off, Math.min(len, 1 + random.nextInt(5)));
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testNoMatch() {
+		RegExpSubstitution r = new RegExpSubstitution("X", "abc", "[0-9]+");
+		String text = "nothing to be replaced";
+		assertSame(text, r.replaceAll(text));
+		assertSame(text, r.replaceFirst(text));
+		assertSame(text, r.replaceLast(text));
+		CharBuffer cb = CharBuffer.wrap(text);
+		assertSame(cb, r.replaceAll(cb));
+		assertEquals("nothing X be replaced", new RegExpSubstitution("X", "to").replaceAll(CharBuffer.wrap(text)).toString());
+	}
+
+	@Test
+	public void testStreaming() throws IOException {
+		Random random = new Random(1);
+		RegExpSubstitution[] substitutions = new RegExpSubstitution[]{
+				new RegExpSubstitution("[X]", "ab", "b[0-9]+c", "aaa.bbb"),
+				new RegExpSubstitution("", "a+"),
+				new RegExpSubstitution("<>", "c*"),
+		};
+		for (int round = 0; round < 300; round ++){
+			StringBuilder sb = new StringBuilder();
+			int length = round < 10 ? 20000 : random.nextInt(100);
+			for (int i = 0; i < length; i ++){
+				sb.append("abc.0123456789".charAt(random.nextInt(14)));
+			}
+			String text = sb.toString();
+			for (RegExpSubstitution r: substitutions){
+				StringWriter writer = new StringWriter();
+				r.replaceAll(new SlowReader(text, random), writer);
+				assertEquals(text, r.replaceAll(text), writer.toString());
+				
+				writer = new StringWriter();
+				r.replaceFirst(new SlowReader(text, random), writer);
+				assertEquals(text, r.replaceFirst(text), writer.toString());
+				
+				writer = new StringWriter();
+				r.replaceAll(new StringReader(text), writer);
+				assertEquals(text, r.replaceAll(text), writer.toString());
+				
+				assertEquals(text, r.replaceAll(text), r.replaceAll(CharBuffer.wrap(text)).toString());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.text.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.sf.jabb.util.text.UpdatableUrlStartWithMatcher;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class UpdatableUrlStartWithMatcherTest {
+	static final String[] SEGMENTS = new String[]{"a", "b", "ab", "www", "news", "sina", "com", "Cn", "X"};
+
+	@Test
+	public void testSameAsUrlStartWithMatcher() {
+		Map<String, Object> definitions = new HashMap<String, Object>();
+		definitions.put("*.sina.com", "Sina");
+		definitions.put("*.sina.com/news", "Sina News");
+		definitions.put("www.news.com", "News");
+		definitions.put("www.news.com/read/daily", "News Daily");
+		UpdatableUrlStartWithMatcher m = new UpdatableUrlStartWithMatcher(definitions);
+		assertEquals(4, m.size());
+		for (String[] e: UrlStartWithMatcherTest.EXPECTED){
+			assertEquals(e[0], e[1], m.match(e[0]));
+		}
+	}
+
+	@Test
+	public void testPutAndRemove() {
+		UpdatableUrlStartWithMatcher m = new UpdatableUrlStartWithMatcher();
+		assertNull(m.match("http://www.sina.com/news"));
+		m.put("*.sina.com", "Sina");
+		assertEquals("Sina", m.match("http://www.sina.com/news"));
+		m.put("www.sina.com/news", "WWW News");
+		assertEquals("WWW News", m.match("http://www.sina.com/news"));
+		m.put("*.sina.com/news/today", "Today");
+		assertEquals("Today", m.match("http://www.sina.com/news/today/1.html"));
+		assertEquals("WWW News", m.match("http://www.sina.com/news/yesterday/1.html"));
+		m.put("*.sina.com", "New Sina");
+		assertEquals("New Sina", m.match("http://image.sina.com/"));
+		assertEquals(3, m.size());
+		
+		assertTrue(m.remove("www.sina.com/news"));
+		assertFalse(m.remove("www.sina.com/news"));
+		assertEquals("New Sina", m.match("http://www.sina.com/news"));
+		assertTrue(m.remove("*.sina.com"));
+		assertNull(m.match("http://www.sina.com/news"));
+		assertEquals("Today", m.match("http://www.sina.com/news/today/1.html"));
+		assertTrue(m.remove("*.sina.com/news/today"));
+		assertEquals(0, m.size());
+		assertNull(m.match("http://www.sina.com/news/today/1.html"));
+	}
+
+	@Test
+	public void testRandom() {
+		Random r = new Random(1);
+		Map<String, Object> definitions = new HashMap<String, Object>();
+		for (int i = 0; i < 500; i ++){
+			definitions.put(randomUrl(r, true), "R" + i);
+		}
+		UpdatableUrlStartWithMatcher m = new UpdatableUrlStartWithMatcher();
+		for (Map.Entry<String, Object> e: definitions.entrySet()){
+			m.put(e.getKey(), e.getValue());
+		}
+		List<String> removed = new ArrayList<String>();
+		for (String s: new ArrayList<String>(definitions.keySet())){
+			if (r.nextInt(3) == 0){
+				definitions.remove(s);
+				removed.add(s);
+			}
+		}
+		m.removeAll(removed);
+		assertEquals(definitions.size(), m.size());
+		
+		UpdatableUrlStartWithMatcher fresh = new UpdatableUrlStartWithMatcher(definitions);
+		for (int i = 0; i < 20000; i ++){
+			String url = randomUrl(r, false);
+			Object expected = bruteForceMatch(definitions, url);
+			assertEquals(url, expected, m.match(url));
+			assertEquals(url, expected, fresh.match(url));
+		}
+	}
+	
+	static String randomUrl(Random r, boolean isDefinition){
+		StringBuilder sb = new StringBuilder();
+		if (isDefinition){
+			if (r.nextBoolean()){
+				sb.append("*.");
+			}
+		}else{
+			sb.append(r.nextBoolean() ? "http://" : "");
+		}
+		int n = 1 + r.nextInt(isDefinition ? 3 : 4);
+		for (int j = 0; j < n; j ++){
+			if (j > 0){
+				sb.append('.');
+			}
+			sb.append(SEGMENTS[r.nextInt(SEGMENTS.length)]);
+		}
+		if (r.nextInt(3) > 0){
+			sb.append('/').append(SEGMENTS[r.nextInt(SEGMENTS.length)]);
+			if (r.nextBoolean()){
+				sb.append("/x");
+			}
+		}
+		return isDefinition ? sb.toString().toLowerCase() : sb.toString();
+	}
+	
+	/**
+	 * Longest path wins, and then the most specific host wins
+	 */
+	static Object bruteForceMatch(Map<String, Object> definitions, String url){
+		url = url.toLowerCase();
+		int protocolEnd = url.indexOf("://");
+		String rest = protocolEnd == -1 ? url : url.substring(protocolEnd + 3);
+		int slash = rest.indexOf('/');
+		String host = slash == -1 ? rest : rest.substring(0, slash);
+		String path = slash == -1 ? "" : rest.substring(slash + 1);
+		
+		int bestPath = -1;
+		int bestHost = -1;
+		Object best = null;
+		for (Map.Entry<String, Object> e: definitions.entrySet()){
+			String d = e.getKey();
+			int dSlash = d.indexOf('/');
+			String dHost = dSlash == -1 ? d : d.substring(0, dSlash);
+			String dPath = dSlash == -1 ? "" : d.substring(dSlash + 1);
+			int hostSpecificity;
+			if (dHost.startsWith("*.")){
+				if (!host.endsWith(dHost.substring(1))){
+					continue;
+				}
+				hostSpecificity = 2 * dHost.length() - 2;
+			}else{
+				if (!host.equals(dHost)){
+					continue;
+				}
+				hostSpecificity = 2 * dHost.length() + 1;
+			}
+			if (!path.startsWith(dPath)){
+				continue;
+			}
+			if (dPath.length() > bestPath || (dPath.length() == bestPath && hostSpecificity > bestHost)){
+				bestPath = dPath.length();
+				bestHost = hostSpecificity;
+				best = e.getValue();
+			}
+		}
+		return best;
+	}
+
+}
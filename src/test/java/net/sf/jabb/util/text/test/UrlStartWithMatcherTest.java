@@ -0,0 +1,178 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.text.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jabb.util.text.StringStartWithMatcher;
+import net.sf.jabb.util.text.UrlStartWithMatcher;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class UrlStartWithMatcherTest {
+	static final String[][] EXPECTED = new String[][]{
+		{"http://www.sina.com/news/daily/1.html", "Sina News"},
+		{"news.sina.com/news/", "Sina News"},
+		{"http://image.news.sina.com/abc", "Sina"},
+		{"WWW.SINA.COM", "Sina"},
+		{"sina.com/", null},
+		{"http://www.news.com/read/daily/headline.html", "News Daily"},
+		{"http://www.news.com/read/", "News"},
+		{"http://www.other.com/", null},
+		{"HTTPS://Image.News.Sina.COM/NEWS/today", "Sina News"},
+		{"www.news.com", "News"},
+		{"www.news.com:8080/read", null},
+		{"http://user@www.news.com/read/daily", null},
+		{"ftp://www.news.com/READ/DAILY/", "News Daily"},
+		{"http://xwww.news.com/read/daily", null},
+		{"", null},
+		{"/", null},
+		{"http://", null},
+	};
+
+	static UrlStartWithMatcher createMatcher(){
+		Map<String, Object> definitions = new HashMap<String, Object>();
+		definitions.put("*.sina.com", "Sina");
+		definitions.put("*.sina.com/news", "Sina News");
+		definitions.put("www.news.com", "News");
+		definitions.put("www.news.com/read/daily", "News Daily");
+		return new UrlStartWithMatcher(definitions);
+	}
+	
+	static void verify(UrlStartWithMatcher m){
+		for (String[] e: EXPECTED){
+			if (e[1] == null){
+				assertNull(e[0], m.match(e[0]));
+			}else{
+				assertEquals(e[0], e[1], m.match(e[0]));
+			}
+		}
+	}
+
+	@Test
+	public void testMatch() {
+		verify(createMatcher());
+	}
+
+	@Test
+	public void testCharSequence() {
+		UrlStartWithMatcher m = createMatcher();
+		for (String[] e: EXPECTED){
+			assertEquals(e[0], e[1], m.match(new StringBuilder(e[0])));
+		}
+	}
+
+	@Test
+	public void testCopy() {
+		UrlStartWithMatcher m = createMatcher();
+		UrlStartWithMatcher copy = new UrlStartWithMatcher(m);
+		verify(copy);
+		verify(m);
+	}
+
+	@Test
+	public void testSharedByThreads() throws InterruptedException {
+		final UrlStartWithMatcher m = createMatcher();
+		final AtomicInteger failures = new AtomicInteger(0);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i ++){
+			threads[i] = new Thread(){
+				@Override
+				public void run(){
+					for (int j = 0; j < 2000; j ++){
+						try{
+							verify(m);
+						}catch(Throwable t){
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		assertEquals(0, failures.get());
+	}
+	@Test
+	public void testSnapshot() throws IOException, ClassNotFoundException {
+		File file = File.createTempFile("url-matcher", ".snapshot");
+		file.deleteOnExit();
+		createMatcher().saveSnapshot(file);
+		
+		UrlStartWithMatcher loaded = UrlStartWithMatcher.loadSnapshot(file);
+		verify(loaded);
+		verify(new UrlStartWithMatcher(loaded));
+		
+		// saved again from the loaded one
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		loaded.saveSnapshot(baos);
+		assertEquals(file.length(), baos.size());
+		
+		// serialized
+		baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(loaded);
+		oos.close();
+		verify((UrlStartWithMatcher) new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject());
+	}
+
+	@Test
+	public void testNestedSnapshot() throws IOException {
+		Map<String, Object> inner = new HashMap<String, Object>();
+		inner.put("x", "X");
+		inner.put("yz", "YZ");
+		Map<String, Object> definitions = new HashMap<String, Object>();
+		definitions.put("abc", new StringStartWithMatcher(inner, false));
+		definitions.put("def", "DEF");
+		File file = File.createTempFile("nested-matcher", ".snapshot");
+		file.deleteOnExit();
+		new StringStartWithMatcher(definitions).saveSnapshot(file);
+		
+		StringStartWithMatcher loaded = StringStartWithMatcher.loadSnapshot(file);
+		assertTrue(loaded.isFromSnapshot());
+		assertEquals("DEF", loaded.match("define"));
+		StringStartWithMatcher nested = (StringStartWithMatcher) loaded.match("abc");
+		assertTrue("the nested matcher should be mapped as well", nested.isFromSnapshot());
+		assertEquals("YZ", nested.match("yzw"));
+		assertNull(nested.match("w"));
+		
+		// saved again from the loaded one, with the nested matcher still in its own section
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		loaded.saveSnapshot(baos);
+		assertEquals(file.length(), baos.size());
+		loaded = new StringStartWithMatcher(ByteBuffer.wrap(baos.toByteArray()));
+		assertEquals("X", ((StringStartWithMatcher) loaded.match("abc")).match("x"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testSnapshotOfAnotherClass() throws IOException {
+		File file = File.createTempFile("string-matcher", ".snapshot");
+		file.deleteOnExit();
+		Map<String, Object> definitions = new HashMap<String, Object>();
+		definitions.put("abc", "ABC");
+		new StringStartWithMatcher(definitions).saveSnapshot(file);
+		assertEquals("ABC", StringStartWithMatcher.loadSnapshot(file).match("abcd"));
+		UrlStartWithMatcher.loadSnapshot(file);
+	}
+
+}
@@ -0,0 +1,124 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.text.word.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.sf.jabb.util.text.DoubleArrayTrie;
+import net.sf.jabb.util.text.word.CompactDictionary;
+import net.sf.jabb.util.text.word.Dictionary;
+import net.sf.jabb.util.text.word.FastTextAnalyzer;
+import net.sf.jabb.util.text.word.Word;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class CompactDictionaryTest {
+
+	@Test
+	public void testLoad() throws Exception {
+		CompactDictionary dict = CompactDictionary.load(new ByteArrayInputStream("abc\nab\n\nxyz\nab\n".getBytes()), Word.TYPE_KEYWORD);
+		assertEquals(3, dict.getWordCount());
+		assertTrue(dict.contains("ab"));
+		assertFalse(dict.contains("a"));
+		assertFalse(dict.contains(""));
+		assertEquals(Word.TYPE_KEYWORD, dict.getTypes("xyz"));
+		assertEquals(0, dict.getTypes("xy"));
+		assertEquals("abc", dict.getKeywordAttachment("abc"));
+		
+		long found = dict.longestPrefixOf("zabcd", 1);
+		assertEquals(4, DoubleArrayTrie.endOf(found));
+		assertEquals(dict.indexOf("abc"), DoubleArrayTrie.keyOf(found));
+	}
+
+	@Test
+	public void testSameAsDictionary() {
+		Dictionary dictionary = new Dictionary();
+		String[] words = new String[]{"中国", "中国人", "，", "中国", "人民"};
+		int[] types = new int[]{Word.TYPE_NORMAL, Word.TYPE_NORMAL, Word.TYPE_SEPARATOR, Word.TYPE_KEYWORD, Word.TYPE_NORMAL};
+		Object[] attachments = new Object[]{null, null, null, "China", null};
+		for (int i = 0; i < words.length; i ++){
+			Word word = new Word();
+			word.setWord(words[i]);
+			word.setType(types[i]);
+			word.setKeywordAttachment(attachments[i]);
+			dictionary.addWord(word);
+		}
+		
+		CompactDictionary copied = new CompactDictionary(dictionary);
+		CompactDictionary built = new CompactDictionary(Arrays.asList(words), types, attachments);
+		for (CompactDictionary dict: new CompactDictionary[]{copied, built}){
+			assertEquals(dictionary.getWords().size(), dict.getWordCount());
+			for (Word word: dictionary.getWords().values()){
+				assertEquals(word.getTypes(), dict.getTypes(word.getWord()));
+				assertEquals(word.getKeywordAttachment(), dict.getKeywordAttachment(word.getWord()));
+			}
+			assertNull(dict.getKeywordAttachment("中"));
+		}
+	}
+	
+	@Test
+	public void testReload() {
+		FastTextAnalyzer analyzer = new FastTextAnalyzer(
+				new CompactDictionary(Arrays.asList("北京"), new int[]{Word.TYPE_NORMAL}, null), null, null);
+		assertEquals(Arrays.asList("北京", "大", "学"), analyzer.analyze("北京大学").getWords());
+		
+		CompactDictionary dict = new CompactDictionary(Arrays.asList("北京", "北京大学"), new int[]{Word.TYPE_NORMAL, Word.TYPE_NORMAL}, null);
+		analyzer.setDictionary(dict);
+		assertSame(dict, analyzer.getDictionary());
+		assertEquals(Arrays.asList("北京大学"), analyzer.analyze("北京大学").getWords());
+		
+		try{
+			analyzer.reloadDictionary();
+			fail("reloading should not be allowed when the analyzer was not created with a dictionary path");
+		}catch(IllegalStateException e){
+			// expected
+		}
+		assertSame(dict, analyzer.getDictionary());
+	}
+	
+	@Test
+	public void testReloadFromPath() throws IOException {
+		File dir = File.createTempFile("dictionary", "");
+		dir.delete();
+		dir.mkdir();
+		File file = new File(dir, FastTextAnalyzer.WORDS_FILE);
+		try{
+			writeFile(file, "北京\n");
+			FastTextAnalyzer analyzer = new FastTextAnalyzer(dir.getPath(), null, null);
+			assertEquals(Arrays.asList("北京", "大", "学"), analyzer.analyze("北京大学").getWords());
+			
+			writeFile(file, "北京\n北京大学\n");
+			analyzer.reloadDictionary();
+			assertEquals(Arrays.asList("北京大学"), analyzer.analyze("北京大学").getWords());
+		}finally{
+			file.delete();
+			dir.delete();
+		}
+	}
+	
+	static protected void writeFile(File file, String content) throws IOException{
+		FileOutputStream out = new FileOutputStream(file);
+		try{
+			out.write(content.getBytes("UTF-8"));
+		}finally{
+			out.close();
+		}
+	}
+
+}
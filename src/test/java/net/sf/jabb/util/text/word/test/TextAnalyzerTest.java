@@ -0,0 +1,80 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.text.word.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sf.jabb.util.text.word.AnalyzedText;
+import net.sf.jabb.util.text.word.TextAnalyzer;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class TextAnalyzerTest {
+	static final String[] SAMPLES = new String[]{
+		"Yellow fox jump过大片河流，so caused chaos. 这可怎么办？",
+		"中华人民共和国成立了",
+		"研究生命起源",
+		"",
+		"我们在北京大学学习中文",
+	};
+
+	@Test
+	public void testAnalyzeAll() {
+		Map<String, Object> keywords = new HashMap<String, Object>();
+		keywords.put("北京", "Beijing");
+		keywords.put("fox", "Fox");
+		Map<Integer, Object> lengths = new HashMap<Integer, Object>();
+		lengths.put(10, "short");
+		lengths.put(Integer.MAX_VALUE, "long");
+		
+		List<String> texts = new ArrayList<String>();
+		for (int i = 0; i < 500; i ++){
+			texts.add(i + SAMPLES[i % SAMPLES.length]);
+		}
+		ExecutorService threadPool = Executors.newFixedThreadPool(4);
+		try{
+			for (int type: new int[]{TextAnalyzer.TYPE_MMSEG_SIMPLE, TextAnalyzer.TYPE_MMSEG_COMPLEX, TextAnalyzer.TYPE_MMSEG_MAXWORD, TextAnalyzer.TYPE_FAST}){
+				TextAnalyzer analyzer = TextAnalyzer.createInstance(type, keywords, lengths);
+				List<AnalyzedText> results = analyzer.analyzeAll(texts);
+				List<AnalyzedText> results2 = analyzer.analyzeAll(texts, threadPool, 4);
+				assertEquals(texts.size(), results.size());
+				assertEquals(texts.size(), results2.size());
+				for (int i = 0; i < texts.size(); i ++){
+					AnalyzedText expected = analyzer.analyze(texts.get(i));
+					for (AnalyzedText result: new AnalyzedText[]{results.get(i), results2.get(i)}){
+						assertEquals(texts.get(i), result.getText());
+						assertEquals(expected.getWords(), result.getWords());
+						assertEquals(expected.getUniqueWords(), result.getUniqueWords());
+						assertEquals(expected.getLengthCategory(), result.getLengthCategory());
+						assertEquals(expected.getMatchedKeywords(), result.getMatchedKeywords());
+					}
+				}
+			}
+		}finally{
+			threadPool.shutdown();
+		}
+	}
+	@Test
+	public void testFast() {
+		Map<String, Object> keywords = new HashMap<String, Object>();
+		keywords.put("北京", "Beijing");
+		TextAnalyzer analyzer = TextAnalyzer.createInstance(TextAnalyzer.TYPE_FAST, keywords, null);
+		AnalyzedText result = analyzer.analyze("We在北京大学学习中文, 2015年。");
+		assertEquals(Arrays.asList("We", "在", "北京大学", "学习", "中文", "2015", "年"), result.getWords());
+		assertEquals(1, result.getMatchedKeywords().get("Beijing").intValue());
+	}
+
+}
@@ -0,0 +1,159 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.thread.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jabb.util.parallel.BackoffStrategies;
+import net.sf.jabb.util.thread.AutoScalingQueueConsumerGroup;
+import net.sf.jabb.util.thread.QueueConsumer;
+import net.sf.jabb.util.thread.QueueProcessor;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class AutoScalingQueueConsumerGroupTest {
+	
+	static class SlowProcessor extends QueueProcessor<Integer>{
+		AtomicInteger processed;
+		AtomicInteger interrupted;
+		long sleep;
+		
+		SlowProcessor(AtomicInteger processed, AtomicInteger interrupted, long sleep){
+			super("SlowProcessor");
+			this.processed = processed;
+			this.interrupted = interrupted;
+			this.sleep = sleep;
+		}
+
+		SlowProcessor(AtomicInteger processed){
+			this(processed, new AtomicInteger(), 20);
+		}
+
+		@Override
+		public void process(Integer obj) {
+			try {
+				Thread.sleep(sleep);
+			} catch (InterruptedException e) {
+				interrupted.incrementAndGet();
+				Thread.currentThread().interrupt();
+			}
+			processed.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testScaleUpAndDown() throws InterruptedException {
+		final AtomicInteger processed = new AtomicInteger();
+		AutoScalingQueueConsumerGroup<Integer> group = new AutoScalingQueueConsumerGroup<Integer>(1000, null, 1, 8, 
+				new AutoScalingQueueConsumerGroup.ConsumerFactory<Integer>(){
+					@Override
+					public QueueConsumer<Integer> createConsumer() {
+						return new SlowProcessor(processed);
+					}
+		});
+		group.setCheckIntervalMillis(100);
+		group.setMaxLatencyMillis(200);
+		group.setScaleDownBackoff(BackoffStrategies.fixedBackoff(100));
+		group.start();
+		assertEquals(1, group.getConsumerCount());
+		
+		for (int i = 0; i < 500; i ++){
+			group.queue(i);
+		}
+		int maxCount = 0;
+		for (int i = 0; i < 100 && !group.getQueue().isEmpty(); i ++){
+			Thread.sleep(50);
+			maxCount = Math.max(maxCount, group.getConsumerCount());
+		}
+		assertTrue(group.getQueue().isEmpty());
+		assertTrue("max number of consumers: " + maxCount, maxCount > 1 && maxCount <= 8);
+		
+		for (int i = 0; i < 100 && group.getConsumerCount() > 1; i ++){
+			Thread.sleep(50);
+		}
+		assertEquals(1, group.getConsumerCount());
+		assertTrue(group.getUtilization() < 0.1);
+		
+		group.stop();
+		assertEquals(500, processed.get());
+	}
+
+	@Test
+	public void testRetireWithoutInterrupting() throws InterruptedException {
+		final AtomicInteger processed = new AtomicInteger();
+		final AtomicInteger interrupted = new AtomicInteger();
+		AutoScalingQueueConsumerGroup<Integer> group = new AutoScalingQueueConsumerGroup<Integer>(1000, null, 1, 4, 
+				new AutoScalingQueueConsumerGroup.ConsumerFactory<Integer>(){
+					@Override
+					public QueueConsumer<Integer> createConsumer() {
+						return new SlowProcessor(processed, interrupted, 300);
+					}
+		});
+		group.setCheckIntervalMillis(150);
+		group.setMaxLatencyMillis(100);
+		group.setScaleDownBackoff(BackoffStrategies.fixedBackoff(20));
+		group.start();
+		for (int i = 0; i < 40; i ++){
+			group.queue(i);
+		}
+		for (int i = 0; i < 250 && group.getConsumerCount() < 4; i ++){
+			Thread.sleep(20);
+		}
+		assertEquals(4, group.getConsumerCount());
+		
+		// retire as soon as possible, while all consumers are busy
+		group.setMaxLatencyMillis(100000);
+		group.setScaleDownUtilization(100);
+		for (int i = 0; i < 250 && group.getConsumerCount() > 1; i ++){
+			Thread.sleep(20);
+		}
+		assertEquals(1, group.getConsumerCount());
+		assertTrue(group.getQueue().size() > 0);
+		assertEquals(0, interrupted.get());
+		
+		group.stop(false);
+		assertEquals(40, processed.get() + group.getQueue().size());
+	}
+
+	@Test
+	public void testBounds() throws InterruptedException {
+		final AtomicInteger processed = new AtomicInteger();
+		AutoScalingQueueConsumerGroup<Integer> group = new AutoScalingQueueConsumerGroup<Integer>(1000, null, 2, 3, 
+				new AutoScalingQueueConsumerGroup.ConsumerFactory<Integer>(){
+					@Override
+					public QueueConsumer<Integer> createConsumer() {
+						return new SlowProcessor(processed);
+					}
+		});
+		group.setCheckIntervalMillis(50);
+		group.setMaxLatencyMillis(50);
+		group.setScaleDownBackoff(BackoffStrategies.fixedBackoff(50));
+		group.start();
+		assertEquals(2, group.getConsumerCount());
+		for (int i = 0; i < 200; i ++){
+			group.queue(i);
+		}
+		Thread.sleep(500);
+		assertEquals(3, group.getConsumerCount());
+		assertTrue(group.getAverageProcessingMillis() >= 15);
+		group.stop();
+		assertEquals(200, processed.get());
+		assertEquals(3, group.getConsumers().size());
+		
+		// restart with the consumers left
+		group.start();
+		assertEquals(3, group.getConsumerCount());
+		Thread.sleep(1000);
+		assertEquals(2, group.getConsumerCount());
+		group.stop();
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.thread.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jabb.util.thread.FiberQueueConsumer;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import co.paralleluniverse.fibers.Fiber;
+import co.paralleluniverse.fibers.SuspendExecution;
+
+/**
+ * Needs to be run with -javaagent pointing to quasar-core, otherwise the tests are skipped.
+ * The quasar-agent profile in pom.xml does that automatically on Java 7 and 8.
+ * @author James Hu
+ *
+ */
+public class FiberQueueConsumerTest {
+	
+	static class SleepingCounter extends FiberQueueConsumer<Integer>{
+		AtomicInteger count = new AtomicInteger();
+		AtomicInteger sum = new AtomicInteger();
+		AtomicInteger concurrent = new AtomicInteger();
+		AtomicInteger maxConcurrent = new AtomicInteger();
+		
+		SleepingCounter(LinkedBlockingQueue<Integer> queue, int maxInFlight){
+			super(queue, "SleepingCounter", maxInFlight);
+		}
+
+		@Override
+		public void process(Integer obj) throws SuspendExecution {
+			int c = concurrent.incrementAndGet();
+			int max;
+			while (c > (max = maxConcurrent.get()) && !maxConcurrent.compareAndSet(max, c));
+			try {
+				Fiber.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			concurrent.decrementAndGet();
+			sum.addAndGet(obj);
+			count.incrementAndGet();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		boolean instrumented = false;
+		for (String arg: ManagementFactory.getRuntimeMXBean().getInputArguments()){
+			if (arg.startsWith("-javaagent") && arg.contains("quasar")){
+				instrumented = true;
+			}
+		}
+		Assume.assumeTrue(instrumented);
+	}
+
+	@Test
+	public void testOneByOne() throws InterruptedException {
+		LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+		SleepingCounter consumer = new SleepingCounter(queue, 1);
+		consumer.start();
+		for (int i = 0; i < 50; i ++){
+			queue.put(i);
+		}
+		consumer.stop(true);
+		assertEquals(50, consumer.count.get());
+		assertEquals(49 * 50 / 2, consumer.sum.get());
+		assertEquals(1, consumer.maxConcurrent.get());
+	}
+
+	@Test
+	public void testInFlight() throws InterruptedException {
+		LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+		SleepingCounter consumer = new SleepingCounter(queue, 8);
+		for (int i = 0; i < 200; i ++){
+			queue.put(i);
+		}
+		long start = System.currentTimeMillis();
+		consumer.start();
+		consumer.stop(true);
+		long duration = System.currentTimeMillis() - start;
+		assertEquals(200, consumer.count.get());
+		assertEquals(199 * 200 / 2, consumer.sum.get());
+		assertTrue(consumer.maxConcurrent.get() <= 8);
+		assertTrue(consumer.maxConcurrent.get() > 1);
+		assertTrue("took " + duration + "ms", duration < 200 * 10);
+	}
+
+	@Test
+	public void testStopWhenIdle() throws InterruptedException {
+		LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+		SleepingCounter consumer = new SleepingCounter(queue, 4);
+		consumer.start();
+		Thread.sleep(200);		// idle for a while
+		queue.put(1);
+		Thread.sleep(200);
+		assertEquals(1, consumer.count.get());
+		consumer.stop(false);
+		assertTrue(queue.isEmpty());
+	}
+
+}
@@ -1,10 +1,18 @@
 package net.sf.jabb.util.thread.test;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import net.sf.jabb.util.thread.QueueBatchUniqueProcessor;
 import net.sf.jabb.util.thread.QueueConsumer;
 import net.sf.jabb.util.thread.QueueConsumerGroup;
 
@@ -247,4 +255,51 @@ public class QueueConsumerTest {
 		
 	}
 
+	static class BatchSizeRecorder extends QueueBatchUniqueProcessor<Integer>{
+		List<Integer> sizes = Collections.synchronizedList(new ArrayList<Integer>());
+		List<Integer> all = Collections.synchronizedList(new ArrayList<Integer>());
+		
+		BatchSizeRecorder(ArrayBlockingQueue<Integer> queue, int batchSize, long batchWaitTimeout){
+			super(queue, batchSize, batchWaitTimeout, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void process(Set<Integer> batch) {
+			sizes.add(batch.size());
+			all.addAll(batch);
+		}
+	}
+	
+	@Test
+	public void batchDrain() throws InterruptedException{
+		ArrayBlockingQueue<Integer> queue = new ArrayBlockingQueue<Integer>(100);
+		for (int i = 0; i < 25; i ++){
+			queue.put(i);
+		}
+		queue.put(24);	// duplicated in a batch
+		BatchSizeRecorder processor = new BatchSizeRecorder(queue, 10, 100);
+		processor.start();
+		Thread.sleep(100);
+		processor.stop();
+		assertEquals(Arrays.asList(10, 10, 5), processor.sizes);
+		assertEquals(25, processor.all.size());
+		for (int i = 0; i < 25; i ++){
+			assertEquals(Integer.valueOf(i), processor.all.get(i));
+		}
+	}
+	
+	@Test
+	public void batchDeadline() throws InterruptedException{
+		ArrayBlockingQueue<Integer> queue = new ArrayBlockingQueue<Integer>(100);
+		BatchSizeRecorder processor = new BatchSizeRecorder(queue, 100, 200);
+		processor.start();
+		for (int i = 0; i < 20; i ++){
+			queue.put(i);
+			Thread.sleep(50);
+		}
+		processor.stop();
+		assertEquals(20, processor.all.size());
+		assertTrue("the batch wait timeout should apply to the whole batch: " + processor.sizes, processor.sizes.size() >= 3);
+	}
+
 }
@@ -0,0 +1,172 @@
+/**
+ * 
+ */
+package net.sf.jabb.util.thread.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+
+import net.sf.jabb.util.thread.QueueProcessor;
+import net.sf.jabb.util.thread.ShardedQueueConsumerGroup;
+
+import org.junit.Test;
+
+/**
+ * @author James Hu
+ *
+ */
+public class ShardedQueueConsumerGroupTest {
+	
+	static final ShardedQueueConsumerGroup.KeyExtractor<int[]> KEY = new ShardedQueueConsumerGroup.KeyExtractor<int[]>(){
+		@Override
+		public Object keyOf(int[] obj) {
+			return obj[0];
+		}
+	};
+	
+	static class Recorder extends QueueProcessor<int[]>{
+		List<int[]> processed = Collections.synchronizedList(new ArrayList<int[]>());
+		long sleepMillis;
+		
+		Recorder(long sleepMillis){
+			super("Recorder");
+			this.sleepMillis = sleepMillis;
+		}
+
+		@Override
+		public void process(int[] obj) {
+			processed.add(obj);
+			if (sleepMillis > 0){
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+	
+	protected List<Recorder> runWith(ShardedQueueConsumerGroup.KeyExtractor<int[]> keyExtractor, boolean workStealing, 
+			int numConsumers, int numKeys, int perKey, long sleepMillis) throws InterruptedException{
+		List<Recorder> recorders = new ArrayList<Recorder>();
+		for (int i = 0; i < numConsumers; i ++){
+			recorders.add(new Recorder(sleepMillis));
+		}
+		ShardedQueueConsumerGroup<int[]> group = new ShardedQueueConsumerGroup<int[]>(100, keyExtractor, workStealing, null, recorders);
+		assertEquals(numConsumers, group.getConsumers().size());
+		group.start();
+		for (int i = 0; i < perKey; i ++){
+			for (int k = 0; k < numKeys; k ++){
+				group.queue(new int[]{k, i});
+			}
+		}
+		while(group.size() > 0){
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		group.stop();
+		
+		int total = 0;
+		for (Recorder r: recorders){
+			total += r.processed.size();
+		}
+		assertEquals(numKeys * perKey, total);
+		return recorders;
+	}
+
+	@Test
+	public void testKeyOrder() throws InterruptedException {
+		List<Recorder> recorders = runWith(KEY, false, 8, 50, 200, 0);
+		Map<Integer, Recorder> owners = new HashMap<Integer, Recorder>();
+		for (Recorder r: recorders){
+			Map<Integer, Integer> last = new HashMap<Integer, Integer>();
+			for (int[] x: r.processed){
+				Integer previous = last.put(x[0], x[1]);
+				assertEquals("data of the same key should be processed in order", previous == null ? 0 : previous + 1, x[1]);
+				Recorder owner = owners.put(x[0], r);
+				assertTrue("data of the same key should be processed by the same consumer", owner == null || owner == r);
+			}
+		}
+		assertEquals(50, owners.size());
+	}
+
+	@Test
+	public void testWorkStealing() throws InterruptedException {
+		// all data have the same key, so they all go to one shard
+		List<Recorder> recorders = runWith(KEY, true, 4, 1, 200, 2);
+		Set<Recorder> busy = new HashSet<Recorder>();
+		for (Recorder r: recorders){
+			if (r.processed.size() > 0){
+				busy.add(r);
+			}
+		}
+		assertTrue("idle consumers should steal from the busy one", busy.size() > 1);
+	}
+
+	@Test
+	public void testQueueView() throws InterruptedException {
+		List<Recorder> recorders = new ArrayList<Recorder>();
+		for (int i = 0; i < 3; i ++){
+			recorders.add(new Recorder(0));
+		}
+		ShardedQueueConsumerGroup<int[]> group = new ShardedQueueConsumerGroup<int[]>(100, null, false, null, recorders);
+		BlockingQueue<int[]> queue = group.getQueue();
+		assertTrue(queue.isEmpty());
+		assertEquals(300, queue.remainingCapacity());
+		
+		int[] first = new int[]{0, 0};
+		group.queue(first);
+		for (int i = 1; i < 10; i ++){
+			group.queue(new int[]{0, i});
+		}
+		assertFalse(queue.isEmpty());
+		assertEquals(10, queue.size());
+		assertTrue(queue.peek() == first);
+		assertTrue(queue.contains(first));
+		Set<Integer> seen = new HashSet<Integer>();
+		for (int[] obj: queue){
+			seen.add(obj[1]);
+		}
+		assertEquals(10, seen.size());
+		
+		try{
+			queue.offer(new int[]{0, 10});
+			fail("The view should be read-only");
+		}catch(UnsupportedOperationException e){
+			// expected
+		}
+		try{
+			queue.poll();
+			fail("The view should be read-only");
+		}catch(UnsupportedOperationException e){
+			// expected
+		}
+		try{
+			queue.drainTo(new ArrayList<int[]>());
+			fail("The view should be read-only");
+		}catch(UnsupportedOperationException e){
+			// expected
+		}
+		assertEquals(10, group.size());
+	}
+
+	@Test
+	public void testRoundRobin() throws InterruptedException {
+		List<Recorder> recorders = runWith(null, false, 4, 10, 40, 0);
+		for (Recorder r: recorders){
+			assertEquals(100, r.processed.size());
+		}
+	}
+
+}